@@ -56,3 +56,123 @@ CREATE TABLE `file` (
                         FOREIGN KEY (`user_id`) REFERENCES `user`(`id`),
                         FOREIGN KEY (`folder_id`) REFERENCES `folder`(`id`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+-- 聊天消息幂等：客户端请求ID（同一会话内同一请求只保存一条用户消息和一条AI回复）
+ALTER TABLE `chat_message`
+    ADD COLUMN `request_id` VARCHAR(64) NULL COMMENT '客户端请求ID' AFTER `role`,
+    ADD UNIQUE KEY `uk_session_request_role` (`session_id`, `request_id`, `role`);
+
+-- 最近对话查询：按会话倒序取最近N条消息
+CREATE INDEX `idx_chat_message_session_time` ON `chat_message` (`session_id`, `create_time` DESC);
+
+-- 助手回复结构化存储：答案文本和来源单独成列，构建历史和消息列表不再解析完整响应
+ALTER TABLE `chat_message`
+    ADD COLUMN `answer` MEDIUMTEXT NULL COMMENT '助手回复的答案文本' AFTER `content`,
+    ADD COLUMN `sources` JSON NULL COMMENT '助手回复的来源列表' AFTER `answer`;
+
+-- 一次性迁移：从已有的完整响应中回填答案和来源
+UPDATE `chat_message`
+SET `answer`  = COALESCE(JSON_UNQUOTE(JSON_EXTRACT(`content`, '$.answer')),
+                         JSON_UNQUOTE(JSON_EXTRACT(`content`, '$.response')),
+                         `content`),
+    `sources` = COALESCE(JSON_EXTRACT(`content`, '$.sources'), JSON_ARRAY())
+WHERE `role` = 'assistant' AND `answer` IS NULL AND JSON_VALID(`content`);
+
+UPDATE `chat_message`
+SET `answer` = `content`, `sources` = JSON_ARRAY()
+WHERE `role` = 'assistant' AND `answer` IS NULL;
+
+-- 文件变更日志：与文件操作同一事务写入，同步到RAG后端做增量向量更新后删除
+CREATE TABLE `file_change_journal` (
+                        `id` BIGINT AUTO_INCREMENT PRIMARY KEY,
+                        `user_id` BIGINT NOT NULL COMMENT '用户ID',
+                        `file_id` BIGINT NOT NULL COMMENT '文件ID',
+                        `change_type` VARCHAR(16) NOT NULL COMMENT '变更类型：ADDED/REMOVED/RENAMED/MOVED',
+                        `file_path` VARCHAR(255) NOT NULL COMMENT '物理存储路径',
+                        `file_name` VARCHAR(255) NOT NULL COMMENT '变更后的文件名',
+                        `folder_id` BIGINT DEFAULT 0 COMMENT '变更后的文件夹ID',
+                        `previous_file_name` VARCHAR(255) NULL COMMENT '重命名前的文件名',
+                        `previous_folder_id` BIGINT NULL COMMENT '移动前的文件夹ID',
+                        `create_time` DATETIME NOT NULL,
+                        KEY `idx_file_change_user` (`user_id`, `id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+-- 分片上传会话：文件按固定大小分片并行上传，分片直接写入预分配的临时文件，全部到齐后登记为正式文件
+CREATE TABLE `upload_session` (
+                        `id` VARCHAR(36) PRIMARY KEY COMMENT '上传ID',
+                        `user_id` BIGINT NOT NULL COMMENT '上传用户ID',
+                        `folder_id` BIGINT DEFAULT 0 COMMENT '目标文件夹ID',
+                        `file_name` VARCHAR(255) NOT NULL COMMENT '原始文件名',
+                        `file_size` BIGINT NOT NULL COMMENT '文件大小（字节）',
+                        `chunk_size` INT NOT NULL COMMENT '分片大小（字节），最后一个分片可以更小',
+                        `chunk_count` INT NOT NULL COMMENT '分片数',
+                        `temp_path` VARCHAR(255) NOT NULL COMMENT '临时文件路径',
+                        `create_time` DATETIME NOT NULL,
+                        `expire_time` DATETIME NOT NULL COMMENT '过期时间，过期未完成的会话和临时文件会被清理',
+                        KEY `idx_upload_session_user` (`user_id`),
+                        KEY `idx_upload_session_expire` (`expire_time`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+-- 已写入的分片，重复上传同一分片只记录一次
+CREATE TABLE `upload_chunk` (
+                        `upload_id` VARCHAR(36) NOT NULL COMMENT '上传ID',
+                        `chunk_index` INT NOT NULL COMMENT '分片序号，从0开始',
+                        PRIMARY KEY (`upload_id`, `chunk_index`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+-- 内容寻址存储：文件内容按SHA-256只保存一份（blobs/哈希前两位/哈希第3-4位/哈希），
+-- 用户目录下的文件是指向它的硬链接，ref_count 为引用该内容的 file 记录数
+CREATE TABLE `file_blob` (
+                        `content_hash` CHAR(64) PRIMARY KEY COMMENT '内容SHA-256（十六进制）',
+                        `size` BIGINT NOT NULL COMMENT '内容大小（字节）',
+                        `ref_count` INT NOT NULL DEFAULT 0 COMMENT '引用该内容的文件数',
+                        `create_time` DATETIME NOT NULL
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+ALTER TABLE `file`
+    ADD COLUMN `content_hash` CHAR(64) NULL COMMENT '内容SHA-256，历史文件为空' AFTER `file_path`,
+    ADD COLUMN `file_size` BIGINT NULL COMMENT '文件大小（字节）' AFTER `content_hash`,
+    ADD KEY `idx_file_content_hash` (`content_hash`);
+
+-- 变更日志带上内容哈希，RAG后端可以复用相同内容已有的向量
+ALTER TABLE `file_change_journal`
+    ADD COLUMN `content_hash` CHAR(64) NULL COMMENT '内容SHA-256' AFTER `file_path`;
+
+-- 待删除的物理文件：删除文件记录时在同一事务中写入，由后台回收任务删除，删除请求不等待磁盘IO
+CREATE TABLE `file_reclaim_queue` (
+                        `id` BIGINT AUTO_INCREMENT PRIMARY KEY,
+                        `file_path` VARCHAR(255) NOT NULL COMMENT '用户目录下待删除的物理路径',
+                        `create_time` DATETIME NOT NULL
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+-- 不再被引用的内容在最后一次引用变化之后经过宽限期才回收，避免与进行中的上传冲突
+ALTER TABLE `file_blob`
+    ADD COLUMN `update_time` DATETIME NULL COMMENT '最近一次引用数变化的时间' AFTER `create_time`,
+    ADD KEY `idx_file_blob_update_time` (`update_time`);
+
+UPDATE `file_blob` SET `update_time` = `create_time` WHERE `update_time` IS NULL;
+
+-- 文件夹物化路径：从根到该文件夹（含自身）的ID序列，如 /3/17/42/
+-- 子树查询、子树下的全部文件、移动子树都是一条按 (user_id, path) 前缀走索引的语句，不再逐层查询
+ALTER TABLE `folder`
+    ADD COLUMN `path` VARCHAR(2048) CHARACTER SET ascii NULL COMMENT '物化路径：/祖先ID/.../自身ID/' AFTER `folder_name`,
+    ADD KEY `idx_folder_user_path` (`user_id`, `path`);
+
+-- 为已有文件夹生成路径；父文件夹已不存在的文件夹作为子树的根
+CREATE TEMPORARY TABLE `folder_path_tmp` AS
+WITH RECURSIVE t (id, path) AS (
+    SELECT id, CAST(CONCAT('/', id, '/') AS CHAR(2048)) FROM `folder`
+    WHERE parent_id = 0 OR parent_id NOT IN (SELECT id FROM `folder`)
+    UNION ALL
+    SELECT c.id, CONCAT(t.path, c.id, '/') FROM `folder` c JOIN t ON c.parent_id = t.id
+)
+SELECT id, path FROM t;
+
+UPDATE `folder` f JOIN `folder_path_tmp` p ON f.id = p.id SET f.path = p.path;
+DROP TEMPORARY TABLE `folder_path_tmp`;
+
+ALTER TABLE `folder` MODIFY COLUMN `path` VARCHAR(2048) CHARACTER SET ascii NOT NULL COMMENT '物化路径：/祖先ID/.../自身ID/';
+
+-- 完成分片上传时先标记会话，之后拒绝新的分片写入，计算哈希时不需要持有会话行锁
+ALTER TABLE `upload_session`
+    ADD COLUMN `completing` TINYINT(1) NOT NULL DEFAULT 0 COMMENT '是否正在完成：标记后不再接受分片写入' AFTER `temp_path`;
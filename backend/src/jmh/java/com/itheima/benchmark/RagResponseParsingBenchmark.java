@@ -0,0 +1,131 @@
+package com.itheima.benchmark;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.itheima.pojo.rag.RagChatResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RAG聊天响应处理对比：原来的多次解析/序列化 与 类型化单次解析
+ * <p>
+ * 负载按RAG后端 /chat 的实际返回构造：约1500字的答案、同样内容的 response 字段、
+ * 10/20 条来源（50字预览 + 相对路径）、10轮 updated_history。
+ * 路径转换用固定前缀代替，只比较解析和序列化本身。
+ * 运行：mvn -Pjmh test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.itheima.benchmark.RagResponseParsingBenchmark
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RagResponseParsingBenchmark {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    @Param({"10", "20"})
+    private int sourceCount;
+
+    private byte[] body;
+
+    @Setup
+    public void setUp() {
+        String answer = "根据您上传的文档，".repeat(150);
+        List<Map<String, Object>> sources = new ArrayList<>();
+        for (int i = 0; i < sourceCount; i++) {
+            Map<String, Object> source = new HashMap<>();
+            source.put("content", "这是第" + i + "个命中片段的内容预览，长度大约五十个字符左右用于展示。");
+            source.put("source", "user_1/20240101/" + i + "_a1b2c3d4-e5f6-7890-abcd-ef1234567890_报告.txt");
+            sources.add(source);
+        }
+        List<Map<String, Object>> history = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            Map<String, Object> turn = new HashMap<>();
+            turn.put("question", "第" + i + "轮的问题是什么？");
+            turn.put("answer", "第" + i + "轮的回答。".repeat(50));
+            history.add(turn);
+        }
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("question", "请总结这些文档的主要内容");
+        payload.put("answer", answer);
+        payload.put("response", answer);
+        payload.put("sources", sources);
+        payload.put("updated_history", history);
+        payload.put("conversation_id", "session_1");
+        body = JSON.toJSONString(payload).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 原流程：executeForJson 解析 → toJSONString 打日志 → processRagResponse 再解析、改路径、序列化
+     * → saveAssistantMessage 再解析取答案和来源 → 拼前端内容
+     */
+    @Benchmark
+    public String legacyMultiPass() {
+        JSONObject jsonResponse = JSON.parseObject(new String(body, StandardCharsets.UTF_8));
+        String logged = jsonResponse.toJSONString();
+
+        JSONObject responseJson = JSONObject.parseObject(jsonResponse.toJSONString());
+        JSONArray sources = responseJson.getJSONArray("sources");
+        for (int i = 0; i < sources.size(); i++) {
+            JSONObject source = sources.getJSONObject(i);
+            source.put("source", toLogicalPath(source.getString("source")));
+        }
+        String processed = responseJson.toJSONString();
+
+        JSONObject saved = JSONObject.parseObject(processed);
+        String answer = saved.getString("answer");
+        String sourcesJson = saved.getJSONArray("sources").toJSONString();
+        return logged.length() + "{\"answer\":" + JSON.toJSONString(answer) + ",\"sources\":" + sourcesJson + "}";
+    }
+
+    /**
+     * 新流程：从响应流直接解析为 RagChatResponse，原地改路径，来源只序列化一次
+     */
+    @Benchmark
+    public String typedSinglePass() throws IOException {
+        RagChatResponse response = MAPPER.readValue(new ByteArrayInputStream(body), RagChatResponse.class);
+        for (RagChatResponse.Source source : response.getSources()) {
+            source.setSource(toLogicalPath(source.getSource()));
+        }
+        String sourcesJson = JSON.toJSONString(response.getSources());
+        return "{\"answer\":" + JSON.toJSONString(response.getAnswerText()) + ",\"sources\":" + sourcesJson + "}";
+    }
+
+    private static String toLogicalPath(String relativePath) {
+        return "/我的文档/" + relativePath.substring(relativePath.lastIndexOf('/') + 1);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(RagResponseParsingBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -1,14 +1,120 @@
 package com.itheima.config;
 
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.task.TaskExecutorBuilder;
+import org.springframework.boot.task.TaskSchedulerBuilder;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 
 /**
  * 异步配置类
  * 启用Spring的异步任务支持，用于RAG向量存储的异步构建
+ * 开启 spring.threads.virtual.enabled 时，执行器改由 VirtualThreadConfig（java21 profile）提供
  */
 @Configuration
 @EnableAsync
 public class AsyncConfig {
-    // Spring Boot会自动使用application.yml中的spring.task.execution配置
-}
\ No newline at end of file
+
+    /**
+     * 默认异步执行器（@Async 未指定名称时使用）
+     * 显式声明后其他执行器Bean不会覆盖Spring Boot的默认执行器，
+     * 仍然使用application.yml中的spring.task.execution配置
+     */
+    @Bean(name = {"taskExecutor", "applicationTaskExecutor"})
+    @ConditionalOnProperty(name = "spring.threads.virtual.enabled", havingValue = "false", matchIfMissing = true)
+    public ThreadPoolTaskExecutor taskExecutor(TaskExecutorBuilder builder) {
+        return builder.build();
+    }
+
+    /**
+     * 默认任务调度器（@Scheduled 未指定名称时使用）
+     * 下面声明的几个专用 ThreadPoolTaskScheduler 会让Spring Boot不再自动配置默认调度器，
+     * 因此与默认执行器一样显式声明，仍然使用application.yml中的spring.task.scheduling配置
+     */
+    @Bean(name = "taskScheduler")
+    public ThreadPoolTaskScheduler taskScheduler(TaskSchedulerBuilder builder) {
+        return builder.build();
+    }
+
+    /**
+     * 流式聊天执行器
+     * 用于转发RAG流式响应，避免占用Tomcat请求线程
+     */
+    @Bean
+    @ConditionalOnProperty(name = "spring.threads.virtual.enabled", havingValue = "false", matchIfMissing = true)
+    public ThreadPoolTaskExecutor chatStreamExecutor(TaskExecutorBuilder builder) {
+        return builder
+                .corePoolSize(8)
+                .maxPoolSize(64)
+                .queueCapacity(200)
+                .threadNamePrefix("chat-stream-")
+                .build();
+    }
+
+    /**
+     * RAG调用重试执行器
+     * 退避等待由计时器完成，到期后的重试请求在这里发起
+     */
+    @Bean
+    public ThreadPoolTaskExecutor ragRetryExecutor(TaskExecutorBuilder builder) {
+        return builder
+                .corePoolSize(2)
+                .maxPoolSize(32)
+                .queueCapacity(100)
+                .threadNamePrefix("rag-retry-")
+                .build();
+    }
+
+    /**
+     * 向量存储重建的防抖计时器
+     * 只负责计时，重建本身提交到执行器中运行
+     */
+    @Bean
+    public ThreadPoolTaskScheduler rebuildScheduler() {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(1);
+        scheduler.setThreadNamePrefix("rebuild-timer-");
+        scheduler.setRemoveOnCancelPolicy(true);
+        return scheduler;
+    }
+
+    /**
+     * RAG健康探测计时器
+     * 探测请求是异步发出的，计时线程不会被慢请求阻塞
+     */
+    @Bean
+    public ThreadPoolTaskScheduler ragHealthScheduler() {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(1);
+        scheduler.setThreadNamePrefix("rag-health-");
+        return scheduler;
+    }
+
+    /**
+     * 全文索引更新执行器
+     * 单线程按提交顺序应用文件变更，同一文件的新增和删除不会乱序
+     */
+    @Bean
+    public ThreadPoolTaskExecutor searchIndexExecutor(TaskExecutorBuilder builder) {
+        return builder
+                .corePoolSize(1)
+                .maxPoolSize(1)
+                .threadNamePrefix("search-index-")
+                .build();
+    }
+
+    /**
+     * 存储维护任务（清理过期的上传会话、回收存储空间等）
+     * 两个线程：按批回收内容时，删除文件后的物理文件删除不必排队等待
+     */
+    @Bean
+    public ThreadPoolTaskScheduler storageMaintenanceScheduler() {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(2);
+        scheduler.setThreadNamePrefix("storage-maint-");
+        return scheduler;
+    }
+}
@@ -1,7 +1,12 @@
 package com.itheima.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.okhttp3.OkHttpConnectionPoolMetrics;
+import io.micrometer.core.instrument.binder.okhttp3.OkHttpMetricsEventListener;
 import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
 import okhttp3.OkHttpClient;
+import okhttp3.Request;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -31,13 +36,32 @@ public class OkHttpConfiguration {
     @Value("${okhttp.keep-alive-duration}")
     private Long keepAliveDuration;
 
+    @Value("${okhttp.max-requests:256}")
+    private Integer maxRequests;
+
+    @Value("${okhttp.max-requests-per-host:128}")
+    private Integer maxRequestsPerHost;
+
+    @Value("${okhttp.max-connections-per-route:128}")
+    private Integer maxConnectionsPerRoute;
+
+    @Value("${okhttp.route-acquire-timeout-ms:5000}")
+    private Long routeAcquireTimeoutMs;
+
+    /**
+     * 所有出站HTTP请求（包括RAG的RestTemplate、聊天和健康探测）共用的客户端
+     * 需要不同超时的地方用 newBuilder() 派生，派生的客户端共用同一个连接池、调度器和路由并发限制
+     * 请求耗时按路径模板和状态码记录为 okhttp.requests，连接池状态记录为 okhttp.pool.*
+     */
     @Bean
-    public OkHttpClient okHttpClient() {
+    public OkHttpClient okHttpClient(MeterRegistry meterRegistry) {
+        new OkHttpConnectionPoolMetrics(pool()).bindTo(meterRegistry);
         return new OkHttpClient.Builder()
                 .sslSocketFactory(sslSocketFactory(), x509TrustManager())
                 // 是否开启缓存
                 .retryOnConnectionFailure(false)
                 .connectionPool(pool())
+                .dispatcher(dispatcher())
                 .connectTimeout(connectTimeout, TimeUnit.SECONDS)
                 .readTimeout(readTimeout, TimeUnit.SECONDS)
                 .writeTimeout(writeTimeout,TimeUnit.SECONDS)
@@ -45,10 +69,33 @@ public class OkHttpConfiguration {
                 // 设置代理
 //            	.proxy(new Proxy(Proxy.Type.HTTP, new InetSocketAddress("127.0.0.1", 8888)))
                 // 拦截器
-//                .addInterceptor()
+                .addInterceptor(new RouteConcurrencyInterceptor(maxConnectionsPerRoute, routeAcquireTimeoutMs))
+                .eventListener(OkHttpMetricsEventListener.builder(meterRegistry, "okhttp.requests")
+                        .uriMapper(OkHttpConfiguration::uriTemplate)
+                        .build())
                 .build();
     }
 
+    /**
+     * 指标中的uri标签：优先使用请求头 URI_PATTERN 声明的模板，
+     * 否则把含数字的路径段替换为 {id}（如 /conversations/session_12/clear → /conversations/{id}/clear），
+     * 避免会话ID、用户ID等让标签取值无限增长
+     */
+    static String uriTemplate(Request request) {
+        String pattern = request.header(OkHttpMetricsEventListener.URI_PATTERN);
+        if (pattern != null) {
+            return pattern;
+        }
+        StringBuilder template = new StringBuilder();
+        for (String segment : request.url().pathSegments()) {
+            if (segment.isEmpty()) {
+                continue;
+            }
+            template.append('/').append(segment.chars().anyMatch(Character::isDigit) ? "{id}" : segment);
+        }
+        return template.length() == 0 ? "/" : template.toString();
+    }
+
     @Bean
     public X509TrustManager x509TrustManager() {
         return new X509TrustManager() {
@@ -80,6 +127,17 @@ public class OkHttpConfiguration {
         return null;
     }
 
+    /**
+     * 异步请求调度器，默认每个主机只允许5个并发请求，RAG后端只有一个主机，需要放宽
+     */
+    @Bean
+    public Dispatcher dispatcher() {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(maxRequests);
+        dispatcher.setMaxRequestsPerHost(maxRequestsPerHost);
+        return dispatcher;
+    }
+
     @Bean
     public ConnectionPool pool() {
         return new ConnectionPool(maxIdleConnections, keepAliveDuration, TimeUnit.SECONDS);
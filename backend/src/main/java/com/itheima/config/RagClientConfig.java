@@ -3,8 +3,8 @@ package com.itheima.config;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.http.client.ClientHttpRequestFactory;
-import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import okhttp3.OkHttpClient;
+import org.springframework.http.client.OkHttp3ClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 
 @Configuration
@@ -17,18 +17,21 @@ public class RagClientConfig {
     private int connectionTimeout = 5000;
     private int readTimeout = 30000;
     private Retry retry = new Retry();
+    private Rebuild rebuild = new Rebuild();
+    private CircuitBreaker circuitBreaker = new CircuitBreaker();
+    private Health health = new Health();
     
+    /**
+     * RAG接口使用的RestTemplate
+     * 底层使用共享的OkHttpClient，复用连接池中的长连接，不再每次调用都新建TCP连接
+     */
     @Bean
-    public RestTemplate ragRestTemplate() {
-        RestTemplate restTemplate = new RestTemplate();
-        
-        // 配置超时设置
-        ClientHttpRequestFactory factory = new SimpleClientHttpRequestFactory();
-        ((SimpleClientHttpRequestFactory) factory).setConnectTimeout(connectionTimeout);
-        ((SimpleClientHttpRequestFactory) factory).setReadTimeout(readTimeout);
-        restTemplate.setRequestFactory(factory);
-        
-        return restTemplate;
+    public RestTemplate ragRestTemplate(OkHttpClient okHttpClient) {
+        // 设置超时时会基于共享客户端派生，连接池和调度器不变
+        OkHttp3ClientHttpRequestFactory factory = new OkHttp3ClientHttpRequestFactory(okHttpClient);
+        factory.setConnectTimeout(connectionTimeout);
+        factory.setReadTimeout(readTimeout);
+        return new RestTemplate(factory);
     }
     
     // Getters and Setters
@@ -80,9 +83,34 @@ public class RagClientConfig {
         this.retry = retry;
     }
     
+    public Rebuild getRebuild() {
+        return rebuild;
+    }
+    
+    public void setRebuild(Rebuild rebuild) {
+        this.rebuild = rebuild;
+    }
+    
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+    
+    public void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+    
+    public Health getHealth() {
+        return health;
+    }
+    
+    public void setHealth(Health health) {
+        this.health = health;
+    }
+    
     public static class Retry {
         private int maxAttempts = 3;
         private long delay = 1000;
+        private long maxDelay = 8000;
         
         public int getMaxAttempts() {
             return maxAttempts;
@@ -99,5 +127,130 @@ public class RagClientConfig {
         public void setDelay(long delay) {
             this.delay = delay;
         }
+        
+        public long getMaxDelay() {
+            return maxDelay;
+        }
+        
+        public void setMaxDelay(long maxDelay) {
+            this.maxDelay = maxDelay;
+        }
+    }
+    
+    /**
+     * 向量存储重建的防抖和执行器配置
+     */
+    public static class Rebuild {
+        private long debounceMs = 2000;
+        private long maxWaitMs = 30000;
+        private int threads = 2;
+        private int queueCapacity = 500;
+        private int perUserCapacity = 20;
+        
+        public long getDebounceMs() {
+            return debounceMs;
+        }
+        
+        public void setDebounceMs(long debounceMs) {
+            this.debounceMs = debounceMs;
+        }
+        
+        public long getMaxWaitMs() {
+            return maxWaitMs;
+        }
+        
+        public void setMaxWaitMs(long maxWaitMs) {
+            this.maxWaitMs = maxWaitMs;
+        }
+        
+        public int getThreads() {
+            return threads;
+        }
+        
+        public void setThreads(int threads) {
+            this.threads = threads;
+        }
+        
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+        
+        public void setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+        
+        public int getPerUserCapacity() {
+            return perUserCapacity;
+        }
+        
+        public void setPerUserCapacity(int perUserCapacity) {
+            this.perUserCapacity = perUserCapacity;
+        }
+    }
+    
+    /**
+     * RAG调用熔断配置
+     */
+    public static class CircuitBreaker {
+        private int failureThreshold = 5;
+        private long openDurationMs = 10000;
+        
+        public int getFailureThreshold() {
+            return failureThreshold;
+        }
+        
+        public void setFailureThreshold(int failureThreshold) {
+            this.failureThreshold = failureThreshold;
+        }
+        
+        public long getOpenDurationMs() {
+            return openDurationMs;
+        }
+        
+        public void setOpenDurationMs(long openDurationMs) {
+            this.openDurationMs = openDurationMs;
+        }
+    }
+    
+    /**
+     * RAG后台健康探测配置
+     */
+    public static class Health {
+        private long intervalMs = 5000;
+        private long timeoutMs = 2000;
+        private int failureThreshold = 2;
+        private int latencyWindow = 20;
+        
+        public long getIntervalMs() {
+            return intervalMs;
+        }
+        
+        public void setIntervalMs(long intervalMs) {
+            this.intervalMs = intervalMs;
+        }
+        
+        public long getTimeoutMs() {
+            return timeoutMs;
+        }
+        
+        public void setTimeoutMs(long timeoutMs) {
+            this.timeoutMs = timeoutMs;
+        }
+        
+        public int getFailureThreshold() {
+            return failureThreshold;
+        }
+        
+        public void setFailureThreshold(int failureThreshold) {
+            this.failureThreshold = failureThreshold;
+        }
+        
+        public int getLatencyWindow() {
+            return latencyWindow;
+        }
+        
+        public void setLatencyWindow(int latencyWindow) {
+            this.latencyWindow = latencyWindow;
+        }
     }
 }
\ No newline at end of file
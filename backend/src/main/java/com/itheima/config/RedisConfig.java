@@ -0,0 +1,33 @@
+package com.itheima.config;
+
+import com.itheima.service.TokenCache;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+/**
+ * Redis 发布订阅配置
+ */
+@Configuration
+public class RedisConfig {
+
+    /**
+     * 订阅令牌注销广播，收到后移除本节点缓存的令牌
+     * 不随上下文自动启动，Redis不可用时应用照常启动，由 {@link TokenRevocationSubscriber} 在后台订阅并重试
+     */
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory,
+                                                                       TokenCache tokenCache) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer() {
+            @Override
+            public boolean isAutoStartup() {
+                return false;
+            }
+        };
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(tokenCache, new ChannelTopic(TokenCache.REVOCATION_CHANNEL));
+        return container;
+    }
+}
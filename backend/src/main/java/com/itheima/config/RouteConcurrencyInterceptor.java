@@ -0,0 +1,130 @@
+package com.itheima.config;
+
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 按路由（scheme + host + port）限制同时进行中的请求数
+ * <p>
+ * OkHttp的Dispatcher只限制异步请求，同步请求（RestTemplate、流式聊天）不受限制。
+ * 这里对同步和异步请求统一计数：拿到许可才发出请求，响应体关闭时归还许可，
+ * 流式响应在读完之前一直占用一个连接，也一直占用一个许可。
+ * 等待超过 acquireTimeoutMs 仍拿不到许可时抛出 IOException，由调用方按网络错误处理。
+ * </p>
+ */
+class RouteConcurrencyInterceptor implements Interceptor {
+
+    private final int maxPerRoute;
+    private final long acquireTimeoutMs;
+    private final Map<String, Semaphore> permits = new ConcurrentHashMap<>();
+
+    RouteConcurrencyInterceptor(int maxPerRoute, long acquireTimeoutMs) {
+        this.maxPerRoute = maxPerRoute;
+        this.acquireTimeoutMs = acquireTimeoutMs;
+    }
+
+    @NotNull
+    @Override
+    public Response intercept(@NotNull Chain chain) throws IOException {
+        HttpUrl url = chain.request().url();
+        String route = url.scheme() + "://" + url.host() + ":" + url.port();
+        Semaphore semaphore = permits.computeIfAbsent(route, key -> new Semaphore(maxPerRoute, true));
+
+        try {
+            if (!semaphore.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS)) {
+                throw new IOException("到 " + route + " 的并发请求数已达上限 " + maxPerRoute);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("等待 " + route + " 的连接许可时被中断");
+        }
+
+        Response response;
+        try {
+            response = chain.proceed(chain.request());
+        } catch (IOException | RuntimeException e) {
+            semaphore.release();
+            throw e;
+        }
+
+        ResponseBody body = response.body();
+        if (body == null) {
+            semaphore.release();
+            return response;
+        }
+        return response.newBuilder().body(new PermitReleasingBody(body, semaphore)).build();
+    }
+
+    /**
+     * 关闭（或读完后关闭）时归还许可的响应体，多次关闭只归还一次
+     */
+    private static final class PermitReleasingBody extends ResponseBody {
+        private final ResponseBody delegate;
+        private final Semaphore semaphore;
+        private final AtomicBoolean released = new AtomicBoolean();
+        private BufferedSource source;
+
+        private PermitReleasingBody(ResponseBody delegate, Semaphore semaphore) {
+            this.delegate = delegate;
+            this.semaphore = semaphore;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return delegate.contentType();
+        }
+
+        @Override
+        public long contentLength() {
+            return delegate.contentLength();
+        }
+
+        @NotNull
+        @Override
+        public synchronized BufferedSource source() {
+            if (source == null) {
+                source = Okio.buffer(new ForwardingSource(delegate.source()) {
+                    @Override
+                    public void close() throws IOException {
+                        try {
+                            super.close();
+                        } finally {
+                            release();
+                        }
+                    }
+                });
+            }
+            return source;
+        }
+
+        @Override
+        public void close() {
+            try {
+                delegate.close();
+            } finally {
+                release();
+            }
+        }
+
+        private void release() {
+            if (released.compareAndSet(false, true)) {
+                semaphore.release();
+            }
+        }
+    }
+}
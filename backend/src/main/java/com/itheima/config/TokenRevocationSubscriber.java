@@ -0,0 +1,55 @@
+package com.itheima.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * 在后台订阅令牌注销广播
+ * <p>
+ * 订阅只用于及时清除本地缓存的令牌，不是启动的必要条件：监听容器不随上下文自动启动，
+ * 应用就绪后在调度线程中启动，Redis不可用时记录警告并按间隔重试，期间已注销的令牌最多在本地缓存
+ * auth.token-cache.max-age-seconds 内仍然有效。订阅成功后连接中断由监听容器自己恢复。
+ * </p>
+ */
+@Slf4j
+@Component
+public class TokenRevocationSubscriber {
+
+    private final RedisMessageListenerContainer container;
+    private final TaskScheduler taskScheduler;
+    private final Duration retryInterval;
+
+    public TokenRevocationSubscriber(RedisMessageListenerContainer container,
+                                     @Qualifier("taskScheduler") TaskScheduler taskScheduler,
+                                     @Value("${auth.token-cache.subscribe-retry-seconds:30}") long retrySeconds) {
+        this.container = container;
+        this.taskScheduler = taskScheduler;
+        this.retryInterval = Duration.ofSeconds(retrySeconds);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void subscribe() {
+        taskScheduler.schedule(this::tryStart, Instant.now());
+    }
+
+    void tryStart() {
+        try {
+            container.start();
+            log.info("已订阅令牌注销广播");
+        } catch (RuntimeException e) {
+            // 启动失败时容器仍标记为已启动，先停止才能重新启动
+            container.stop();
+            log.warn("订阅令牌注销广播失败，{}秒后重试: {}", retryInterval.toSeconds(), e.getMessage());
+            taskScheduler.schedule(this::tryStart, Instant.now().plus(retryInterval));
+        }
+    }
+}
@@ -21,6 +21,7 @@
 package com.itheima.config;
 
 import com.itheima.interceptors.LoginInterceptor;
+import com.itheima.interceptors.RequestMetricsInterceptor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
@@ -33,9 +34,14 @@ public class WebConfig implements WebMvcConfigurer {
     @Autowired
     private LoginInterceptor loginInterceptor;
 
+    @Autowired
+    private RequestMetricsInterceptor requestMetricsInterceptor;
+
     // 添加拦截器配置
     @Override
     public void addInterceptors(InterceptorRegistry registry) {
+        // 先于登录拦截器执行，令牌校验中的查询也计入请求
+        registry.addInterceptor(requestMetricsInterceptor);
         // 登录接口和注册接口不拦截
         registry.addInterceptor(loginInterceptor).excludePathPatterns("/user/login", "/user/register");
     }
@@ -8,11 +8,16 @@ import com.itheima.service.ChatService;
 import com.itheima.service.FolderService;
 import com.itheima.utils.ThreadLocalUtil;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 
+@Slf4j
 @RestController
 @RequestMapping("/chat")
 @RequiredArgsConstructor
@@ -20,6 +25,11 @@ public class ChatController {
     private final ChatService chatService;
     private final FolderService folderService;
 
+    /**
+     * 流式回复的最长等待时间（毫秒）
+     */
+    private static final long STREAM_TIMEOUT_MS = 180_000L;
+
     @PostMapping("/sessions")
     public Result<ChatSession> createSession(@RequestParam String sessionName) {
         // 从线程本地获取当前用户ID
@@ -54,22 +64,53 @@ public class ChatController {
         }
         
         try {
-            ChatMessage message;
-            // 如果指定了文件或文件夹，使用新的方法
-            if ((request.getFileIds() != null && !request.getFileIds().isEmpty()) || 
-                (request.getFolderIds() != null && !request.getFolderIds().isEmpty())) {
-                message = chatService.sendMessage(sessionId, userId, content, 
-                    request.getFileIds(), request.getFolderIds());
-            } else {
-                // 否则使用默认方法（使用user_{userId}路径）
-                message = chatService.sendMessage(sessionId, userId, content);
-            }
+            // 未指定文件或文件夹时使用默认的user_{userId}路径
+            ChatMessage message = chatService.sendMessage(sessionId, userId, content,
+                    request.getFileIds(), request.getFolderIds(), request.getRequestId());
             return Result.success(message);
         } catch (RuntimeException e) {
             return Result.error(e.getMessage());
         }
     }
 
+    /**
+     * 流式发送消息（SSE）
+     * 事件：token（回答片段）、done（保存后的AI回复消息）、error（错误信息）
+     */
+    @PostMapping(value = "/messages/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamMessage(
+            @RequestParam Long sessionId,
+            @RequestBody ChatMessageRequest request) {
+        // 从线程本地获取当前用户ID
+        Map<String, Object> userInfo = ThreadLocalUtil.get();
+        Long userId = ((Integer) userInfo.get("id")).longValue();
+
+        SseEmitter emitter = new SseEmitter(STREAM_TIMEOUT_MS);
+        String content = request.getContent();
+        if (content == null || content.trim().isEmpty()) {
+            sendErrorAndComplete(emitter, "消息内容不能为空");
+            return emitter;
+        }
+
+        try {
+            chatService.streamMessage(sessionId, userId, content,
+                    request.getFileIds(), request.getFolderIds(), request.getRequestId(), emitter);
+        } catch (RuntimeException e) {
+            sendErrorAndComplete(emitter, e.getMessage());
+        }
+        return emitter;
+    }
+
+    private void sendErrorAndComplete(SseEmitter emitter, String message) {
+        try {
+            emitter.send(SseEmitter.event().name("error").data(message));
+            emitter.complete();
+        } catch (IOException e) {
+            log.warn("发送SSE错误事件失败: {}", e.getMessage());
+            emitter.completeWithError(e);
+        }
+    }
+
     @GetMapping("/messages")
     public Result<List<ChatMessage>> getMessageHistory(@RequestParam Long sessionId) {
         List<ChatMessage> messages = chatService.getMessageHistory(sessionId);
@@ -1,22 +1,26 @@
 // FileController.java
 package com.itheima.controller;
 
+import com.itheima.dto.BatchFileRequest;
+import com.itheima.dto.BatchItemResult;
 import com.itheima.dto.CreateTextFileRequest;
+import com.itheima.dto.FileDownload;
+import com.itheima.dto.InstantUploadCheck;
+import com.itheima.dto.InstantUploadRequest;
+import com.itheima.dto.SearchHit;
 import com.itheima.pojo.File;
 import com.itheima.pojo.Result;
 import com.itheima.service.FileService;
+import com.itheima.utils.FileTransferUtil;
 import com.itheima.utils.ThreadLocalUtil;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
-import org.springframework.core.io.Resource;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
-import java.net.URLEncoder;
-import java.nio.charset.StandardCharsets;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -27,6 +31,11 @@ import java.util.Map;
 @RequestMapping("/files")
 @RequiredArgsConstructor
 public class FileController {
+    /**
+     * 按行分页时默认每页行数
+     */
+    private static final int DEFAULT_PAGE_LINES = 500;
+
     private final FileService fileService;
 
     /**
@@ -58,6 +67,36 @@ public class FileController {
         return Result.success(uploadedFile);
     }
 
+    /**
+     * 秒传预检：服务器是否已有该内容
+     * @param contentHash 文件内容的SHA-256
+     * @param fileSize 文件大小（字节）
+     * @return 内容存在时返回需要校验的片段位置
+     */
+    @GetMapping("/instant-upload")
+    public Result<InstantUploadCheck> checkInstantUpload(@RequestParam String contentHash,
+                                                         @RequestParam long fileSize) {
+        Long userId = getCurrentUserId();
+
+        return Result.success(fileService.checkInstantUpload(userId, contentHash, fileSize));
+    }
+
+    /**
+     * 秒传：不传输文件内容，直接使用服务器上已有的相同内容
+     * @param request 文件名、目标文件夹、内容哈希和片段校验值
+     * @return 上传成功的文件信息
+     */
+    @PostMapping("/instant-upload")
+    public Result<File> instantUpload(@RequestBody InstantUploadRequest request) throws IOException {
+        Long userId = getCurrentUserId();
+        if (request.getFileSize() == null) {
+            return Result.error("缺少文件大小");
+        }
+
+        return Result.success(fileService.instantUpload(userId, request.getFolderId(), request.getFileName(),
+                request.getContentHash(), request.getFileSize(), request.getProof()));
+    }
+
     @PostMapping("/create-text")
     public Result<File> createTextFile(@RequestBody CreateTextFileRequest request) throws IOException {
         Long userId = getCurrentUserId();
@@ -66,6 +105,69 @@ public class FileController {
         return Result.success(createdFile);
     }
 
+    /**
+     * 批量上传文件
+     * @param files 上传的文件
+     * @param folderId 目标文件夹ID
+     * @return 每个文件的结果
+     */
+    @PostMapping("/batch/upload")
+    public Result<List<BatchItemResult>> uploadFiles(
+            @RequestParam("files") List<MultipartFile> files,
+            @RequestParam(defaultValue = "0") Long folderId) throws IOException {
+        Long userId = getCurrentUserId();
+
+        return Result.success(fileService.uploadFiles(userId, folderId, files));
+    }
+
+    /**
+     * 批量移动文件
+     * @param request 文件ID列表和目标文件夹ID
+     * @return 每个文件的结果
+     */
+    @PostMapping("/batch/move")
+    public Result<List<BatchItemResult>> moveFiles(@RequestBody BatchFileRequest request) {
+        Long userId = getCurrentUserId();
+        if (request.getTargetFolderId() == null) {
+            return Result.error("目标文件夹不能为空");
+        }
+
+        return Result.success(fileService.moveFiles(userId, request.getFileIds(), request.getTargetFolderId()));
+    }
+
+    /**
+     * 批量删除文件
+     * @param request 文件ID列表
+     * @return 每个文件的结果
+     */
+    @PostMapping("/batch/delete")
+    public Result<List<BatchItemResult>> deleteFiles(@RequestBody BatchFileRequest request) {
+        Long userId = getCurrentUserId();
+
+        return Result.success(fileService.deleteFiles(userId, request.getFileIds()));
+    }
+
+    /**
+     * 关键词搜索文件内容和文件名
+     * @param q 关键词，多个词之间用空格分隔
+     * @param folderId 只搜索该文件夹（0为根目录），不传则搜索全部文件
+     * @param recursive 是否包含子文件夹
+     * @param limit 最多返回的结果数
+     * @return 按相关度排列的结果和内容摘要
+     */
+    @GetMapping("/search")
+    public Result<List<SearchHit>> searchFiles(@RequestParam String q,
+                                               @RequestParam(required = false) Long folderId,
+                                               @RequestParam(defaultValue = "true") boolean recursive,
+                                               @RequestParam(defaultValue = "20") int limit) {
+        Long userId = getCurrentUserId();
+        try {
+            return Result.success(fileService.searchFiles(userId, q, folderId, recursive, limit));
+        } catch (Exception e) {
+            return Result.error("搜索失败: " + e.getMessage());
+        }
+    }
+
     @PutMapping("/{fileId}/rename")
     public Result renameFile(
             @PathVariable Long fileId,
@@ -81,13 +183,31 @@ public class FileController {
 
     /**
      * 获取文件内容
+     * 不带分页参数时返回整个文件（字符串）；带 startLine/lineCount 时按行分页，
+     * 带 offset/length 时按字节分页，分页时返回 TextPage
      * @param fileId 文件ID
-     * @return 文件内容（字符串）
+     * @param offset 起始字节位置
+     * @param length 最多读取的字节数
+     * @param startLine 起始行号，从0开始
+     * @param lineCount 最多读取的行数
+     * @return 文件内容
      */
     @GetMapping("/{fileId}/content")
-    public Result<String> getFileContent(@PathVariable Long fileId) throws IOException {
+    public Result<?> getFileContent(@PathVariable Long fileId,
+                                    @RequestParam(required = false) Long offset,
+                                    @RequestParam(required = false) Integer length,
+                                    @RequestParam(required = false) Long startLine,
+                                    @RequestParam(required = false) Integer lineCount) throws IOException {
         Long userId = getCurrentUserId();
         try {
+            if (startLine != null || lineCount != null) {
+                return Result.success(fileService.readFileLines(userId, fileId,
+                        startLine != null ? startLine : 0, lineCount != null ? lineCount : DEFAULT_PAGE_LINES));
+            }
+            if (offset != null || length != null) {
+                return Result.success(fileService.readFileContent(userId, fileId,
+                        offset != null ? offset : 0, length != null ? length : Integer.MAX_VALUE));
+            }
             String content = fileService.getFileContent(userId, fileId);
             return Result.success(content);
         } catch (Exception e) {
@@ -113,25 +233,19 @@ public class FileController {
 
     /**
      * 文件下载接口
+     * 支持 Range 断点续传/分段下载（206）和 If-None-Match 条件请求（304）
      * @param fileId 要下载的文件ID
-     * @return 文件二进制流
      */
     @GetMapping("/{fileId}/download")
-    public ResponseEntity<Resource> downloadFile(@PathVariable Long fileId) throws IOException {
+    public void downloadFile(@PathVariable Long fileId, HttpServletRequest request,
+                             HttpServletResponse response) throws IOException {
         Long userId = getCurrentUserId();
-        File fileMeta = fileService.getFileMetadata(userId, fileId);
-        Resource resource = fileService.downloadFile(userId, fileId);
-    
-        String fileName = fileMeta.getFileName();
-        // 重点：对文件名进行编码，兼容中文和特殊字符
-        String encodedFileName = URLEncoder.encode(fileName, StandardCharsets.UTF_8).replaceAll("\\+", "%20");
-    
-        String contentDisposition = "attachment; filename*=UTF-8''" + encodedFileName;
-    
-        return ResponseEntity.ok()
-                .header(HttpHeaders.CONTENT_DISPOSITION, contentDisposition)
-                .contentType(MediaType.APPLICATION_OCTET_STREAM)
-                .body(resource);
+        FileDownload download = fileService.downloadFile(userId, fileId);
+
+        long bytes = FileTransferUtil.write(request, response, download);
+        if (bytes > 0) {
+            fileService.recordDownload(bytes);
+        }
     }
 
     /**
@@ -133,6 +133,28 @@ public class FolderController {
         }
     }
 
+    /**
+     * 移动文件夹（连同其下所有内容）
+     * @param folderId 要移动的文件夹ID
+     * @param targetParentId 目标父文件夹ID（0表示根目录）
+     * @return 更新后的文件夹对象
+     */
+    @PutMapping("/{folderId}/move")
+    public Result<Folder> moveFolder(
+            @PathVariable Long folderId,
+            @RequestParam Long targetParentId) {
+        try {
+            Long userId = getCurrentUserId();
+            validateFolderId(folderId);
+            if (targetParentId == null || targetParentId < 0) {
+                throw new IllegalArgumentException("目标文件夹ID无效");
+            }
+            return Result.success(folderService.moveFolder(userId, folderId, targetParentId));
+        } catch (Exception e) {
+            return Result.error("移动文件夹失败: " + e.getMessage());
+        }
+    }
+
     /**
      * 获取指定文件夹内容
      * @param folderId 目标文件夹ID
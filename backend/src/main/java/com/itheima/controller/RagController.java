@@ -3,6 +3,8 @@ package com.itheima.controller;
 import com.itheima.pojo.Result;
 import com.itheima.pojo.rag.VectorStoreResponse;
 import com.itheima.service.RagClientService;
+import com.itheima.service.RagHealthProber;
+import com.itheima.service.VectorStoreRebuildCoordinator;
 import com.itheima.utils.ThreadLocalUtil;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -10,6 +12,7 @@ import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * RAG向量存储管理控制器
@@ -23,6 +26,8 @@ import java.util.Map;
 public class RagController {
     
     private final RagClientService ragClientService;
+    private final VectorStoreRebuildCoordinator rebuildCoordinator;
+    private final RagHealthProber ragHealthProber;
     
     /**
      * 获取当前登录用户ID
@@ -39,28 +44,32 @@ public class RagController {
     
     /**
      * 手动构建当前用户的向量存储
+     * 经重建协调器执行，不会与同一用户进行中的重建并发；构建和重试期间不占用请求线程，构建结束后再返回结果
      * @param forceRebuild 是否强制重建，默认为false
      * @return 构建结果
      */
     @PostMapping("/build")
-    public Result<VectorStoreResponse> buildVectorStore(
+    public CompletableFuture<Result<VectorStoreResponse>> buildVectorStore(
             @RequestParam(defaultValue = "false") boolean forceRebuild) {
         try {
             Long userId = getCurrentUserId();
             
             log.info("手动构建向量存储请求 - 用户: {}, 强制重建: {}", userId, forceRebuild);
             
-            VectorStoreResponse response = ragClientService.buildVectorStore(userId, forceRebuild);
-            
-            if ("error".equals(response.getStatus())) {
-                return Result.error("构建向量存储失败: " + response.getMessage());
-            }
-            
-            return Result.success(response);
+            return rebuildCoordinator.rebuildAndWait(userId, forceRebuild).<Result<VectorStoreResponse>>handle((response, error) -> {
+                if (error != null) {
+                    log.error("手动构建向量存储失败", error);
+                    return Result.error("构建向量存储失败: " + error.getMessage());
+                }
+                if ("error".equals(response.getStatus())) {
+                    return Result.error("构建向量存储失败: " + response.getMessage());
+                }
+                return Result.success(response);
+            });
             
         } catch (Exception e) {
             log.error("手动构建向量存储失败", e);
-            return Result.error("构建向量存储失败: " + e.getMessage());
+            return CompletableFuture.completedFuture(Result.error("构建向量存储失败: " + e.getMessage()));
         }
     }
     
@@ -77,7 +86,7 @@ public class RagController {
             
             log.info("异步构建向量存储请求 - 用户: {}, 强制重建: {}", userId, forceRebuild);
             
-            ragClientService.buildVectorStoreAsync(userId, forceRebuild);
+            rebuildCoordinator.requestRebuild(userId, forceRebuild);
             
             return Result.success("向量存储构建任务已提交，正在后台处理");
             
@@ -92,34 +101,47 @@ public class RagController {
      * @return 操作结果
      */
     @PostMapping("/clear-cache")
-    public Result<String> clearVectorStoreCache() {
+    public CompletableFuture<Result<String>> clearVectorStoreCache() {
         try {
             Long userId = getCurrentUserId();
             
             log.info("清除向量存储缓存请求 - 用户: {}", userId);
             
-            ragClientService.clearVectorStoreCache(userId);
-            
-            return Result.success("向量存储缓存已清除");
+            return ragClientService.clearVectorStoreCache(userId).<Result<String>>handle((response, error) -> {
+                if (error != null) {
+                    log.error("清除向量存储缓存失败", error);
+                    return Result.error("清除缓存失败: " + error.getMessage());
+                }
+                if ("error".equals(response.getStatus())) {
+                    return Result.error("清除缓存失败: " + response.getMessage());
+                }
+                return Result.success("向量存储缓存已清除");
+            });
             
         } catch (Exception e) {
             log.error("清除向量存储缓存失败", e);
-            return Result.error("清除缓存失败: " + e.getMessage());
+            return CompletableFuture.completedFuture(Result.error("清除缓存失败: " + e.getMessage()));
         }
     }
     
     /**
      * 检查RAG服务健康状态
+     * 返回后台探测的最新结果，不会同步访问RAG后端
      * @return 健康状态
      */
     @GetMapping("/health")
     public Result<Map<String, Object>> checkRagHealth() {
         try {
-            boolean isHealthy = ragClientService.isRagServiceHealthy();
+            boolean isHealthy = ragHealthProber.isHealthy();
+            RagHealthProber.Snapshot snapshot = ragHealthProber.getSnapshot();
             
             Map<String, Object> status = Map.of(
                     "healthy", isHealthy,
+                    "status", snapshot.status().name(),
                     "message", isHealthy ? "RAG服务运行正常" : "RAG服务不可用",
+                    "lastCheckedAt", snapshot.lastCheckedAt(),
+                    "avgLatencyMs", snapshot.avgLatencyMs(),
+                    "p95LatencyMs", snapshot.p95LatencyMs(),
                     "timestamp", System.currentTimeMillis()
             );
             
@@ -0,0 +1,103 @@
+package com.itheima.controller;
+
+import com.itheima.dto.InitiateUploadRequest;
+import com.itheima.dto.UploadStatus;
+import com.itheima.pojo.File;
+import com.itheima.pojo.Result;
+import com.itheima.pojo.UploadSession;
+import com.itheima.service.UploadSessionService;
+import com.itheima.utils.ThreadLocalUtil;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * 分片上传控制器
+ * 流程：创建会话 → 并行 PUT 各分片（Content-Type: application/octet-stream）→ 查询缺失分片补传 → 完成
+ */
+@RestController
+@RequestMapping("/files/uploads")
+@RequiredArgsConstructor
+public class UploadController {
+    private final UploadSessionService uploadSessionService;
+
+    /**
+     * 获取当前登录用户ID
+     * @return 用户ID
+     * @throws IllegalArgumentException 如果用户未登录
+     */
+    private Long getCurrentUserId() {
+        Map<String, Object> userInfo = ThreadLocalUtil.get();
+        if (userInfo == null || userInfo.get("id") == null) {
+            throw new IllegalArgumentException("用户未登录");
+        }
+        return ((Integer) userInfo.get("id")).longValue();
+    }
+
+    /**
+     * 创建上传会话
+     * @param request 文件名、文件大小和目标文件夹
+     * @return 上传会话（上传ID、分片大小、分片数）
+     */
+    @PostMapping
+    public Result<UploadSession> initiate(@RequestBody InitiateUploadRequest request) throws IOException {
+        Long userId = getCurrentUserId();
+
+        return Result.success(uploadSessionService.initiate(userId, request.getFolderId(), request.getFileName(),
+                request.getFileSize()));
+    }
+
+    /**
+     * 上传一个分片，请求体为分片的原始字节
+     * @param uploadId 上传ID
+     * @param index 分片序号，从0开始
+     */
+    @PutMapping("/{uploadId}/chunks/{index}")
+    public Result<Void> uploadChunk(@PathVariable String uploadId, @PathVariable int index,
+                                    HttpServletRequest request) throws IOException {
+        Long userId = getCurrentUserId();
+
+        uploadSessionService.writeChunk(userId, uploadId, index, request.getInputStream(),
+                request.getContentLengthLong());
+        return Result.success();
+    }
+
+    /**
+     * 查询上传进度
+     * @param uploadId 上传ID
+     * @return 会话信息和缺失的分片序号
+     */
+    @GetMapping("/{uploadId}")
+    public Result<UploadStatus> getStatus(@PathVariable String uploadId) {
+        Long userId = getCurrentUserId();
+
+        return Result.success(uploadSessionService.getStatus(userId, uploadId));
+    }
+
+    /**
+     * 完成上传
+     * @param uploadId 上传ID
+     * @return 上传成功的文件信息
+     */
+    @PostMapping("/{uploadId}/complete")
+    public Result<File> complete(@PathVariable String uploadId) throws IOException {
+        Long userId = getCurrentUserId();
+
+        return Result.success(uploadSessionService.complete(userId, uploadId));
+    }
+
+    /**
+     * 取消上传
+     * @param uploadId 上传ID
+     */
+    @DeleteMapping("/{uploadId}")
+    public Result<Void> abort(@PathVariable String uploadId) {
+        Long userId = getCurrentUserId();
+
+        uploadSessionService.abort(userId, uploadId);
+        return Result.success();
+    }
+}
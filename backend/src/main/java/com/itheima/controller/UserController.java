@@ -2,6 +2,7 @@ package com.itheima.controller;
 
 import com.itheima.pojo.Result;
 import com.itheima.pojo.User;
+import com.itheima.service.TokenCache;
 import com.itheima.service.UserService;
 import com.itheima.utils.JwtUtil;
 import com.itheima.utils.Md5Util;
@@ -28,6 +29,8 @@ public class UserController {
     private UserService userService;
     @Autowired
     private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private TokenCache tokenCache;
 
     @PostMapping("/register")
     public Result register(@Pattern(regexp = "^\\S{5,16}$") String username, @Pattern(regexp = "^\\S{5,16}$") String password) {
@@ -128,9 +131,14 @@ public class UserController {
 
         //2.调用service完成密码更新
         userService.updatePwd(newPwd);
-        //删除redis中对应的token
-        ValueOperations<String, String> operations = stringRedisTemplate.opsForValue();
-        operations.getOperations().delete(token);
+        //删除redis中对应的token，并通知所有节点移除本地缓存
+        tokenCache.revoke(token);
+        return Result.success();
+    }
+
+    @PostMapping("/logout")
+    public Result logout(@RequestHeader("Authorization") String token) {
+        tokenCache.revoke(token);
         return Result.success();
     }
 
@@ -0,0 +1,19 @@
+package com.itheima.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 批量移动/删除文件请求DTO
+ */
+@Data
+public class BatchFileRequest {
+
+    private List<Long> fileIds;
+
+    /**
+     * 目标文件夹ID，仅批量移动时使用，0为根目录
+     */
+    private Long targetFolderId;
+}
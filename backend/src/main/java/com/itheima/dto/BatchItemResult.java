@@ -0,0 +1,37 @@
+package com.itheima.dto;
+
+import com.itheima.pojo.File;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * 批量操作中单个文件的结果
+ */
+@Data
+@AllArgsConstructor
+public class BatchItemResult {
+
+    private Long fileId;
+
+    private String fileName;
+
+    private boolean success;
+
+    /**
+     * 失败原因，成功时为null
+     */
+    private String message;
+
+    /**
+     * 操作后的文件信息，失败时为null
+     */
+    private File file;
+
+    public static BatchItemResult succeeded(File file) {
+        return new BatchItemResult(file.getId(), file.getFileName(), true, null, file);
+    }
+
+    public static BatchItemResult failed(Long fileId, String fileName, String message) {
+        return new BatchItemResult(fileId, fileName, false, message, null);
+    }
+}
@@ -0,0 +1,38 @@
+package com.itheima.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.nio.file.Path;
+
+/**
+ * 文件下载信息：一次查询得到的文件元数据和物理文件的大小、修改时间
+ */
+@Getter
+@AllArgsConstructor
+public class FileDownload {
+
+    private Long fileId;
+
+    private String fileName;
+
+    /**
+     * 物理存储路径
+     */
+    private Path path;
+
+    /**
+     * 文件大小（字节）
+     */
+    private long size;
+
+    /**
+     * 物理文件的最后修改时间（毫秒）
+     */
+    private long lastModified;
+
+    /**
+     * 内容指纹，作为强ETag使用（已带双引号）
+     */
+    private String etag;
+}
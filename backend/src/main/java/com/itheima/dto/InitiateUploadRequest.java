@@ -0,0 +1,19 @@
+package com.itheima.dto;
+
+import lombok.Data;
+
+/**
+ * 创建分片上传会话请求DTO
+ */
+@Data
+public class InitiateUploadRequest {
+
+    private String fileName;
+
+    /**
+     * 文件大小（字节）
+     */
+    private Long fileSize;
+
+    private Long folderId = 0L;
+}
@@ -0,0 +1,27 @@
+package com.itheima.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * 秒传预检结果
+ * 内容已存在时，客户端计算 [proofOffset, proofOffset + proofLength) 片段的SHA-256，随秒传请求一起提交
+ */
+@Data
+@AllArgsConstructor
+public class InstantUploadCheck {
+
+    private boolean exists;
+
+    private long proofOffset;
+
+    private int proofLength;
+
+    public static InstantUploadCheck missing() {
+        return new InstantUploadCheck(false, 0, 0);
+    }
+
+    public static InstantUploadCheck exists(long proofOffset, int proofLength) {
+        return new InstantUploadCheck(true, proofOffset, proofLength);
+    }
+}
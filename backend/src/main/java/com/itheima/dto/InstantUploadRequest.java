@@ -0,0 +1,26 @@
+package com.itheima.dto;
+
+import lombok.Data;
+
+/**
+ * 秒传请求DTO
+ */
+@Data
+public class InstantUploadRequest {
+
+    private String fileName;
+
+    private Long folderId = 0L;
+
+    /**
+     * 文件内容的SHA-256（十六进制）
+     */
+    private String contentHash;
+
+    private Long fileSize;
+
+    /**
+     * 预检返回的片段的SHA-256（十六进制），证明客户端确实持有文件内容
+     */
+    private String proof;
+}
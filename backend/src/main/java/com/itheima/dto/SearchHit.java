@@ -0,0 +1,31 @@
+package com.itheima.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 全文搜索的一条结果
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SearchHit {
+    private Long fileId;
+    private String fileName;
+    private Long folderId;
+    /**
+     * 相关度得分，结果按得分从高到低排列
+     */
+    private double score;
+    /**
+     * 内容中第一处匹配附近的文本；只有文件名匹配时为null
+     */
+    private String snippet;
+    /**
+     * 匹配所在的行号（从0开始），可直接用于按行读取文件内容
+     */
+    private Long line;
+}
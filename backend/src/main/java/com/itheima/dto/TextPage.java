@@ -0,0 +1,55 @@
+package com.itheima.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * 文本文件的一页内容
+ * 按字节读取时 offset/nextOffset 有效；按行读取时还会返回行号和总行数
+ */
+@Data
+@Builder
+public class TextPage {
+
+    private String content;
+
+    /**
+     * 本页在文件中的起始字节位置（已对齐到字符边界）
+     */
+    private long offset;
+
+    /**
+     * 下一页的起始字节位置
+     */
+    private long nextOffset;
+
+    /**
+     * 文件大小（字节）
+     */
+    private long fileSize;
+
+    /**
+     * 本页第一行的行号（从0开始），按字节读取时为空
+     */
+    private Long startLine;
+
+    /**
+     * 下一页的起始行号，按字节读取时为空
+     */
+    private Long nextLine;
+
+    /**
+     * 文件总行数，按字节读取时为空
+     */
+    private Long totalLines;
+
+    /**
+     * 单行超过每页上限时，只返回该行的前一部分
+     */
+    private boolean truncated;
+
+    /**
+     * 之后是否还有内容
+     */
+    private boolean hasMore;
+}
@@ -0,0 +1,19 @@
+package com.itheima.dto;
+
+import com.itheima.pojo.UploadSession;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 分片上传进度：会话信息和尚未上传的分片序号，断点续传时只需补传缺失的分片
+ */
+@Data
+@AllArgsConstructor
+public class UploadStatus {
+
+    private UploadSession session;
+
+    private List<Integer> missingChunks;
+}
@@ -0,0 +1,44 @@
+package com.itheima.exception;
+
+import java.io.IOException;
+
+/**
+ * HTTP响应状态码不是2xx
+ * <p>
+ * 4xx说明对方服务是正常的（接口不存在、参数错误），调用方据此区分客户端错误和服务不可用。
+ * </p>
+ */
+public class HttpStatusException extends IOException {
+
+    private final int statusCode;
+
+    public HttpStatusException(int statusCode) {
+        super("Unexpected response code: " + statusCode);
+        this.statusCode = statusCode;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * 是否为4xx客户端错误
+     */
+    public boolean isClientError() {
+        return statusCode >= 400 && statusCode < 500;
+    }
+
+    /**
+     * 在异常链中查找状态码异常
+     * @return 找不到时返回null
+     */
+    public static HttpStatusException find(Throwable error) {
+        while (error != null) {
+            if (error instanceof HttpStatusException statusException) {
+                return statusException;
+            }
+            error = error.getCause();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,15 @@
+package com.itheima.exception;
+
+/**
+ * RAG后端不可用：熔断器打开时快速失败，或重试次数用尽
+ */
+public class RagUnavailableException extends RuntimeException {
+
+    public RagUnavailableException(String message) {
+        super(message);
+    }
+
+    public RagUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
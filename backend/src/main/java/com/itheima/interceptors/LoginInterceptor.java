@@ -1,13 +1,13 @@
 package com.itheima.interceptors;
 
 import com.itheima.pojo.Result;
-import com.itheima.utils.JwtUtil;
+import com.itheima.service.TokenCache;
 import com.itheima.utils.ThreadLocalUtil;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.StringRedisTemplate;
-import org.springframework.data.redis.core.ValueOperations;
 import org.springframework.stereotype.Component;
 import org.springframework.web.servlet.HandlerInterceptor;
 
@@ -16,21 +16,33 @@ import java.util.Map;
 @Component
 public class LoginInterceptor implements HandlerInterceptor {
     @Autowired
-    private StringRedisTemplate stringRedisTemplate;
+    private TokenCache tokenCache;
+    @Autowired
+    private MeterRegistry meterRegistry;
     @Override
     public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        //令牌验证耗时（本地缓存命中，或Redis查询 + JWT校验），按结果记录到 auth.token.validation
+        Timer.Sample sample = Timer.start(meterRegistry);
+        boolean valid = false;
+        try {
+            valid = validateToken(request, response);
+            return valid;
+        } finally {
+            sample.stop(meterRegistry.timer("auth.token.validation", "outcome", valid ? "valid" : "rejected"));
+        }
+    }
+
+    private boolean validateToken(HttpServletRequest request, HttpServletResponse response) {
         //令牌验证
         String token = request.getHeader("Authorization");
         //验证token
         try {
-            //从redis中获取相同的token
-            ValueOperations<String, String> operations = stringRedisTemplate.opsForValue();
-            String redisToken = operations.get(token);
-            if (redisToken==null){
+            //先查本地缓存，未命中时查询redis并校验JWT
+            Map<String, Object> claims = tokenCache.verify(token);
+            if (claims==null){
                 //token已经失效了
                 throw new RuntimeException();
             }
-            Map<String, Object> claims = JwtUtil.parseToken(token);
 
             //把业务数据存储到ThreadLocal中
             ThreadLocalUtil.set(claims);
@@ -0,0 +1,69 @@
+package com.itheima.interceptors;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+import org.springframework.stereotype.Component;
+
+/**
+ * 统计SQL执行次数的MyBatis插件
+ * <p>
+ * 每条语句计入 db.queries（按 select/insert/update/delete 区分）；
+ * 在 {@link #beginRequest()} 和 {@link #endRequest()} 之间还会累计当前线程的执行次数，
+ * 由 RequestMetricsInterceptor 记录为每个请求的查询数。
+ * </p>
+ */
+@Component
+@RequiredArgsConstructor
+@Intercepts({
+        @Signature(type = Executor.class, method = "update",
+                args = {MappedStatement.class, Object.class}),
+        @Signature(type = Executor.class, method = "query",
+                args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class}),
+        @Signature(type = Executor.class, method = "query",
+                args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class,
+                        CacheKey.class, BoundSql.class})
+})
+public class QueryCountInterceptor implements Interceptor {
+
+    private static final ThreadLocal<int[]> REQUEST_COUNT = new ThreadLocal<>();
+
+    private final MeterRegistry meterRegistry;
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        MappedStatement statement = (MappedStatement) invocation.getArgs()[0];
+        meterRegistry.counter("db.queries", "type", statement.getSqlCommandType().name().toLowerCase())
+                .increment();
+        int[] count = REQUEST_COUNT.get();
+        if (count != null) {
+            count[0]++;
+        }
+        return invocation.proceed();
+    }
+
+    /**
+     * 开始累计当前线程的SQL执行次数
+     */
+    public static void beginRequest() {
+        REQUEST_COUNT.set(new int[1]);
+    }
+
+    /**
+     * 结束累计并返回次数，未开始时返回-1
+     */
+    public static int endRequest() {
+        int[] count = REQUEST_COUNT.get();
+        REQUEST_COUNT.remove();
+        return count != null ? count[0] : -1;
+    }
+}
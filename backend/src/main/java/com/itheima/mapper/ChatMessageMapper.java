@@ -5,6 +5,7 @@ import com.baomidou.mybatisplus.core.metadata.IPage;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.itheima.pojo.ChatMessage;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.Select;
 
 import java.util.List;
@@ -16,4 +17,21 @@ public interface ChatMessageMapper extends BaseMapper<ChatMessage> {
 
     @Select("SELECT * FROM chat_message WHERE session_id = #{sessionId} ORDER BY create_time")
     IPage<ChatMessage> selectPageBySessionId(Page<ChatMessage> page, Long sessionId);
+
+    /**
+     * 查询会话最近的若干条消息（按时间倒序），走 (session_id, create_time) 索引
+     * 只取构建对话历史需要的列：用户消息取content，助手消息取answer
+     */
+    @Select("SELECT id, session_id, role, create_time, answer, " +
+            "CASE WHEN role = 'assistant' THEN NULL ELSE content END AS content " +
+            "FROM chat_message WHERE session_id = #{sessionId} ORDER BY create_time DESC, id DESC LIMIT #{limit}")
+    List<ChatMessage> selectRecentBySessionId(@Param("sessionId") Long sessionId, @Param("limit") int limit);
+
+    /**
+     * 查询会话的消息列表，助手消息不读取完整的RAG响应
+     */
+    @Select("SELECT id, session_id, user_id, role, request_id, create_time, answer, sources, " +
+            "CASE WHEN role = 'assistant' THEN NULL ELSE content END AS content " +
+            "FROM chat_message WHERE session_id = #{sessionId} ORDER BY create_time, id")
+    List<ChatMessage> selectListingBySessionId(Long sessionId);
 }
\ No newline at end of file
@@ -0,0 +1,68 @@
+package com.itheima.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.itheima.pojo.FileBlob;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Mapper
+public interface FileBlobMapper extends BaseMapper<FileBlob> {
+    /**
+     * 增加一个引用，内容第一次出现时创建记录
+     */
+    @Insert("INSERT INTO file_blob (content_hash, size, ref_count, create_time, update_time) " +
+            "VALUES (#{hash}, #{size}, 1, NOW(), NOW()) " +
+            "ON DUPLICATE KEY UPDATE ref_count = ref_count + 1, update_time = NOW()")
+    int acquire(@Param("hash") String hash, @Param("size") long size);
+
+    /**
+     * 减少一个引用
+     */
+    @Update("UPDATE file_blob SET ref_count = ref_count - 1, update_time = NOW() " +
+            "WHERE content_hash = #{hash} AND ref_count > 0")
+    int release(@Param("hash") String hash);
+
+    /**
+     * 减少多个引用（批量删除时同一内容被多个文件引用）
+     */
+    @Update("UPDATE file_blob SET ref_count = GREATEST(ref_count - #{count}, 0), update_time = NOW() " +
+            "WHERE content_hash = #{hash}")
+    int releaseMany(@Param("hash") String hash, @Param("count") int count);
+
+    /**
+     * 宽限期之前最后一次变化、且不再被任何 file 记录引用的内容，按哈希顺序从 afterHash 之后取
+     * 以 file 表为准而不是 ref_count，计数因异常不准时也能回收
+     */
+    @Select("SELECT b.content_hash FROM file_blob b WHERE b.update_time < #{cutoff} AND b.content_hash > #{afterHash} " +
+            "AND NOT EXISTS (SELECT 1 FROM file f WHERE f.content_hash = b.content_hash) " +
+            "ORDER BY b.content_hash LIMIT #{limit}")
+    List<String> selectUnreferenced(@Param("cutoff") LocalDateTime cutoff, @Param("afterHash") String afterHash,
+                                    @Param("limit") int limit);
+
+    /**
+     * 锁住内容记录，回收期间并发的上传在登记引用时等待
+     */
+    @Select("SELECT * FROM file_blob WHERE content_hash = #{hash} FOR UPDATE")
+    FileBlob selectForUpdate(@Param("hash") String hash);
+
+    /**
+     * 引用该内容的文件数
+     */
+    @Select("SELECT COUNT(*) FROM file WHERE content_hash = #{hash}")
+    int countReferences(@Param("hash") String hash);
+
+    /**
+     * 给定哈希中已有记录的哈希，用于找出磁盘上没有记录的内容文件
+     */
+    @Select("<script>" +
+            "SELECT content_hash FROM file_blob WHERE content_hash IN " +
+            "<foreach collection='hashes' item='hash' open='(' separator=',' close=')'>#{hash}</foreach>" +
+            "</script>")
+    List<String> selectExistingHashes(@Param("hashes") List<String> hashes);
+}
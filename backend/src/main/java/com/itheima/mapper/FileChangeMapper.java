@@ -0,0 +1,45 @@
+package com.itheima.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.itheima.pojo.FileChange;
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+
+import java.util.List;
+
+@Mapper
+public interface FileChangeMapper extends BaseMapper<FileChange> {
+    /**
+     * 一条语句写入多条变更（批量操作）
+     */
+    @Insert("<script>" +
+            "INSERT INTO file_change_journal (user_id, file_id, change_type, file_path, content_hash, file_name, " +
+            "folder_id, previous_file_name, previous_folder_id, create_time) VALUES " +
+            "<foreach collection='changes' item='c' separator=','>" +
+            "(#{c.userId}, #{c.fileId}, #{c.changeType}, #{c.filePath}, #{c.contentHash}, #{c.fileName}, " +
+            "#{c.folderId}, #{c.previousFileName}, #{c.previousFolderId}, #{c.createTime})" +
+            "</foreach>" +
+            "</script>")
+    int insertBatch(@Param("changes") List<FileChange> changes);
+
+    /**
+     * 按写入顺序取出用户尚未同步的变更
+     */
+    @Select("SELECT * FROM file_change_journal WHERE user_id = #{userId} ORDER BY id LIMIT #{limit}")
+    List<FileChange> selectPending(@Param("userId") Long userId, @Param("limit") int limit);
+
+    /**
+     * 用户最新一条变更的ID，没有变更时返回null
+     */
+    @Select("SELECT MAX(id) FROM file_change_journal WHERE user_id = #{userId}")
+    Long selectLatestId(@Param("userId") Long userId);
+
+    /**
+     * 删除已同步到RAG后端的变更
+     */
+    @Delete("DELETE FROM file_change_journal WHERE user_id = #{userId} AND id <= #{upToId}")
+    int deleteSynced(@Param("userId") Long userId, @Param("upToId") Long upToId);
+}
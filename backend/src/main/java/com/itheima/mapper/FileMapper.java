@@ -4,8 +4,11 @@ import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.itheima.pojo.File;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
 
 import java.util.List;
+import java.util.Map;
 
 @Mapper
 public interface FileMapper extends BaseMapper<File> {
@@ -13,4 +16,41 @@ public interface FileMapper extends BaseMapper<File> {
         return selectList(new LambdaQueryWrapper<File>()
                 .eq(File::getFolderId, folderId));
     }
-}
\ No newline at end of file
+
+    /**
+     * 文件夹子树（路径以 path 为前缀的文件夹）中的全部文件
+     */
+    @Select("SELECT f.* FROM file f JOIN folder d ON f.folder_id = d.id " +
+            "WHERE d.user_id = #{userId} AND d.path LIKE CONCAT(#{path}, '%') AND f.user_id = #{userId}")
+    List<File> selectUnderFolderPath(@Param("userId") Long userId, @Param("path") String path);
+
+    /**
+     * 锁住这些文件夹中的全部文件，删除文件夹时按选出的ID删除，与并发的移动、重命名串行执行
+     */
+    @Select("<script>" +
+            "SELECT * FROM file WHERE user_id = #{userId} AND folder_id IN " +
+            "<foreach collection='folderIds' item='folderId' open='(' separator=',' close=')'>#{folderId}</foreach>" +
+            " FOR UPDATE" +
+            "</script>")
+    List<File> selectInFoldersForUpdate(@Param("userId") Long userId, @Param("folderIds") List<Long> folderIds);
+
+    /**
+     * 用户全部文件的索引所需字段，用于全文索引与数据库对账
+     */
+    default List<File> selectSearchIndexRows(Long userId) {
+        return selectList(new LambdaQueryWrapper<File>()
+                .select(File::getId, File::getFolderId, File::getFileName, File::getFilePath)
+                .eq(File::getUserId, userId));
+    }
+
+    /**
+     * 一次查询取出用户全部文件和文件夹的路径信息，用于构建路径索引
+     * kind 为 file 或 folder；parentId 对文件是所在文件夹，对文件夹是父文件夹
+     */
+    @Select("SELECT 'file' AS kind, id, folder_id AS parentId, file_name AS name, file_path AS filePath " +
+            "FROM file WHERE user_id = #{userId} " +
+            "UNION ALL " +
+            "SELECT 'folder' AS kind, id, parent_id AS parentId, folder_name AS name, NULL AS filePath " +
+            "FROM folder WHERE user_id = #{userId}")
+    List<Map<String, Object>> selectPathIndexRows(@Param("userId") Long userId);
+}
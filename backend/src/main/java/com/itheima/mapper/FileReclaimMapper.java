@@ -0,0 +1,28 @@
+package com.itheima.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.itheima.pojo.FileReclaim;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+
+import java.util.List;
+
+@Mapper
+public interface FileReclaimMapper extends BaseMapper<FileReclaim> {
+    /**
+     * 一条语句写入多条待删除路径
+     */
+    @Insert("<script>" +
+            "INSERT INTO file_reclaim_queue (file_path, create_time) VALUES " +
+            "<foreach collection='paths' item='path' separator=','>(#{path}, NOW())</foreach>" +
+            "</script>")
+    int insertBatch(@Param("paths") List<String> paths);
+
+    /**
+     * 按写入顺序取出ID大于 afterId 的待删除路径
+     */
+    @Select("SELECT * FROM file_reclaim_queue WHERE id > #{afterId} ORDER BY id LIMIT #{limit}")
+    List<FileReclaim> selectAfter(@Param("afterId") long afterId, @Param("limit") int limit);
+}
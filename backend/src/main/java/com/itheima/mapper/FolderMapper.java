@@ -9,14 +9,34 @@ import java.util.List;
 
 @Mapper
 public interface FolderMapper extends BaseMapper<Folder> {
-    @Select("SELECT * FROM folder WHERE user_id = #{userId}")
-    @Results({
-            @Result(property = "id", column = "id"),
-            @Result(property = "children", column = "id",
-                    many = @Many(select = "findByParentId"))
-    })
-    List<Folder> selectFolderTree(Long userId);
-
-    @Select("SELECT * FROM folder WHERE parent_id = #{parentId}")
-    List<Folder> findByParentId(Long parentId);
-}
\ No newline at end of file
+    /**
+     * 一次查询取出用户的全部文件夹，由调用方在内存中组装成树
+     */
+    @Select("SELECT * FROM folder WHERE user_id = #{userId} ORDER BY id")
+    List<Folder> selectAllByUserId(Long userId);
+
+    /**
+     * 锁住文件夹记录并读取最新的路径，移动文件夹时防止并发移动形成环
+     */
+    @Select("SELECT * FROM folder WHERE id = #{id} FOR UPDATE")
+    Folder selectForUpdate(@Param("id") Long id);
+
+    /**
+     * 子树中全部文件夹的ID（含自身），按路径前缀走索引
+     */
+    @Select("SELECT id FROM folder WHERE user_id = #{userId} AND path LIKE CONCAT(#{path}, '%')")
+    List<Long> selectSubtreeIds(@Param("userId") Long userId, @Param("path") String path);
+
+    /**
+     * 移动子树：把子树中所有文件夹路径的前缀 oldPath 替换为 newPath
+     */
+    @Update("UPDATE folder SET path = CONCAT(#{newPath}, SUBSTRING(path, CHAR_LENGTH(#{oldPath}) + 1)), " +
+            "update_time = NOW() WHERE user_id = #{userId} AND path LIKE CONCAT(#{oldPath}, '%')")
+    int moveSubtree(@Param("userId") Long userId, @Param("oldPath") String oldPath, @Param("newPath") String newPath);
+
+    /**
+     * 锁住子树中的全部文件夹（含自身）并返回ID，删除子树期间并发的移动和创建子文件夹在行锁上等待
+     */
+    @Select("SELECT id FROM folder WHERE user_id = #{userId} AND path LIKE CONCAT(#{path}, '%') FOR UPDATE")
+    List<Long> selectSubtreeIdsForUpdate(@Param("userId") Long userId, @Param("path") String path);
+}
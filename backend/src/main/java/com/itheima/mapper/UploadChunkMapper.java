@@ -0,0 +1,27 @@
+package com.itheima.mapper;
+
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+
+import java.util.List;
+
+@Mapper
+public interface UploadChunkMapper {
+    /**
+     * 记录已写入的分片，重复上传时忽略
+     */
+    @Insert("INSERT IGNORE INTO upload_chunk (upload_id, chunk_index) VALUES (#{uploadId}, #{chunkIndex})")
+    int insertIgnore(@Param("uploadId") String uploadId, @Param("chunkIndex") int chunkIndex);
+
+    @Select("SELECT chunk_index FROM upload_chunk WHERE upload_id = #{uploadId} ORDER BY chunk_index")
+    List<Integer> selectChunkIndexes(@Param("uploadId") String uploadId);
+
+    @Select("SELECT COUNT(*) FROM upload_chunk WHERE upload_id = #{uploadId}")
+    int countChunks(@Param("uploadId") String uploadId);
+
+    @Delete("DELETE FROM upload_chunk WHERE upload_id = #{uploadId}")
+    int deleteByUploadId(@Param("uploadId") String uploadId);
+}
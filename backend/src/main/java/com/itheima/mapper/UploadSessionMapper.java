@@ -0,0 +1,44 @@
+package com.itheima.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.itheima.pojo.UploadSession;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Mapper
+public interface UploadSessionMapper extends BaseMapper<UploadSession> {
+    /**
+     * 已过期的会话
+     */
+    @Select("SELECT * FROM upload_session WHERE expire_time < #{now} LIMIT #{limit}")
+    List<UploadSession> selectExpired(@Param("now") LocalDateTime now, @Param("limit") int limit);
+
+    /**
+     * 加共享锁读取会话：把分片复制到临时文件时持有，多个分片可以并行写入，完成和取消要等它们结束
+     */
+    @Select("SELECT * FROM upload_session WHERE id = #{id} LOCK IN SHARE MODE")
+    UploadSession selectForShare(@Param("id") String id);
+
+    /**
+     * 加排他锁读取会话：标记完成、登记文件和取消时持有，等待进行中的分片写入结束
+     */
+    @Select("SELECT * FROM upload_session WHERE id = #{id} FOR UPDATE")
+    UploadSession selectForUpdate(@Param("id") String id);
+
+    /**
+     * 标记会话正在完成：之后的分片写入会被拒绝，临时文件的内容不再变化
+     */
+    @Update("UPDATE upload_session SET completing = 1 WHERE id = #{id}")
+    int markCompleting(@Param("id") String id);
+
+    /**
+     * 加锁读取用户所有未完成的会话，同一用户并发创建会话时在这里排队，上限检查不会被并发绕过
+     */
+    @Select("SELECT * FROM upload_session WHERE user_id = #{userId} FOR UPDATE")
+    List<UploadSession> selectOpenByUserForUpdate(@Param("userId") Long userId);
+}
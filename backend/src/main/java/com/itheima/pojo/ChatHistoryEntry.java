@@ -0,0 +1,18 @@
+package com.itheima.pojo;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 最近对话缓存中的一条消息
+ * 助手消息只保存提取后的答案文本，不保存完整的RAG响应
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChatHistoryEntry {
+    private String role; // "user" 或 "assistant"
+    private String content;
+    private String timestamp;
+}
@@ -4,6 +4,7 @@ import com.baomidou.mybatisplus.annotation.IdType;
 import com.baomidou.mybatisplus.annotation.TableField;
 import com.baomidou.mybatisplus.annotation.TableId;
 import com.baomidou.mybatisplus.annotation.TableName;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Data;
 
 import java.time.LocalDateTime;
@@ -17,5 +18,10 @@ public class ChatMessage {
     private Long userId;
     private String content;
     private String role; // "user" 或 "assistant"
+    private String requestId; // 客户端请求ID，用于幂等
+    @JsonIgnore
+    private String answer; // 助手消息的答案文本
+    @JsonIgnore
+    private String sources; // 助手消息的来源列表（JSON数组）
     private LocalDateTime createTime;
 }
\ No newline at end of file
@@ -22,4 +22,9 @@ public class ChatMessageRequest {
      * 指定的文件夹ID列表（可选）
      */
     private List<Long> folderIds;
+
+    /**
+     * 客户端生成的请求ID（可选），重复提交时不会重复调用AI
+     */
+    private String requestId;
 } 
\ No newline at end of file
@@ -20,6 +20,11 @@ public class File {
     private String fileName;
     @JsonIgnore
     private String filePath;
+    /**
+     * 内容SHA-256，相同内容的文件共享同一份存储；历史文件为空
+     */
+    private String contentHash;
+    private Long fileSize;
     @JsonIgnore
     private String fileType;
 
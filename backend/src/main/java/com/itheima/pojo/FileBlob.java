@@ -0,0 +1,34 @@
+package com.itheima.pojo;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * 内容寻址存储中的一份文件内容
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@TableName("file_blob")
+public class FileBlob {
+    @TableId(type = IdType.INPUT)
+    private String contentHash;
+    private Long size;
+    /**
+     * 引用该内容的文件数
+     */
+    private Integer refCount;
+    private LocalDateTime createTime;
+    /**
+     * 最近一次引用数变化的时间，回收前的宽限期从这里开始计算
+     */
+    private LocalDateTime updateTime;
+}
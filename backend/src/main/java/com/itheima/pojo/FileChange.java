@@ -0,0 +1,63 @@
+package com.itheima.pojo;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * 文件变更日志
+ * 文件的增删改与业务数据在同一事务中写入，由重建协调器按顺序发送给RAG后端做增量更新
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@TableName("file_change_journal")
+public class FileChange {
+    @TableId(type = IdType.AUTO)
+    private Long id;
+    private Long userId;
+    private Long fileId;
+    private FileChangeType changeType;
+    private String filePath;
+    private String contentHash;
+    private String fileName;
+    private Long folderId;
+    private String previousFileName;
+    private Long previousFolderId;
+    private LocalDateTime createTime;
+
+    public static FileChange added(File file) {
+        return of(FileChangeType.ADDED, file).build();
+    }
+
+    public static FileChange removed(File file) {
+        return of(FileChangeType.REMOVED, file).build();
+    }
+
+    public static FileChange renamed(File file, String previousFileName) {
+        return of(FileChangeType.RENAMED, file).previousFileName(previousFileName).build();
+    }
+
+    public static FileChange moved(File file, Long previousFolderId) {
+        return of(FileChangeType.MOVED, file).previousFolderId(previousFolderId).build();
+    }
+
+    private static FileChangeBuilder of(FileChangeType type, File file) {
+        return FileChange.builder()
+                .userId(file.getUserId())
+                .fileId(file.getId())
+                .changeType(type)
+                .filePath(file.getFilePath())
+                .contentHash(file.getContentHash())
+                .fileName(file.getFileName())
+                .folderId(file.getFolderId())
+                .createTime(LocalDateTime.now());
+    }
+}
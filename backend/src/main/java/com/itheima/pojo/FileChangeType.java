@@ -0,0 +1,15 @@
+package com.itheima.pojo;
+
+/**
+ * 文件变更类型
+ */
+public enum FileChangeType {
+    /** 新增文件，需要向量化 */
+    ADDED,
+    /** 删除文件，需要移除对应的向量 */
+    REMOVED,
+    /** 重命名，只更新元数据 */
+    RENAMED,
+    /** 移动到其他文件夹，只更新元数据 */
+    MOVED
+}
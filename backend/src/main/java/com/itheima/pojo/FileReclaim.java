@@ -0,0 +1,27 @@
+package com.itheima.pojo;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * 待删除的物理文件
+ * 与文件记录的删除在同一事务中写入，事务回滚时不会删除仍被引用的文件
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@TableName("file_reclaim_queue")
+public class FileReclaim {
+    @TableId(type = IdType.AUTO)
+    private Long id;
+    private String filePath;
+    private LocalDateTime createTime;
+}
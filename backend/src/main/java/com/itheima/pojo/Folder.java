@@ -19,6 +19,10 @@ public class Folder {
     private Long parentId;
     private Long userId;
     private String folderName;
+    /**
+     * 物化路径：从根到该文件夹（含自身）的ID序列，如 /3/17/42/，子树即 path 以此为前缀的文件夹
+     */
+    private String path;
 
     @TableField(fill = FieldFill.INSERT)
     private LocalDateTime createTime;
@@ -0,0 +1,54 @@
+package com.itheima.pojo;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * 分片上传会话
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@TableName("upload_session")
+public class UploadSession {
+    @TableId(type = IdType.INPUT)
+    private String id;
+    @JsonIgnore
+    private Long userId;
+    private Long folderId;
+    private String fileName;
+    private Long fileSize;
+    private Integer chunkSize;
+    private Integer chunkCount;
+    @JsonIgnore
+    private String tempPath;
+    /**
+     * 是否正在完成：标记后不再接受分片写入
+     */
+    private Boolean completing;
+    private LocalDateTime createTime;
+    private LocalDateTime expireTime;
+
+    /**
+     * 指定分片的字节数，最后一个分片是剩余部分
+     */
+    public long chunkLength(int index) {
+        return Math.min((long) chunkSize, fileSize - chunkOffset(index));
+    }
+
+    /**
+     * 指定分片在文件中的起始位置
+     */
+    public long chunkOffset(int index) {
+        return (long) index * chunkSize;
+    }
+}
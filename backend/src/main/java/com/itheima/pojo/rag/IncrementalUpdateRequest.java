@@ -0,0 +1,73 @@
+package com.itheima.pojo.rag;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 增量更新向量存储的请求
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class IncrementalUpdateRequest {
+
+    /**
+     * 文档路径，对应用户ID
+     */
+    @JsonProperty("document_path")
+    private String documentPath;
+
+    /**
+     * 按发生顺序排列的文件变更
+     */
+    private List<Change> changes;
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Change {
+        /**
+         * 变更类型：added（向量化）、removed（删除向量）、renamed/moved（只更新元数据）
+         */
+        private String type;
+
+        @JsonProperty("file_id")
+        private Long fileId;
+
+        /**
+         * 相对于文件存储根目录的路径，与RAG返回的source一致
+         */
+        private String source;
+
+        /**
+         * 内容SHA-256，相同哈希的内容可以复用已有向量，不必重新向量化；历史文件为空
+         */
+        @JsonProperty("content_hash")
+        private String contentHash;
+
+        @JsonProperty("file_name")
+        private String fileName;
+
+        @JsonProperty("folder_id")
+        private Long folderId;
+
+        /**
+         * 重命名前的文件名，只有renamed变更有值
+         */
+        @JsonProperty("previous_file_name")
+        private String previousFileName;
+
+        /**
+         * 移动前的文件夹ID，只有moved变更有值
+         */
+        @JsonProperty("previous_folder_id")
+        private Long previousFolderId;
+    }
+}
@@ -0,0 +1,85 @@
+package com.itheima.pojo.rag;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * RAG /chat 接口的响应，以及 /chat/stream 中的单条事件
+ * <p>
+ * 只声明后端实际用到的字段，updated_history 等其他字段在流式解析时直接跳过，不会被构建成对象。
+ * 旧版RAG后端只返回 response 字段，通过 {@link #getAnswerText()} 统一读取。
+ * </p>
+ */
+@Data
+@NoArgsConstructor
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class RagChatResponse {
+
+    /**
+     * 流式事件类型：token 表示一个回答片段，done 表示最终结果；非流式响应为空
+     */
+    private String type;
+
+    /**
+     * token 事件的回答片段
+     */
+    private String content;
+
+    private String answer;
+
+    private String response;
+
+    private List<Source> sources = new ArrayList<>();
+
+    /**
+     * 是否为RAG调用失败时生成的降级提示，不来自RAG响应
+     */
+    @JsonIgnore
+    private boolean fallback;
+
+    /**
+     * 生成只有答案、没有来源的降级提示（RAG调用失败或响应无效时使用）
+     */
+    public static RagChatResponse fallback(String answer) {
+        RagChatResponse chatResponse = new RagChatResponse();
+        chatResponse.setAnswer(answer);
+        chatResponse.setFallback(true);
+        return chatResponse;
+    }
+
+    /**
+     * 是否包含答案（answer 或兼容的 response 字段）
+     */
+    public boolean hasAnswer() {
+        return answer != null || response != null;
+    }
+
+    /**
+     * 答案文本，优先 answer，其次 response
+     */
+    public String getAnswerText() {
+        return answer != null ? answer : response;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Source {
+        /**
+         * 命中片段的内容预览
+         */
+        private String content;
+
+        /**
+         * 来源文件路径：RAG返回相对存储根目录的路径，处理后替换为逻辑路径
+         */
+        private String source;
+    }
+}
@@ -0,0 +1,348 @@
+package com.itheima.service;
+
+import com.itheima.mapper.FileBlobMapper;
+import com.itheima.pojo.File;
+import com.itheima.pojo.FileBlob;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * 内容寻址存储
+ * <p>
+ * 文件内容按SHA-256只保存一份，位于存储根目录下的 blobs/哈希前两位/哈希第3-4位/哈希，
+ * 用户目录（user_{id}/日期/UUID_文件名）下的文件是指向它的硬链接：RAG后端和下载仍按原来的路径访问，
+ * 相同内容在磁盘上只占一份空间。文件系统不支持硬链接时退化为复制。
+ * 引用计数记录在 file_blob 表，随 file 记录的增删在同一事务中更新；
+ * 不再被引用的内容经过宽限期后由 {@link StorageReclaimer} 在后台回收，删除文件的请求不等待磁盘IO。
+ * </p>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class BlobStore {
+
+    private static final String BLOB_DIR = "blobs";
+    private static final String TEMP_DIR = ".uploads";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * 秒传时校验的内容片段长度
+     */
+    private static final int PROOF_LENGTH = 64 * 1024;
+
+    private final FileBlobMapper fileBlobMapper;
+
+    @Value("${file.storage.root}")
+    private String storageRoot;
+
+    /**
+     * 写入存储前的内容：临时文件及其哈希和大小
+     */
+    public record StagedContent(Path tempFile, String hash, long size) {
+    }
+
+    /**
+     * 把上传内容写入临时文件，写入的同时计算SHA-256
+     */
+    public StagedContent stage(InputStream in) throws IOException {
+        Path tempFile = tempDir().resolve(UUID.randomUUID() + ".tmp");
+        MessageDigest digest = sha256();
+        long size = 0;
+        try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+                ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, read);
+                while (byteBuffer.hasRemaining()) {
+                    channel.write(byteBuffer);
+                }
+                size += read;
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+        return new StagedContent(tempFile, HexFormat.of().formatHex(digest.digest()), size);
+    }
+
+    /**
+     * 计算已写入完成的文件（如分片上传的临时文件）的SHA-256
+     */
+    public StagedContent stage(Path file) throws IOException {
+        MessageDigest digest = sha256();
+        long size = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                size += buffer.remaining();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return new StagedContent(file, HexFormat.of().formatHex(digest.digest()), size);
+    }
+
+    /**
+     * 在当前事务中登记内容并在目标路径创建文件
+     * <p>
+     * 内容已存在时直接链接，不再保存第二份。事务提交后删除临时文件；
+     * 回滚时删除目标路径，临时文件按 keepTempOnRollback 决定是否保留（分片上传回滚后可以重新完成）。
+     * </p>
+     * @param content 暂存的内容
+     * @param target 用户目录下的目标路径
+     * @param keepTempOnRollback 事务回滚时是否保留临时文件
+     */
+    public void commit(StagedContent content, Path target, boolean keepTempOnRollback) throws IOException {
+        // 先登记引用：持有记录的行锁，并发的删除在本事务提交前不会删掉内容文件
+        fileBlobMapper.acquire(content.hash(), content.size());
+        Path blob = blobPath(content.hash());
+        try {
+            link(target, blob);
+        } catch (NoSuchFileException e) {
+            // 内容第一次出现，或内容文件刚被回收（最后一个引用刚好被删掉），用本次上传的内容放回
+            Files.createDirectories(blob.getParent());
+            try {
+                link(blob, content.tempFile());
+            } catch (FileAlreadyExistsException ignored) {
+                // 并发上传了相同内容
+            }
+            link(target, blob);
+        }
+        afterCompletion(committed -> {
+            if (!committed) {
+                deleteQuietly(target);
+            }
+            if (committed || !keepTempOnRollback) {
+                deleteQuietly(content.tempFile());
+            }
+        });
+    }
+
+    /**
+     * 秒传：服务器已有该内容时，直接在目标路径链接已有内容
+     * @return 内容不存在时返回false
+     */
+    public boolean linkExisting(String hash, long size, Path target) throws IOException {
+        if (!contains(hash, size)) {
+            return false;
+        }
+        fileBlobMapper.acquire(hash, size);
+        try {
+            link(target, blobPath(hash));
+        } catch (NoSuchFileException e) {
+            // 内容文件在检查之后被回收，撤销刚登记的引用
+            fileBlobMapper.release(hash);
+            return false;
+        }
+        afterCompletion(committed -> {
+            if (!committed) {
+                deleteQuietly(target);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * 服务器上是否已有该内容
+     */
+    public boolean contains(String hash, long size) {
+        if (!isValidHash(hash)) {
+            return false;
+        }
+        FileBlob blob = fileBlobMapper.selectById(hash);
+        return blob != null && blob.getRefCount() > 0 && blob.getSize() == size && Files.exists(blobPath(hash));
+    }
+
+    /**
+     * 在当前事务中减少一个引用
+     */
+    public void release(String hash) {
+        release(hash, 1);
+    }
+
+    /**
+     * 在当前事务中减少 count 个引用，不再被引用的内容由后台回收
+     */
+    public void release(String hash, int count) {
+        if (hash == null || count <= 0) {
+            return;
+        }
+        if (count == 1) {
+            fileBlobMapper.release(hash);
+        } else {
+            fileBlobMapper.releaseMany(hash, count);
+        }
+    }
+
+    /**
+     * 在当前事务中释放被删除文件对内容的引用，同一内容只更新一次
+     */
+    public void releaseAll(List<File> files) {
+        files.stream()
+                .filter(file -> file.getContentHash() != null)
+                .collect(Collectors.groupingBy(File::getContentHash, Collectors.counting()))
+                .forEach((hash, count) -> release(hash, count.intValue()));
+    }
+
+    /**
+     * 回收一份不再被引用的内容
+     * <p>
+     * 持有记录的行锁重新确认：最后一次变化早于 cutoff 且没有 file 记录引用。
+     * 先删除内容文件再删除记录，并发上传相同内容时会等待行锁，之后发现内容文件不存在，用本次上传的内容重新放回。
+     * </p>
+     * @return 释放的字节数，内容仍被引用或仍在宽限期内时返回-1
+     */
+    @Transactional
+    public long reclaim(String hash, LocalDateTime cutoff) throws IOException {
+        FileBlob blob = fileBlobMapper.selectForUpdate(hash);
+        if (blob == null || blob.getUpdateTime() == null || !blob.getUpdateTime().isBefore(cutoff)
+                || fileBlobMapper.countReferences(hash) > 0) {
+            return -1;
+        }
+        Files.deleteIfExists(blobPath(hash));
+        fileBlobMapper.deleteById(hash);
+        return blob.getSize();
+    }
+
+    /**
+     * 秒传校验片段的起始位置
+     * <p>
+     * 只知道哈希不能证明拥有内容，秒传前要求客户端提交内容中一个片段的SHA-256。
+     * 片段位置由用户ID和内容哈希决定，客户端无法自选；文件不超过片段长度时校验整个文件。
+     * </p>
+     */
+    public long proofOffset(Long userId, String hash, long size) {
+        long range = size - proofLength(size);
+        if (range <= 0) {
+            return 0;
+        }
+        byte[] seed = sha256().digest((userId + ":" + hash).getBytes(StandardCharsets.UTF_8));
+        long value = ByteBuffer.wrap(seed).getLong() & Long.MAX_VALUE;
+        return value % (range + 1);
+    }
+
+    public int proofLength(long size) {
+        return (int) Math.min(size, PROOF_LENGTH);
+    }
+
+    /**
+     * 校验客户端提交的片段哈希
+     */
+    public boolean verifyProof(Long userId, String hash, long size, String proof) throws IOException {
+        if (proof == null) {
+            return false;
+        }
+        long offset = proofOffset(userId, hash, size);
+        ByteBuffer buffer = ByteBuffer.allocate(proofLength(size));
+        try (FileChannel channel = FileChannel.open(blobPath(hash), StandardOpenOption.READ)) {
+            while (buffer.hasRemaining() && channel.read(buffer, offset + buffer.position()) != -1) {
+                // 读满片段
+            }
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+        buffer.flip();
+        MessageDigest digest = sha256();
+        digest.update(buffer);
+        return HexFormat.of().formatHex(digest.digest()).equalsIgnoreCase(proof);
+    }
+
+    public Path blobPath(String hash) {
+        return blobRoot().resolve(hash.substring(0, 2)).resolve(hash.substring(2, 4)).resolve(hash);
+    }
+
+    /**
+     * 内容文件的根目录
+     */
+    public Path blobRoot() {
+        return Paths.get(storageRoot, BLOB_DIR);
+    }
+
+    /**
+     * 暂存临时文件的目录
+     */
+    public Path tempRoot() {
+        return Paths.get(storageRoot, TEMP_DIR);
+    }
+
+    public static boolean isValidHash(String hash) {
+        return hash != null && hash.matches("[0-9a-fA-F]{64}");
+    }
+
+    private Path tempDir() throws IOException {
+        Path dir = tempRoot();
+        Files.createDirectories(dir);
+        return dir;
+    }
+
+    /**
+     * 创建硬链接，文件系统不支持时复制
+     */
+    private void link(Path link, Path existing) throws IOException {
+        try {
+            Files.createLink(link, existing);
+        } catch (FileAlreadyExistsException | NoSuchFileException e) {
+            throw e;
+        } catch (UnsupportedOperationException | FileSystemException e) {
+            log.warn("无法创建硬链接，改为复制（不会节省磁盘空间）: {} -> {}, 原因: {}", link, existing, e.getMessage());
+            Files.copy(existing, link);
+        }
+    }
+
+    private void afterCompletion(Consumer<Boolean> callback) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            callback.accept(true);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                callback.accept(status == STATUS_COMMITTED);
+            }
+        });
+    }
+
+    private void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("文件删除失败: {}", path, e);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
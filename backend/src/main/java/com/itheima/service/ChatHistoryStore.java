@@ -0,0 +1,216 @@
+package com.itheima.service;
+
+import com.alibaba.fastjson.JSON;
+import com.itheima.pojo.ChatHistoryEntry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.ListOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 会话最近对话缓存
+ * <p>
+ * 每个会话在Redis中保存一个定长列表（环形缓冲），只保留最近 maxTurns 轮问答，
+ * 由保存消息时同步写入。缓存不存在时从数据库加载后回填（{@link #getOrLoad}）。
+ * 写入只在列表已存在时追加，加载期间的写入不会进入尚未回填的列表，因此每个会话另有一个版本号：
+ * 追加和删除时递增，回填在Lua脚本中确认版本未变才写入，版本变化则重新加载，不会缓存缺少新消息的历史。
+ * Redis不可用时所有操作降级为未命中，不影响聊天。
+ * </p>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ChatHistoryStore {
+
+    private static final String KEY_PREFIX = "chat:history:";
+    private static final String VERSION_SUFFIX = ":version";
+
+    /**
+     * 加载期间缓存被连续修改时最多重新加载的次数
+     */
+    private static final int MAX_LOAD_ATTEMPTS = 3;
+
+    /**
+     * 版本未变时原子地替换整个列表：KEYS[1] 列表键，KEYS[2] 版本键，
+     * ARGV[1] 加载前读取的版本，ARGV[2] 保留条数，ARGV[3] 过期秒数，其余为消息
+     * 并发读取不会看到删除后、写入前的空列表，两个并发回填也不会交错成重复的列表
+     * @return 列表长度；版本已变化时返回-1，不写入
+     */
+    private static final RedisScript<Long> REPLACE_SCRIPT = new DefaultRedisScript<>(
+            "if (redis.call('GET', KEYS[2]) or '0') ~= ARGV[1] then return -1 end " +
+            "redis.call('DEL', KEYS[1]) " +
+            "redis.call('RPUSH', KEYS[1], unpack(ARGV, 4)) " +
+            "redis.call('LTRIM', KEYS[1], -tonumber(ARGV[2]), -1) " +
+            "redis.call('EXPIRE', KEYS[1], ARGV[3]) " +
+            "return redis.call('LLEN', KEYS[1])", Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    @Value("${chat.history.max-turns:10}")
+    private int maxTurns;
+
+    @Value("${chat.history.ttl-hours:24}")
+    private long ttlHours;
+
+    /**
+     * 缓存保留的消息条数：maxTurns 轮问答，再加上当前尚未得到回复的用户消息
+     */
+    public int capacity() {
+        return maxTurns * 2 + 1;
+    }
+
+    public int getMaxTurns() {
+        return maxTurns;
+    }
+
+    /**
+     * 读取会话的最近消息（按时间正序）
+     * @param sessionId 会话ID
+     * @return 最近消息列表；缓存不存在时返回null
+     */
+    public List<ChatHistoryEntry> get(Long sessionId) {
+        try {
+            List<String> values = stringRedisTemplate.opsForList().range(key(sessionId), 0, -1);
+            if (values == null || values.isEmpty()) {
+                return null;
+            }
+            List<ChatHistoryEntry> entries = new ArrayList<>(values.size());
+            for (String value : values) {
+                entries.add(JSON.parseObject(value, ChatHistoryEntry.class));
+            }
+            return entries;
+        } catch (Exception e) {
+            log.warn("读取会话历史缓存失败，sessionId: {}, 错误: {}", sessionId, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 读取会话的最近消息，未命中时用 loader 从数据库加载并回填
+     * <p>
+     * 加载前读取版本号，回填时版本已变化（加载期间有消息追加或缓存被删除）则重新加载；
+     * 修改持续不断时本次直接使用最后一次加载的结果，不回填。
+     * </p>
+     * @param sessionId 会话ID
+     * @param loader 从数据库加载最近消息（按时间正序）
+     * @return 最近消息列表（按时间正序）
+     */
+    public List<ChatHistoryEntry> getOrLoad(Long sessionId, Supplier<List<ChatHistoryEntry>> loader) {
+        List<ChatHistoryEntry> entries = get(sessionId);
+        if (entries != null) {
+            return entries;
+        }
+        for (int attempt = 1; ; attempt++) {
+            String version = readVersion(sessionId);
+            entries = loader.get();
+            if (version == null || put(sessionId, entries, version) || attempt >= MAX_LOAD_ATTEMPTS) {
+                return entries;
+            }
+            log.debug("加载期间会话历史被修改，重新加载，sessionId: {}", sessionId);
+        }
+    }
+
+    /**
+     * 用数据库加载的最近消息回填缓存，确认版本和替换列表在一个Lua脚本中原子完成
+     * @return 是否可以使用加载结果：已回填，或没有需要回填的内容、Redis不可用；版本已变化时返回false
+     */
+    private boolean put(Long sessionId, List<ChatHistoryEntry> entries, String version) {
+        if (entries.isEmpty()) {
+            return true;
+        }
+        try {
+            // 只写入会保留的最近 capacity() 条，Lua 的 unpack 参数个数有限
+            List<ChatHistoryEntry> recent = entries.subList(Math.max(0, entries.size() - capacity()), entries.size());
+            List<String> args = new ArrayList<>(recent.size() + 3);
+            args.add(version);
+            args.add(String.valueOf(capacity()));
+            args.add(String.valueOf(TimeUnit.HOURS.toSeconds(ttlHours)));
+            for (ChatHistoryEntry entry : recent) {
+                args.add(JSON.toJSONString(entry));
+            }
+            Long size = stringRedisTemplate.execute(REPLACE_SCRIPT, List.of(key(sessionId), versionKey(sessionId)),
+                    args.toArray());
+            return size == null || size >= 0;
+        } catch (Exception e) {
+            log.warn("回填会话历史缓存失败，sessionId: {}, 错误: {}", sessionId, e.getMessage());
+            return true;
+        }
+    }
+
+    /**
+     * 追加一条消息（写穿）
+     * 只在缓存已存在时追加，缓存不存在时由下一次读取从数据库完整加载，避免出现残缺的历史
+     * @param sessionId 会话ID
+     * @param entry 消息
+     */
+    public void append(Long sessionId, ChatHistoryEntry entry) {
+        try {
+            // 先递增版本：进行中的回填（可能没有读到这条消息）不会再写入
+            bumpVersion(sessionId);
+            String key = key(sessionId);
+            Long size = stringRedisTemplate.opsForList().rightPushIfPresent(key, JSON.toJSONString(entry));
+            if (size != null && size > 0) {
+                trimAndExpire(key);
+            }
+        } catch (Exception e) {
+            log.warn("写入会话历史缓存失败，删除缓存，sessionId: {}, 错误: {}", sessionId, e.getMessage());
+            evict(sessionId);
+        }
+    }
+
+    /**
+     * 删除会话的历史缓存（清除历史、删除会话时调用）
+     * @param sessionId 会话ID
+     */
+    public void evict(Long sessionId) {
+        try {
+            bumpVersion(sessionId);
+            stringRedisTemplate.delete(key(sessionId));
+        } catch (Exception e) {
+            log.warn("删除会话历史缓存失败，sessionId: {}, 错误: {}", sessionId, e.getMessage());
+        }
+    }
+
+    /**
+     * 读取会话历史的版本号
+     * @return 版本号，不存在时为"0"；Redis不可用时返回null
+     */
+    private String readVersion(Long sessionId) {
+        try {
+            String version = stringRedisTemplate.opsForValue().get(versionKey(sessionId));
+            return version != null ? version : "0";
+        } catch (Exception e) {
+            log.warn("读取会话历史版本失败，sessionId: {}, 错误: {}", sessionId, e.getMessage());
+            return null;
+        }
+    }
+
+    private void bumpVersion(Long sessionId) {
+        String versionKey = versionKey(sessionId);
+        stringRedisTemplate.opsForValue().increment(versionKey);
+        stringRedisTemplate.expire(versionKey, ttlHours, TimeUnit.HOURS);
+    }
+
+    private void trimAndExpire(String key) {
+        ListOperations<String, String> operations = stringRedisTemplate.opsForList();
+        operations.trim(key, -capacity(), -1);
+        stringRedisTemplate.expire(key, ttlHours, TimeUnit.HOURS);
+    }
+
+    private String key(Long sessionId) {
+        return KEY_PREFIX + sessionId;
+    }
+
+    private String versionKey(Long sessionId) {
+        return KEY_PREFIX + sessionId + VERSION_SUFFIX;
+    }
+}
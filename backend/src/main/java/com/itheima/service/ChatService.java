@@ -2,6 +2,7 @@ package com.itheima.service;
 
 import com.itheima.pojo.ChatMessage;
 import com.itheima.pojo.ChatSession;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.List;
 
@@ -34,15 +35,37 @@ public interface ChatService {
 
     /**
      * 发送消息并获取AI回复（支持指定文件和文件夹）
+     * <p>
+     * 相同 requestId 的重复提交只会调用一次RAG，已有回复时直接返回该回复。
+     * </p>
      *
      * @param sessionId 会话ID
      * @param userId    用户ID
      * @param content   消息内容
      * @param fileIds   文件ID列表（可选）
      * @param folderIds 文件夹ID列表（可选）
+     * @param requestId 客户端请求ID（可选，用于幂等）
      * @return AI回复的消息对象
      */
-    ChatMessage sendMessage(Long sessionId, Long userId, String content, List<Long> fileIds, List<Long> folderIds);
+    ChatMessage sendMessage(Long sessionId, Long userId, String content, List<Long> fileIds, List<Long> folderIds, String requestId);
+
+    /**
+     * 流式发送消息，AI回复片段通过SSE逐条推送
+     * <p>
+     * 会话校验和用户消息保存在调用线程中同步完成，RAG流式响应在后台线程中转发，
+     * 流结束后保存AI回复并推送 done 事件。
+     * </p>
+     *
+     * @param sessionId 会话ID
+     * @param userId    用户ID
+     * @param content   消息内容
+     * @param fileIds   文件ID列表（可选）
+     * @param folderIds 文件夹ID列表（可选）
+     * @param requestId 客户端请求ID（可选，用于幂等）
+     * @param emitter   SSE发送器
+     */
+    void streamMessage(Long sessionId, Long userId, String content, List<Long> fileIds, List<Long> folderIds,
+                       String requestId, SseEmitter emitter);
 
     /**
      * 获取指定会话的消息历史
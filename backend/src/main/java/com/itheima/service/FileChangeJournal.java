@@ -0,0 +1,40 @@
+package com.itheima.service;
+
+import com.itheima.config.RagClientConfig;
+import com.itheima.mapper.FileChangeMapper;
+import com.itheima.pojo.FileChange;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * 文件变更日志的写入入口
+ * RAG服务禁用时没有协调器消费日志，不再写入，避免 file_change_journal 无限增长；
+ * 之后重新启用RAG时需要完整重建一次向量存储
+ */
+@Component
+@RequiredArgsConstructor
+public class FileChangeJournal {
+
+    private final FileChangeMapper fileChangeMapper;
+    private final RagClientConfig ragConfig;
+
+    /**
+     * 记录一条变更，需在业务数据所在的事务中调用
+     */
+    public void record(FileChange change) {
+        if (ragConfig.isEnabled()) {
+            fileChangeMapper.insert(change);
+        }
+    }
+
+    /**
+     * 一条语句记录多条变更，需在业务数据所在的事务中调用
+     */
+    public void recordAll(List<FileChange> changes) {
+        if (ragConfig.isEnabled() && !changes.isEmpty()) {
+            fileChangeMapper.insertBatch(changes);
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package com.itheima.service;
+
+import com.itheima.mapper.FileMapper;
+import com.itheima.pojo.File;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+/**
+ * 用户文件路径索引
+ * <p>
+ * 为每个用户在内存中维护 物理存储路径 -> 文件ID -> 逻辑路径 的映射，
+ * 用于把RAG返回的来源路径转换为用户看到的"文件夹/文件名"路径。
+ * 索引按用户一次查询加载，之后由文件和文件夹的增删改在事务提交后增量更新，
+ * 解析一个来源只需要几次内存查找，不再访问数据库。
+ * 加载与增量更新可能并发：每次增量更新都会递增用户所在分段的版本号，
+ * 加载期间版本号变化说明读到的数据可能早于该更新，此时重新加载，不把可能过期的索引放入缓存。
+ * </p>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class FilePathIndex {
+
+    private final FileMapper fileMapper;
+
+    @Value("${chat.path-index.max-users:1000}")
+    private int maxUsers;
+
+    @Value("${chat.path-index.ttl-minutes:30}")
+    private long ttlMinutes;
+
+    private static final int VERSION_STRIPES = 64;
+    private static final int MAX_LOAD_ATTEMPTS = 3;
+
+    /**
+     * 按用户ID分段的修改版本号，内存占用固定，不随用户数增长
+     */
+    private final AtomicLongArray versions = new AtomicLongArray(VERSION_STRIPES);
+
+    /**
+     * 按最近访问顺序淘汰的用户索引
+     */
+    private final Map<Long, UserPathIndex> indexes = Collections.synchronizedMap(
+            new LinkedHashMap<Long, UserPathIndex>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, UserPathIndex> eldest) {
+                    return size() > maxUsers;
+                }
+            });
+
+    /**
+     * 根据物理路径查找文件的逻辑路径
+     * @param userId 用户ID
+     * @param physicalPath 文件的物理存储路径
+     * @return 逻辑路径（从根文件夹到文件的完整路径）；不是该用户的文件时返回null
+     */
+    public String resolveLogicalPath(Long userId, String physicalPath) {
+        UserPathIndex index = getOrLoad(userId);
+        Long fileId = index.fileIdByPath.get(normalize(physicalPath));
+        if (fileId == null) {
+            return null;
+        }
+        FileEntry file = index.files.get(fileId);
+        return file != null ? index.logicalPathOf(file) : null;
+    }
+
+    /**
+     * 文件新增（上传、创建文本文件）
+     */
+    public void onFileAdded(File file) {
+        afterCommit(() -> withLoadedIndex(file.getUserId(), index -> index.putFile(
+                file.getId(), file.getFilePath(), file.getFolderId(), file.getFileName())));
+    }
+
+    /**
+     * 文件重命名
+     */
+    public void onFileRenamed(Long userId, Long fileId, String newFileName) {
+        afterCommit(() -> withLoadedIndex(userId, index -> {
+            FileEntry file = index.files.get(fileId);
+            if (file != null) {
+                index.putFile(fileId, file.physicalPath, file.folderId, newFileName);
+            }
+        }));
+    }
+
+    /**
+     * 文件移动
+     */
+    public void onFileMoved(Long userId, Long fileId, Long targetFolderId) {
+        afterCommit(() -> withLoadedIndex(userId, index -> {
+            FileEntry file = index.files.get(fileId);
+            if (file != null) {
+                index.putFile(fileId, file.physicalPath, targetFolderId, file.fileName);
+            }
+        }));
+    }
+
+    /**
+     * 文件删除
+     */
+    public void onFileDeleted(Long userId, Long fileId) {
+        afterCommit(() -> withLoadedIndex(userId, index -> index.removeFile(fileId)));
+    }
+
+    /**
+     * 文件夹创建
+     */
+    public void onFolderCreated(Long userId, Long folderId, Long parentId, String folderName) {
+        afterCommit(() -> withLoadedIndex(userId,
+                index -> index.folders.put(folderId, new FolderEntry(parentId, folderName))));
+    }
+
+    /**
+     * 文件夹重命名，其下所有文件的逻辑路径随之变化
+     */
+    public void onFolderRenamed(Long userId, Long folderId, String newName) {
+        afterCommit(() -> withLoadedIndex(userId, index -> {
+            FolderEntry folder = index.folders.get(folderId);
+            if (folder != null) {
+                index.folders.put(folderId, new FolderEntry(folder.parentId, newName));
+            }
+        }));
+    }
+
+    /**
+     * 文件夹移动，其下所有文件的逻辑路径随之变化
+     */
+    public void onFolderMoved(Long userId, Long folderId, Long newParentId) {
+        afterCommit(() -> withLoadedIndex(userId, index -> {
+            FolderEntry folder = index.folders.get(folderId);
+            if (folder != null) {
+                index.folders.put(folderId, new FolderEntry(newParentId, folder.name));
+            }
+        }));
+    }
+
+    /**
+     * 丢弃用户的整个索引，下次使用时重新加载（批量删除等不便增量维护的操作）
+     */
+    public void invalidate(Long userId) {
+        afterCommit(() -> {
+            synchronized (indexes) {
+                versions.incrementAndGet(stripe(userId));
+                indexes.remove(userId);
+            }
+        });
+    }
+
+    private UserPathIndex getOrLoad(Long userId) {
+        UserPathIndex index = indexes.get(userId);
+        if (index != null && !index.isExpired(ttlMinutes)) {
+            return index;
+        }
+        for (int attempt = 1; ; attempt++) {
+            long version = versions.get(stripe(userId));
+            index = load(userId);
+            synchronized (indexes) {
+                // 检查版本和放入缓存在同一把锁内，之后的增量更新一定能看到这个索引
+                if (versions.get(stripe(userId)) == version) {
+                    indexes.put(userId, index);
+                    return index;
+                }
+            }
+            if (attempt >= MAX_LOAD_ATTEMPTS) {
+                // 修改持续不断时本次直接使用加载结果，不放入缓存
+                log.debug("加载期间文件路径索引持续被修改，本次不缓存 - 用户: {}", userId);
+                return index;
+            }
+        }
+    }
+
+    private UserPathIndex load(Long userId) {
+        long start = System.currentTimeMillis();
+        UserPathIndex index = new UserPathIndex();
+        for (Map<String, Object> row : fileMapper.selectPathIndexRows(userId)) {
+            Long id = ((Number) row.get("id")).longValue();
+            Long parentId = row.get("parentId") != null ? ((Number) row.get("parentId")).longValue() : 0L;
+            String name = (String) row.get("name");
+            if ("folder".equals(row.get("kind"))) {
+                index.folders.put(id, new FolderEntry(parentId, name));
+            } else {
+                index.putFile(id, (String) row.get("filePath"), parentId, name);
+            }
+        }
+        log.debug("加载文件路径索引 - 用户: {}, 文件数: {}, 文件夹数: {}, 耗时: {}ms",
+                userId, index.files.size(), index.folders.size(), System.currentTimeMillis() - start);
+        return index;
+    }
+
+    /**
+     * 只更新已经加载的索引，未加载的用户下次使用时会完整加载
+     * 递增版本号使正在进行的加载作废，避免它用更新前读到的数据覆盖本次更新
+     */
+    private void withLoadedIndex(Long userId, Consumer<UserPathIndex> update) {
+        UserPathIndex index;
+        synchronized (indexes) {
+            versions.incrementAndGet(stripe(userId));
+            index = indexes.get(userId);
+        }
+        if (index != null) {
+            update.accept(index);
+        }
+    }
+
+    private static int stripe(Long userId) {
+        return Long.hashCode(userId) & (VERSION_STRIPES - 1);
+    }
+
+    /**
+     * 在当前事务提交后执行，事务回滚时索引保持不变
+     */
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private static String normalize(String path) {
+        return path == null ? "" : path.replace('\\', '/').replaceAll("/{2,}", "/");
+    }
+
+    private static class UserPathIndex {
+        private final long loadedAt = System.currentTimeMillis();
+        private final Map<String, Long> fileIdByPath = new ConcurrentHashMap<>();
+        private final Map<Long, FileEntry> files = new ConcurrentHashMap<>();
+        private final Map<Long, FolderEntry> folders = new ConcurrentHashMap<>();
+
+        boolean isExpired(long ttlMinutes) {
+            return System.currentTimeMillis() - loadedAt > ttlMinutes * 60_000L;
+        }
+
+        void putFile(Long fileId, String physicalPath, Long folderId, String fileName) {
+            files.put(fileId, new FileEntry(physicalPath, folderId, fileName));
+            fileIdByPath.put(normalize(physicalPath), fileId);
+        }
+
+        void removeFile(Long fileId) {
+            FileEntry removed = files.remove(fileId);
+            if (removed != null) {
+                fileIdByPath.remove(normalize(removed.physicalPath));
+            }
+        }
+
+        /**
+         * 沿父文件夹向上拼接逻辑路径，根目录下的文件直接返回文件名
+         */
+        String logicalPathOf(FileEntry file) {
+            StringBuilder path = new StringBuilder(file.fileName);
+            Long folderId = file.folderId;
+            int depth = 0;
+            while (folderId != null && folderId != 0 && depth++ < 256) {
+                FolderEntry folder = folders.get(folderId);
+                if (folder == null) {
+                    break;
+                }
+                path.insert(0, '/').insert(0, folder.name);
+                folderId = folder.parentId;
+            }
+            return path.toString();
+        }
+    }
+
+    private record FileEntry(String physicalPath, Long folderId, String fileName) {
+    }
+
+    private record FolderEntry(Long parentId, String name) {
+    }
+}
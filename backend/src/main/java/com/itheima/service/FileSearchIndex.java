@@ -0,0 +1,830 @@
+package com.itheima.service;
+
+import com.itheima.dto.SearchHit;
+import com.itheima.mapper.FileMapper;
+import com.itheima.pojo.File;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.unit.DataSize;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * 用户文件全文索引
+ * <p>
+ * 每个用户一个倒排索引（词 -> 文件ID和词频）：文本文件按内容建索引，所有文件都按文件名匹配，
+ * 查询结果按BM25排序，只在内存中查找，不经过RAG后端。
+ * 英文和数字按单词切分并转为小写，中日韩文字按相邻两个字切分（与Lucene的CJKAnalyzer相同），查询单个汉字时按前缀匹配。
+ * </p>
+ * <p>
+ * 索引快照保存在存储根目录下的 .index/user_{id}.idx（不在 user_{id} 目录下，RAG重建时不会扫描到）。
+ * 加载时与数据库中的文件记录对账：补建快照之后新增的文件，去掉已删除的文件，更新文件名和所在文件夹，
+ * 因此快照只需定期写出，进程异常退出也不会漏掉或残留文件。
+ * 文件的增删改在事务提交后交给单线程的索引执行器按顺序应用，只更新已加载的索引；
+ * 加载也在该线程中进行，不会与增量更新交错。
+ * 加载中的索引以 CompletableFuture 保存在 ConcurrentHashMap 中，等待加载不持有任何锁，其他用户的查询不受影响；
+ * 内存中的用户数另由一个LRU限制，被淘汰的索引交给索引执行器写出快照，不在调用方线程中做磁盘IO。
+ * </p>
+ */
+@Slf4j
+@Component
+public class FileSearchIndex {
+
+    private static final String INDEX_DIR = ".index";
+    private static final int FORMAT_VERSION = 1;
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    /**
+     * 文件名包含全部查询词时额外加的分数
+     */
+    private static final double NAME_BOOST = 5.0;
+
+    private static final int SNIPPET_CHARS = 120;
+    private static final int SNIPPET_LEADING_CHARS = 30;
+    private static final int MAX_WORD_LENGTH = 64;
+
+    /**
+     * 按内容建索引的文件类型
+     */
+    private static final Set<String> TEXT_EXTENSIONS = Set.of("txt", "md", "csv", "log");
+
+    private final FileMapper fileMapper;
+    private final ThreadPoolTaskExecutor indexExecutor;
+    private final TaskScheduler maintenanceScheduler;
+    private final MeterRegistry meterRegistry;
+    private final Path indexDir;
+    private final long maxContentBytes;
+    private final long flushIntervalSeconds;
+
+    /**
+     * 已加载或正在加载的用户索引
+     */
+    private final Map<Long, CompletableFuture<UserSearchIndex>> indexes = new ConcurrentHashMap<>();
+
+    /**
+     * 用户的最近访问顺序，超过 maxUsers 时淘汰最久未使用的索引；只记录顺序，不持有索引
+     */
+    private final LinkedHashMap<Long, Boolean> recentUsers = new LinkedHashMap<>(16, 0.75f, true);
+    private final int maxUsers;
+
+    public FileSearchIndex(FileMapper fileMapper,
+                           @Qualifier("searchIndexExecutor") ThreadPoolTaskExecutor indexExecutor,
+                           @Qualifier("storageMaintenanceScheduler") TaskScheduler maintenanceScheduler,
+                           MeterRegistry meterRegistry,
+                           @Value("${file.storage.root}") String storageRoot,
+                           @Value("${file.search.max-users:200}") int maxUsers,
+                           @Value("${file.search.max-content-size:10MB}") DataSize maxContentSize,
+                           @Value("${file.search.flush-interval-seconds:60}") long flushIntervalSeconds) {
+        this.fileMapper = fileMapper;
+        this.indexExecutor = indexExecutor;
+        this.maintenanceScheduler = maintenanceScheduler;
+        this.meterRegistry = meterRegistry;
+        this.indexDir = Paths.get(storageRoot, INDEX_DIR);
+        this.maxContentBytes = maxContentSize.toBytes();
+        this.flushIntervalSeconds = flushIntervalSeconds;
+        this.maxUsers = maxUsers;
+    }
+
+    @PostConstruct
+    public void start() {
+        maintenanceScheduler.scheduleWithFixedDelay(() -> indexExecutor.execute(this::flushAll),
+                Duration.ofSeconds(flushIntervalSeconds));
+    }
+
+    @PreDestroy
+    public void stop() {
+        try {
+            indexExecutor.submit(this::flushAll).get(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            log.warn("关闭时写出搜索索引失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 关键词搜索
+     * @param userId 用户ID
+     * @param query 查询文本，多个词之间是"且"的关系
+     * @param folderIds 只返回这些文件夹中的文件，null表示不限
+     * @param limit 最多返回的结果数
+     * @return 按相关度从高到低排列的结果
+     */
+    public List<SearchHit> search(Long userId, String query, Set<Long> folderIds, int limit) {
+        long start = System.nanoTime();
+        List<String> terms = new ArrayList<>(new LinkedHashSet<>(tokenize(query)));
+        List<String> nameNeedles = Arrays.stream(query.toLowerCase().trim().split("\\s+"))
+                .filter(needle -> !needle.isEmpty())
+                .toList();
+        if (terms.isEmpty() && nameNeedles.isEmpty()) {
+            return List.of();
+        }
+
+        UserSearchIndex index = getOrLoad(userId);
+        List<Candidate> candidates = new ArrayList<>();
+        index.lock.readLock().lock();
+        try {
+            Map<Long, Double> contentScores = terms.isEmpty() ? Map.of() : index.score(terms);
+            for (Map.Entry<Long, DocEntry> entry : index.docs.entrySet()) {
+                DocEntry doc = entry.getValue();
+                if (folderIds != null && !folderIds.contains(doc.folderId())) {
+                    continue;
+                }
+                Double contentScore = contentScores.get(entry.getKey());
+                boolean nameMatched = containsAll(doc.fileName().toLowerCase(), nameNeedles);
+                if (contentScore == null && !nameMatched) {
+                    continue;
+                }
+                double score = (contentScore != null ? contentScore : 0) + (nameMatched ? NAME_BOOST : 0);
+                candidates.add(new Candidate(entry.getKey(), doc, score, contentScore != null));
+            }
+        } finally {
+            index.lock.readLock().unlock();
+        }
+
+        candidates.sort(Comparator.comparingDouble(Candidate::score).reversed());
+        List<SearchHit> hits = new ArrayList<>(Math.min(limit, candidates.size()));
+        for (Candidate candidate : candidates.subList(0, Math.min(limit, candidates.size()))) {
+            SearchHit hit = SearchHit.builder()
+                    .fileId(candidate.fileId())
+                    .fileName(candidate.doc().fileName())
+                    .folderId(candidate.doc().folderId())
+                    .score(candidate.score())
+                    .build();
+            if (candidate.contentMatched()) {
+                readSnippet(candidate.doc(), terms, hit);
+            }
+            hits.add(hit);
+        }
+        meterRegistry.timer("file.search.query").record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return hits;
+    }
+
+    /**
+     * 文件新增（上传、创建文本文件、秒传）
+     */
+    public void onFileAdded(File file) {
+        DocSource source = DocSource.of(file);
+        afterCommit(() -> withLoadedIndex(file.getUserId(), index -> {
+            if (!index.contains(source.id())) {
+                Analyzed analyzed = analyze(source);
+                index.write(() -> index.add(source.id(), analyzed.doc(), analyzed.frequencies()));
+            }
+        }));
+    }
+
+    /**
+     * 文件重命名
+     */
+    public void onFileRenamed(Long userId, Long fileId, String newFileName) {
+        afterCommit(() -> withLoadedIndex(userId, index -> index.write(() -> index.update(fileId, newFileName, null))));
+    }
+
+    /**
+     * 文件移动
+     */
+    public void onFileMoved(Long userId, Long fileId, Long targetFolderId) {
+        afterCommit(() -> withLoadedIndex(userId, index -> index.write(() -> index.update(fileId, null, targetFolderId))));
+    }
+
+    /**
+     * 文件删除
+     */
+    public void onFileDeleted(Long userId, Long fileId) {
+        afterCommit(() -> withLoadedIndex(userId, index -> index.write(() -> index.remove(fileId))));
+    }
+
+    /**
+     * 与数据库重新对账（批量删除等不便增量维护的操作）
+     */
+    public void reconcile(Long userId) {
+        afterCommit(() -> withLoadedIndex(userId, index -> reconcile(userId, index)));
+    }
+
+    // ========== 加载和持久化 ==========
+
+    private UserSearchIndex getOrLoad(Long userId) {
+        CompletableFuture<UserSearchIndex> future = indexes.get(userId);
+        if (future == null) {
+            CompletableFuture<UserSearchIndex> loading = new CompletableFuture<>();
+            future = indexes.putIfAbsent(userId, loading);
+            if (future == null) {
+                future = loading;
+                indexExecutor.execute(() -> {
+                    try {
+                        loading.complete(load(userId));
+                    } catch (RuntimeException e) {
+                        // 下次使用时重新加载
+                        indexes.remove(userId, loading);
+                        loading.completeExceptionally(e);
+                    }
+                });
+            }
+        }
+        touch(userId);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("搜索索引加载被中断");
+        } catch (ExecutionException e) {
+            throw new RuntimeException("搜索索引加载失败: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    /**
+     * 记录访问顺序，淘汰超出上限的索引：从表中移除后交给索引执行器写出快照
+     */
+    private void touch(Long userId) {
+        List<Long> evicted = new ArrayList<>();
+        synchronized (recentUsers) {
+            recentUsers.put(userId, Boolean.TRUE);
+            Iterator<Long> eldest = recentUsers.keySet().iterator();
+            while (recentUsers.size() > maxUsers && eldest.hasNext()) {
+                evicted.add(eldest.next());
+                eldest.remove();
+            }
+        }
+        for (Long evictedUserId : evicted) {
+            CompletableFuture<UserSearchIndex> future = indexes.remove(evictedUserId);
+            if (future != null) {
+                future.thenAcceptAsync(index -> flush(evictedUserId, index), indexExecutor);
+            }
+        }
+    }
+
+    private UserSearchIndex load(Long userId) {
+        long start = System.currentTimeMillis();
+        UserSearchIndex index = readSnapshot(userId);
+        int restored = index.docs.size();
+        reconcile(userId, index);
+        log.info("加载搜索索引 - 用户: {}, 快照中文件数: {}, 当前文件数: {}, 耗时: {}ms",
+                userId, restored, index.docs.size(), System.currentTimeMillis() - start);
+        return index;
+    }
+
+    /**
+     * 按数据库中的文件记录补齐、去除和更新索引中的文件
+     */
+    private void reconcile(Long userId, UserSearchIndex index) {
+        List<File> files = fileMapper.selectSearchIndexRows(userId);
+        Set<Long> live = new HashSet<>();
+        List<Analyzed> added = new ArrayList<>();
+        for (File file : files) {
+            live.add(file.getId());
+            if (!index.contains(file.getId())) {
+                added.add(analyze(DocSource.of(file)));
+            }
+        }
+        index.write(() -> {
+            for (Analyzed analyzed : added) {
+                index.add(analyzed.id(), analyzed.doc(), analyzed.frequencies());
+            }
+            for (File file : files) {
+                index.update(file.getId(), file.getFileName(), file.getFolderId());
+            }
+            for (Long fileId : new ArrayList<>(index.docs.keySet())) {
+                if (!live.contains(fileId)) {
+                    index.remove(fileId);
+                }
+            }
+        });
+    }
+
+    private void flushAll() {
+        indexes.forEach((userId, future) -> {
+            UserSearchIndex index = loaded(future);
+            if (index != null) {
+                flush(userId, index);
+            }
+        });
+    }
+
+    /**
+     * 有修改时写出快照：先写临时文件再原子替换，写出过程中崩溃不会留下不完整的快照
+     */
+    private void flush(Long userId, UserSearchIndex index) {
+        if (!index.dirty) {
+            return;
+        }
+        Path target = snapshotPath(userId);
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        index.lock.writeLock().lock();
+        try {
+            index.compact();
+            Files.createDirectories(indexDir);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                index.writeTo(out);
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            index.dirty = false;
+        } catch (IOException e) {
+            log.warn("搜索索引写出失败 - 用户: {}, 原因: {}", userId, e.getMessage());
+        } finally {
+            index.lock.writeLock().unlock();
+        }
+    }
+
+    private UserSearchIndex readSnapshot(Long userId) {
+        Path path = snapshotPath(userId);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            return UserSearchIndex.readFrom(in);
+        } catch (NoSuchFileException e) {
+            return new UserSearchIndex();
+        } catch (IOException | RuntimeException e) {
+            log.warn("搜索索引快照无法读取，重新构建 - 用户: {}, 原因: {}", userId, e.getMessage());
+            return new UserSearchIndex();
+        }
+    }
+
+    private Path snapshotPath(Long userId) {
+        return indexDir.resolve("user_" + userId + ".idx");
+    }
+
+    /**
+     * 只更新已经加载的索引，未加载的用户下次使用时会与数据库对账
+     */
+    private void withLoadedIndex(Long userId, Consumer<UserSearchIndex> update) {
+        indexExecutor.execute(() -> {
+            CompletableFuture<UserSearchIndex> future = indexes.get(userId);
+            UserSearchIndex index = loaded(future);
+            if (index == null) {
+                return;
+            }
+            try {
+                update.accept(index);
+            } catch (RuntimeException e) {
+                // 丢弃内存中的索引，下次使用时从快照加载并重新对账
+                indexes.remove(userId, future);
+                log.warn("搜索索引更新失败 - 用户: {}, 原因: {}", userId, e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * 已加载完成的索引；未加载、加载中或加载失败时返回null
+     * 加载排在本次更新之后时也返回null：加载时会与数据库对账，不会漏掉本次更新
+     */
+    private static UserSearchIndex loaded(CompletableFuture<UserSearchIndex> future) {
+        if (future == null || !future.isDone() || future.isCompletedExceptionally()) {
+            return null;
+        }
+        return future.join();
+    }
+
+    /**
+     * 在当前事务提交后执行，事务回滚时索引保持不变
+     */
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    // ========== 分词和内容读取 ==========
+
+    /**
+     * 读取文本文件内容并统计词频，文件名不参与（查询时直接匹配）
+     */
+    private Analyzed analyze(DocSource source) {
+        Map<String, Integer> frequencies = new HashMap<>();
+        int length = 0;
+        if (isTextFile(source.fileName())) {
+            try {
+                List<String> tokens = tokenize(readText(Paths.get(source.filePath())));
+                for (String token : tokens) {
+                    frequencies.merge(token, 1, Integer::sum);
+                }
+                length = tokens.size();
+            } catch (IOException e) {
+                log.warn("读取文件内容失败，只按文件名索引: {}, 原因: {}", source.filePath(), e.getMessage());
+            }
+        }
+        DocEntry doc = new DocEntry(source.fileName(), source.folderId(), source.filePath(), length);
+        return new Analyzed(source.id(), doc, frequencies);
+    }
+
+    private String readText(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(channel.size(), maxContentBytes));
+            while (buffer.hasRemaining() && channel.read(buffer) > 0) {
+                // 读满或读到文件末尾
+            }
+            buffer.flip();
+            return StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE)
+                    .decode(buffer)
+                    .toString();
+        }
+    }
+
+    /**
+     * 逐行查找第一处匹配，截取其附近的文本作为摘要
+     */
+    private void readSnippet(DocEntry doc, List<String> terms, SearchHit hit) {
+        try (InputStream in = Files.newInputStream(Paths.get(doc.filePath()));
+             BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8.newDecoder()
+                     .onMalformedInput(CodingErrorAction.REPLACE)
+                     .onUnmappableCharacter(CodingErrorAction.REPLACE)))) {
+            long lineNumber = 0;
+            long readChars = 0;
+            String line;
+            while ((line = reader.readLine()) != null && readChars < maxContentBytes) {
+                String lower = line.toLowerCase();
+                int position = -1;
+                for (String term : terms) {
+                    int found = lower.indexOf(term);
+                    if (found >= 0 && (position < 0 || found < position)) {
+                        position = found;
+                    }
+                }
+                if (position >= 0) {
+                    int from = Math.max(0, position - SNIPPET_LEADING_CHARS);
+                    hit.setSnippet(line.substring(from, Math.min(line.length(), from + SNIPPET_CHARS)).trim());
+                    hit.setLine(lineNumber);
+                    return;
+                }
+                lineNumber++;
+                readChars += line.length() + 1;
+            }
+        } catch (IOException e) {
+            log.debug("读取搜索摘要失败: {}, 原因: {}", doc.filePath(), e.getMessage());
+        }
+    }
+
+    /**
+     * 分词：字母和数字组成的单词转为小写；中日韩文字取相邻的两个字，单独出现的一个字保留为一个词
+     */
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        int previousCjk = -1;
+        boolean pairEmitted = false;
+        for (int i = 0; i < text.length(); ) {
+            int codePoint = text.codePointAt(i);
+            i += Character.charCount(codePoint);
+            if (isCjk(codePoint)) {
+                flushWord(word, tokens);
+                if (previousCjk >= 0) {
+                    tokens.add(new StringBuilder(4).appendCodePoint(previousCjk).appendCodePoint(codePoint).toString());
+                    pairEmitted = true;
+                }
+                previousCjk = codePoint;
+                continue;
+            }
+            if (previousCjk >= 0 && !pairEmitted) {
+                tokens.add(new String(Character.toChars(previousCjk)));
+            }
+            previousCjk = -1;
+            pairEmitted = false;
+            if (Character.isLetterOrDigit(codePoint)) {
+                if (word.length() < MAX_WORD_LENGTH) {
+                    word.appendCodePoint(Character.toLowerCase(codePoint));
+                }
+            } else {
+                flushWord(word, tokens);
+            }
+        }
+        flushWord(word, tokens);
+        if (previousCjk >= 0 && !pairEmitted) {
+            tokens.add(new String(Character.toChars(previousCjk)));
+        }
+        return tokens;
+    }
+
+    private static void flushWord(StringBuilder word, List<String> tokens) {
+        if (word.length() > 0) {
+            tokens.add(word.toString());
+            word.setLength(0);
+        }
+    }
+
+    private static boolean isCjk(int codePoint) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL;
+    }
+
+    private static boolean isSingleCjk(String term) {
+        return term.codePointCount(0, term.length()) == 1 && isCjk(term.codePointAt(0));
+    }
+
+    private static boolean isTextFile(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        return dot > 0 && TEXT_EXTENSIONS.contains(fileName.substring(dot + 1).toLowerCase());
+    }
+
+    private static boolean containsAll(String text, List<String> needles) {
+        for (String needle : needles) {
+            if (!text.contains(needle)) {
+                return false;
+            }
+        }
+        return !needles.isEmpty();
+    }
+
+    // ========== 索引结构 ==========
+
+    /**
+     * 单个用户的索引
+     * <p>
+     * 读（查询）持读锁，写（增删改、写出快照）持写锁，写操作只发生在索引执行器线程中。
+     * 删除文件时只从文件表中去掉，倒排表中的记录在查询时过滤，写出快照前统一压缩。
+     * </p>
+     */
+    private static class UserSearchIndex {
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private final Map<Long, DocEntry> docs = new HashMap<>();
+        private final TreeMap<String, Postings> postings = new TreeMap<>();
+        private long totalLength;
+        private int contentDocs;
+        private int deletedDocs;
+        private volatile boolean dirty;
+
+        boolean contains(Long fileId) {
+            lock.readLock().lock();
+            try {
+                return docs.containsKey(fileId);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        void write(Runnable action) {
+            lock.writeLock().lock();
+            try {
+                action.run();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        void add(long fileId, DocEntry doc, Map<String, Integer> frequencies) {
+            if (docs.putIfAbsent(fileId, doc) != null) {
+                return;
+            }
+            for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+                postings.computeIfAbsent(entry.getKey(), key -> new Postings()).add(fileId, entry.getValue());
+            }
+            totalLength += doc.length();
+            if (doc.length() > 0) {
+                contentDocs++;
+            }
+            dirty = true;
+        }
+
+        void update(Long fileId, String fileName, Long folderId) {
+            DocEntry doc = docs.get(fileId);
+            if (doc == null) {
+                return;
+            }
+            DocEntry updated = new DocEntry(fileName != null ? fileName : doc.fileName(),
+                    folderId != null ? folderId : doc.folderId(), doc.filePath(), doc.length());
+            if (!updated.equals(doc)) {
+                docs.put(fileId, updated);
+                dirty = true;
+            }
+        }
+
+        void remove(Long fileId) {
+            DocEntry doc = docs.remove(fileId);
+            if (doc == null) {
+                return;
+            }
+            totalLength -= doc.length();
+            if (doc.length() > 0) {
+                contentDocs--;
+                deletedDocs++;
+            }
+            dirty = true;
+        }
+
+        /**
+         * BM25：每个查询词都要出现在内容中，得分为各词得分之和
+         */
+        Map<Long, Double> score(List<String> terms) {
+            Map<Long, Double> scores = null;
+            double averageLength = contentDocs > 0 ? (double) totalLength / contentDocs : 1;
+            for (String term : terms) {
+                Map<Long, Integer> frequencies = frequencies(term);
+                double idf = Math.log(1 + (contentDocs - frequencies.size() + 0.5) / (frequencies.size() + 0.5));
+                Map<Long, Double> termScores = new HashMap<>();
+                for (Map.Entry<Long, Integer> entry : frequencies.entrySet()) {
+                    if (scores != null && !scores.containsKey(entry.getKey())) {
+                        continue;
+                    }
+                    double tf = entry.getValue();
+                    double norm = K1 * (1 - B + B * docs.get(entry.getKey()).length() / averageLength);
+                    double termScore = idf * tf * (K1 + 1) / (tf + norm);
+                    termScores.put(entry.getKey(), termScore + (scores != null ? scores.get(entry.getKey()) : 0));
+                }
+                scores = termScores;
+                if (scores.isEmpty()) {
+                    break;
+                }
+            }
+            return scores != null ? scores : Map.of();
+        }
+
+        /**
+         * 词在各文件中的出现次数，已删除的文件被过滤；单个汉字合并以它开头的所有双字词
+         */
+        private Map<Long, Integer> frequencies(String term) {
+            Map<Long, Integer> result = new HashMap<>();
+            Iterable<Postings> matched = isSingleCjk(term)
+                    ? postings.subMap(term, true, term + Character.MAX_VALUE, false).values()
+                    : postings.containsKey(term) ? List.of(postings.get(term)) : List.of();
+            for (Postings list : matched) {
+                for (int i = 0; i < list.size; i++) {
+                    if (docs.containsKey(list.fileIds[i])) {
+                        result.merge(list.fileIds[i], list.frequencies[i], Integer::sum);
+                    }
+                }
+            }
+            return result;
+        }
+
+        /**
+         * 去掉倒排表中已删除文件的记录
+         */
+        void compact() {
+            if (deletedDocs == 0) {
+                return;
+            }
+            postings.values().removeIf(list -> {
+                list.retain(docs.keySet());
+                return list.size == 0;
+            });
+            deletedDocs = 0;
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(docs.size());
+            for (Map.Entry<Long, DocEntry> entry : docs.entrySet()) {
+                DocEntry doc = entry.getValue();
+                out.writeLong(entry.getKey());
+                out.writeUTF(doc.fileName());
+                out.writeLong(doc.folderId());
+                out.writeUTF(doc.filePath());
+                out.writeInt(doc.length());
+            }
+            out.writeInt(postings.size());
+            for (Map.Entry<String, Postings> entry : postings.entrySet()) {
+                Postings list = entry.getValue();
+                out.writeUTF(entry.getKey());
+                out.writeInt(list.size);
+                for (int i = 0; i < list.size; i++) {
+                    out.writeLong(list.fileIds[i]);
+                    out.writeInt(list.frequencies[i]);
+                }
+            }
+        }
+
+        static UserSearchIndex readFrom(DataInputStream in) throws IOException {
+            if (in.readInt() != FORMAT_VERSION) {
+                throw new IOException("索引格式版本不匹配");
+            }
+            UserSearchIndex index = new UserSearchIndex();
+            int docCount = in.readInt();
+            for (int i = 0; i < docCount; i++) {
+                long fileId = in.readLong();
+                DocEntry doc = new DocEntry(in.readUTF(), in.readLong(), in.readUTF(), in.readInt());
+                index.docs.put(fileId, doc);
+                index.totalLength += doc.length();
+                if (doc.length() > 0) {
+                    index.contentDocs++;
+                }
+            }
+            int termCount = in.readInt();
+            for (int i = 0; i < termCount; i++) {
+                String term = in.readUTF();
+                int size = in.readInt();
+                Postings list = new Postings(size);
+                for (int j = 0; j < size; j++) {
+                    list.add(in.readLong(), in.readInt());
+                }
+                index.postings.put(term, list);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * 一个词的倒排表：文件ID和词频，用基本类型数组保存
+     */
+    private static class Postings {
+        private long[] fileIds;
+        private int[] frequencies;
+        private int size;
+
+        Postings() {
+            this(2);
+        }
+
+        Postings(int capacity) {
+            fileIds = new long[Math.max(capacity, 1)];
+            frequencies = new int[Math.max(capacity, 1)];
+        }
+
+        void add(long fileId, int frequency) {
+            if (size == fileIds.length) {
+                fileIds = Arrays.copyOf(fileIds, size * 2);
+                frequencies = Arrays.copyOf(frequencies, size * 2);
+            }
+            fileIds[size] = fileId;
+            frequencies[size] = frequency;
+            size++;
+        }
+
+        void retain(Set<Long> live) {
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                if (live.contains(fileIds[i])) {
+                    fileIds[kept] = fileIds[i];
+                    frequencies[kept] = frequencies[i];
+                    kept++;
+                }
+            }
+            size = kept;
+        }
+    }
+
+    /**
+     * 索引中的文件；length 为内容的词数，非文本文件为0
+     */
+    private record DocEntry(String fileName, Long folderId, String filePath, int length) {
+    }
+
+    private record DocSource(long id, String fileName, Long folderId, String filePath) {
+        static DocSource of(File file) {
+            return new DocSource(file.getId(), file.getFileName(), Objects.requireNonNullElse(file.getFolderId(), 0L),
+                    file.getFilePath());
+        }
+    }
+
+    private record Analyzed(long id, DocEntry doc, Map<String, Integer> frequencies) {
+    }
+
+    private record Candidate(Long fileId, DocEntry doc, double score, boolean contentMatched) {
+    }
+}
@@ -1,10 +1,15 @@
 package com.itheima.service;
 
+import com.itheima.dto.BatchItemResult;
+import com.itheima.dto.FileDownload;
+import com.itheima.dto.InstantUploadCheck;
+import com.itheima.dto.SearchHit;
+import com.itheima.dto.TextPage;
 import com.itheima.pojo.File;
-import org.springframework.core.io.Resource;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 import java.io.IOException;
+import java.util.List;
 
 /**
  * 文件管理服务接口
@@ -22,6 +27,44 @@ public interface FileService {
     @Transactional
     File uploadFile(Long userId, Long folderId, MultipartFile file) throws IOException;
 
+    /**
+     * 登记已完整写入磁盘并计算好哈希的上传文件（分片上传完成时调用）
+     * 只登记内容和插入记录，不读取文件，调用方在事务之外计算哈希；之后与普通上传的文件相同
+     * @param userId 用户ID
+     * @param folderId 目标文件夹ID（0表示根目录）
+     * @param fileName 原始文件名
+     * @param content 已计算哈希的临时文件，需与存储目录在同一文件系统；事务回滚时保留
+     * @return 包含文件元数据的实体
+     * @throws IOException 创建链接失败
+     */
+    @Transactional
+    File registerUploadedFile(Long userId, Long folderId, String fileName, BlobStore.StagedContent content)
+            throws IOException;
+
+    /**
+     * 秒传预检：服务器是否已有该内容
+     * @param userId 用户ID
+     * @param contentHash 文件内容的SHA-256
+     * @param fileSize 文件大小（字节）
+     * @return 内容存在时包含需要客户端校验的片段位置
+     */
+    InstantUploadCheck checkInstantUpload(Long userId, String contentHash, long fileSize);
+
+    /**
+     * 秒传：服务器已有该内容时不传输文件内容，直接登记文件
+     * @param userId 用户ID
+     * @param folderId 目标文件夹ID（0表示根目录）
+     * @param fileName 原始文件名
+     * @param contentHash 文件内容的SHA-256
+     * @param fileSize 文件大小（字节）
+     * @param proof 预检返回的片段的SHA-256
+     * @return 包含文件元数据的实体
+     * @throws IOException 片段读取失败
+     */
+    @Transactional
+    File instantUpload(Long userId, Long folderId, String fileName, String contentHash, long fileSize,
+                       String proof) throws IOException;
+
     /**
      * 移动文件到新文件夹
      * @param userId 用户ID
@@ -35,13 +78,19 @@ public interface FileService {
     File renameFile(Long userId, Long fileId, String newName);
 
     /**
-     * 文件下载
+     * 文件下载（一次查询完成权限校验和元数据读取）
      * @param userId 用户ID
      * @param fileId 文件ID
-     * @return 可下载的文件资源
+     * @return 文件名、物理路径、大小和ETag
      * @throws IOException 文件读取异常
      */
-    Resource downloadFile(Long userId, Long fileId) throws IOException;
+    FileDownload downloadFile(Long userId, Long fileId) throws IOException;
+
+    /**
+     * 记录实际发送的下载字节数（Range请求只计区间长度，304不计）
+     * @param bytes 响应体字节数
+     */
+    void recordDownload(long bytes);
 
     /**
      * 删除文件（同时删除物理文件）
@@ -61,5 +110,68 @@ public interface FileService {
 
     File createTextFile(Long userId, Long folderId, String fileName, String content) throws IOException;
 
+    /**
+     * 读取整个文本文件，超过每页上限的文件需要分页读取
+     */
     String getFileContent(Long userId, Long fileId) throws IOException;
+
+    /**
+     * 批量上传文件：先在事务之外写入临时文件，再在一个事务中登记，只触发一次向量存储更新
+     * @param userId 用户ID
+     * @param folderId 目标文件夹ID
+     * @param files 上传的文件
+     * @return 每个文件的结果，与上传顺序一致
+     * @throws IOException 存储出错时整批回滚
+     */
+    List<BatchItemResult> uploadFiles(Long userId, Long folderId, List<MultipartFile> files) throws IOException;
+
+    /**
+     * 批量移动文件：一次查询验证归属，一个事务完成，只触发一次向量存储更新
+     * @param userId 用户ID
+     * @param fileIds 文件ID列表
+     * @param targetFolderId 目标文件夹ID
+     * @return 每个文件的结果，不存在或无权限的文件标记为失败
+     */
+    List<BatchItemResult> moveFiles(Long userId, List<Long> fileIds, Long targetFolderId);
+
+    /**
+     * 批量删除文件：一次查询验证归属，一个事务完成，只触发一次向量存储更新
+     * @param userId 用户ID
+     * @param fileIds 文件ID列表
+     * @return 每个文件的结果，不存在或无权限的文件标记为失败
+     */
+    List<BatchItemResult> deleteFiles(Long userId, List<Long> fileIds);
+
+    /**
+     * 按关键词搜索用户的文件（文本文件的内容和所有文件的文件名）
+     * @param userId 用户ID
+     * @param query 关键词，多个词之间用空格分隔，结果需包含全部关键词
+     * @param folderId 只搜索该文件夹（0为根目录），null表示搜索全部文件
+     * @param recursive 是否包含子文件夹
+     * @param limit 最多返回的结果数
+     * @return 按相关度从高到低排列的结果
+     */
+    List<SearchHit> searchFiles(Long userId, String query, Long folderId, boolean recursive, int limit);
+
+    /**
+     * 按字节范围读取文本文件的一页
+     * @param userId 用户ID
+     * @param fileId 文件ID
+     * @param offset 起始字节位置（会对齐到字符边界）
+     * @param length 最多读取的字节数
+     * @return 本页内容和下一页的起始位置
+     * @throws IOException 文件读取异常
+     */
+    TextPage readFileContent(Long userId, Long fileId, long offset, int length) throws IOException;
+
+    /**
+     * 按行读取文本文件的一页
+     * @param userId 用户ID
+     * @param fileId 文件ID
+     * @param startLine 起始行号，从0开始
+     * @param lineCount 最多读取的行数
+     * @return 本页内容、下一页的起始行号和总行数
+     * @throws IOException 文件读取异常
+     */
+    TextPage readFileLines(Long userId, Long fileId, long startLine, int lineCount) throws IOException;
 }
\ No newline at end of file
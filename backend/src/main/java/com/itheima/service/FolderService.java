@@ -45,6 +45,24 @@ public interface FolderService {
     @Transactional
     Folder renameFolder(Long userId, Long folderId, String newName);
 
+    /**
+     * 移动文件夹（连同其下所有子文件夹和文件）到另一个文件夹下
+     * @param userId 用户ID
+     * @param folderId 要移动的文件夹ID
+     * @param targetParentId 目标父文件夹ID（0表示根目录），不能是该文件夹自身或其子文件夹
+     * @return 更新后的文件夹对象
+     */
+    @Transactional
+    Folder moveFolder(Long userId, Long folderId, Long targetParentId);
+
+    /**
+     * 获取文件夹及其所有子文件夹的ID（一次查询）
+     * @param userId 用户ID
+     * @param folderId 文件夹ID
+     * @return 子树中全部文件夹的ID，含该文件夹自身
+     */
+    List<Long> getSubtreeFolderIds(Long userId, Long folderId);
+
     /**
      * 获取文件夹内容（子文件夹+文件）
      * @param userId 用户ID
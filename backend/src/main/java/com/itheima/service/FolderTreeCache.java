@@ -0,0 +1,90 @@
+package com.itheima.service;
+
+import com.itheima.pojo.Folder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+
+/**
+ * 用户文件夹树缓存
+ * <p>
+ * 版本号按用户ID分段（固定 {@link #VERSION_STRIPES} 个），创建、重命名、删除文件夹后（事务提交后）
+ * 用户所在分段的版本号加一。缓存的树记录加载时的版本号，版本号不一致即视为失效并重新加载，
+ * 因此与写操作并发加载出的旧树不会被当作最新结果返回。
+ * 同一分段的其他用户修改文件夹时只会多一次重新加载，版本号占用的内存不随用户数增长。
+ * </p>
+ */
+@Slf4j
+@Component
+public class FolderTreeCache {
+
+    @Value("${folder.tree-cache.max-users:1000}")
+    private int maxUsers;
+
+    private static final int VERSION_STRIPES = 1024;
+
+    private final AtomicLongArray versions = new AtomicLongArray(VERSION_STRIPES);
+
+    private final Map<Long, CachedTree> trees = Collections.synchronizedMap(
+            new LinkedHashMap<Long, CachedTree>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, CachedTree> eldest) {
+                    return size() > maxUsers;
+                }
+            });
+
+    /**
+     * 获取用户的文件夹树，缓存失效时通过loader重新加载
+     * @param userId 用户ID
+     * @param loader 加载文件夹树的方法
+     * @return 根文件夹列表（只读，调用方不应修改）
+     */
+    public List<Folder> get(Long userId, Supplier<List<Folder>> loader) {
+        long version = versions.get(stripe(userId));
+        CachedTree cached = trees.get(userId);
+        if (cached != null && cached.version() == version) {
+            return cached.roots();
+        }
+
+        List<Folder> roots = loader.get();
+        trees.put(userId, new CachedTree(version, roots));
+        log.debug("加载文件夹树 - 用户: {}, 版本: {}", userId, version);
+        return roots;
+    }
+
+    /**
+     * 文件夹结构发生变化，在当前事务提交后使该用户的缓存失效
+     */
+    public void bumpVersion(Long userId) {
+        Runnable bump = () -> {
+            versions.incrementAndGet(stripe(userId));
+            trees.remove(userId);
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    bump.run();
+                }
+            });
+        } else {
+            bump.run();
+        }
+    }
+
+    private static int stripe(Long userId) {
+        return Long.hashCode(userId) & (VERSION_STRIPES - 1);
+    }
+
+    private record CachedTree(long version, List<Folder> roots) {
+    }
+}
@@ -0,0 +1,288 @@
+package com.itheima.service;
+
+import com.itheima.config.RagClientConfig;
+import com.itheima.exception.HttpStatusException;
+import com.itheima.exception.RagUnavailableException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestClientException;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * RAG调用保护：重试 + 熔断
+ * <p>
+ * 所有调用RAG后端的地方都通过这里执行：
+ * <ul>
+ *     <li>重试：指数退避加随机抖动（full jitter），等待由计时器完成，不再让调用线程 sleep；
+ *     只有 executeAsync 会重试，同步的 execute 只调用一次</li>
+ *     <li>熔断：连续失败达到阈值后打开，打开期间所有调用立即抛出 RagUnavailableException；
+ *     超过打开时长后进入半开状态，只放行一个试探请求，成功则关闭，失败则重新打开</li>
+ * </ul>
+ * 只有网络错误和5xx计为失败并重试；4xx说明后端是正常的，直接返回给调用方。
+ * 后台健康探测判定RAG后端不可用时，每次尝试前都会直接失败，不再等待连接超时。
+ * 指标：rag.calls（按 operation、outcome 区分的总耗时，含重试）、rag.calls.retries、rag.circuit.state。
+ * </p>
+ */
+@Slf4j
+@Component
+public class RagCallGuard {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    /**
+     * 单次调用的重试策略
+     * @param maxAttempts 最多尝试次数（含第一次）
+     * @param baseDelayMs 第一次重试的退避上限，之后每次翻倍
+     * @param maxDelayMs 退避上限
+     */
+    public record RetryPolicy(int maxAttempts, long baseDelayMs, long maxDelayMs) {
+        public static final RetryPolicy NO_RETRY = new RetryPolicy(1, 0, 0);
+    }
+
+    private final RagClientConfig ragConfig;
+    private final Executor retryExecutor;
+    private final RagHealthProber healthProber;
+    private final MeterRegistry meterRegistry;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean trialInFlight;
+
+    @Autowired
+    public RagCallGuard(RagClientConfig ragConfig, @Qualifier("ragRetryExecutor") Executor retryExecutor,
+                        RagHealthProber healthProber, MeterRegistry meterRegistry) {
+        this.ragConfig = ragConfig;
+        this.retryExecutor = retryExecutor;
+        this.healthProber = healthProber;
+        this.meterRegistry = meterRegistry;
+        Gauge.builder("rag.circuit.state", this, guard -> guard.getState().ordinal())
+                .description("RAG熔断器状态：0关闭，1打开，2半开")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 不接入健康探测，只有重试和熔断
+     */
+    public RagCallGuard(RagClientConfig ragConfig, Executor retryExecutor) {
+        this(ragConfig, retryExecutor, null, new SimpleMeterRegistry());
+    }
+
+    /**
+     * 按 rag.retry 配置的默认重试策略
+     */
+    public RetryPolicy defaultPolicy() {
+        RagClientConfig.Retry retry = ragConfig.getRetry();
+        return new RetryPolicy(retry.getMaxAttempts(), retry.getDelay(), retry.getMaxDelay());
+    }
+
+    /**
+     * 异步执行，重试在计时器到期后提交到重试执行器
+     * @param operation 操作名称（日志用）
+     * @param policy 重试策略
+     * @param attempt 发起一次调用，返回该次调用的结果
+     * @return 最终结果；熔断或重试用尽时以 RagUnavailableException 异常完成
+     */
+    public <T> CompletableFuture<T> executeAsync(String operation, RetryPolicy policy,
+                                                 Supplier<CompletableFuture<T>> attempt) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Timer.Sample sample = Timer.start(meterRegistry);
+        result.whenComplete((value, error) -> sample.stop(meterRegistry.timer("rag.calls",
+                "operation", operation, "outcome", outcome(error))));
+        runAttempt(operation, policy, attempt, 1, result);
+        return result;
+    }
+
+    /**
+     * 同步执行一次调用，不重试
+     * 同步等待会让调用线程在退避期间一直阻塞，需要重试的调用使用 executeAsync
+     * @throws RagUnavailableException 熔断或调用失败
+     */
+    public <T> T execute(String operation, Supplier<CompletableFuture<T>> attempt) {
+        try {
+            return executeAsync(operation, RetryPolicy.NO_RETRY, attempt).join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new RagUnavailableException(operation + "失败: " + cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * 将阻塞调用包装为一次尝试：第一次在调用线程执行，重试在重试执行器中执行
+     */
+    public static <T> Supplier<CompletableFuture<T>> blocking(Callable<T> call) {
+        return () -> {
+            try {
+                return CompletableFuture.completedFuture(call.call());
+            } catch (Exception e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        };
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    private <T> void runAttempt(String operation, RetryPolicy policy, Supplier<CompletableFuture<T>> attempt,
+                                int attemptNo, CompletableFuture<T> result) {
+        if (healthProber != null && !healthProber.isAvailable()) {
+            result.completeExceptionally(new RagUnavailableException("RAG服务健康探测失败，" + operation + "快速失败"));
+            return;
+        }
+        if (!tryAcquirePermission()) {
+            result.completeExceptionally(new RagUnavailableException("RAG服务熔断中，" + operation + "快速失败"));
+            return;
+        }
+
+        CompletableFuture<T> call;
+        try {
+            call = attempt.get();
+        } catch (RuntimeException e) {
+            call = CompletableFuture.failedFuture(e);
+        }
+
+        call.whenComplete((value, error) -> {
+            Throwable cause = unwrap(error);
+            if (cause == null || !isFailure(cause)) {
+                onSuccess();
+                if (cause == null) {
+                    result.complete(value);
+                } else {
+                    result.completeExceptionally(cause);
+                }
+                return;
+            }
+
+            onFailure();
+            if (attemptNo >= policy.maxAttempts() || getState() == State.OPEN) {
+                log.warn("{}失败，不再重试 - 尝试次数: {}/{}, 错误: {}",
+                        operation, attemptNo, policy.maxAttempts(), cause.getMessage());
+                result.completeExceptionally(new RagUnavailableException(operation + "失败: " + cause.getMessage(), cause));
+                return;
+            }
+
+            meterRegistry.counter("rag.calls.retries", "operation", operation).increment();
+            long delay = backoffDelay(policy, attemptNo);
+            log.warn("{}失败，{}ms后重试 - 尝试次数: {}/{}, 错误: {}",
+                    operation, delay, attemptNo, policy.maxAttempts(), cause.getMessage());
+            CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS, task -> submitRetry(operation, task, result))
+                    .execute(() -> runAttempt(operation, policy, attempt, attemptNo + 1, result));
+        });
+    }
+
+    /**
+     * 计时器到期后把重试提交到重试执行器；执行器拒绝时结束调用，不让调用方一直等待
+     */
+    private void submitRetry(String operation, Runnable retry, CompletableFuture<?> result) {
+        try {
+            retryExecutor.execute(retry);
+        } catch (RejectedExecutionException e) {
+            log.warn("{}重试被拒绝，重试执行器已满或已关闭", operation);
+            result.completeExceptionally(new RagUnavailableException(operation + "失败: 重试被拒绝", e));
+        }
+    }
+
+    /**
+     * 调用结果分类：success；rejected 健康探测或熔断快速失败；failure 网络错误或5xx；client_error 其他错误
+     */
+    private static String outcome(Throwable error) {
+        if (error == null) {
+            return "success";
+        }
+        if (error instanceof RagUnavailableException) {
+            return error.getCause() == null ? "rejected" : "failure";
+        }
+        return "client_error";
+    }
+
+    /**
+     * 指数退避 + full jitter：在 [0, min(maxDelay, baseDelay * 2^(n-1))] 中随机取值
+     */
+    private static long backoffDelay(RetryPolicy policy, int attemptNo) {
+        long cap = Math.min(policy.maxDelayMs(), policy.baseDelayMs() << Math.min(attemptNo - 1, 20));
+        return cap <= 0 ? 0 : ThreadLocalRandom.current().nextLong(cap + 1);
+    }
+
+    private synchronized boolean tryAcquirePermission() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.currentTimeMillis() - openedAt < ragConfig.getCircuitBreaker().getOpenDurationMs()) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                trialInFlight = false;
+                log.info("RAG熔断器进入半开状态，放行试探请求");
+                // fall through
+            case HALF_OPEN:
+            default:
+                if (trialInFlight) {
+                    return false;
+                }
+                trialInFlight = true;
+                return true;
+        }
+    }
+
+    private synchronized void onSuccess() {
+        if (state != State.CLOSED) {
+            log.info("RAG服务恢复，熔断器关闭");
+        }
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        trialInFlight = false;
+    }
+
+    private synchronized void onFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN
+                || (state == State.CLOSED && consecutiveFailures >= ragConfig.getCircuitBreaker().getFailureThreshold())) {
+            log.warn("RAG服务连续失败{}次，熔断器打开", consecutiveFailures);
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+        }
+        trialInFlight = false;
+    }
+
+    /**
+     * 是否为说明后端不可用的失败（网络错误、超时、5xx）
+     * RestTemplate 的4xx是 HttpClientErrorException，OkHttp 的4xx是 HttpStatusException，都不计为失败
+     */
+    private static boolean isFailure(Throwable error) {
+        if (error instanceof HttpClientErrorException) {
+            return false;
+        }
+        if (error instanceof HttpStatusException statusException && statusException.isClientError()) {
+            return false;
+        }
+        return error instanceof IOException || error instanceof RestClientException;
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        while (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error;
+    }
+}
@@ -1,10 +1,15 @@
 package com.itheima.service;
 
+import com.itheima.pojo.FileChange;
 import com.itheima.pojo.rag.VectorStoreResponse;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 /**
  * RAG客户端服务接口
- * 提供向量存储管理功能
+ * 提供向量存储管理功能；调用失败时按 rag.retry 退避重试，退避期间不占用调用线程，
+ * 因此结果以 CompletableFuture 返回，失败时以 status 为 error 的响应完成
  */
 public interface RagClientService {
     
@@ -14,24 +19,21 @@ public interface RagClientService {
      * @param forceRebuild 是否强制重建
      * @return 向量存储响应
      */
-    VectorStoreResponse buildVectorStore(Long userId, boolean forceRebuild);
+    CompletableFuture<VectorStoreResponse> buildVectorStore(Long userId, boolean forceRebuild);
     
     /**
-     * 异步构建或重建用户的向量存储
+     * 将文件变更增量同步到用户的向量存储
+     * 新增文件会被向量化，删除的文件移除对应向量，重命名和移动只更新元数据
      * @param userId 用户ID
-     * @param forceRebuild 是否强制重建
+     * @param changes 按发生顺序排列的文件变更
+     * @return 向量存储响应，status为error时表示增量更新失败
      */
-    void buildVectorStoreAsync(Long userId, boolean forceRebuild);
+    CompletableFuture<VectorStoreResponse> applyIncrementalChanges(Long userId, List<FileChange> changes);
     
     /**
      * 清除用户的向量存储缓存
      * @param userId 用户ID
+     * @return 向量存储响应，status为error时表示清除失败
      */
-    void clearVectorStoreCache(Long userId);
-    
-    /**
-     * 检查RAG服务是否健康
-     * @return 是否健康
-     */
-    boolean isRagServiceHealthy();
+    CompletableFuture<VectorStoreResponse> clearVectorStoreCache(Long userId);
 } 
\ No newline at end of file
@@ -0,0 +1,45 @@
+package com.itheima.service;
+
+import com.itheima.config.RagClientConfig;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/**
+ * 在 /actuator/health 中以 rag 组件展示RAG后端状态
+ * 直接读取RagHealthProber的快照，不会在请求线程中访问RAG后端
+ */
+@Component
+@RequiredArgsConstructor
+public class RagHealthIndicator implements HealthIndicator {
+
+    private final RagHealthProber ragHealthProber;
+    private final RagClientConfig ragConfig;
+
+    @Override
+    public Health health() {
+        if (!ragConfig.isEnabled()) {
+            return Health.unknown().withDetail("enabled", false).build();
+        }
+
+        RagHealthProber.Snapshot snapshot = ragHealthProber.getSnapshot();
+        Health.Builder builder = switch (snapshot.status()) {
+            case UP -> Health.up();
+            case DOWN -> Health.down();
+            default -> Health.unknown();
+        };
+        builder.withDetail("baseUrl", ragConfig.getBaseUrl())
+                .withDetail("statusSince", snapshot.statusSince())
+                .withDetail("lastCheckedAt", snapshot.lastCheckedAt())
+                .withDetail("consecutiveFailures", snapshot.consecutiveFailures())
+                .withDetail("lastLatencyMs", snapshot.lastLatencyMs())
+                .withDetail("avgLatencyMs", snapshot.avgLatencyMs())
+                .withDetail("p95LatencyMs", snapshot.p95LatencyMs())
+                .withDetail("maxLatencyMs", snapshot.maxLatencyMs());
+        if (snapshot.lastError() != null) {
+            builder.withDetail("lastError", snapshot.lastError());
+        }
+        return builder.build();
+    }
+}
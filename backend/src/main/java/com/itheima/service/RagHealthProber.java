@@ -0,0 +1,192 @@
+package com.itheima.service;
+
+import com.alibaba.fastjson.JSONObject;
+import com.itheima.config.RagClientConfig;
+import com.itheima.utils.HttpClientUtil;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.OkHttpClient;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * RAG后端健康探测
+ * <p>
+ * 后台每隔 rag.health.interval-ms 异步请求一次 /health，结果保存为不可变快照：
+ * <ul>
+ *     <li>读取健康状态只是读一个volatile引用，聊天、重建等调用方在发请求前检查不会有额外开销</li>
+ *     <li>连续 rag.health.failure-threshold 次探测失败判定为DOWN，一次成功即恢复UP；
+ *     DOWN期间RagCallGuard直接快速失败，不再等待连接超时</li>
+ *     <li>记录最近 rag.health.latency-window 次探测的延迟（平均、P95、最大）</li>
+ * </ul>
+ * 探测请求本身不经过RagCallGuard，熔断打开时也能及时发现后端恢复。
+ * </p>
+ */
+@Slf4j
+@Component
+public class RagHealthProber {
+
+    public enum Status { UNKNOWN, UP, DOWN }
+
+    /**
+     * 某一时刻的健康状态
+     * @param status 状态，尚未完成第一次探测时为UNKNOWN
+     * @param statusSince 进入当前状态的时间
+     * @param lastCheckedAt 最近一次探测完成的时间，0表示尚未探测
+     * @param consecutiveFailures 连续探测失败次数
+     * @param lastError 最近一次失败的原因，成功后清空
+     * @param lastLatencyMs 最近一次探测的延迟
+     * @param avgLatencyMs 窗口内平均延迟
+     * @param p95LatencyMs 窗口内P95延迟
+     * @param maxLatencyMs 窗口内最大延迟
+     */
+    public record Snapshot(Status status, long statusSince, long lastCheckedAt, int consecutiveFailures,
+                           String lastError, long lastLatencyMs, long avgLatencyMs, long p95LatencyMs,
+                           long maxLatencyMs) {
+    }
+
+    private final RagClientConfig ragConfig;
+    private final HttpClientUtil probeClient;
+    private final TaskScheduler healthScheduler;
+
+    private final AtomicBoolean probing = new AtomicBoolean();
+    private final long[] latencies;
+    private int latencyCount;
+    private int latencyNext;
+
+    private volatile Snapshot snapshot;
+
+    public RagHealthProber(RagClientConfig ragConfig, OkHttpClient okHttpClient,
+                           @Qualifier("ragHealthScheduler") TaskScheduler healthScheduler) {
+        this.ragConfig = ragConfig;
+        this.healthScheduler = healthScheduler;
+        // 共用连接池，只缩短单次调用的超时
+        this.probeClient = new HttpClientUtil(okHttpClient.newBuilder()
+                .callTimeout(ragConfig.getHealth().getTimeoutMs(), TimeUnit.MILLISECONDS)
+                .build());
+        this.latencies = new long[Math.max(1, ragConfig.getHealth().getLatencyWindow())];
+        this.snapshot = new Snapshot(Status.UNKNOWN, System.currentTimeMillis(), 0, 0, null, 0, 0, 0, 0);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!ragConfig.isEnabled()) {
+            log.info("RAG服务已禁用，不启动健康探测");
+            return;
+        }
+        healthScheduler.scheduleWithFixedDelay(this::probe, Duration.ofMillis(ragConfig.getHealth().getIntervalMs()));
+    }
+
+    /**
+     * 当前健康快照
+     */
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * 最近的探测确认RAG后端正常
+     */
+    public boolean isHealthy() {
+        return ragConfig.isEnabled() && snapshot.status() == Status.UP;
+    }
+
+    /**
+     * 是否允许向RAG后端发请求：只有确认DOWN时才拒绝，尚未探测时放行
+     */
+    public boolean isAvailable() {
+        return snapshot.status() != Status.DOWN;
+    }
+
+    /**
+     * 发起一次探测；上一次探测还没结束时跳过
+     */
+    void probe() {
+        if (!probing.compareAndSet(false, true)) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            probeClient.url(ragConfig.getBaseUrl() + "/health")
+                    .get()
+                    .executeForJsonAsync()
+                    .whenComplete((body, error) -> {
+                        long latencyMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                        probing.set(false);
+                        if (error == null && isHealthyBody(body)) {
+                            onProbeSuccess(latencyMs);
+                        } else {
+                            onProbeFailure(latencyMs, describe(error, body));
+                        }
+                    });
+        } catch (RuntimeException e) {
+            probing.set(false);
+            onProbeFailure(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), e.getMessage());
+        }
+    }
+
+    private synchronized void onProbeSuccess(long latencyMs) {
+        Snapshot previous = snapshot;
+        recordLatency(latencyMs);
+        long now = System.currentTimeMillis();
+        if (previous.status() != Status.UP) {
+            log.info("RAG服务健康探测恢复正常 - 延迟: {}ms", latencyMs);
+        }
+        snapshot = buildSnapshot(Status.UP, previous.status() == Status.UP ? previous.statusSince() : now,
+                now, 0, null, latencyMs);
+    }
+
+    private synchronized void onProbeFailure(long latencyMs, String error) {
+        Snapshot previous = snapshot;
+        recordLatency(latencyMs);
+        long now = System.currentTimeMillis();
+        int failures = previous.consecutiveFailures() + 1;
+        Status status = failures >= ragConfig.getHealth().getFailureThreshold() ? Status.DOWN : previous.status();
+        if (status == Status.DOWN && previous.status() != Status.DOWN) {
+            log.warn("RAG服务健康探测连续失败{}次，判定为不可用 - 错误: {}", failures, error);
+        } else {
+            log.debug("RAG服务健康探测失败 - 连续失败: {}, 错误: {}", failures, error);
+        }
+        snapshot = buildSnapshot(status, status == previous.status() ? previous.statusSince() : now,
+                now, failures, error, latencyMs);
+    }
+
+    private void recordLatency(long latencyMs) {
+        latencies[latencyNext] = latencyMs;
+        latencyNext = (latencyNext + 1) % latencies.length;
+        latencyCount = Math.min(latencyCount + 1, latencies.length);
+    }
+
+    private Snapshot buildSnapshot(Status status, long statusSince, long checkedAt, int failures,
+                                   String error, long lastLatencyMs) {
+        long[] window = Arrays.copyOf(latencies, latencyCount);
+        Arrays.sort(window);
+        long sum = 0;
+        for (long latency : window) {
+            sum += latency;
+        }
+        long avg = window.length == 0 ? 0 : sum / window.length;
+        long p95 = window.length == 0 ? 0 : window[(int) Math.ceil(window.length * 0.95) - 1];
+        long max = window.length == 0 ? 0 : window[window.length - 1];
+        return new Snapshot(status, statusSince, checkedAt, failures, error, lastLatencyMs, avg, p95, max);
+    }
+
+    private static boolean isHealthyBody(JSONObject body) {
+        return body != null && "healthy".equals(body.getString("status"));
+    }
+
+    private static String describe(Throwable error, JSONObject body) {
+        if (error == null) {
+            return "状态异常: " + (body != null ? body.getString("status") : "响应为空");
+        }
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        return cause.getClass().getSimpleName() + ": " + cause.getMessage();
+    }
+}
@@ -0,0 +1,192 @@
+package com.itheima.service;
+
+import com.itheima.config.RagClientConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 向量存储重建任务执行器
+ * <p>
+ * 重建任务耗时长且都打到同一个RAG后端，不再与其他@Async任务共用默认执行器：
+ * <ul>
+ *     <li>固定数量的工作线程（rag.rebuild.threads），限制同时打到RAG后端的重建数</li>
+ *     <li>每个用户一个队列，工作线程在有任务的用户之间轮转取任务，
+ *     一个用户批量操作文件不会让其他用户的重建一直排队</li>
+ *     <li>总队列长度和单用户队列长度都有上限，超出时抛出 RejectedExecutionException，由提交方决定稍后重试</li>
+ *     <li>导出指标：rag.rebuild.queue.depth、rag.rebuild.active、rag.rebuild.wait、rag.rebuild.rejected</li>
+ * </ul>
+ * </p>
+ */
+@Slf4j
+@Component
+public class RebuildJobExecutor {
+
+    private final RagClientConfig.Rebuild config;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Map<Long, ArrayDeque<Job>> queues = new HashMap<>();
+    private final ArrayDeque<Long> readyUsers = new ArrayDeque<>();
+    private int queuedCount;
+    private boolean shutdown;
+
+    private final AtomicInteger active = new AtomicInteger();
+    private final List<Thread> workers = new ArrayList<>();
+
+    private final Timer waitTimer;
+    private final Counter rejectedCounter;
+
+    public RebuildJobExecutor(RagClientConfig ragConfig, MeterRegistry meterRegistry) {
+        this.config = ragConfig.getRebuild();
+        Gauge.builder("rag.rebuild.queue.depth", this, RebuildJobExecutor::getQueuedCount)
+                .description("排队中的向量存储重建任务数")
+                .register(meterRegistry);
+        Gauge.builder("rag.rebuild.active", active, AtomicInteger::get)
+                .description("正在执行的向量存储重建任务数")
+                .register(meterRegistry);
+        this.waitTimer = Timer.builder("rag.rebuild.wait")
+                .description("重建任务从提交到开始执行的等待时间")
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("rag.rebuild.rejected")
+                .description("因队列已满被拒绝的重建任务数")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        for (int i = 0; i < config.getThreads(); i++) {
+            Thread worker = new Thread(this::workLoop, "rag-rebuild-" + (i + 1));
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        lock.lock();
+        try {
+            shutdown = true;
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        workers.forEach(Thread::interrupt);
+    }
+
+    /**
+     * 提交一个用户的重建任务
+     * @param userId 用户ID
+     * @param task 任务
+     * @throws RejectedExecutionException 队列已满或执行器已关闭
+     */
+    public void submit(Long userId, Runnable task) {
+        lock.lock();
+        try {
+            if (shutdown) {
+                throw new RejectedExecutionException("重建执行器已关闭");
+            }
+            ArrayDeque<Job> queue = queues.get(userId);
+            int userQueued = queue != null ? queue.size() : 0;
+            if (queuedCount >= config.getQueueCapacity() || userQueued >= config.getPerUserCapacity()) {
+                rejectedCounter.increment();
+                throw new RejectedExecutionException(String.format(
+                        "重建队列已满 - 用户: %d, 用户排队数: %d, 总排队数: %d", userId, userQueued, queuedCount));
+            }
+            if (queue == null) {
+                queue = new ArrayDeque<>();
+                queues.put(userId, queue);
+                readyUsers.addLast(userId);
+            }
+            queue.addLast(new Job(task, System.nanoTime()));
+            queuedCount++;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getQueuedCount() {
+        lock.lock();
+        try {
+            return queuedCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getActiveCount() {
+        return active.get();
+    }
+
+    /**
+     * 按用户轮转取下一个任务：取出队首用户的一个任务后，该用户还有任务则排到队尾
+     */
+    private Job take() throws InterruptedException {
+        lock.lock();
+        try {
+            while (readyUsers.isEmpty()) {
+                if (shutdown) {
+                    return null;
+                }
+                notEmpty.await();
+            }
+            Long userId = readyUsers.pollFirst();
+            ArrayDeque<Job> queue = queues.get(userId);
+            Job job = queue.pollFirst();
+            if (queue.isEmpty()) {
+                queues.remove(userId);
+            } else {
+                readyUsers.addLast(userId);
+            }
+            queuedCount--;
+            return job;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void workLoop() {
+        while (true) {
+            Job job;
+            try {
+                job = take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (job == null) {
+                return;
+            }
+
+            waitTimer.record(System.nanoTime() - job.submittedAt(), TimeUnit.NANOSECONDS);
+            active.incrementAndGet();
+            try {
+                job.task().run();
+            } catch (Throwable e) {
+                log.error("重建任务执行异常", e);
+            } finally {
+                active.decrementAndGet();
+            }
+        }
+    }
+
+    private record Job(Runnable task, long submittedAt) {
+    }
+}
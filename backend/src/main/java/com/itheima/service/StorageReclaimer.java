@@ -0,0 +1,352 @@
+package com.itheima.service;
+
+import com.itheima.mapper.FileBlobMapper;
+import com.itheima.mapper.FileReclaimMapper;
+import com.itheima.pojo.File;
+import com.itheima.pojo.FileReclaim;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * 存储空间回收
+ * <p>
+ * 删除文件（单个、批量、删除文件夹）时只在同一事务中把用户目录下的路径写入 file_reclaim_queue，
+ * 事务提交后由后台线程删除这些路径，删除请求不等待磁盘IO；进程在删除前退出时，下一轮回收会继续处理。
+ * 内容文件（blobs 目录）不再被任何 file 记录引用、且最后一次引用变化已超过宽限期时，按批回收，批与批之间暂停，避免占满磁盘IO。
+ * 此外定期扫描 blobs 目录和 .uploads 目录，清理没有记录的内容文件（上传事务回滚后留下的）和残留的暂存文件。
+ * 上次扫描的时间记录在存储根目录下的 .orphan-scan 文件中，重启不会立即重新扫描；
+ * 第一次运行（没有记录）时在一个扫描间隔内随机选择扫描时间，多个实例不会同时遍历整个目录。
+ * </p>
+ */
+@Slf4j
+@Component
+public class StorageReclaimer {
+
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String ORPHAN_SCAN_MARKER = ".orphan-scan";
+
+    private final FileReclaimMapper fileReclaimMapper;
+    private final FileBlobMapper fileBlobMapper;
+    private final BlobStore blobStore;
+    private final ThreadPoolTaskScheduler maintenanceScheduler;
+    private final MeterRegistry meterRegistry;
+    private final AtomicLong pending = new AtomicLong();
+
+    @Value("${file.reclaim.initial-delay-minutes:5}")
+    private long initialDelayMinutes;
+
+    @Value("${file.reclaim.interval-minutes:10}")
+    private long intervalMinutes;
+
+    @Value("${file.reclaim.grace-minutes:60}")
+    private long graceMinutes;
+
+    @Value("${file.reclaim.batch-size:100}")
+    private int batchSize;
+
+    @Value("${file.reclaim.batch-pause-ms:200}")
+    private long batchPauseMillis;
+
+    @Value("${file.reclaim.orphan-scan-interval-hours:24}")
+    private long orphanScanIntervalHours;
+
+    private volatile Instant lastOrphanScan = Instant.now();
+
+    public StorageReclaimer(FileReclaimMapper fileReclaimMapper, FileBlobMapper fileBlobMapper, BlobStore blobStore,
+                            @Qualifier("storageMaintenanceScheduler") ThreadPoolTaskScheduler maintenanceScheduler,
+                            MeterRegistry meterRegistry) {
+        this.fileReclaimMapper = fileReclaimMapper;
+        this.fileBlobMapper = fileBlobMapper;
+        this.blobStore = blobStore;
+        this.maintenanceScheduler = maintenanceScheduler;
+        this.meterRegistry = meterRegistry;
+        Gauge.builder("storage.reclaim.pending", pending, AtomicLong::get)
+                .description("回收队列中等待删除的路径数")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        lastOrphanScan = readLastOrphanScan();
+        // 启动后先等待一段时间（加随机抖动），不与应用启动争抢数据库和磁盘IO
+        Duration initialDelay = Duration.ofMinutes(initialDelayMinutes).plus(jitter(Duration.ofMinutes(intervalMinutes)));
+        maintenanceScheduler.scheduleWithFixedDelay(this::runOnce, Instant.now().plus(initialDelay),
+                Duration.ofMinutes(intervalMinutes));
+    }
+
+    /**
+     * 在当前事务中登记被删除文件的物理路径，事务提交后在后台删除
+     */
+    public void enqueue(List<File> files) {
+        if (files.isEmpty()) {
+            return;
+        }
+        fileReclaimMapper.insertBatch(files.stream().map(File::getFilePath).toList());
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    maintenanceScheduler.execute(StorageReclaimer.this::drainQueue);
+                }
+            });
+        } else {
+            maintenanceScheduler.execute(this::drainQueue);
+        }
+    }
+
+    /**
+     * 一轮完整的回收：删除队列中的路径，回收无引用的内容，按间隔扫描孤立文件
+     */
+    void runOnce() {
+        long start = System.nanoTime();
+        try {
+            drainQueue();
+            LocalDateTime cutoff = LocalDateTime.now().minusMinutes(graceMinutes);
+            reclaimUnreferencedBlobs(cutoff);
+            if (Duration.between(lastOrphanScan, Instant.now()).toHours() >= orphanScanIntervalHours) {
+                Instant scanCutoff = Instant.now().minus(Duration.ofMinutes(graceMinutes));
+                sweepOrphanBlobs(scanCutoff);
+                sweepStaleTempFiles(scanCutoff);
+                lastOrphanScan = Instant.now();
+                writeLastOrphanScan(lastOrphanScan);
+            }
+        } catch (Exception e) {
+            log.warn("存储回收失败: {}", e.getMessage(), e);
+        } finally {
+            meterRegistry.timer("storage.reclaim.run").record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * 删除队列中的用户目录路径；删除失败的（如Windows上文件正被下载）留在队列中，下一轮重试
+     */
+    synchronized void drainQueue() {
+        long afterId = 0;
+        int failed = 0;
+        List<FileReclaim> batch;
+        do {
+            batch = fileReclaimMapper.selectAfter(afterId, batchSize);
+            List<Long> done = new ArrayList<>(batch.size());
+            for (FileReclaim entry : batch) {
+                afterId = entry.getId();
+                try {
+                    long size = deleteFile(Paths.get(entry.getFilePath()));
+                    record("file", size);
+                    done.add(entry.getId());
+                } catch (IOException e) {
+                    failed++;
+                    log.warn("物理文件删除失败，稍后重试: {}, 原因: {}", entry.getFilePath(), e.getMessage());
+                }
+            }
+            if (!done.isEmpty()) {
+                fileReclaimMapper.deleteBatchIds(done);
+            }
+        } while (batch.size() == batchSize && pause());
+        if (failed > 0) {
+            log.warn("本轮有 {} 个物理文件删除失败，留在队列中", failed);
+        }
+        pending.set(fileReclaimMapper.selectCount(null));
+    }
+
+    /**
+     * 按批回收不再被引用的内容
+     */
+    void reclaimUnreferencedBlobs(LocalDateTime cutoff) {
+        String afterHash = "";
+        int reclaimed = 0;
+        long bytes = 0;
+        List<String> batch;
+        do {
+            batch = fileBlobMapper.selectUnreferenced(cutoff, afterHash, batchSize);
+            for (String hash : batch) {
+                afterHash = hash;
+                try {
+                    long size = blobStore.reclaim(hash, cutoff);
+                    if (size >= 0) {
+                        record("blob", size);
+                        reclaimed++;
+                        bytes += size;
+                    }
+                } catch (IOException | RuntimeException e) {
+                    log.warn("内容回收失败，稍后重试: {}, 原因: {}", hash, e.getMessage());
+                }
+            }
+        } while (batch.size() == batchSize && pause());
+        if (reclaimed > 0) {
+            log.info("回收无引用的内容: {} 个, {} 字节", reclaimed, bytes);
+        }
+    }
+
+    /**
+     * 删除 blobs 目录中没有 file_blob 记录的内容文件（上传事务回滚后留下的）
+     * 只处理修改时间早于 cutoff 的文件，进行中的上传不受影响
+     */
+    void sweepOrphanBlobs(Instant cutoff) throws IOException {
+        Path root = blobStore.blobRoot();
+        if (!Files.isDirectory(root)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(root, 3)) {
+            Iterator<Path> iterator = paths
+                    .filter(path -> BlobStore.isValidHash(path.getFileName().toString()))
+                    .filter(path -> isOlderThan(path, cutoff))
+                    .iterator();
+            List<Path> batch = new ArrayList<>(batchSize);
+            while (iterator.hasNext()) {
+                batch.add(iterator.next());
+                if (batch.size() == batchSize || !iterator.hasNext()) {
+                    deleteOrphans(batch);
+                    batch.clear();
+                    if (iterator.hasNext()) {
+                        pause();
+                    }
+                }
+            }
+        }
+    }
+
+    private void deleteOrphans(List<Path> files) {
+        List<String> hashes = files.stream().map(path -> path.getFileName().toString()).toList();
+        Set<String> existing = new HashSet<>(fileBlobMapper.selectExistingHashes(hashes));
+        for (Path file : files) {
+            if (existing.contains(file.getFileName().toString())) {
+                continue;
+            }
+            try {
+                record("orphan_blob", deleteFile(file));
+                log.info("删除没有记录的内容文件: {}", file);
+            } catch (IOException e) {
+                log.warn("内容文件删除失败: {}, 原因: {}", file, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 删除残留的暂存文件（写入临时文件后进程退出）；分片上传的 .part 文件由上传会话自己清理
+     */
+    void sweepStaleTempFiles(Instant cutoff) throws IOException {
+        Path root = blobStore.tempRoot();
+        if (!Files.isDirectory(root)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.list(root)) {
+            for (Path file : (Iterable<Path>) paths::iterator) {
+                if (file.getFileName().toString().endsWith(TEMP_SUFFIX) && isOlderThan(file, cutoff)) {
+                    try {
+                        record("temp", deleteFile(file));
+                    } catch (IOException e) {
+                        log.warn("暂存文件删除失败: {}, 原因: {}", file, e.getMessage());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 上次孤立文件扫描的时间；没有记录时假定上次扫描发生在一个扫描间隔内的随机时刻
+     */
+    private Instant readLastOrphanScan() {
+        Duration interval = Duration.ofHours(orphanScanIntervalHours);
+        try {
+            return Files.getLastModifiedTime(orphanScanMarker()).toInstant();
+        } catch (NoSuchFileException e) {
+            // 第一次运行
+        } catch (IOException e) {
+            log.warn("读取孤立文件扫描时间失败: {}", e.getMessage());
+        }
+        return Instant.now().minus(interval).plus(jitter(interval));
+    }
+
+    private void writeLastOrphanScan(Instant time) {
+        Path marker = orphanScanMarker();
+        try {
+            if (!Files.exists(marker)) {
+                Files.createDirectories(marker.getParent());
+                Files.createFile(marker);
+            }
+            Files.setLastModifiedTime(marker, FileTime.from(time));
+        } catch (IOException e) {
+            log.warn("记录孤立文件扫描时间失败: {}", e.getMessage());
+        }
+    }
+
+    private Path orphanScanMarker() {
+        return blobStore.blobRoot().resolveSibling(ORPHAN_SCAN_MARKER);
+    }
+
+    private static Duration jitter(Duration bound) {
+        long millis = bound.toMillis();
+        return millis > 0 ? Duration.ofMillis(ThreadLocalRandom.current().nextLong(millis)) : Duration.ZERO;
+    }
+
+    /**
+     * @return 删除的字节数，文件不存在时为0
+     */
+    private long deleteFile(Path path) throws IOException {
+        try {
+            long size = Files.size(path);
+            Files.delete(path);
+            return size;
+        } catch (NoSuchFileException e) {
+            return 0;
+        }
+    }
+
+    private boolean isOlderThan(Path path, Instant cutoff) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            return attributes.isRegularFile() && attributes.lastModifiedTime().toInstant().isBefore(cutoff);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void record(String type, long bytes) {
+        Counter.builder("storage.reclaim.files").tag("type", type).register(meterRegistry).increment();
+        Counter.builder("storage.reclaim.bytes").baseUnit("bytes").tag("type", type).register(meterRegistry)
+                .increment(bytes);
+    }
+
+    /**
+     * 批与批之间暂停，限制回收占用的磁盘IO
+     * @return 未被中断时返回true
+     */
+    private boolean pause() {
+        try {
+            Thread.sleep(batchPauseMillis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package com.itheima.service;
+
+import com.itheima.dto.TextPage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 大文本文件分页读取
+ * <p>
+ * 按字节范围或按行读取UTF-8文本的一页，只读取本页所需的字节，内存占用与文件大小无关。
+ * 按行读取依赖行偏移索引：第一次按行读取某个文件时顺序扫描一遍，每 {@link #LINE_STRIDE} 行记录一个起始位置，
+ * 之后定位任意一行最多只需扫描 LINE_STRIDE 行。索引按内容缓存，相同内容的文件共用一份。
+ * 使用定位读（FileChannel.read(buffer, position)）而不是内存映射：Windows 上被映射的文件在映射释放前无法删除。
+ * </p>
+ */
+@Slf4j
+@Component
+public class TextContentReader {
+
+    /**
+     * 行偏移索引的间隔行数
+     */
+    static final int LINE_STRIDE = 1024;
+
+    private static final int SCAN_BUFFER_SIZE = 64 * 1024;
+
+    private final int maxPageBytes;
+    private final Map<String, LineIndex> lineIndexes;
+
+    public TextContentReader(@Value("${file.content.max-page-size:1MB}") DataSize maxPageSize,
+                             @Value("${file.content.line-index.max-files:200}") int maxIndexedFiles) {
+        this.maxPageBytes = (int) maxPageSize.toBytes();
+        this.lineIndexes = Collections.synchronizedMap(new LinkedHashMap<String, LineIndex>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, LineIndex> eldest) {
+                return size() > maxIndexedFiles;
+            }
+        });
+    }
+
+    public int getMaxPageBytes() {
+        return maxPageBytes;
+    }
+
+    /**
+     * 按字节范围读取，起止位置会对齐到字符边界
+     * @param path 文件路径
+     * @param offset 起始字节位置
+     * @param length 最多读取的字节数，超过每页上限时按上限读取
+     */
+    public TextPage readBytes(Path path, long offset, int length) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long start = alignForward(channel, Math.max(0, Math.min(offset, size)), size);
+            long end = Math.min(size, start + Math.min(Math.max(length, 0), maxPageBytes));
+            end = alignBackward(channel, start, end, size);
+            return TextPage.builder()
+                    .content(decode(channel, start, end))
+                    .offset(start)
+                    .nextOffset(end)
+                    .fileSize(size)
+                    .hasMore(end < size)
+                    .build();
+        }
+    }
+
+    /**
+     * 按行读取
+     * @param path 文件路径
+     * @param cacheKey 行偏移索引的缓存键，内容相同的文件应当相同
+     * @param startLine 起始行号，从0开始
+     * @param lineCount 最多读取的行数；总字节数超过每页上限时提前结束
+     */
+    public TextPage readLines(Path path, String cacheKey, long startLine, int lineCount) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            LineIndex index = getLineIndex(cacheKey, channel, size);
+            long first = Math.max(0, Math.min(startLine, index.totalLines));
+
+            // 最后一行没有换行符时，行数恰好是 LINE_STRIDE 的倍数的行号没有对应的检查点
+            int checkpoint = (int) Math.min(first / LINE_STRIDE, index.checkpoints.length - 1);
+            long start = skipLines(channel, index.checkpoints[checkpoint], size,
+                    (int) (first - (long) checkpoint * LINE_STRIDE)).position;
+
+            long limit = Math.min(size, start + maxPageBytes);
+            ScanResult page = skipLines(channel, start, limit, Math.max(lineCount, 0));
+            long end = page.position;
+            long next = first + page.lines;
+            boolean truncated = false;
+            if (page.lines < lineCount && start < size) {
+                if (limit == size) {
+                    // 读到文件末尾，最后一行没有换行符
+                    next = Math.min(first + page.lines + 1, index.totalLines);
+                } else if (page.lines > 0) {
+                    // 达到每页上限，只返回完整的行
+                    end = page.lastLineEnd;
+                } else {
+                    // 单行超过每页上限：返回该行的前一部分，下一页从下一行开始
+                    end = alignBackward(channel, start, limit, size);
+                    next = first + 1;
+                    truncated = true;
+                }
+            }
+
+            return TextPage.builder()
+                    .content(decode(channel, start, end))
+                    .offset(start)
+                    .nextOffset(truncated ? skipLines(channel, start, size, 1).position : end)
+                    .fileSize(size)
+                    .startLine(first)
+                    .nextLine(next)
+                    .totalLines(index.totalLines)
+                    .truncated(truncated)
+                    .hasMore(next < index.totalLines)
+                    .build();
+        }
+    }
+
+    private LineIndex getLineIndex(String cacheKey, FileChannel channel, long size) throws IOException {
+        LineIndex index = lineIndexes.get(cacheKey);
+        if (index == null || index.size != size) {
+            long start = System.currentTimeMillis();
+            index = buildLineIndex(channel, size);
+            lineIndexes.put(cacheKey, index);
+            log.info("构建行偏移索引: {}, 大小: {}, 行数: {}, 耗时: {}ms",
+                    cacheKey, size, index.totalLines, System.currentTimeMillis() - start);
+        }
+        return index;
+    }
+
+    /**
+     * 顺序扫描文件，每 LINE_STRIDE 行记录一次行首位置
+     */
+    private LineIndex buildLineIndex(FileChannel channel, long size) throws IOException {
+        long[] checkpoints = new long[16];
+        int count = 1;
+        long lines = 0;
+        long position = 0;
+        byte last = '\n';
+        ByteBuffer buffer = ByteBuffer.allocateDirect(SCAN_BUFFER_SIZE);
+        int read;
+        while (position < size && (read = channel.read(buffer, position)) > 0) {
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    lines++;
+                    if (lines % LINE_STRIDE == 0) {
+                        if (count == checkpoints.length) {
+                            checkpoints = Arrays.copyOf(checkpoints, count * 2);
+                        }
+                        checkpoints[count++] = position + i + 1;
+                    }
+                }
+            }
+            last = buffer.get(read - 1);
+            position += read;
+            buffer.clear();
+        }
+        // 最后一行没有换行符时也算一行
+        long totalLines = last == '\n' ? lines : lines + 1;
+        return new LineIndex(Arrays.copyOf(checkpoints, count), totalLines, size);
+    }
+
+    /**
+     * 从 position 开始跳过 lines 个换行符，不超过 limit
+     * @return 停止的位置、实际跳过的行数和最后一个换行符之后的位置
+     */
+    private ScanResult skipLines(FileChannel channel, long position, long limit, int lines) throws IOException {
+        if (lines == 0) {
+            return new ScanResult(position, 0, position);
+        }
+        long lastLineEnd = position;
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(SCAN_BUFFER_SIZE, Math.max(limit - position, 1)));
+        int skipped = 0;
+        while (position < limit) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), limit - position));
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    lastLineEnd = position + i + 1;
+                    if (++skipped == lines) {
+                        return new ScanResult(lastLineEnd, skipped, lastLineEnd);
+                    }
+                }
+            }
+            position += read;
+        }
+        return new ScanResult(position, skipped, lastLineEnd);
+    }
+
+    /**
+     * 跳过UTF-8多字节字符的后续字节，使起始位置落在字符开头
+     */
+    private long alignForward(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer one = ByteBuffer.allocate(1);
+        for (int i = 0; i < 3 && position < size; i++) {
+            one.clear();
+            if (channel.read(one, position) <= 0 || !isContinuation(one.get(0))) {
+                break;
+            }
+            position++;
+        }
+        return position;
+    }
+
+    /**
+     * 结束位置落在多字节字符中间时向前退到字符开头，避免截断字符
+     */
+    private long alignBackward(FileChannel channel, long start, long end, long size) throws IOException {
+        if (end >= size) {
+            return size;
+        }
+        ByteBuffer one = ByteBuffer.allocate(1);
+        for (int i = 0; i < 3 && end > start; i++) {
+            one.clear();
+            if (channel.read(one, end) <= 0 || !isContinuation(one.get(0))) {
+                break;
+            }
+            end--;
+        }
+        return end;
+    }
+
+    private String decode(FileChannel channel, long start, long end) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate((int) (end - start));
+        while (bytes.hasRemaining() && channel.read(bytes, start + bytes.position()) > 0) {
+            // 读满本页
+        }
+        bytes.flip();
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        CharBuffer chars = decoder.decode(bytes);
+        return chars.toString();
+    }
+
+    private static boolean isContinuation(byte b) {
+        return (b & 0xC0) == 0x80;
+    }
+
+    private record LineIndex(long[] checkpoints, long totalLines, long size) {
+    }
+
+    private record ScanResult(long position, int lines, long lastLineEnd) {
+    }
+}
@@ -0,0 +1,162 @@
+package com.itheima.service;
+
+import com.auth0.jwt.interfaces.DecodedJWT;
+import com.itheima.utils.JwtUtil;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 已验证令牌的本地缓存
+ * <p>
+ * 令牌第一次出现时查询Redis确认未被注销并校验JWT签名，之后在本节点缓存 令牌 -> 业务数据，
+ * 命中时不再访问Redis也不再校验签名。缓存条目在JWT过期时间和 max-age 两者中较早的时刻失效；
+ * max-age 用于限制订阅消息丢失（如Redis连接中断）时已注销令牌还能在本节点使用的时长。
+ * 注销令牌时删除Redis中的令牌并通过 {@link #REVOCATION_CHANNEL} 广播，所有节点收到后移除本地缓存。
+ * </p>
+ */
+@Slf4j
+@Component
+public class TokenCache implements MessageListener {
+
+    /**
+     * 令牌注销广播频道，消息内容为被注销的令牌
+     */
+    public static final String REVOCATION_CHANNEL = "auth:token-revoked";
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final int maxSize;
+    private final long maxAgeMillis;
+
+    private final Map<String, CachedToken> tokens = new ConcurrentHashMap<>();
+
+    /**
+     * 注销次数，用于发现 "查询Redis之后、写入缓存之前" 发生的注销，避免把已注销的令牌放进缓存
+     */
+    private final AtomicLong revocations = new AtomicLong();
+
+    private final Counter hits;
+    private final Counter misses;
+
+    public TokenCache(StringRedisTemplate stringRedisTemplate, MeterRegistry meterRegistry,
+                      @Value("${auth.token-cache.max-size:10000}") int maxSize,
+                      @Value("${auth.token-cache.max-age-seconds:300}") long maxAgeSeconds) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.maxSize = maxSize;
+        this.maxAgeMillis = maxAgeSeconds * 1000;
+        this.hits = meterRegistry.counter("auth.token.cache", "result", "hit");
+        this.misses = meterRegistry.counter("auth.token.cache", "result", "miss");
+        meterRegistry.gaugeMapSize("auth.token.cache.size", Tags.empty(), tokens);
+    }
+
+    /**
+     * 验证令牌
+     * @param token 请求头中的令牌
+     * @return 令牌中的业务数据（只读）；令牌为空、已注销或已过期时返回null
+     * @throws com.auth0.jwt.exceptions.JWTVerificationException 签名校验失败
+     */
+    public Map<String, Object> verify(String token) {
+        if (token == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        CachedToken cached = tokens.get(token);
+        if (cached != null) {
+            if (now < cached.validUntil) {
+                hits.increment();
+                return cached.claims;
+            }
+            tokens.remove(token, cached);
+        }
+        misses.increment();
+
+        long generation = revocations.get();
+        //从redis中获取相同的token
+        if (stringRedisTemplate.opsForValue().get(token) == null) {
+            //token已经失效了
+            return null;
+        }
+        DecodedJWT jwt = JwtUtil.verify(token);
+        Map<String, Object> claims = Collections.unmodifiableMap(JwtUtil.getClaims(jwt));
+        if (maxSize > 0) {
+            put(token, new CachedToken(claims, validUntil(jwt, now)), now, generation);
+        }
+        return claims;
+    }
+
+    /**
+     * 注销令牌：删除Redis中的令牌，并通知所有节点移除本地缓存
+     */
+    public void revoke(String token) {
+        if (token == null) {
+            return;
+        }
+        stringRedisTemplate.delete(token);
+        evict(token);
+        try {
+            stringRedisTemplate.convertAndSend(REVOCATION_CHANNEL, token);
+        } catch (Exception e) {
+            log.warn("广播令牌注销失败，其他节点的缓存将在 max-age 后失效: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 收到其他节点（包括本节点）的注销广播
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        evict(new String(message.getBody(), StandardCharsets.UTF_8));
+    }
+
+    private void evict(String token) {
+        revocations.incrementAndGet();
+        tokens.remove(token);
+    }
+
+    private void put(String token, CachedToken entry, long now, long generation) {
+        if (tokens.size() >= maxSize) {
+            trim(now);
+        }
+        tokens.put(token, entry);
+        //写入期间发生过注销时撤回这次写入，由下一次请求重新查询Redis
+        if (revocations.get() != generation) {
+            tokens.remove(token, entry);
+        }
+    }
+
+    /**
+     * 缓存已满：先清理过期条目，仍然超出时任意淘汰到容量的90%，避免之后每次写入都要遍历
+     */
+    private void trim(long now) {
+        tokens.values().removeIf(cached -> now >= cached.validUntil);
+        int target = maxSize - Math.max(1, maxSize / 10);
+        Iterator<String> iterator = tokens.keySet().iterator();
+        while (tokens.size() > target && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    private long validUntil(DecodedJWT jwt, long now) {
+        Date expiresAt = jwt.getExpiresAt();
+        long limit = now + maxAgeMillis;
+        return expiresAt != null ? Math.min(expiresAt.getTime(), limit) : limit;
+    }
+
+    private record CachedToken(Map<String, Object> claims, long validUntil) {
+    }
+}
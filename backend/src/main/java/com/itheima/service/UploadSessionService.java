@@ -0,0 +1,66 @@
+package com.itheima.service;
+
+import com.itheima.dto.UploadStatus;
+import com.itheima.pojo.File;
+import com.itheima.pojo.UploadSession;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 分片上传服务接口
+ * <p>
+ * 创建会话后，客户端按序号并行上传各分片（可重复上传），随时可以查询缺失的分片，
+ * 全部上传后完成会话，文件登记到目标文件夹。
+ * </p>
+ */
+public interface UploadSessionService {
+
+    /**
+     * 创建上传会话并预分配临时文件
+     * @param userId 用户ID
+     * @param folderId 目标文件夹ID（0表示根目录）
+     * @param fileName 原始文件名
+     * @param fileSize 文件大小（字节）
+     * @return 上传会话（包含上传ID、分片大小和分片数）
+     * @throws IOException 临时文件创建失败
+     */
+    UploadSession initiate(Long userId, Long folderId, String fileName, Long fileSize) throws IOException;
+
+    /**
+     * 写入一个分片
+     * @param userId 用户ID
+     * @param uploadId 上传ID
+     * @param index 分片序号，从0开始
+     * @param body 分片内容
+     * @param contentLength 请求声明的分片大小，未知时为-1
+     * @throws IOException 写入失败或分片数据不完整
+     */
+    void writeChunk(Long userId, String uploadId, int index, InputStream body, long contentLength) throws IOException;
+
+    /**
+     * 查询上传进度
+     * @param userId 用户ID
+     * @param uploadId 上传ID
+     * @return 会话信息和缺失的分片序号
+     */
+    UploadStatus getStatus(Long userId, String uploadId);
+
+    /**
+     * 完成上传：所有分片到齐后登记为正式文件
+     * @param userId 用户ID
+     * @param uploadId 上传ID
+     * @return 文件实体
+     * @throws IOException 读取临时文件或登记失败
+     */
+    File complete(Long userId, String uploadId) throws IOException;
+
+    /**
+     * 取消上传，删除会话和临时文件
+     * @param userId 用户ID
+     * @param uploadId 上传ID
+     */
+    @Transactional
+    void abort(Long userId, String uploadId);
+}
@@ -0,0 +1,342 @@
+package com.itheima.service;
+
+import com.itheima.config.RagClientConfig;
+import com.itheima.mapper.FileChangeMapper;
+import com.itheima.pojo.FileChange;
+import com.itheima.pojo.rag.VectorStoreResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 向量存储重建协调器
+ * <p>
+ * 文件操作频繁时（例如一次拖入几十个文件）不再为每个事件都重建一次，而是按用户：
+ * <ul>
+ *     <li>防抖：事件到达后等待 rag.rebuild.debounce-ms，窗口内的新事件会重新计时，
+ *     但从第一个事件起最多等待 rag.rebuild.max-wait-ms</li>
+ *     <li>合并：窗口内的多个事件合并为一次重建，任一事件要求强制重建则强制重建</li>
+ *     <li>增量：文件变更只同步 file_change_journal 中的变更，增量更新失败时退回完整重建</li>
+ *     <li>单飞：同一用户同一时间最多只有一个重建在执行（含退避重试）；执行期间的新事件只会在结束后触发一次后续重建</li>
+ *     <li>健康检查：RAG后端不可用时不提交重建，保留待处理状态，按探测间隔推迟到后端恢复</li>
+ * </ul>
+ * 手动构建（{@link #rebuildAndWait}）同样经过合并和单飞，只是不等待防抖窗口，并在构建结束后返回结果。
+ * 所有状态变更都在 ConcurrentHashMap.compute 中完成，同一用户的状态转换天然互斥。
+ * </p>
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "rag.enabled", havingValue = "true", matchIfMissing = true)
+public class VectorStoreRebuildCoordinator {
+
+    private static final int JOURNAL_BATCH_SIZE = 200;
+
+    private final RagClientService ragClientService;
+    private final FileChangeMapper fileChangeMapper;
+    private final RagClientConfig ragConfig;
+    private final TaskScheduler rebuildScheduler;
+    private final RebuildJobExecutor rebuildExecutor;
+    private final RagHealthProber ragHealthProber;
+
+    private final Map<Long, RebuildState> states = new ConcurrentHashMap<>();
+
+    public VectorStoreRebuildCoordinator(RagClientService ragClientService,
+                                         FileChangeMapper fileChangeMapper,
+                                         RagClientConfig ragConfig,
+                                         @Qualifier("rebuildScheduler") TaskScheduler rebuildScheduler,
+                                         RebuildJobExecutor rebuildExecutor,
+                                         RagHealthProber ragHealthProber) {
+        this.ragClientService = ragClientService;
+        this.fileChangeMapper = fileChangeMapper;
+        this.ragConfig = ragConfig;
+        this.rebuildScheduler = rebuildScheduler;
+        this.rebuildExecutor = rebuildExecutor;
+        this.ragHealthProber = ragHealthProber;
+    }
+
+    /**
+     * 请求完整构建用户的向量存储
+     * 在事务中调用时，事务提交后才开始计时，回滚则不触发重建
+     * @param userId 用户ID
+     * @param forceRebuild 是否强制重建
+     */
+    public void requestRebuild(Long userId, boolean forceRebuild) {
+        afterCommit(() -> enqueue(userId, true, forceRebuild, List.of()));
+    }
+
+    /**
+     * 请求完整构建用户的向量存储并等待结果（手动构建）
+     * 不等待防抖窗口；同一用户正在重建时等它结束后再执行，不会与之并发。
+     * RAG后端不可用时保留待处理状态，后端恢复后再构建，返回的结果立即以错误响应完成
+     * @param userId 用户ID
+     * @param forceRebuild 是否强制重建
+     * @return 本次请求所在的那次构建的响应，status为error时表示构建失败
+     */
+    public CompletableFuture<VectorStoreResponse> rebuildAndWait(Long userId, boolean forceRebuild) {
+        CompletableFuture<VectorStoreResponse> result = new CompletableFuture<>();
+        afterCommit(() -> enqueue(userId, true, forceRebuild, List.of(result)));
+        return result;
+    }
+
+    /**
+     * 请求将用户的文件变更日志增量同步到向量存储
+     * @param userId 用户ID
+     */
+    public void requestIncrementalUpdate(Long userId) {
+        afterCommit(() -> enqueue(userId, false, false, List.of()));
+    }
+
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    /**
+     * 当前是否有该用户的重建在执行或等待执行
+     */
+    public boolean isRebuildPending(Long userId) {
+        return states.containsKey(userId);
+    }
+
+    private void enqueue(Long userId, boolean fullBuild, boolean forceRebuild,
+                         List<CompletableFuture<VectorStoreResponse>> waiters) {
+        states.compute(userId, (id, state) -> {
+            if (state == null) {
+                state = new RebuildState();
+            }
+            state.dirty = true;
+            state.waiters.addAll(waiters);
+            state.fullBuild |= fullBuild;
+            state.forceRebuild |= forceRebuild;
+            if (!state.running) {
+                scheduleDebounced(userId, state);
+            }
+            // 正在重建时只做标记，重建结束后统一安排一次后续重建
+            return state;
+        });
+    }
+
+    /**
+     * (重新)设置防抖计时器，必须在 compute 中调用
+     */
+    private void scheduleDebounced(Long userId, RebuildState state) {
+        long now = System.currentTimeMillis();
+        if (state.firstEventAt == 0) {
+            state.firstEventAt = now;
+        }
+        long deadline = state.firstEventAt + ragConfig.getRebuild().getMaxWaitMs();
+        long delay = Math.max(0, Math.min(ragConfig.getRebuild().getDebounceMs(), deadline - now));
+        if (!state.waiters.isEmpty()) {
+            // 有人在等待结果，不再等待更多事件
+            delay = 0;
+        }
+
+        if (state.timer != null) {
+            state.timer.cancel(false);
+        }
+        state.timer = rebuildScheduler.schedule(() -> fire(userId),
+                Instant.now().plus(Duration.ofMillis(delay)));
+    }
+
+    /**
+     * 防抖窗口结束，开始执行重建
+     */
+    private void fire(Long userId) {
+        if (!ragHealthProber.isAvailable()) {
+            deferWhileUnavailable(userId);
+            return;
+        }
+
+        boolean[] start = new boolean[1];
+        boolean[] full = new boolean[1];
+        boolean[] force = new boolean[1];
+        List<CompletableFuture<VectorStoreResponse>> waiters = new ArrayList<>();
+        states.computeIfPresent(userId, (id, state) -> {
+            if (state.running || !state.dirty) {
+                return state;
+            }
+            state.running = true;
+            state.dirty = false;
+            full[0] = state.fullBuild;
+            force[0] = state.forceRebuild;
+            state.fullBuild = false;
+            state.forceRebuild = false;
+            state.firstEventAt = 0;
+            state.timer = null;
+            waiters.addAll(state.waiters);
+            state.waiters.clear();
+            start[0] = true;
+            return state;
+        });
+
+        if (start[0]) {
+            try {
+                rebuildExecutor.submit(userId, () -> runRebuild(userId, full[0], force[0], waiters));
+            } catch (RejectedExecutionException e) {
+                // 执行器繁忙，恢复待处理状态，等下一个防抖窗口再提交
+                log.warn("重建队列已满，稍后重试 - 用户: {}", userId);
+                enqueue(userId, full[0], force[0], waiters);
+                finish(userId);
+            }
+        }
+    }
+
+    /**
+     * RAG后端不可用，保留待处理状态，一个探测间隔后再检查
+     */
+    private void deferWhileUnavailable(Long userId) {
+        List<CompletableFuture<VectorStoreResponse>> waiters = new ArrayList<>();
+        states.computeIfPresent(userId, (id, state) -> {
+            if (state.running || !state.dirty) {
+                return state;
+            }
+            log.debug("RAG服务不可用，推迟重建 - 用户: {}", userId);
+            waiters.addAll(state.waiters);
+            state.waiters.clear();
+            state.timer = rebuildScheduler.schedule(() -> fire(userId),
+                    Instant.now().plus(Duration.ofMillis(ragConfig.getHealth().getIntervalMs())));
+            return state;
+        });
+        // 不让手动构建的请求一直等到后端恢复
+        completeWaiters(waiters, errorResponse("RAG服务暂时不可用，构建已推迟到服务恢复后进行"));
+    }
+
+    /**
+     * 在重建执行器中发起重建；RAG调用的重试不占用执行器线程，整个重建结束（含重试）后才 finish
+     */
+    private void runRebuild(Long userId, boolean fullBuild, boolean forceRebuild,
+                            List<CompletableFuture<VectorStoreResponse>> waiters) {
+        AtomicReference<VectorStoreResponse> built = new AtomicReference<>();
+        CompletableFuture<Void> rebuild;
+        try {
+            rebuild = (fullBuild ? fullRebuild(userId, forceRebuild).thenAccept(built::set)
+                    : CompletableFuture.<Void>completedFuture(null))
+                    .thenCompose(ignored -> syncJournal(userId));
+        } catch (Exception e) {
+            rebuild = CompletableFuture.failedFuture(e);
+        }
+        rebuild.whenComplete((ignored, error) -> {
+            if (error != null) {
+                log.error("向量存储重建过程中发生异常 - 用户: {}", userId, error);
+            }
+            finish(userId);
+            VectorStoreResponse response = built.get();
+            if (response == null) {
+                response = errorResponse("构建向量存储时发生异常: " + (error != null ? error.getMessage() : "响应为空"));
+            }
+            completeWaiters(waiters, response);
+        });
+    }
+
+    private static void completeWaiters(List<CompletableFuture<VectorStoreResponse>> waiters,
+                                        VectorStoreResponse response) {
+        for (CompletableFuture<VectorStoreResponse> waiter : waiters) {
+            waiter.complete(response);
+        }
+    }
+
+    private static VectorStoreResponse errorResponse(String message) {
+        VectorStoreResponse response = new VectorStoreResponse();
+        response.setStatus("error");
+        response.setMessage(message);
+        return response;
+    }
+
+    /**
+     * 完整构建；强制重建成功后，构建开始前已有的变更日志都已包含在内，直接删除
+     * 失败时保留变更日志，下次文件变更时再同步
+     */
+    private CompletableFuture<VectorStoreResponse> fullRebuild(Long userId, boolean forceRebuild) {
+        log.info("开始构建向量存储 - 用户: {}, 强制重建: {}", userId, forceRebuild);
+        Long latestChangeId = forceRebuild ? fileChangeMapper.selectLatestId(userId) : null;
+        return ragClientService.buildVectorStore(userId, forceRebuild).thenApply(response -> {
+            if (response != null && "error".equals(response.getStatus())) {
+                log.error("向量存储构建失败 - 用户: {}, 错误: {}", userId, response.getMessage());
+                return response;
+            }
+            if (latestChangeId != null) {
+                fileChangeMapper.deleteSynced(userId, latestChangeId);
+            }
+            log.info("向量存储构建完成 - 用户: {}", userId);
+            return response;
+        });
+    }
+
+    /**
+     * 按顺序分批发送变更日志，每批成功后删除；增量更新失败时退回强制完整重建
+     */
+    private CompletableFuture<Void> syncJournal(Long userId) {
+        List<FileChange> changes = fileChangeMapper.selectPending(userId, JOURNAL_BATCH_SIZE);
+        if (changes.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return ragClientService.applyIncrementalChanges(userId, changes).thenCompose(response -> {
+            if (response == null || "error".equals(response.getStatus())) {
+                log.warn("增量更新向量存储失败，改为完整重建 - 用户: {}, 错误: {}",
+                        userId, response != null ? response.getMessage() : "响应为空");
+                return fullRebuild(userId, true).thenAccept(rebuilt -> { });
+            }
+
+            fileChangeMapper.deleteSynced(userId, changes.get(changes.size() - 1).getId());
+            if (changes.size() < JOURNAL_BATCH_SIZE) {
+                return CompletableFuture.completedFuture(null);
+            }
+            return syncJournal(userId);
+        });
+    }
+
+    /**
+     * 重建结束：期间有新事件则安排一次后续重建，否则清除用户状态
+     */
+    private void finish(Long userId) {
+        states.computeIfPresent(userId, (id, state) -> {
+            state.running = false;
+            if (state.dirty) {
+                log.info("重建期间有新的文件变更，安排后续重建 - 用户: {}", userId);
+                scheduleDebounced(userId, state);
+                return state;
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 单个用户的重建状态，只在 states.compute 中读写
+     */
+    private static class RebuildState {
+        private boolean dirty;
+        private boolean fullBuild;
+        private boolean forceRebuild;
+        private boolean running;
+        private long firstEventAt;
+        private ScheduledFuture<?> timer;
+        /**
+         * 等待下一次构建结果的手动构建请求
+         */
+        private final List<CompletableFuture<VectorStoreResponse>> waiters = new ArrayList<>();
+    }
+}
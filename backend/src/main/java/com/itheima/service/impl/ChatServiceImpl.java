@@ -1,40 +1,74 @@
 package com.itheima.service.impl;
 
-import com.alibaba.fastjson.JSONObject;
+import com.alibaba.fastjson.JSON;
+import com.itheima.exception.HttpStatusException;
+import com.itheima.exception.RagUnavailableException;
 import com.itheima.mapper.ChatMessageMapper;
 import com.itheima.mapper.ChatSessionMapper;
 import com.itheima.mapper.FileMapper;
 import com.itheima.mapper.FolderMapper;
+import com.itheima.pojo.ChatHistoryEntry;
 import com.itheima.pojo.ChatMessage;
 import com.itheima.pojo.ChatSession;
 import com.itheima.pojo.File;
 import com.itheima.pojo.Folder;
+import com.itheima.pojo.rag.RagChatResponse;
+import com.itheima.service.ChatHistoryStore;
 import com.itheima.service.ChatService;
+import com.itheima.service.FilePathIndex;
+import com.itheima.service.RagCallGuard;
 import com.itheima.utils.HttpClientUtil;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.nio.file.Paths;
 
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class ChatServiceImpl implements ChatService {
     private final ChatSessionMapper sessionMapper;
     private final ChatMessageMapper messageMapper;
     private final FileMapper fileMapper;
     private final FolderMapper folderMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final ChatHistoryStore chatHistoryStore;
+    private final FilePathIndex filePathIndex;
+    private final HttpClientUtil httpClientUtil;
+    private final RagCallGuard ragCallGuard;
+    private final MeterRegistry meterRegistry;
+    private final Executor chatStreamExecutor;
+
+    private static final String INVALID_RESPONSE_ANSWER = "抱歉，获取AI回复时发生错误";
+    private static final String UNAVAILABLE_ANSWER = "抱歉，AI服务暂时不可用，请稍后再试。";
+
+    /**
+     * RAG后端没有流式接口（404）时，这段时间内流式请求直接改用 /chat，之后再尝试流式接口
+     */
+    private static final long STREAMING_RECHECK_MS = 10 * 60 * 1000L;
+
+    private volatile long streamingUnsupportedUntil;
 
     @Value("${rag.api.url:http://localhost:5000}")
     private String ragApiUrl;
@@ -45,6 +79,33 @@ public class ChatServiceImpl implements ChatService {
     @Value("${file.storage.root}")
     private String fileStorageRoot;
 
+    @Value("${chat.request.pending-timeout-seconds:180}")
+    private long pendingTimeoutSeconds;
+
+    /**
+     * RAG生成较长回答需要的时间可能超过共享客户端的 okhttp.read-timeout，聊天调用单独设置
+     */
+    @Value("${chat.rag-read-timeout-seconds:60}")
+    private long ragReadTimeoutSeconds;
+
+    public ChatServiceImpl(ChatSessionMapper sessionMapper, ChatMessageMapper messageMapper, FileMapper fileMapper,
+                           FolderMapper folderMapper, TransactionTemplate transactionTemplate,
+                           ChatHistoryStore chatHistoryStore, FilePathIndex filePathIndex,
+                           HttpClientUtil httpClientUtil, RagCallGuard ragCallGuard, MeterRegistry meterRegistry,
+                           @Qualifier("chatStreamExecutor") Executor chatStreamExecutor) {
+        this.sessionMapper = sessionMapper;
+        this.messageMapper = messageMapper;
+        this.fileMapper = fileMapper;
+        this.folderMapper = folderMapper;
+        this.transactionTemplate = transactionTemplate;
+        this.chatHistoryStore = chatHistoryStore;
+        this.filePathIndex = filePathIndex;
+        this.httpClientUtil = httpClientUtil;
+        this.ragCallGuard = ragCallGuard;
+        this.meterRegistry = meterRegistry;
+        this.chatStreamExecutor = chatStreamExecutor;
+    }
+
     @Override
     @Transactional
     public ChatSession createSession(Long userId, String sessionName) {
@@ -58,76 +119,94 @@ public class ChatServiceImpl implements ChatService {
     }
 
     @Override
-    @Transactional
     public ChatMessage sendMessage(Long sessionId, Long userId, String content) {
-        // 验证会话是否存在
-        ChatSession session = sessionMapper.selectById(sessionId);
-        if (session == null) {
-            log.error("会话不存在，sessionId: {}, userId: {}", sessionId, userId);
-            throw new RuntimeException("会话不存在，sessionId: " + sessionId);
-        }
-        
-        // 验证会话是否属于当前用户
-        if (!session.getUserId().equals(userId)) {
-            log.error("会话不属于当前用户，sessionId: {}, userId: {}, sessionUserId: {}", 
-                    sessionId, userId, session.getUserId());
-            throw new RuntimeException("无权限访问该会话");
+        return sendMessage(sessionId, userId, content, null, null, null);
+    }
+
+    /**
+     * 发送消息并获取AI回复
+     * <p>
+     * 不在整个调用上开启事务：用户消息和AI回复分别在独立的短事务中保存，
+     * RAG调用期间不占用数据库连接。
+     * </p>
+     */
+    @Override
+    public ChatMessage sendMessage(Long sessionId, Long userId, String content,
+                                   List<Long> fileIds, List<Long> folderIds, String requestId) {
+        Timer.Sample turn = Timer.start(meterRegistry);
+        try {
+            return doSendMessage(sessionId, userId, content, fileIds, folderIds, requestId);
+        } finally {
+            turn.stop(meterRegistry.timer("chat.turn", "mode", "sync"));
         }
-        
-        // 保存用户消息
-        ChatMessage userMessage = saveMessage(sessionId, userId, content, "user");
-        // 调用RAG API获取回复
-        String aiResponse = getAIResponse(userId, content, sessionId);
+    }
 
-        // 保存AI回复（保存完整响应到数据库）
-        ChatMessage assistantMessage = saveMessage(sessionId, userId, aiResponse, "assistant");
+    private ChatMessage doSendMessage(Long sessionId, Long userId, String content,
+                                      List<Long> fileIds, List<Long> folderIds, String requestId) {
+        validateSessionOwnership(sessionId, userId);
         
-        // 为前端返回精简的响应（移除冗余字段）
-        assistantMessage.setContent(extractCoreResponseForFrontend(aiResponse));
+        // 收集所有文件路径
+        List<String> documentPaths = collectDocumentPaths(userId, fileIds, folderIds);
         
-        return assistantMessage;
+        // 保存用户消息（重复请求直接返回已有回复）
+        ChatMessage existingReply = saveUserMessageIdempotently(sessionId, userId, content, requestId);
+        if (existingReply != null) {
+            existingReply.setContent(buildFrontendContent(existingReply));
+            return existingReply;
+        }
+
+        try {
+            // 调用RAG API获取回复（使用指定的文档路径）
+            RagChatResponse aiResponse = getAIResponseWithDocuments(userId, content, sessionId, documentPaths);
+
+            // 保存AI回复，content 即前端需要的精简响应，直接返回
+            return saveReplyOrRelease(sessionId, userId, aiResponse, requestId);
+        } catch (RuntimeException e) {
+            releaseRequest(sessionId, requestId);
+            throw e;
+        }
     }
 
     @Override
-    @Transactional
-    public ChatMessage sendMessage(Long sessionId, Long userId, String content, List<Long> fileIds, List<Long> folderIds) {
-        // 验证会话是否存在
-        ChatSession session = sessionMapper.selectById(sessionId);
-        if (session == null) {
-            log.error("会话不存在，sessionId: {}, userId: {}", sessionId, userId);
-            throw new RuntimeException("会话不存在，sessionId: " + sessionId);
-        }
-        
-        // 验证会话是否属于当前用户
-        if (!session.getUserId().equals(userId)) {
-            log.error("会话不属于当前用户，sessionId: {}, userId: {}, sessionUserId: {}", 
-                    sessionId, userId, session.getUserId());
-            throw new RuntimeException("无权限访问该会话");
-        }
-        
+    public void streamMessage(Long sessionId, Long userId, String content, List<Long> fileIds,
+                              List<Long> folderIds, String requestId, SseEmitter emitter) {
+        validateSessionOwnership(sessionId, userId);
+
         // 收集所有文件路径
         List<String> documentPaths = collectDocumentPaths(userId, fileIds, folderIds);
-        
-        // 保存用户消息
-        ChatMessage userMessage = saveMessage(sessionId, userId, content, "user");
-        // 调用RAG API获取回复（使用指定的文档路径）
-        String aiResponse = getAIResponseWithDocuments(userId, content, sessionId, documentPaths);
 
-        // 保存AI回复（保存完整响应到数据库）
-        ChatMessage assistantMessage = saveMessage(sessionId, userId, aiResponse, "assistant");
-        
-        // 为前端返回精简的响应（移除冗余字段）
-        assistantMessage.setContent(extractCoreResponseForFrontend(aiResponse));
-        
-        return assistantMessage;
+        // 保存用户消息（重复请求直接推送已有回复）
+        ChatMessage existingReply = saveUserMessageIdempotently(sessionId, userId, content, requestId);
+        if (existingReply != null) {
+            existingReply.setContent(buildFrontendContent(existingReply));
+            sendEvent(emitter, "done", existingReply, new AtomicBoolean(true));
+            emitter.complete();
+            return;
+        }
+        try {
+            Map<String, Object> requestBody = buildRagRequestBody(userId, content, sessionId, documentPaths);
+
+            // 在独立线程中转发RAG流式响应，释放当前请求线程
+            chatStreamExecutor.execute(() -> relayStreamingResponse(userId, sessionId, requestId, requestBody, emitter));
+        } catch (RuntimeException e) {
+            releaseRequest(sessionId, requestId);
+            throw e;
+        }
     }
 
+    /**
+     * 获取消息历史
+     * 助手消息不读取完整的RAG响应，直接由答案和来源列拼出前端需要的精简内容
+     */
     @Override
     public List<ChatMessage> getMessageHistory(Long sessionId) {
-        LambdaQueryWrapper<ChatMessage> queryWrapper = new LambdaQueryWrapper<>();
-        queryWrapper.eq(ChatMessage::getSessionId, sessionId)
-                .orderByAsc(ChatMessage::getCreateTime);
-        return messageMapper.selectList(queryWrapper);
+        List<ChatMessage> messages = messageMapper.selectListingBySessionId(sessionId);
+        for (ChatMessage message : messages) {
+            if ("assistant".equals(message.getRole())) {
+                message.setContent(buildFrontendContent(message));
+            }
+        }
+        return messages;
     }
 
     @Override
@@ -145,6 +224,7 @@ public class ChatServiceImpl implements ChatService {
         LambdaQueryWrapper<ChatMessage> messageQueryWrapper = new LambdaQueryWrapper<>();
         messageQueryWrapper.eq(ChatMessage::getSessionId, sessionId);
         messageMapper.delete(messageQueryWrapper);
+        chatHistoryStore.evict(sessionId);
 
         // 再删除会话
         return sessionMapper.deleteById(sessionId) > 0;
@@ -167,49 +247,193 @@ public class ChatServiceImpl implements ChatService {
         return messageMapper.selectById(messageId);
     }
 
-    private ChatMessage saveMessage(Long sessionId, Long userId, String content, String role) {
-        // 验证会话是否存在（双重保险）
+    /**
+     * 验证会话存在且属于当前用户
+     * @param sessionId 会话ID
+     * @param userId 用户ID
+     * @return 会话对象
+     */
+    private ChatSession validateSessionOwnership(Long sessionId, Long userId) {
+        // 验证会话是否存在
         ChatSession session = sessionMapper.selectById(sessionId);
         if (session == null) {
-            log.error("保存消息时发现会话不存在，sessionId: {}, userId: {}", sessionId, userId);
-            throw new RuntimeException("会话不存在，无法保存消息");
+            log.error("会话不存在，sessionId: {}, userId: {}", sessionId, userId);
+            throw new RuntimeException("会话不存在，sessionId: " + sessionId);
         }
         
+        // 验证会话是否属于当前用户
+        if (!session.getUserId().equals(userId)) {
+            log.error("会话不属于当前用户，sessionId: {}, userId: {}, sessionUserId: {}", 
+                    sessionId, userId, session.getUserId());
+            throw new RuntimeException("无权限访问该会话");
+        }
+        return session;
+    }
+
+    /**
+     * 在独立的短事务中保存消息并更新会话时间
+     * @param requestId 客户端请求ID（可选，用于幂等）
+     */
+    private ChatMessage saveMessage(Long sessionId, Long userId, String content, String role, String requestId) {
         ChatMessage message = new ChatMessage();
         message.setSessionId(sessionId);
         message.setUserId(userId);
         message.setContent(content);
         message.setRole(role);
-        message.setCreateTime(LocalDateTime.now());
-        messageMapper.insert(message);
+        message.setRequestId(requestId);
+        return persistMessage(message);
+    }
 
-        // 更新会话的更新时间
-        LambdaUpdateWrapper<ChatSession> updateWrapper = new LambdaUpdateWrapper<>();
-        updateWrapper.eq(ChatSession::getId, sessionId)
-                .set(ChatSession::getUpdateTime, LocalDateTime.now());
-        sessionMapper.update(null, updateWrapper);
+    /**
+     * 保存AI回复；RAG调用失败时的降级提示不保存，并释放请求ID，
+     * 否则客户端用同一请求ID重试只会拿到已保存的降级提示，不会再调用RAG
+     * @param aiResponse 已完成路径转换的RAG响应
+     * @return AI回复，降级提示时未保存（没有ID）
+     */
+    private ChatMessage saveReplyOrRelease(Long sessionId, Long userId, RagChatResponse aiResponse, String requestId) {
+        ChatMessage message = buildAssistantMessage(sessionId, userId, aiResponse, requestId);
+        if (aiResponse.isFallback()) {
+            releaseRequest(sessionId, requestId);
+            return message;
+        }
+        return persistMessage(message);
+    }
 
+    /**
+     * 构建AI回复
+     * 来源列表只序列化一次，写入 sources 列，并与答案拼成 content（即前端展示的精简响应），
+     * 之后构建历史和消息列表都不再解析完整响应
+     */
+    private ChatMessage buildAssistantMessage(Long sessionId, Long userId, RagChatResponse aiResponse,
+                                              String requestId) {
+        ChatMessage message = new ChatMessage();
+        message.setSessionId(sessionId);
+        message.setUserId(userId);
+        message.setRole("assistant");
+        message.setRequestId(requestId);
+        message.setAnswer(aiResponse.getAnswerText());
+        message.setSources(JSON.toJSONString(aiResponse.getSources()));
+        message.setContent(buildFrontendContent(message));
         return message;
     }
 
+    private ChatMessage persistMessage(ChatMessage message) {
+        Long sessionId = message.getSessionId();
+        ChatMessage saved = transactionTemplate.execute(status -> {
+            // 验证会话是否存在（双重保险）
+            ChatSession session = sessionMapper.selectById(sessionId);
+            if (session == null) {
+                log.error("保存消息时发现会话不存在，sessionId: {}, userId: {}", sessionId, message.getUserId());
+                throw new RuntimeException("会话不存在，无法保存消息");
+            }
+            
+            message.setCreateTime(LocalDateTime.now());
+            messageMapper.insert(message);
+
+            // 更新会话的更新时间
+            LambdaUpdateWrapper<ChatSession> updateWrapper = new LambdaUpdateWrapper<>();
+            updateWrapper.eq(ChatSession::getId, sessionId)
+                    .set(ChatSession::getUpdateTime, LocalDateTime.now());
+            sessionMapper.update(null, updateWrapper);
+
+            return message;
+        });
+
+        // 事务提交后写穿最近对话缓存
+        chatHistoryStore.append(sessionId, toHistoryEntry(saved));
+        return saved;
+    }
+
     /**
-     * 从AI回复的JSON格式中提取纯文本答案
-     * @param aiResponse AI回复的JSON字符串
-     * @return 纯文本答案
+     * 保存用户消息，同一请求ID只会被处理一次
+     * <p>
+     * 依赖 chat_message (session_id, request_id, role) 唯一索引：
+     * 重复提交时若AI回复已保存则直接返回该回复，仍在处理中则拒绝本次请求。
+     * 处理失败时会删除用户消息（见 {@link #releaseRequest}），客户端可以用同一请求ID重试；
+     * 进程在处理中退出而留下的用户消息，超过 chat.request.pending-timeout-seconds 后由重试接管。
+     * </p>
+     * @return 已存在的AI回复；首次处理时返回null
      */
-    private String extractAnswerFromResponse(String aiResponse) {
+    private ChatMessage saveUserMessageIdempotently(Long sessionId, Long userId, String content, String requestId) {
+        ChatMessage existingReply = findReplyByRequestId(sessionId, requestId);
+        if (existingReply != null) {
+            log.info("重复的聊天请求，返回已有回复，sessionId: {}, requestId: {}", sessionId, requestId);
+            return existingReply;
+        }
+
         try {
-            JSONObject responseJson = JSONObject.parseObject(aiResponse);
-            if (responseJson.containsKey("answer")) {
-                return responseJson.getString("answer");
-            } else if (responseJson.containsKey("response")) {
-                return responseJson.getString("response");
+            saveMessage(sessionId, userId, content, "user", requestId);
+            return null;
+        } catch (DuplicateKeyException e) {
+            existingReply = findReplyByRequestId(sessionId, requestId);
+            if (existingReply != null) {
+                return existingReply;
+            }
+            if (releaseStaleRequest(sessionId, requestId)) {
+                log.warn("接管超时未完成的聊天请求，sessionId: {}, requestId: {}", sessionId, requestId);
+                saveMessage(sessionId, userId, content, "user", requestId);
+                return null;
             }
+            log.warn("重复的聊天请求仍在处理中，sessionId: {}, requestId: {}", sessionId, requestId);
+            throw new RuntimeException("该消息正在处理中，请勿重复提交");
+        }
+    }
+
+    private ChatMessage findReplyByRequestId(Long sessionId, String requestId) {
+        if (requestId == null || requestId.isEmpty()) {
+            return null;
+        }
+        LambdaQueryWrapper<ChatMessage> queryWrapper = new LambdaQueryWrapper<>();
+        queryWrapper.eq(ChatMessage::getSessionId, sessionId)
+                .eq(ChatMessage::getRequestId, requestId)
+                .eq(ChatMessage::getRole, "assistant");
+        return messageMapper.selectOne(queryWrapper);
+    }
+
+    /**
+     * 处理失败时删除该请求的用户消息，释放请求ID，使客户端可以重试
+     */
+    private void releaseRequest(Long sessionId, String requestId) {
+        if (requestId == null || requestId.isEmpty()) {
+            return;
+        }
+        try {
+            messageMapper.delete(userMessageQuery(sessionId, requestId));
+            chatHistoryStore.evict(sessionId);
         } catch (Exception e) {
-            // 如果解析失败，使用原始内容
-            log.debug("解析AI回复JSON失败，使用原始内容: {}", e.getMessage());
+            log.error("释放聊天请求失败，sessionId: {}, requestId: {}", sessionId, requestId, e);
         }
-        return aiResponse;
+    }
+
+    /**
+     * 删除超过处理时限仍没有回复的用户消息（处理该请求的进程已退出）
+     * @return 是否删除了用户消息
+     */
+    private boolean releaseStaleRequest(Long sessionId, String requestId) {
+        LambdaQueryWrapper<ChatMessage> queryWrapper = userMessageQuery(sessionId, requestId)
+                .lt(ChatMessage::getCreateTime, LocalDateTime.now().minusSeconds(pendingTimeoutSeconds));
+        if (messageMapper.delete(queryWrapper) == 0) {
+            return false;
+        }
+        chatHistoryStore.evict(sessionId);
+        return true;
+    }
+
+    private LambdaQueryWrapper<ChatMessage> userMessageQuery(Long sessionId, String requestId) {
+        LambdaQueryWrapper<ChatMessage> queryWrapper = new LambdaQueryWrapper<>();
+        queryWrapper.eq(ChatMessage::getSessionId, sessionId)
+                .eq(ChatMessage::getRequestId, requestId)
+                .eq(ChatMessage::getRole, "user");
+        return queryWrapper;
+    }
+
+    /**
+     * 由答案和来源列拼出前端展示的精简响应 {"answer": ..., "sources": [...]}
+     * 来源列本身就是JSON数组，直接拼接，不需要解析
+     */
+    private String buildFrontendContent(ChatMessage assistantMessage) {
+        String sources = assistantMessage.getSources() != null ? assistantMessage.getSources() : "[]";
+        return "{\"answer\":" + JSON.toJSONString(assistantMessage.getAnswer()) + ",\"sources\":" + sources + "}";
     }
 
     /**
@@ -220,38 +444,16 @@ public class ChatServiceImpl implements ChatService {
      */
     private String buildLogicalPath(Long userId, String relativePath) {
         try {
-            // 将相对路径转换为绝对路径
+            // 将相对路径转换为绝对路径，再在用户的路径索引中查找
             String absolutePath = convertToAbsolutePath(relativePath);
-            
-            // 根据绝对路径查找文件记录
-            LambdaQueryWrapper<File> fileQuery = new LambdaQueryWrapper<>();
-            fileQuery.eq(File::getUserId, userId)
-                    .eq(File::getFilePath, absolutePath);
-            File file = fileMapper.selectOne(fileQuery);
-            
-            if (file == null) {
-                log.warn("未找到文件记录，absolutePath: {}, relativePath: {}, userId: {}", 
+            String logicalPath = filePathIndex.resolveLogicalPath(userId, absolutePath);
+            if (logicalPath == null) {
+                log.warn("未找到文件记录，absolutePath: {}, relativePath: {}, userId: {}",
                         absolutePath, relativePath, userId);
                 return relativePath; // 如果找不到文件记录，返回原始相对路径
             }
-            
-            // 构建逻辑路径：从根文件夹到文件的完整路径
-            StringBuilder logicalPath = new StringBuilder();
-            
-            // 如果文件在根目录下（folderId为0），直接返回文件名
-            if (file.getFolderId() == 0) {
-                return file.getFileName();
-            }
-            
-            // 递归构建文件夹路径
-            String folderPath = buildFolderPath(file.getFolderId());
-            if (!folderPath.isEmpty()) {
-                logicalPath.append(folderPath).append("/");
-            }
-            logicalPath.append(file.getFileName());
-            
-            return logicalPath.toString();
-            
+            return logicalPath;
+
         } catch (Exception e) {
             log.error("构建逻辑路径失败，relativePath: {}, userId: {}", relativePath, userId, e);
             return relativePath; // 出错时返回原始相对路径
@@ -290,167 +492,25 @@ public class ChatServiceImpl implements ChatService {
     }
 
     /**
-     * 递归构建文件夹路径
-     * @param folderId 文件夹ID
-     * @return 从根文件夹到当前文件夹的路径
-     */
-    private String buildFolderPath(Long folderId) {
-        if (folderId == null || folderId == 0) {
-            return ""; // 根文件夹
-        }
-        
-        try {
-            Folder folder = folderMapper.selectById(folderId);
-            if (folder == null) {
-                log.warn("未找到文件夹记录，folderId: {}", folderId);
-                return "";
-            }
-            
-            // 递归获取父文件夹路径
-            String parentPath = buildFolderPath(folder.getParentId());
-            
-            if (parentPath.isEmpty()) {
-                return folder.getFolderName();
-            } else {
-                return parentPath + "/" + folder.getFolderName();
-            }
-            
-        } catch (Exception e) {
-            log.error("构建文件夹路径失败，folderId: {}", folderId, e);
-            return "";
-        }
-    }
-
-    /**
-     * 处理RAG响应，将相对路径转换为逻辑路径
+     * 处理RAG响应，将来源中的相对路径原地替换为逻辑路径
      * @param userId 用户ID
-     * @param ragResponse RAG API的原始响应（包含相对路径）
-     * @return 处理后的响应（包含逻辑路径）
-     */
-    private String processRagResponse(Long userId, String ragResponse) {
-        try {
-            JSONObject responseJson = JSONObject.parseObject(ragResponse);
-            
-            // 处理sources字段中的路径，将相对路径转换为逻辑路径
-            if (responseJson.containsKey("sources")) {
-                com.alibaba.fastjson.JSONArray sources = responseJson.getJSONArray("sources");
-                for (int i = 0; i < sources.size(); i++) {
-                    JSONObject source = sources.getJSONObject(i);
-                    if (source.containsKey("source")) {
-                        String relativePath = source.getString("source");
-                        String logicalPath = buildLogicalPath(userId, relativePath);
-                        source.put("source", logicalPath);
-                        log.debug("路径转换完成: {} -> {}", relativePath, logicalPath);
-                    }
-                }
-            }
-            
-            return responseJson.toJSONString();
-            
-        } catch (Exception e) {
-            log.error("处理RAG响应失败，userId: {}", userId, e);
-            return ragResponse; // 出错时返回原始响应
-        }
-    }
-
-    /**
-     * 提取核心响应信息用于前端展示（移除冗余字段）
-     * @param ragResponse 完整的RAG响应
-     * @return 精简的响应，只包含answer和sources
+     * @param ragResponse RAG API的响应（包含相对路径）
+     * @return 同一个响应对象（包含逻辑路径）
      */
-    private String extractCoreResponseForFrontend(String ragResponse) {
-        try {
-            JSONObject responseJson = JSONObject.parseObject(ragResponse);
-            JSONObject coreResponse = new JSONObject();
-            
-            // 只保留核心字段
-            if (responseJson.containsKey("answer")) {
-                coreResponse.put("answer", responseJson.getString("answer"));
-            } else if (responseJson.containsKey("response")) {
-                coreResponse.put("answer", responseJson.getString("response"));
+    private RagChatResponse processRagResponse(Long userId, RagChatResponse ragResponse) {
+        return timeStage("path_resolution", () -> {
+            if (ragResponse.getSources() == null) {
+                ragResponse.setSources(new ArrayList<>());
             }
-            
-            if (responseJson.containsKey("sources")) {
-                coreResponse.put("sources", responseJson.getJSONArray("sources"));
-            } else {
-                coreResponse.put("sources", new com.alibaba.fastjson.JSONArray());
-            }
-            
-            return coreResponse.toJSONString();
-            
-        } catch (Exception e) {
-            log.error("提取核心响应失败", e);
-            return ragResponse; // 出错时返回原始响应
-        }
-    }
-
-    private String getAIResponse(Long userId, String userInput, Long sessionId) {
-        try {
-            // 获取当前会话的历史消息
-            List<ChatMessage> historyMessages = getMessageHistory(sessionId);
-            
-            // 构建请求体调用Flask RAG后端
-            Map<String, Object> requestBody = new HashMap<>();
-            requestBody.put("message", userInput);
-            // 根据用户ID动态设置document_path
-            requestBody.put("document_path", "user_" + userId);
-            requestBody.put("conversation_id", "session_" + sessionId);
-            
-            // 构建历史对话数据
-            if (!historyMessages.isEmpty()) {
-                List<Map<String, Object>> history = new ArrayList<>();
-                
-                // 将消息配对成问答对，限制最近10轮对话
-                for (int i = 0; i < historyMessages.size() - 1; i += 2) {
-                    ChatMessage userMsg = historyMessages.get(i);
-                    if (i + 1 < historyMessages.size()) {
-                        ChatMessage assistantMsg = historyMessages.get(i + 1);
-                        
-                        // 确保是正确的用户-助手配对
-                        if ("user".equals(userMsg.getRole()) && "assistant".equals(assistantMsg.getRole())) {
-                            Map<String, Object> historyItem = new HashMap<>();
-                            historyItem.put("question", userMsg.getContent());
-                            historyItem.put("answer", extractAnswerFromResponse(assistantMsg.getContent()));
-                            historyItem.put("timestamp", assistantMsg.getCreateTime().toString());
-                            history.add(historyItem);
-                            
-                            // 限制历史记录数量，避免请求过大
-                            if (history.size() >= 10) {
-                                break;
-                            }
-                        }
-                    }
-                }
-                
-                if (!history.isEmpty()) {
-                    requestBody.put("history", history);
-                    log.info("传递历史对话记录数量: {}", history.size());
+            for (RagChatResponse.Source source : ragResponse.getSources()) {
+                String relativePath = source.getSource();
+                if (relativePath != null) {
+                    source.setSource(buildLogicalPath(userId, relativePath));
+                    log.debug("路径转换完成: {} -> {}", relativePath, source.getSource());
                 }
             }
-
-            JSONObject jsonResponse = HttpClientUtil.getInstance()
-                    .url(ragApiUrl + "/chat")
-                    .addHeader("Accept", "application/json")
-                    .addHeader("Content-Type", "application/json")
-                    .jsonBody(requestBody)
-                    .post()
-                    .executeForJson();
-            
-            log.info("RAG API response: {}", jsonResponse.toJSONString());
-            
-            // 解析响应内容 - 返回完整的JSON响应而不是只返回文本
-            if (jsonResponse.containsKey("answer") || jsonResponse.containsKey("response")) {
-                // 处理响应中的路径信息，将物理路径转换为逻辑路径
-                String processedResponse = processRagResponse(userId, jsonResponse.toJSONString());
-                return processedResponse;
-            }
-
-            log.error("Invalid RAG API response format: {}", jsonResponse);
-            return "{\"answer\":\"抱歉，获取AI回复时发生错误\",\"sources\":[]}";
-        } catch (Exception e) {
-            log.error("调用RAG API失败", e);
-            return "{\"answer\":\"抱歉，AI服务暂时不可用，请稍后再试。\",\"sources\":[]}";
-        }
+            return ragResponse;
+        });
     }
 
     /**
@@ -474,10 +534,9 @@ public class ChatServiceImpl implements ChatService {
 
     /**
      * 清除会话的聊天历史
-     * 同时通知RAG后端清除对话历史
+     * 同时通知RAG后端清除对话历史（在数据库事务提交之后调用，不占用数据库连接）
      */
     @Override
-    @Transactional
     public boolean clearSessionHistory(Long sessionId, Long userId) {
         // 验证会话存在且属于当前用户
         ChatSession session = sessionMapper.selectById(sessionId);
@@ -485,29 +544,34 @@ public class ChatServiceImpl implements ChatService {
             return false;
         }
 
-        // 删除数据库中的消息记录
-        LambdaQueryWrapper<ChatMessage> messageQueryWrapper = new LambdaQueryWrapper<>();
-        messageQueryWrapper.eq(ChatMessage::getSessionId, sessionId);
-        messageMapper.delete(messageQueryWrapper);
-
-        // 通知RAG后端清除对话历史
-        try {
-            HttpClientUtil.getInstance()
-                    .url(ragApiUrl + "/conversations/session_" + sessionId + "/clear")
-                    .addHeader("Content-Type", "application/json")
-                    .post()
-                    .execute();
-            log.info("已通知RAG后端清除会话历史，sessionId: {}", sessionId);
-        } catch (Exception e) {
-            log.warn("通知RAG后端清除对话历史失败，sessionId: {}", sessionId, e);
-            // 即使RAG后端清除失败，数据库的清除仍然成功
-        }
-
-        // 更新会话时间
-        LambdaUpdateWrapper<ChatSession> updateWrapper = new LambdaUpdateWrapper<>();
-        updateWrapper.eq(ChatSession::getId, sessionId)
-                .set(ChatSession::getUpdateTime, LocalDateTime.now());
-        sessionMapper.update(null, updateWrapper);
+        transactionTemplate.executeWithoutResult(status -> {
+            // 删除数据库中的消息记录
+            LambdaQueryWrapper<ChatMessage> messageQueryWrapper = new LambdaQueryWrapper<>();
+            messageQueryWrapper.eq(ChatMessage::getSessionId, sessionId);
+            messageMapper.delete(messageQueryWrapper);
+
+            // 更新会话时间
+            LambdaUpdateWrapper<ChatSession> updateWrapper = new LambdaUpdateWrapper<>();
+            updateWrapper.eq(ChatSession::getId, sessionId)
+                    .set(ChatSession::getUpdateTime, LocalDateTime.now());
+            sessionMapper.update(null, updateWrapper);
+        });
+        chatHistoryStore.evict(sessionId);
+
+        // 异步通知RAG后端清除对话历史（失败时按退避策略重试），不等待结果
+        ragCallGuard.executeAsync("清除RAG对话历史", ragCallGuard.defaultPolicy(), () -> httpClientUtil
+                        .url(ragApiUrl + "/conversations/session_" + sessionId + "/clear")
+                        .addHeader("Content-Type", "application/json")
+                        .post()
+                        .executeAsync())
+                .whenComplete((response, e) -> {
+                    if (e != null) {
+                        // 即使RAG后端清除失败，数据库的清除仍然成功
+                        log.warn("通知RAG后端清除对话历史失败，sessionId: {}, 错误: {}", sessionId, e.getMessage());
+                    } else {
+                        log.info("已通知RAG后端清除会话历史，sessionId: {}", sessionId);
+                    }
+                });
 
         return true;
     }
@@ -551,42 +615,23 @@ public class ChatServiceImpl implements ChatService {
     }
 
     /**
-     * 递归收集文件夹中的所有文件路径
+     * 收集文件夹（含所有子文件夹）中的所有文件路径
+     * 按文件夹的物化路径一次查询整个子树，不再逐层递归查询
      * @param userId 用户ID
      * @param folderId 文件夹ID
      * @return 文件路径列表
      */
     private List<String> collectFolderPaths(Long userId, Long folderId) {
-        List<String> paths = new ArrayList<>();
-        
         // 验证文件夹归属
         Folder folder = folderMapper.selectById(folderId);
         if (folder == null || !folder.getUserId().equals(userId)) {
             log.warn("文件夹不存在或无权限访问，folderId: {}, userId: {}", folderId, userId);
-            return paths;
+            return new ArrayList<>();
         }
-        
-        // 获取当前文件夹下的所有文件
-        LambdaQueryWrapper<File> fileQuery = new LambdaQueryWrapper<>();
-        fileQuery.eq(File::getFolderId, folderId)
-                .eq(File::getUserId, userId);
-        List<File> files = fileMapper.selectList(fileQuery);
-        
-        for (File file : files) {
-            paths.add(file.getFilePath());
-        }
-        
-        // 递归处理子文件夹
-        LambdaQueryWrapper<Folder> folderQuery = new LambdaQueryWrapper<>();
-        folderQuery.eq(Folder::getParentId, folderId)
-                .eq(Folder::getUserId, userId);
-        List<Folder> subFolders = folderMapper.selectList(folderQuery);
-        
-        for (Folder subFolder : subFolders) {
-            paths.addAll(collectFolderPaths(userId, subFolder.getId()));
-        }
-        
-        return paths;
+
+        return fileMapper.selectUnderFolderPath(userId, folder.getPath()).stream()
+                .map(File::getFilePath)
+                .collect(Collectors.toList());
     }
 
     /**
@@ -595,83 +640,263 @@ public class ChatServiceImpl implements ChatService {
      * @param userInput 用户输入
      * @param sessionId 会话ID
      * @param documentPaths 文档路径列表
-     * @return AI回复
+     * @return AI回复（已完成路径转换），失败时为降级提示
      */
-    private String getAIResponseWithDocuments(Long userId, String userInput, Long sessionId, List<String> documentPaths) {
+    private RagChatResponse getAIResponseWithDocuments(Long userId, String userInput, Long sessionId, List<String> documentPaths) {
+        Map<String, Object> requestBody;
         try {
-            // 获取当前会话的历史消息
-            List<ChatMessage> historyMessages = getMessageHistory(sessionId);
-            
-            // 构建请求体调用Flask RAG后端
-            Map<String, Object> requestBody = new HashMap<>();
-            requestBody.put("message", userInput);
-            
-            // 设置文档路径（如果为空或只有一个路径则使用字符串，否则使用数组）
-            if (documentPaths.isEmpty()) {
-                requestBody.put("document_path", "user_" + userId);
-            } else if (documentPaths.size() == 1) {
-                requestBody.put("document_path", documentPaths.get(0));
-            } else {
-                requestBody.put("document_path", documentPaths);
-            }
-            
-            requestBody.put("conversation_id", "session_" + sessionId);
-            
-            // 构建历史对话数据
-            if (!historyMessages.isEmpty()) {
-                List<Map<String, Object>> history = new ArrayList<>();
-                
-                // 将消息配对成问答对，限制最近10轮对话
-                for (int i = 0; i < historyMessages.size() - 1; i += 2) {
-                    ChatMessage userMsg = historyMessages.get(i);
-                    if (i + 1 < historyMessages.size()) {
-                        ChatMessage assistantMsg = historyMessages.get(i + 1);
-                        
-                        // 确保是正确的用户-助手配对
-                        if ("user".equals(userMsg.getRole()) && "assistant".equals(assistantMsg.getRole())) {
-                            Map<String, Object> historyItem = new HashMap<>();
-                            historyItem.put("question", userMsg.getContent());
-                            historyItem.put("answer", extractAnswerFromResponse(assistantMsg.getContent()));
-                            historyItem.put("timestamp", assistantMsg.getCreateTime().toString());
-                            history.add(historyItem);
-                            
-                            // 限制历史记录数量，避免请求过大
-                            if (history.size() >= 10) {
-                                break;
-                            }
-                        }
-                    }
-                }
-                
-                if (!history.isEmpty()) {
-                    requestBody.put("history", history);
-                    log.info("传递历史对话记录数量: {}", history.size());
-                }
-            }
+            requestBody = buildRagRequestBody(userId, userInput, sessionId, documentPaths);
+        } catch (Exception e) {
+            log.error("构建RAG请求失败", e);
+            return RagChatResponse.fallback(UNAVAILABLE_ANSWER);
+        }
+        return requestChatAnswer(userId, requestBody);
+    }
 
-            JSONObject jsonResponse = HttpClientUtil.getInstance()
-                    .url(ragApiUrl + "/chat")
-                    .addHeader("Accept", "application/json")
-                    .addHeader("Content-Type", "application/json")
-                    .jsonBody(requestBody)
-                    .post()
-                    .executeForJson();
-            
-            log.info("RAG API response: {}", jsonResponse.toJSONString());
-            log.info("使用的文档路径: {}", documentPaths);
-            
-            // 解析响应内容 - 返回完整的JSON响应而不是只返回文本
-            if (jsonResponse.containsKey("answer") || jsonResponse.containsKey("response")) {
+    /**
+     * 调用RAG /chat 接口
+     * @param userId 用户ID
+     * @param requestBody 请求体
+     * @return AI回复（已完成路径转换），失败时为降级提示
+     */
+    private RagChatResponse requestChatAnswer(Long userId, Map<String, Object> requestBody) {
+        try {
+            // 聊天请求不重试（RAG后端会记录对话历史），熔断时立即返回不可用提示
+            // 响应体边读边解析为类型化对象，只解析一次
+            RagChatResponse response = timeStage("rag", () -> ragCallGuard.execute("调用RAG聊天接口",
+                    RagCallGuard.blocking(() -> httpClientUtil
+                            .url(ragApiUrl + "/chat")
+                            .readTimeout(Duration.ofSeconds(ragReadTimeoutSeconds))
+                            .addHeader("Accept", "application/json")
+                            .addHeader("Content-Type", "application/json")
+                            .jsonBody(requestBody)
+                            .post()
+                            .executeForObject(RagChatResponse.class))));
+
+            log.info("RAG API响应 - 来源数: {}, 使用的文档路径: {}",
+                    response.getSources() != null ? response.getSources().size() : 0, requestBody.get("document_path"));
+
+            if (response.hasAnswer()) {
                 // 处理响应中的路径信息，将物理路径转换为逻辑路径
-                String processedResponse = processRagResponse(userId, jsonResponse.toJSONString());
-                return processedResponse;
+                return processRagResponse(userId, response);
             }
 
-            log.error("Invalid RAG API response format: {}", jsonResponse);
-            return "{\"answer\":\"抱歉，获取AI回复时发生错误\",\"sources\":[]}";
+            log.error("Invalid RAG API response format: 缺少 answer/response 字段");
+            return RagChatResponse.fallback(INVALID_RESPONSE_ANSWER);
+        } catch (RagUnavailableException e) {
+            log.error("调用RAG API失败: {}", e.getMessage());
+            return RagChatResponse.fallback(UNAVAILABLE_ANSWER);
         } catch (Exception e) {
             log.error("调用RAG API失败", e);
-            return "{\"answer\":\"抱歉，AI服务暂时不可用，请稍后再试。\",\"sources\":[]}";
+            return RagChatResponse.fallback(UNAVAILABLE_ANSWER);
+        }
+    }
+
+    /**
+     * 构建调用RAG /chat 接口的请求体
+     * @param userId 用户ID
+     * @param userInput 用户输入
+     * @param sessionId 会话ID
+     * @param documentPaths 文档路径列表（为空时使用user_{userId}）
+     * @return 请求体
+     */
+    private Map<String, Object> buildRagRequestBody(Long userId, String userInput, Long sessionId, List<String> documentPaths) {
+        Map<String, Object> requestBody = new HashMap<>();
+        requestBody.put("message", userInput);
+        
+        // 设置文档路径（如果为空或只有一个路径则使用字符串，否则使用数组）
+        if (documentPaths.isEmpty()) {
+            requestBody.put("document_path", "user_" + userId);
+        } else if (documentPaths.size() == 1) {
+            requestBody.put("document_path", documentPaths.get(0));
+        } else {
+            requestBody.put("document_path", documentPaths);
+        }
+        
+        requestBody.put("conversation_id", "session_" + sessionId);
+
+        List<Map<String, Object>> history = timeStage("history", () -> buildConversationHistory(sessionId));
+        if (!history.isEmpty()) {
+            requestBody.put("history", history);
+            log.info("传递历史对话记录数量: {}", history.size());
+        }
+        return requestBody;
+    }
+
+    /**
+     * 构建历史对话数据（最近的问答对）
+     * <p>
+     * 优先读取Redis中的最近对话缓存，未命中时按 (session_id, create_time DESC) 只查询最近的
+     * {@link ChatHistoryStore#capacity()} 条消息并回填缓存，耗时与会话总长度无关。
+     * </p>
+     * @param sessionId 会话ID
+     * @return 历史问答列表（按时间正序，最多 maxTurns 轮）
+     */
+    private List<Map<String, Object>> buildConversationHistory(Long sessionId) {
+        List<ChatHistoryEntry> entries = chatHistoryStore.getOrLoad(sessionId, () -> loadRecentHistoryEntries(sessionId));
+
+        // 将消息配对成问答对（用户消息后紧跟助手消息）
+        List<Map<String, Object>> history = new ArrayList<>();
+        ChatHistoryEntry pendingQuestion = null;
+        for (ChatHistoryEntry entry : entries) {
+            if ("user".equals(entry.getRole())) {
+                pendingQuestion = entry;
+            } else if ("assistant".equals(entry.getRole()) && pendingQuestion != null) {
+                Map<String, Object> historyItem = new HashMap<>();
+                historyItem.put("question", pendingQuestion.getContent());
+                historyItem.put("answer", entry.getContent());
+                historyItem.put("timestamp", entry.getTimestamp());
+                history.add(historyItem);
+                pendingQuestion = null;
+            }
+        }
+
+        // 限制历史记录数量，只保留最近的几轮，避免请求过大
+        int maxTurns = chatHistoryStore.getMaxTurns();
+        if (history.size() > maxTurns) {
+            history = new ArrayList<>(history.subList(history.size() - maxTurns, history.size()));
+        }
+        return history;
+    }
+
+    /**
+     * 从数据库加载会话最近的消息（按时间正序）
+     */
+    private List<ChatHistoryEntry> loadRecentHistoryEntries(Long sessionId) {
+        List<ChatMessage> recentMessages = messageMapper.selectRecentBySessionId(sessionId, chatHistoryStore.capacity());
+        List<ChatHistoryEntry> entries = new ArrayList<>(recentMessages.size());
+        for (int i = recentMessages.size() - 1; i >= 0; i--) {
+            entries.add(toHistoryEntry(recentMessages.get(i)));
+        }
+        return entries;
+    }
+
+    private ChatHistoryEntry toHistoryEntry(ChatMessage message) {
+        String content = "assistant".equals(message.getRole()) ? message.getAnswer() : message.getContent();
+        return new ChatHistoryEntry(message.getRole(), content, message.getCreateTime().toString());
+    }
+
+    /**
+     * 调用RAG流式接口，将回答片段逐条推送给前端，流结束后保存AI回复
+     * <p>
+     * RAG后端 /chat/stream 返回 text/event-stream，每条 data 为JSON：
+     * {"type":"token","content":"..."} 表示一个回答片段，
+     * {"type":"done","answer":"...","sources":[...]} 表示最终结果。
+     * </p>
+     * @param userId 用户ID
+     * @param sessionId 会话ID
+     * @param requestId 客户端请求ID
+     * @param requestBody 请求体
+     * @param emitter SSE发送器
+     */
+    private void relayStreamingResponse(Long userId, Long sessionId, String requestId,
+                                        Map<String, Object> requestBody, SseEmitter emitter) {
+        Timer.Sample turn = Timer.start(meterRegistry);
+        try {
+            doRelayStreamingResponse(userId, sessionId, requestId, requestBody, emitter);
+        } finally {
+            turn.stop(meterRegistry.timer("chat.turn", "mode", "stream"));
+        }
+    }
+
+    private void doRelayStreamingResponse(Long userId, Long sessionId, String requestId,
+                                          Map<String, Object> requestBody, SseEmitter emitter) {
+        AtomicBoolean clientConnected = new AtomicBoolean(true);
+        RagChatResponse aiResponse = System.currentTimeMillis() < streamingUnsupportedUntil
+                ? relayWholeAnswer(userId, requestBody, emitter, clientConnected)
+                : relayStreamedAnswer(userId, sessionId, requestBody, emitter, clientConnected);
+
+        try {
+            // 流结束后保存AI回复，content 即前端需要的精简响应
+            ChatMessage assistantMessage = saveReplyOrRelease(sessionId, userId, aiResponse, requestId);
+            sendEvent(emitter, "done", assistantMessage, clientConnected);
+            emitter.complete();
+        } catch (Exception e) {
+            log.error("保存流式AI回复失败，sessionId: {}", sessionId, e);
+            releaseRequest(sessionId, requestId);
+            emitter.completeWithError(e);
+        }
+    }
+
+    /**
+     * 通过 /chat/stream 逐段转发回答
+     * RAG后端没有流式接口（404）时改用 /chat，并在 {@link #STREAMING_RECHECK_MS} 内不再尝试流式接口
+     * @return AI回复（已完成路径转换），失败时为降级提示
+     */
+    private RagChatResponse relayStreamedAnswer(Long userId, Long sessionId, Map<String, Object> requestBody,
+                                                SseEmitter emitter, AtomicBoolean clientConnected) {
+        StringBuilder answer = new StringBuilder();
+        AtomicReference<RagChatResponse> finalPayload = new AtomicReference<>();
+        try {
+            timeStage("rag", () -> ragCallGuard.execute("调用RAG流式接口", RagCallGuard.blocking(() -> {
+                httpClientUtil
+                        .url(ragApiUrl + "/chat/stream")
+                        .readTimeout(Duration.ofSeconds(ragReadTimeoutSeconds))
+                        .addHeader("Accept", "text/event-stream")
+                        .addHeader("Content-Type", "application/json")
+                        .jsonBody(requestBody)
+                        .post()
+                        .executeForEventStream(RagChatResponse.class, event -> {
+                            String type = event.getType();
+                            if ("token".equals(type)) {
+                                String token = event.getContent();
+                                if (token != null) {
+                                    answer.append(token);
+                                    sendEvent(emitter, "token", token, clientConnected);
+                                }
+                            } else if ("done".equals(type)) {
+                                finalPayload.set(event);
+                            }
+                        });
+                return null;
+            })));
+
+            RagChatResponse response = finalPayload.get() != null ? finalPayload.get() : new RagChatResponse();
+            if (!response.hasAnswer()) {
+                response.setAnswer(answer.toString());
+            }
+            return processRagResponse(userId, response);
+        } catch (Exception e) {
+            HttpStatusException statusException = HttpStatusException.find(e);
+            if (statusException != null && statusException.getStatusCode() == 404) {
+                streamingUnsupportedUntil = System.currentTimeMillis() + STREAMING_RECHECK_MS;
+                log.warn("RAG后端不支持流式接口，改用非流式接口，{}分钟后重新尝试", STREAMING_RECHECK_MS / 60000);
+                return relayWholeAnswer(userId, requestBody, emitter, clientConnected);
+            }
+            log.error("调用RAG流式API失败，sessionId: {}", sessionId, e);
+            return RagChatResponse.fallback(UNAVAILABLE_ANSWER);
+        }
+    }
+
+    /**
+     * 通过非流式 /chat 接口获取完整回答，作为一个片段推送
+     */
+    private RagChatResponse relayWholeAnswer(Long userId, Map<String, Object> requestBody,
+                                             SseEmitter emitter, AtomicBoolean clientConnected) {
+        RagChatResponse response = requestChatAnswer(userId, requestBody);
+        sendEvent(emitter, "token", response.getAnswerText(), clientConnected);
+        return response;
+    }
+
+    /**
+     * 记录聊天各阶段耗时（chat.stage，按 stage 区分：history、rag、path_resolution）
+     */
+    private <T> T timeStage(String stage, Supplier<T> action) {
+        return meterRegistry.timer("chat.stage", "stage", stage).record(action);
+    }
+
+    /**
+     * 向前端推送一条SSE事件，客户端断开后不再推送但继续读取RAG响应以便保存完整回复
+     */
+    private void sendEvent(SseEmitter emitter, String name, Object data, AtomicBoolean clientConnected) {
+        if (!clientConnected.get()) {
+            return;
+        }
+        try {
+            emitter.send(SseEmitter.event().name(name).data(data));
+        } catch (IOException | IllegalStateException e) {
+            clientConnected.set(false);
+            log.warn("客户端已断开SSE连接，停止推送: {}", e.getMessage());
         }
     }
 
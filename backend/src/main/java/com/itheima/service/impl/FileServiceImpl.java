@@ -1,38 +1,80 @@
 package com.itheima.service.impl;
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.itheima.dto.BatchItemResult;
+import com.itheima.dto.FileDownload;
+import com.itheima.dto.InstantUploadCheck;
+import com.itheima.dto.SearchHit;
+import com.itheima.dto.TextPage;
 import com.itheima.mapper.FileMapper;
 import com.itheima.pojo.File;
+import com.itheima.pojo.FileChange;
+import com.itheima.service.BlobStore;
+import com.itheima.service.FileChangeJournal;
+import com.itheima.service.FilePathIndex;
+import com.itheima.service.FileSearchIndex;
 import com.itheima.service.FileService;
+import com.itheima.service.StorageReclaimer;
+import com.itheima.service.TextContentReader;
 import com.itheima.service.VectorStoreEventListener;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.FileSystemResource;
-import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class FileServiceImpl extends ServiceImpl<FileMapper, File> implements FileService {
+    private static final int MAX_SEARCH_RESULTS = 100;
+
     @Value("${file.storage.root}")
     private String storageRoot;
 
+    @Value("${file.batch.max-size:500}")
+    private int maxBatchSize;
+
     private final FolderServiceImpl folderService;
+    private final FilePathIndex filePathIndex;
+    private final FileSearchIndex fileSearchIndex;
+    private final FileChangeJournal fileChangeJournal;
+    private final MeterRegistry meterRegistry;
+    private final BlobStore blobStore;
+    private final TextContentReader textContentReader;
+    private final StorageReclaimer storageReclaimer;
+    private final TransactionTemplate transactionTemplate;
     
     @Autowired(required = false)
     private VectorStoreEventListener vectorStoreEventListener;
@@ -44,13 +86,73 @@ public class FileServiceImpl extends ServiceImpl<FileMapper, File> implements Fi
     public File uploadFile(Long userId, Long folderId, MultipartFile file) throws IOException {
         validateFolderAccess(userId, folderId);
 
+        long start = System.nanoTime();
+        BlobStore.StagedContent content;
+        try (InputStream in = file.getInputStream()) {
+            content = blobStore.stage(in);
+        }
+        recordUpload("multipart", content.size(), System.nanoTime() - start);
+        File fileEntity = storeFileOrDiscard(userId, folderId, file.getOriginalFilename(), content);
+
+        // 触发向量存储重建事件
+        if (vectorStoreEventListener != null) {
+            vectorStoreEventListener.onFileUploaded(userId);
+        }
+
+        return fileEntity;
+    }
+
+    @Override
+    @Transactional
+    public File registerUploadedFile(Long userId, Long folderId, String fileName, BlobStore.StagedContent content)
+            throws IOException {
+        validateFolderAccess(userId, folderId);
+
+        // 哈希已由调用方在事务之外计算；事务回滚时保留临时文件，会话可以重新完成
+        File fileEntity = storeFile(userId, folderId, fileName, content, true);
+
+        // 触发向量存储重建事件
+        if (vectorStoreEventListener != null) {
+            vectorStoreEventListener.onFileUploaded(userId);
+        }
+
+        return fileEntity;
+    }
+
+    @Override
+    public InstantUploadCheck checkInstantUpload(Long userId, String contentHash, long fileSize) {
+        String hash = contentHash != null ? contentHash.toLowerCase() : null;
+        if (!blobStore.contains(hash, fileSize)) {
+            return InstantUploadCheck.missing();
+        }
+        return InstantUploadCheck.exists(blobStore.proofOffset(userId, hash, fileSize), blobStore.proofLength(fileSize));
+    }
+
+    @Override
+    @Transactional
+    public File instantUpload(Long userId, Long folderId, String fileName, String contentHash, long fileSize,
+                              String proof) throws IOException {
+        validateFileName(fileName);
+        validateFolderAccess(userId, folderId);
+        String hash = contentHash != null ? contentHash.toLowerCase() : null;
+        if (!blobStore.contains(hash, fileSize) || !blobStore.verifyProof(userId, hash, fileSize, proof)) {
+            throw new RuntimeException("服务器没有该文件内容或校验失败，请正常上传");
+        }
+
         Path storagePath = createStoragePath(userId);
-        String fileName = file.getOriginalFilename();
         String uniqueName = generateUniqueFilename(fileName);
         File fileEntity = buildFileEntity(userId, folderId, fileName, storagePath, uniqueName);
+        fileEntity.setContentHash(hash);
+        fileEntity.setFileSize(fileSize);
 
-        saveFileToDisk(file, storagePath.resolve(uniqueName));
         baseMapper.insert(fileEntity);
+        fileChangeJournal.record(FileChange.added(fileEntity));
+        if (!blobStore.linkExisting(hash, fileSize, storagePath.resolve(uniqueName))) {
+            throw new RuntimeException("服务器没有该文件内容或校验失败，请正常上传");
+        }
+        filePathIndex.onFileAdded(fileEntity);
+        fileSearchIndex.onFileAdded(fileEntity);
+        recordTransferBytes("file.upload.deduplicated.bytes", "instant", fileSize);
 
         // 触发向量存储重建事件
         if (vectorStoreEventListener != null) {
@@ -66,8 +168,12 @@ public class FileServiceImpl extends ServiceImpl<FileMapper, File> implements Fi
         File file = validateFileOwnership(userId, fileId);
         validateFolderAccess(userId, targetFolderId);
 
+        Long previousFolderId = file.getFolderId();
         file.setFolderId(targetFolderId);
         baseMapper.updateById(file);
+        fileChangeJournal.record(FileChange.moved(file, previousFolderId));
+        filePathIndex.onFileMoved(userId, fileId, targetFolderId);
+        fileSearchIndex.onFileMoved(userId, fileId, targetFolderId);
         
         // 触发向量存储重建事件
         if (vectorStoreEventListener != null) {
@@ -85,8 +191,12 @@ public class FileServiceImpl extends ServiceImpl<FileMapper, File> implements Fi
         String extension = getFileExtension(file.getFileName());
         String newFileName = newName + (extension != null ? "." + extension : "");
 
+        String previousFileName = file.getFileName();
         file.setFileName(newFileName);
         baseMapper.updateById(file);
+        fileChangeJournal.record(FileChange.renamed(file, previousFileName));
+        filePathIndex.onFileRenamed(userId, fileId, newFileName);
+        fileSearchIndex.onFileRenamed(userId, fileId, newFileName);
 
         // 触发向量存储重建事件
         if (vectorStoreEventListener != null) {
@@ -97,14 +207,184 @@ public class FileServiceImpl extends ServiceImpl<FileMapper, File> implements Fi
     }
 
     @Override
-    public Resource downloadFile(Long userId, Long fileId) throws IOException {
+    public List<BatchItemResult> uploadFiles(Long userId, Long folderId, List<MultipartFile> files) throws IOException {
+        validateBatchSize(files);
+        validateFolderAccess(userId, folderId);
+
+        // 先在事务之外把所有文件写入临时文件，单个文件的问题（文件名不合法、读取失败）只影响它自己
+        List<BatchItemResult> results = new ArrayList<>(files.size());
+        List<String> fileNames = new ArrayList<>();
+        List<BlobStore.StagedContent> staged = new ArrayList<>();
+        long start = System.nanoTime();
+        long bytes = 0;
+        for (MultipartFile file : files) {
+            String fileName = file.getOriginalFilename();
+            try (InputStream in = file.getInputStream()) {
+                validateFileName(fileName);
+                BlobStore.StagedContent content = blobStore.stage(in);
+                fileNames.add(fileName);
+                staged.add(content);
+                bytes += content.size();
+                results.add(null);
+            } catch (IOException | IllegalArgumentException e) {
+                results.add(BatchItemResult.failed(null, fileName, e.getMessage()));
+            }
+        }
+        recordUpload("batch", bytes, System.nanoTime() - start);
+        if (staged.isEmpty()) {
+            return results;
+        }
+
+        // 再在一个短事务中登记（只有插入记录和创建硬链接）：数据库或存储出错时整批回滚
+        List<File> stored;
+        try {
+            stored = transactionTemplate.execute(status -> {
+                validateFolderAccess(userId, folderId);
+                List<File> rows = new ArrayList<>(staged.size());
+                for (int i = 0; i < staged.size(); i++) {
+                    try {
+                        rows.add(storeContent(userId, folderId, fileNames.get(i), staged.get(i), false));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                fileChangeJournal.recordAll(rows.stream().map(FileChange::added).toList());
+                return rows;
+            });
+        } catch (RuntimeException e) {
+            for (BlobStore.StagedContent content : staged) {
+                Files.deleteIfExists(content.tempFile());
+            }
+            if (e instanceof UncheckedIOException io) {
+                throw io.getCause();
+            }
+            throw e;
+        }
+
+        int next = 0;
+        for (int i = 0; i < results.size(); i++) {
+            if (results.get(i) == null) {
+                results.set(i, BatchItemResult.succeeded(stored.get(next++)));
+            }
+        }
+
+        // 整批只触发一次向量存储更新
+        if (vectorStoreEventListener != null) {
+            vectorStoreEventListener.onFileUploaded(userId);
+        }
+
+        return results;
+    }
+
+    @Override
+    @Transactional
+    public List<BatchItemResult> moveFiles(Long userId, List<Long> fileIds, Long targetFolderId) {
+        validateBatchSize(fileIds);
+        validateFolderAccess(userId, targetFolderId);
+        Map<Long, File> owned = validateBatchOwnership(userId, fileIds);
+
+        List<BatchItemResult> results = new ArrayList<>(fileIds.size());
+        List<FileChange> changes = new ArrayList<>();
+        for (Long fileId : new LinkedHashSet<>(fileIds)) {
+            File file = owned.get(fileId);
+            if (file == null) {
+                results.add(BatchItemResult.failed(fileId, null, "文件不存在或权限不足"));
+                continue;
+            }
+            if (!targetFolderId.equals(file.getFolderId())) {
+                Long previousFolderId = file.getFolderId();
+                file.setFolderId(targetFolderId);
+                changes.add(FileChange.moved(file, previousFolderId));
+            }
+            results.add(BatchItemResult.succeeded(file));
+        }
+        if (changes.isEmpty()) {
+            return results;
+        }
+
+        List<Long> movedIds = changes.stream().map(FileChange::getFileId).toList();
+        baseMapper.update(null, new LambdaUpdateWrapper<File>()
+                .set(File::getFolderId, targetFolderId)
+                .in(File::getId, movedIds)
+                .eq(File::getUserId, userId));
+        fileChangeJournal.recordAll(changes);
+        for (Long fileId : movedIds) {
+            filePathIndex.onFileMoved(userId, fileId, targetFolderId);
+            fileSearchIndex.onFileMoved(userId, fileId, targetFolderId);
+        }
+
+        // 整批只触发一次向量存储更新
+        if (vectorStoreEventListener != null) {
+            vectorStoreEventListener.onFileMoved(userId);
+        }
+
+        return results;
+    }
+
+    @Override
+    @Transactional
+    public List<BatchItemResult> deleteFiles(Long userId, List<Long> fileIds) {
+        validateBatchSize(fileIds);
+        Map<Long, File> owned = validateBatchOwnership(userId, fileIds);
+
+        List<BatchItemResult> results = new ArrayList<>(fileIds.size());
+        List<File> deleted = new ArrayList<>();
+        for (Long fileId : new LinkedHashSet<>(fileIds)) {
+            File file = owned.get(fileId);
+            if (file == null) {
+                results.add(BatchItemResult.failed(fileId, null, "文件不存在或权限不足"));
+                continue;
+            }
+            deleted.add(file);
+            results.add(BatchItemResult.succeeded(file));
+        }
+        if (deleted.isEmpty()) {
+            return results;
+        }
+
+        baseMapper.delete(new LambdaUpdateWrapper<File>()
+                .in(File::getId, deleted.stream().map(File::getId).toList())
+                .eq(File::getUserId, userId));
+        fileChangeJournal.recordAll(deleted.stream().map(FileChange::removed).toList());
+        storageReclaimer.enqueue(deleted);
+        blobStore.releaseAll(deleted);
+        for (File file : deleted) {
+            filePathIndex.onFileDeleted(userId, file.getId());
+            fileSearchIndex.onFileDeleted(userId, file.getId());
+        }
+        log.info("批量删除文件 - 用户: {}, 删除: {}, 失败: {}", userId, deleted.size(), results.size() - deleted.size());
+
+        // 整批只触发一次向量存储更新
+        if (vectorStoreEventListener != null) {
+            vectorStoreEventListener.onFileDeleted(userId);
+        }
+
+        return results;
+    }
+
+    @Override
+    public FileDownload downloadFile(Long userId, Long fileId) throws IOException {
         File file = validateFileOwnership(userId, fileId);
         Path filePath = getPhysicalFilePath(file);
 
-        if (!Files.exists(filePath)) {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(filePath, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
             throw new IOException("文件不存在于存储系统: " + filePath);
         }
-        return new FileSystemResource(filePath);
+        long size = attributes.size();
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        // 有内容哈希时直接作为ETag；历史文件的存储文件名带UUID且写入后不再修改，文件ID + 大小 + 修改时间即可唯一标识内容
+        String etag = file.getContentHash() != null
+                ? "\"" + file.getContentHash() + "\""
+                : "\"" + fileId + "-" + Long.toHexString(size) + "-" + Long.toHexString(lastModified) + "\"";
+        return new FileDownload(fileId, file.getFileName(), filePath, size, lastModified, etag);
+    }
+
+    @Override
+    public void recordDownload(long bytes) {
+        recordTransferBytes("file.download.bytes", "download", bytes);
     }
 
     @Override
@@ -113,7 +393,11 @@ public class FileServiceImpl extends ServiceImpl<FileMapper, File> implements Fi
         File file = validateFileOwnership(userId, fileId);
 
         baseMapper.deleteById(fileId);
-        deleteFileFromDisk(file);
+        fileChangeJournal.record(FileChange.removed(file));
+        filePathIndex.onFileDeleted(userId, fileId);
+        fileSearchIndex.onFileDeleted(userId, fileId);
+        storageReclaimer.enqueue(List.of(file));
+        blobStore.release(file.getContentHash());
         
         // 触发向量存储重建事件
         if (vectorStoreEventListener != null) {
@@ -134,12 +418,10 @@ public class FileServiceImpl extends ServiceImpl<FileMapper, File> implements Fi
         // 确保文件名有.txt扩展名
         String finalFileName = fileName.endsWith(".txt") ? fileName : fileName + ".txt";
 
-        Path storagePath = createStoragePath(userId);
-        String uniqueName = generateUniqueFilename(finalFileName);
-        File fileEntity = buildFileEntity(userId, folderId, finalFileName, storagePath, uniqueName);
-
-        saveContentToFile(content, storagePath.resolve(uniqueName));
-        baseMapper.insert(fileEntity);
+        long start = System.nanoTime();
+        BlobStore.StagedContent staged = blobStore.stage(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+        recordUpload("text", staged.size(), System.nanoTime() - start);
+        File fileEntity = storeFileOrDiscard(userId, folderId, finalFileName, staged);
 
         // 触发向量存储重建事件
         if (vectorStoreEventListener != null) {
@@ -152,8 +434,63 @@ public class FileServiceImpl extends ServiceImpl<FileMapper, File> implements Fi
     @Override
     public String getFileContent(Long userId, Long fileId) throws IOException {
         File file = validateFileOwnership(userId, fileId);
+        Path filePath = getTextFilePath(file);
 
-        // 检查文件是否为文本类型
+        // 整个文件读成一个字符串，大文件需要分页读取
+        long size = Files.size(filePath);
+        if (size > textContentReader.getMaxPageBytes()) {
+            throw new IllegalArgumentException("文件过大（" + size + " 字节），请分页读取");
+        }
+
+        // 读取文件内容
+        String content = Files.readString(filePath);
+        recordTransferBytes("file.download.bytes", "content", size);
+        log.info("文件内容读取成功: {}", filePath);
+        return content;
+    }
+
+    @Override
+    public TextPage readFileContent(Long userId, Long fileId, long offset, int length) throws IOException {
+        File file = validateFileOwnership(userId, fileId);
+        TextPage page = textContentReader.readBytes(getTextFilePath(file), offset, length);
+        recordTransferBytes("file.download.bytes", "content_page", page.getNextOffset() - page.getOffset());
+        return page;
+    }
+
+    @Override
+    public TextPage readFileLines(Long userId, Long fileId, long startLine, int lineCount) throws IOException {
+        File file = validateFileOwnership(userId, fileId);
+        // 行偏移索引按内容缓存：有内容哈希时相同内容共用一份索引，历史文件写入后不再修改，按路径缓存
+        String cacheKey = file.getContentHash() != null ? file.getContentHash() : file.getFilePath();
+        TextPage page = textContentReader.readLines(getTextFilePath(file), cacheKey, startLine, lineCount);
+        recordTransferBytes("file.download.bytes", "content_page", page.getNextOffset() - page.getOffset());
+        return page;
+    }
+
+    @Override
+    public List<SearchHit> searchFiles(Long userId, String query, Long folderId, boolean recursive, int limit) {
+        if (query == null || query.trim().isEmpty()) {
+            throw new IllegalArgumentException("搜索关键词不能为空");
+        }
+        Set<Long> folderIds = null;
+        if (folderId != null) {
+            validateFolderAccess(userId, folderId);
+            if (!recursive) {
+                folderIds = Set.of(folderId);
+            } else if (folderId != 0) {
+                folderIds = new HashSet<>(folderService.getSubtreeFolderIds(userId, folderId));
+            }
+        }
+        return fileSearchIndex.search(userId, query.trim(), folderIds, Math.max(1, Math.min(limit, MAX_SEARCH_RESULTS)));
+    }
+
+    // ========== 私有辅助方法 ==========
+
+
+    /**
+     * 检查文件是否为文本类型并返回物理路径
+     */
+    private Path getTextFilePath(File file) throws IOException {
         String fileName = file.getFileName().toLowerCase();
         if (!fileName.endsWith(".txt")) {
             throw new IllegalArgumentException("仅支持读取 .txt 文件内容");
@@ -163,15 +500,9 @@ public class FileServiceImpl extends ServiceImpl<FileMapper, File> implements Fi
         if (!Files.exists(filePath)) {
             throw new IOException("文件不存在于存储系统: " + filePath);
         }
-
-        // 读取文件内容
-        String content = Files.readString(filePath);
-        log.info("文件内容读取成功: {}", filePath);
-        return content;
+        return filePath;
     }
 
-    // ========== 私有辅助方法 ==========
-
     private void validateFolderAccess(Long userId, Long folderId) {
         if (folderId != 0) {
             folderService.validateFolderOwnership(userId, folderId);
@@ -196,26 +527,72 @@ public class FileServiceImpl extends ServiceImpl<FileMapper, File> implements Fi
                 .build();
     }
 
-    private void saveFileToDisk(MultipartFile file, Path targetPath) throws IOException {
-        file.transferTo(targetPath);
-        log.info("文件保存成功: {}", targetPath);
+    /**
+     * 写入文件记录和变更日志，并把暂存的内容存入内容寻址存储（相同内容只保存一份）
+     */
+    private File storeFile(Long userId, Long folderId, String fileName, BlobStore.StagedContent content,
+                           boolean keepTempOnRollback) throws IOException {
+        File fileEntity = storeContent(userId, folderId, fileName, content, keepTempOnRollback);
+        fileChangeJournal.record(FileChange.added(fileEntity));
+        return fileEntity;
     }
 
-    private void saveContentToFile(String content, Path filePath) throws IOException {
-        Files.writeString(filePath, content);
-        log.info("文本文件创建成功: {}", filePath);
+    /**
+     * 同 storeFile，但不写变更日志（批量上传时由调用方一次写入）
+     */
+    private File storeContent(Long userId, Long folderId, String fileName, BlobStore.StagedContent content,
+                              boolean keepTempOnRollback) throws IOException {
+        Path storagePath = createStoragePath(userId);
+        String uniqueName = generateUniqueFilename(fileName);
+        File fileEntity = buildFileEntity(userId, folderId, fileName, storagePath, uniqueName);
+        fileEntity.setContentHash(content.hash());
+        fileEntity.setFileSize(content.size());
+
+        baseMapper.insert(fileEntity);
+        blobStore.commit(content, storagePath.resolve(uniqueName), keepTempOnRollback);
+        filePathIndex.onFileAdded(fileEntity);
+        fileSearchIndex.onFileAdded(fileEntity);
+        log.info("文件保存成功: {}, 内容: {}", fileEntity.getFilePath(), content.hash());
+        return fileEntity;
     }
 
-    private void deleteFileFromDisk(File file) {
+    /**
+     * 同 storeFile，失败时删除暂存的临时文件
+     */
+    private File storeFileOrDiscard(Long userId, Long folderId, String fileName, BlobStore.StagedContent content)
+            throws IOException {
         try {
-            Files.deleteIfExists(Paths.get(file.getFilePath()));
-            log.info("物理文件删除成功: {}", file.getFilePath());
-        } catch (IOException e) {
-            log.error("物理文件删除失败: {}", file.getFilePath(), e);
-            throw new RuntimeException("物理文件删除失败", e);
+            return storeFile(userId, folderId, fileName, content, false);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(content.tempFile());
+            throw e;
         }
     }
 
+    /**
+     * 记录上传字节数和写入磁盘的吞吐量
+     */
+    private void recordUpload(String type, long bytes, long elapsedNanos) {
+        recordTransferBytes("file.upload.bytes", type, bytes);
+        meterRegistry.timer("file.upload.write", "type", type).record(elapsedNanos, TimeUnit.NANOSECONDS);
+        if (elapsedNanos > 0) {
+            DistributionSummary.builder("file.upload.throughput")
+                    .description("文件写入磁盘的吞吐量")
+                    .baseUnit("bytes_per_second")
+                    .tag("type", type)
+                    .register(meterRegistry)
+                    .record(bytes * 1_000_000_000.0 / elapsedNanos);
+        }
+    }
+
+    private void recordTransferBytes(String name, String type, long bytes) {
+        DistributionSummary.builder(name)
+                .baseUnit("bytes")
+                .tag("type", type)
+                .register(meterRegistry)
+                .record(bytes);
+    }
+
     private Path getPhysicalFilePath(File file) {
         return Paths.get(file.getFilePath());
     }
@@ -238,6 +615,26 @@ public class FileServiceImpl extends ServiceImpl<FileMapper, File> implements Fi
         return lastDotIndex > 0 ? fileName.substring(lastDotIndex + 1) : null;
     }
 
+    private void validateBatchSize(List<?> items) {
+        if (items == null || items.isEmpty()) {
+            throw new IllegalArgumentException("批量操作的文件列表不能为空");
+        }
+        if (items.size() > maxBatchSize) {
+            throw new IllegalArgumentException("一次最多操作 " + maxBatchSize + " 个文件");
+        }
+    }
+
+    /**
+     * 一次查询取出属于该用户的文件，不存在或不属于该用户的ID不在结果中
+     */
+    private Map<Long, File> validateBatchOwnership(Long userId, List<Long> fileIds) {
+        LambdaQueryWrapper<File> query = new LambdaQueryWrapper<>();
+        query.in(File::getId, fileIds)
+                .eq(File::getUserId, userId);
+        return baseMapper.selectList(query).stream()
+                .collect(Collectors.toMap(File::getId, Function.identity()));
+    }
+
     private File validateFileOwnership(Long userId, Long fileId) {
         LambdaQueryWrapper<File> query = new LambdaQueryWrapper<>();
         query.eq(File::getId, fileId)
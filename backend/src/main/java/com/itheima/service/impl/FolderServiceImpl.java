@@ -2,80 +2,99 @@
 package com.itheima.service.impl;
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
-import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.itheima.mapper.FileMapper;
 import com.itheima.mapper.FolderMapper;
 import com.itheima.pojo.File;
+import com.itheima.pojo.FileChange;
 import com.itheima.pojo.Folder;
+import com.itheima.service.BlobStore;
+import com.itheima.service.FileChangeJournal;
+import com.itheima.service.FilePathIndex;
+import com.itheima.service.FileSearchIndex;
 import com.itheima.service.FolderService;
+import com.itheima.service.FolderTreeCache;
+import com.itheima.service.StorageReclaimer;
+import com.itheima.service.VectorStoreEventListener;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
 public class FolderServiceImpl extends ServiceImpl<FolderMapper, Folder> implements FolderService {
     private final FileMapper fileMapper;
+    private final FilePathIndex filePathIndex;
+    private final FileSearchIndex fileSearchIndex;
+    private final FolderTreeCache folderTreeCache;
+    private final FileChangeJournal fileChangeJournal;
+    private final StorageReclaimer storageReclaimer;
+    private final BlobStore blobStore;
+
+    @Autowired(required = false)
+    private VectorStoreEventListener vectorStoreEventListener;
 
     @Override
     @Transactional
     public Folder createFolder(Long userId, Long parentId, String folderName) {
         // 参数校验和父文件夹归属验证
-        validateParentFolder(userId, parentId);
+        String parentPath = validateParentFolder(userId, parentId);
 
+        // 路径包含自身ID，插入后才能确定
         Folder folder = Folder.builder()
                 .userId(userId)
                 .parentId(parentId)
                 .folderName(folderName.trim())
+                .path(parentPath)
                 .createTime(LocalDateTime.now())
                 .updateTime(LocalDateTime.now())
                 .build();
         baseMapper.insert(folder);
+        folder.setPath(parentPath + folder.getId() + "/");
+        baseMapper.updateById(folder);
+        filePathIndex.onFolderCreated(userId, folder.getId(), parentId, folder.getFolderName());
+        folderTreeCache.bumpVersion(userId);
         return folder;
     }
 
     @Override
     public List<Folder> getFolderTree(Long userId) {
-        LambdaQueryWrapper<Folder> queryWrapper = new LambdaQueryWrapper<>();
-        queryWrapper.eq(Folder::getUserId, userId)
-                .eq(Folder::getParentId, 0);
-        List<Folder> rootFolders = baseMapper.selectList(queryWrapper);
-
-        rootFolders.forEach(folder ->
-                folder.setChildren(recursiveSubFolders(folder.getId()))
-        );
-        return rootFolders;
+        return folderTreeCache.get(userId, () -> buildFolderTree(baseMapper.selectAllByUserId(userId)));
     }
 
     @Override
     @Transactional
     public void deleteFolderWithContents(Long userId, Long folderId) {
-        // 权限验证和子文件夹获取
-        validateFolderOwnership(userId, folderId);
-        List<Long> subFolderIds = collectSubFolderIds(userId, folderId);
-
-        // 先删除所有相关文件（包括子文件夹中的文件）
-        fileMapper.delete(new LambdaUpdateWrapper<File>()
-                .in(File::getFolderId,
-                        Stream.concat(subFolderIds.stream(), Stream.of(folderId))
-                                .collect(Collectors.toList()))
-                .eq(File::getUserId, userId));
-
-        // 然后删除子文件夹
-        if (!subFolderIds.isEmpty()) {
-            baseMapper.deleteBatchIds(subFolderIds);
+        // 权限验证，锁住文件夹并读取最新路径（与并发的移动串行执行）
+        Folder folder = lockOwnedFolder(userId, folderId);
+
+        // 先锁住子树中的文件夹和文件，再按选出的ID删除：删除的正是记录了变更和回收的那些行
+        List<Long> folderIds = baseMapper.selectSubtreeIdsForUpdate(userId, folder.getPath());
+        List<File> removedFiles = fileMapper.selectInFoldersForUpdate(userId, folderIds);
+        if (!removedFiles.isEmpty()) {
+            fileMapper.deleteBatchIds(removedFiles.stream().map(File::getId).toList());
+            fileChangeJournal.recordAll(removedFiles.stream().map(FileChange::removed).toList());
+            // 物理文件和不再被引用的内容由后台回收
+            storageReclaimer.enqueue(removedFiles);
+            blobStore.releaseAll(removedFiles);
         }
 
-        // 最后删除当前文件夹
-        baseMapper.deleteById(folderId);
+        // 然后删除整个子树的文件夹（含当前文件夹）
+        baseMapper.deleteBatchIds(folderIds);
+        filePathIndex.invalidate(userId);
+        fileSearchIndex.reconcile(userId);
+        folderTreeCache.bumpVersion(userId);
+
+        if (!removedFiles.isEmpty() && vectorStoreEventListener != null) {
+            vectorStoreEventListener.onFileDeleted(userId);
+        }
     }
 
     @Override
@@ -84,9 +103,52 @@ public class FolderServiceImpl extends ServiceImpl<FolderMapper, Folder> impleme
         Folder folder = validateFolderOwnership(userId, folderId);
         folder.setFolderName(newName);
         baseMapper.updateById(folder);
+        filePathIndex.onFolderRenamed(userId, folderId, newName);
+        folderTreeCache.bumpVersion(userId);
         return folder;
     }
 
+    @Override
+    @Transactional
+    public Folder moveFolder(Long userId, Long folderId, Long targetParentId) {
+        // 按ID顺序锁住被移动的文件夹和目标文件夹，读取最新路径；并发的移动会串行执行，不会形成环
+        Folder folder;
+        Folder target = null;
+        if (targetParentId != 0 && targetParentId < folderId) {
+            target = lockOwnedFolder(userId, targetParentId);
+            folder = lockOwnedFolder(userId, folderId);
+        } else {
+            folder = lockOwnedFolder(userId, folderId);
+            if (targetParentId != 0) {
+                target = lockOwnedFolder(userId, targetParentId);
+            }
+        }
+        if (target != null && target.getPath().startsWith(folder.getPath())) {
+            throw new RuntimeException("不能把文件夹移动到它自身或它的子文件夹中");
+        }
+        if (targetParentId.equals(folder.getParentId())) {
+            return folder;
+        }
+
+        // 一条语句更新整个子树的路径
+        String newPath = (target != null ? target.getPath() : "/") + folderId + "/";
+        baseMapper.moveSubtree(userId, folder.getPath(), newPath);
+        folder.setParentId(targetParentId);
+        folder.setPath(newPath);
+        folder.setUpdateTime(LocalDateTime.now());
+        baseMapper.updateById(folder);
+
+        filePathIndex.onFolderMoved(userId, folderId, targetParentId);
+        folderTreeCache.bumpVersion(userId);
+        return folder;
+    }
+
+    @Override
+    public List<Long> getSubtreeFolderIds(Long userId, Long folderId) {
+        Folder folder = validateFolderOwnership(userId, folderId);
+        return baseMapper.selectSubtreeIds(userId, folder.getPath());
+    }
+
     @Override
     public Map<String, Object> getFolderContents(Long userId, Long folderId) {
         validateFolderOwnership(userId, folderId);
@@ -105,42 +167,42 @@ public class FolderServiceImpl extends ServiceImpl<FolderMapper, Folder> impleme
     }
 
     // 实现细节方法
-    private List<Folder> recursiveSubFolders(Long parentId) {
-        LambdaQueryWrapper<Folder> query = new LambdaQueryWrapper<>();
-        query.eq(Folder::getParentId, parentId);
-        List<Folder> folders = baseMapper.selectList(query);
-        folders.forEach(f -> f.setChildren(recursiveSubFolders(f.getId())));
-        return folders;
-    }
-
-    private List<Long> collectSubFolderIds(Long userId, Long parentId) {
-        List<Long> allSubFolderIds = new ArrayList<>();
-        collectSubFolderIdsRecursive(userId, parentId, allSubFolderIds);
-        return allSubFolderIds;
+    /**
+     * 将用户的全部文件夹按parentId链接成树，O(n)
+     * 父文件夹不存在的孤儿文件夹不会出现在树中，与逐层查询的结果一致
+     */
+    private List<Folder> buildFolderTree(List<Folder> folders) {
+        Map<Long, List<Folder>> childrenByParent = new HashMap<>();
+        for (Folder folder : folders) {
+            childrenByParent.computeIfAbsent(folder.getParentId(), k -> new ArrayList<>()).add(folder);
+        }
+        for (Folder folder : folders) {
+            folder.setChildren(childrenByParent.getOrDefault(folder.getId(), new ArrayList<>()));
+        }
+        return childrenByParent.getOrDefault(0L, new ArrayList<>());
     }
 
-    private void collectSubFolderIdsRecursive(Long userId, Long parentId, List<Long> result) {
-        LambdaQueryWrapper<Folder> query = new LambdaQueryWrapper<>();
-        query.select(Folder::getId)
-                .eq(Folder::getParentId, parentId)
-                .eq(Folder::getUserId, userId);
-
-        List<Long> directChildren = baseMapper.selectList(query)
-                .stream()
-                .map(Folder::getId)
-                .toList();
-
-        result.addAll(directChildren);
-
-        for (Long childId : directChildren) {
-            collectSubFolderIdsRecursive(userId, childId, result);
+    /**
+     * 锁住父文件夹并读取最新路径：与并发的移动、删除串行执行，新文件夹不会记录移动前的旧路径或挂在已删除的文件夹下
+     * @return 父文件夹的路径，根目录为 /
+     */
+    private String validateParentFolder(Long userId, Long parentId) {
+        if (parentId == 0) {
+            return "/";
+        }
+        Folder parent = baseMapper.selectForUpdate(parentId);
+        if (parent == null || !parent.getUserId().equals(userId)) {
+            throw new RuntimeException("父文件夹不存在");
         }
+        return parent.getPath();
     }
 
-    private void validateParentFolder(Long userId, Long parentId) {
-        if (parentId != 0 && baseMapper.selectById(parentId) == null) {
-            throw new RuntimeException("父文件夹不存在");
+    private Folder lockOwnedFolder(Long userId, Long folderId) {
+        Folder folder = baseMapper.selectForUpdate(folderId);
+        if (folder == null || !folder.getUserId().equals(userId)) {
+            throw new RuntimeException("文件夹操作权限不足");
         }
+        return folder;
     }
 
     public Folder validateFolderOwnership(Long userId, Long folderId) {
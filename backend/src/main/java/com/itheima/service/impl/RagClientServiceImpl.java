@@ -1,19 +1,29 @@
 package com.itheima.service.impl;
 
 import com.itheima.config.RagClientConfig;
+import com.itheima.pojo.FileChange;
+import com.itheima.pojo.rag.IncrementalUpdateRequest;
 import com.itheima.pojo.rag.VectorStoreRequest;
 import com.itheima.pojo.rag.VectorStoreResponse;
+import com.itheima.exception.RagUnavailableException;
+import com.itheima.service.RagCallGuard;
 import com.itheima.service.RagClientService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Service
@@ -22,12 +32,16 @@ public class RagClientServiceImpl implements RagClientService {
     
     private final RestTemplate ragRestTemplate;
     private final RagClientConfig ragConfig;
+    private final RagCallGuard ragCallGuard;
+    
+    @Value("${file.storage.root}")
+    private String fileStorageRoot;
     
     @Override
-    public VectorStoreResponse buildVectorStore(Long userId, boolean forceRebuild) {
+    public CompletableFuture<VectorStoreResponse> buildVectorStore(Long userId, boolean forceRebuild) {
         if (!ragConfig.isEnabled()) {
             log.warn("RAG服务已禁用，跳过向量存储构建");
-            return createDisabledResponse();
+            return CompletableFuture.completedFuture(createDisabledResponse());
         }
         
         return executeWithRetry(() -> {
@@ -58,31 +72,46 @@ public class RagClientServiceImpl implements RagClientService {
     }
     
     @Override
-    @Async
-    public void buildVectorStoreAsync(Long userId, boolean forceRebuild) {
-        log.info("异步构建向量存储开始 - 用户: {}", userId);
+    public CompletableFuture<VectorStoreResponse> applyIncrementalChanges(Long userId, List<FileChange> changes) {
+        if (!ragConfig.isEnabled()) {
+            log.warn("RAG服务已禁用，跳过增量更新");
+            return CompletableFuture.completedFuture(createDisabledResponse());
+        }
         
-        try {
-            VectorStoreResponse response = buildVectorStore(userId, forceRebuild);
+        return executeWithRetry(() -> {
+            String url = ragConfig.getBaseUrl() + "/vectorstores/incremental";
+            
+            IncrementalUpdateRequest request = IncrementalUpdateRequest.builder()
+                    .documentPath("user_" + userId)
+                    .changes(changes.stream().map(this::toIncrementalChange).collect(Collectors.toList()))
+                    .build();
+            
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(MediaType.APPLICATION_JSON);
+            HttpEntity<IncrementalUpdateRequest> entity = new HttpEntity<>(request, headers);
+            
+            log.info("调用RAG API增量更新向量存储 - 用户: {}, 变更数: {}", userId, changes.size());
+            
+            ResponseEntity<VectorStoreResponse> response = ragRestTemplate.exchange(
+                    url, HttpMethod.POST, entity, VectorStoreResponse.class);
             
-            if ("error".equals(response.getStatus())) {
-                log.error("异步构建向量存储失败 - 用户: {}, 错误: {}", userId, response.getMessage());
-            } else {
-                log.info("异步构建向量存储成功 - 用户: {}", userId);
+            VectorStoreResponse responseBody = response.getBody();
+            if (responseBody == null) {
+                return createErrorResponse("增量更新响应为空");
             }
-        } catch (Exception e) {
-            log.error("异步构建向量存储过程中发生异常 - 用户: {}", userId, e);
-        }
+            log.info("向量存储增量更新完成 - 用户: {}, 状态: {}", userId, responseBody.getStatus());
+            return responseBody;
+        }, "增量更新向量存储", userId);
     }
     
     @Override
-    public void clearVectorStoreCache(Long userId) {
+    public CompletableFuture<VectorStoreResponse> clearVectorStoreCache(Long userId) {
         if (!ragConfig.isEnabled()) {
             log.warn("RAG服务已禁用，跳过缓存清除");
-            return;
+            return CompletableFuture.completedFuture(createDisabledResponse());
         }
         
-        executeWithRetry(() -> {
+        return executeWithRetry(() -> {
             String url = ragConfig.getBaseUrl() + "/vectorstores/clear-cache";
             
             Map<String, String> request = new HashMap<>();
@@ -97,75 +126,53 @@ public class RagClientServiceImpl implements RagClientService {
             ragRestTemplate.exchange(url, HttpMethod.POST, entity, Map.class);
             
             log.info("向量存储缓存清除成功 - 用户: {}", userId);
-            return null;
+            VectorStoreResponse response = new VectorStoreResponse();
+            response.setStatus("cleared");
+            return response;
         }, "清除向量存储缓存", userId);
     }
     
-    @Override
-    public boolean isRagServiceHealthy() {
-        if (!ragConfig.isEnabled()) {
-            return false;
-        }
-        
-        try {
-            String url = ragConfig.getBaseUrl() + "/health";
-            ResponseEntity<Map> response = ragRestTemplate.getForEntity(url, Map.class);
-            
-            Map<String, Object> responseBody = response.getBody();
-            boolean isHealthy = responseBody != null && "healthy".equals(responseBody.get("status"));
-            
-            log.debug("RAG服务健康检查结果: {}", isHealthy);
-            return isHealthy;
-            
-        } catch (Exception e) {
-            log.warn("RAG服务健康检查失败: {}", e.getMessage());
-            return false;
-        }
-    }
-    
     /**
-     * 带重试机制的执行方法
+     * 通过RagCallGuard执行（指数退避重试 + 熔断），失败时以错误响应完成
+     * 第一次调用在当前线程执行，重试由计时器到期后在重试执行器中发起，退避期间不占用线程
      */
-    private <T> T executeWithRetry(RetryableOperation<T> operation, String operationName, Long userId) {
-        int maxAttempts = ragConfig.getRetry().getMaxAttempts();
-        long delay = ragConfig.getRetry().getDelay();
-        
-        Exception lastException = null;
-        
-        for (int attempt = 1; attempt <= maxAttempts; attempt++) {
-            try {
-                return operation.execute();
-            } catch (RestClientException e) {
-                lastException = e;
-                log.warn("{}失败 - 用户: {}, 尝试次数: {}/{}, 错误: {}", 
-                        operationName, userId, attempt, maxAttempts, e.getMessage());
-                
-                if (attempt < maxAttempts) {
-                    try {
-                        Thread.sleep(delay);
-                    } catch (InterruptedException ie) {
-                        Thread.currentThread().interrupt();
-                        break;
+    private CompletableFuture<VectorStoreResponse> executeWithRetry(Callable<VectorStoreResponse> operation,
+                                                                    String operationName, Long userId) {
+        return ragCallGuard.executeAsync(operationName, ragCallGuard.defaultPolicy(), RagCallGuard.blocking(operation))
+                .exceptionally(error -> {
+                    Throwable cause = error instanceof CompletionException && error.getCause() != null
+                            ? error.getCause() : error;
+                    if (cause instanceof RagUnavailableException) {
+                        log.error("{}失败 - 用户: {}, 错误: {}", operationName, userId, cause.getMessage());
+                        return createErrorResponse(cause.getMessage());
                     }
-                }
-            } catch (Exception e) {
-                // 对于非网络异常，不进行重试
-                log.error("{}时发生非网络异常 - 用户: {}", operationName, userId, e);
-                return (T) createErrorResponse(operationName + "失败: " + e.getMessage());
-            }
-        }
-        
-        log.error("{}失败，已达最大重试次数 - 用户: {}", operationName, userId, lastException);
-        return (T) createErrorResponse(operationName + "失败: " + 
-                (lastException != null ? lastException.getMessage() : "未知错误"));
+                    // 对于非网络异常，不进行重试
+                    log.error("{}时发生非网络异常 - 用户: {}", operationName, userId, cause);
+                    return createErrorResponse(operationName + "失败: " + cause.getMessage());
+                });
     }
     
     /**
-     * 可重试的操作接口
+     * 文件变更转换为RAG请求格式，物理路径转换为相对于存储根目录的路径
      */
-    @FunctionalInterface
-    private interface RetryableOperation<T> {
-        T execute() throws Exception;
+    private IncrementalUpdateRequest.Change toIncrementalChange(FileChange change) {
+        return IncrementalUpdateRequest.Change.builder()
+                .type(change.getChangeType().name().toLowerCase())
+                .fileId(change.getFileId())
+                .source(toRelativePath(change.getFilePath()))
+                .contentHash(change.getContentHash())
+                .fileName(change.getFileName())
+                .folderId(change.getFolderId())
+                .previousFileName(change.getPreviousFileName())
+                .previousFolderId(change.getPreviousFolderId())
+                .build();
+    }
+    
+    private String toRelativePath(String filePath) {
+        Path root = Paths.get(fileStorageRoot).toAbsolutePath().normalize();
+        Path path = Paths.get(filePath).toAbsolutePath().normalize();
+        Path relative = path.startsWith(root) ? root.relativize(path) : path;
+        return relative.toString().replace('\\', '/');
     }
     
     private VectorStoreResponse createDisabledResponse() {
@@ -0,0 +1,374 @@
+package com.itheima.service.impl;
+
+import com.itheima.dto.UploadStatus;
+import com.itheima.mapper.UploadChunkMapper;
+import com.itheima.mapper.UploadSessionMapper;
+import com.itheima.pojo.File;
+import com.itheima.pojo.UploadSession;
+import com.itheima.service.BlobStore;
+import com.itheima.service.FileService;
+import com.itheima.service.UploadSessionService;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分片上传服务
+ * <p>
+ * 创建会话时按文件大小预分配临时文件，分片请求不经过multipart解析，内存占用只与并发分片数有关。
+ * 临时文件放在存储根目录下的 .uploads 目录，与内容存储在同一文件系统，完成时计算哈希后以硬链接存入，不复制数据；
+ * 它不在 user_{id} 目录下，RAG重建时不会扫描到未完成的文件。
+ * 接收请求体和计算哈希这类耗时与客户端或文件大小有关的操作都不在事务中进行：
+ * 分片先接收到自己的暂存文件，再在持有会话行共享锁的短事务中复制到临时文件的对应位置，多个分片可以并行写入；
+ * 完成时先在排他锁下标记会话正在完成（之后不再接受分片），释放锁后计算哈希，最后在排他锁下登记文件。
+ * 因为会话创建时就占用磁盘空间，每个用户未完成的会话数和预分配的总空间都有上限。
+ * </p>
+ */
+@Slf4j
+@Service
+public class UploadSessionServiceImpl implements UploadSessionService {
+
+    private static final String TEMP_DIR = ".uploads";
+
+    private final UploadSessionMapper uploadSessionMapper;
+    private final UploadChunkMapper uploadChunkMapper;
+    private final FileService fileService;
+    private final BlobStore blobStore;
+    private final FolderServiceImpl folderService;
+    private final MeterRegistry meterRegistry;
+    private final TaskScheduler maintenanceScheduler;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${file.storage.root}")
+    private String storageRoot;
+
+    @Value("${file.upload.chunk-size:8MB}")
+    private DataSize chunkSize;
+
+    @Value("${file.upload.max-file-size:10GB}")
+    private DataSize maxFileSize;
+
+    @Value("${file.upload.session-ttl-hours:24}")
+    private long sessionTtlHours;
+
+    @Value("${file.upload.max-open-sessions:5}")
+    private int maxOpenSessions;
+
+    @Value("${file.upload.max-open-bytes:20GB}")
+    private DataSize maxOpenBytes;
+
+    public UploadSessionServiceImpl(UploadSessionMapper uploadSessionMapper, UploadChunkMapper uploadChunkMapper,
+                                    FileService fileService, BlobStore blobStore, FolderServiceImpl folderService,
+                                    MeterRegistry meterRegistry,
+                                    @Qualifier("storageMaintenanceScheduler") TaskScheduler maintenanceScheduler,
+                                    TransactionTemplate transactionTemplate) {
+        this.uploadSessionMapper = uploadSessionMapper;
+        this.uploadChunkMapper = uploadChunkMapper;
+        this.fileService = fileService;
+        this.blobStore = blobStore;
+        this.folderService = folderService;
+        this.meterRegistry = meterRegistry;
+        this.maintenanceScheduler = maintenanceScheduler;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    @PostConstruct
+    public void start() {
+        maintenanceScheduler.scheduleWithFixedDelay(this::cleanupExpired, Duration.ofHours(1));
+    }
+
+    @Override
+    @Transactional
+    public UploadSession initiate(Long userId, Long folderId, String fileName, Long fileSize) throws IOException {
+        if (fileName == null || fileName.trim().isEmpty()) {
+            throw new IllegalArgumentException("文件名不能为空");
+        }
+        if (fileName.contains("/") || fileName.contains("\\")) {
+            throw new IllegalArgumentException("文件名不能包含路径分隔符");
+        }
+        if (fileSize == null || fileSize <= 0) {
+            throw new IllegalArgumentException("文件大小必须大于0");
+        }
+        if (fileSize > maxFileSize.toBytes()) {
+            throw new IllegalArgumentException("文件大小超过上限 " + maxFileSize.toMegabytes() + "MB");
+        }
+        if (folderId == null) {
+            folderId = 0L;
+        }
+        if (folderId != 0) {
+            folderService.validateFolderOwnership(userId, folderId);
+        }
+        checkOpenSessionLimit(userId, fileSize);
+
+        String uploadId = UUID.randomUUID().toString();
+        Path tempDir = Paths.get(storageRoot, TEMP_DIR);
+        Files.createDirectories(tempDir);
+        Path tempPath = tempDir.resolve(uploadId + ".part");
+        // 预分配到最终大小，分片按偏移量写入，不需要按顺序到达
+        try (RandomAccessFile file = new RandomAccessFile(tempPath.toFile(), "rw")) {
+            file.setLength(fileSize);
+        }
+
+        int size = (int) chunkSize.toBytes();
+        LocalDateTime now = LocalDateTime.now();
+        UploadSession session = UploadSession.builder()
+                .id(uploadId)
+                .userId(userId)
+                .folderId(folderId)
+                .fileName(fileName)
+                .fileSize(fileSize)
+                .chunkSize(size)
+                .chunkCount((int) ((fileSize + size - 1) / size))
+                .tempPath(tempPath.toString())
+                .completing(false)
+                .createTime(now)
+                .expireTime(now.plusHours(sessionTtlHours))
+                .build();
+        uploadSessionMapper.insert(session);
+        log.info("创建上传会话: {}, 文件: {}, 大小: {}, 分片数: {}", uploadId, fileName, fileSize, session.getChunkCount());
+        return session;
+    }
+
+    /**
+     * 先在事务之外把请求体接收到分片自己的暂存文件，客户端上传再慢也不占用数据库连接和会话行锁；
+     * 再在持有会话共享锁的短事务中复制到临时文件并记录分片，临时文件的内容只在锁内变化，
+     * 完成时计算的哈希不会与登记的内容不一致
+     */
+    @Override
+    public void writeChunk(Long userId, String uploadId, int index, InputStream body, long contentLength)
+            throws IOException {
+        UploadSession session = validateSessionOwnership(userId, uploadId);
+        if (index < 0 || index >= session.getChunkCount()) {
+            throw new IllegalArgumentException("分片序号超出范围: " + index);
+        }
+        long expected = session.chunkLength(index);
+        if (contentLength >= 0 && contentLength != expected) {
+            throw new IllegalArgumentException("分片 " + index + " 应为 " + expected + " 字节，实际 " + contentLength);
+        }
+
+        long start = System.nanoTime();
+        // .tmp 后缀：进程中途退出留下的暂存文件由存储回收清理
+        Path chunkFile = Paths.get(session.getTempPath())
+                .resolveSibling(uploadId + "." + index + "." + UUID.randomUUID() + ".tmp");
+        try {
+            long written = receiveChunk(body, chunkFile, expected);
+            if (written < expected || body.read() != -1) {
+                // 分片不完整或超长：不记录，客户端重新上传即可
+                throw new IOException("分片 " + index + " 数据不完整");
+            }
+
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    UploadSession locked = checkOwnership(userId, uploadSessionMapper.selectForShare(uploadId));
+                    if (Boolean.TRUE.equals(locked.getCompleting())) {
+                        throw new RuntimeException("上传正在完成，不能再写入分片");
+                    }
+                    try {
+                        copyChunk(chunkFile, Paths.get(locked.getTempPath()), locked.chunkOffset(index), expected);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    uploadChunkMapper.insertIgnore(uploadId, index);
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        } finally {
+            Files.deleteIfExists(chunkFile);
+        }
+
+        meterRegistry.timer("file.upload.write", "type", "chunk").record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        DistributionSummary.builder("file.upload.bytes")
+                .baseUnit("bytes")
+                .tag("type", "chunk")
+                .register(meterRegistry)
+                .record(expected);
+    }
+
+    @Override
+    public UploadStatus getStatus(Long userId, String uploadId) {
+        UploadSession session = validateSessionOwnership(userId, uploadId);
+        return new UploadStatus(session, missingChunks(session));
+    }
+
+    /**
+     * 分三步完成，计算哈希时不持有任何锁：
+     * 排他锁下检查分片并标记会话正在完成（等待进行中的分片写入结束，之后的写入会被拒绝），
+     * 释放锁后计算临时文件的哈希，最后在排他锁下重新确认会话并登记文件。
+     * 并发的重复完成请求中只有一个能登记，其余因会话不存在而失败；登记失败时会话保持正在完成，可以重新完成
+     */
+    @Override
+    public File complete(Long userId, String uploadId) throws IOException {
+        UploadSession session = transactionTemplate.execute(status -> {
+            UploadSession locked = checkOwnership(userId, uploadSessionMapper.selectForUpdate(uploadId));
+            int received = uploadChunkMapper.countChunks(uploadId);
+            if (received < locked.getChunkCount()) {
+                throw new RuntimeException("还有 " + (locked.getChunkCount() - received) + " 个分片未上传");
+            }
+            if (!Boolean.TRUE.equals(locked.getCompleting())) {
+                uploadSessionMapper.markCompleting(uploadId);
+            }
+            return locked;
+        });
+
+        BlobStore.StagedContent content = blobStore.stage(Paths.get(session.getTempPath()));
+
+        File file;
+        try {
+            file = transactionTemplate.execute(status -> {
+                // 计算哈希期间会话可能已被取消、过期清理或由另一个完成请求登记
+                checkOwnership(userId, uploadSessionMapper.selectForUpdate(uploadId));
+                uploadSessionMapper.deleteById(uploadId);
+                uploadChunkMapper.deleteByUploadId(uploadId);
+                try {
+                    return fileService.registerUploadedFile(userId, session.getFolderId(), session.getFileName(),
+                            content);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        log.info("分片上传完成: {}, 文件ID: {}", uploadId, file.getId());
+        return file;
+    }
+
+    @Override
+    @Transactional
+    public void abort(Long userId, String uploadId) {
+        UploadSession session = checkOwnership(userId, uploadSessionMapper.selectForUpdate(uploadId));
+        remove(session);
+    }
+
+    /**
+     * 清理过期未完成的会话和临时文件
+     */
+    void cleanupExpired() {
+        try {
+            List<UploadSession> expired;
+            do {
+                expired = uploadSessionMapper.selectExpired(LocalDateTime.now(), 100);
+                for (UploadSession session : expired) {
+                    remove(session);
+                    log.info("清理过期上传会话: {}, 文件: {}", session.getId(), session.getFileName());
+                }
+            } while (expired.size() == 100);
+        } catch (Exception e) {
+            log.warn("清理过期上传会话失败: {}", e.getMessage());
+        }
+    }
+
+    private void remove(UploadSession session) {
+        uploadSessionMapper.deleteById(session.getId());
+        uploadChunkMapper.deleteByUploadId(session.getId());
+        try {
+            Files.deleteIfExists(Paths.get(session.getTempPath()));
+        } catch (IOException e) {
+            log.warn("上传临时文件删除失败: {}", session.getTempPath(), e);
+        }
+    }
+
+    /**
+     * 把请求体写入分片暂存文件，最多写入 expected 字节
+     * @return 实际写入的字节数
+     */
+    private long receiveChunk(InputStream body, Path chunkFile, long expected) throws IOException {
+        long written = 0;
+        try (FileChannel channel = FileChannel.open(chunkFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            ReadableByteChannel source = Channels.newChannel(body);
+            while (written < expected) {
+                long transferred = channel.transferFrom(source, written, expected - written);
+                if (transferred <= 0) {
+                    break;
+                }
+                written += transferred;
+            }
+        }
+        return written;
+    }
+
+    /**
+     * 把已接收完整的分片复制到临时文件的对应位置，只是本地文件之间的复制
+     */
+    private void copyChunk(Path chunkFile, Path tempPath, long position, long length) throws IOException {
+        try (FileChannel source = FileChannel.open(chunkFile, StandardOpenOption.READ);
+             FileChannel target = FileChannel.open(tempPath, StandardOpenOption.WRITE)) {
+            long copied = 0;
+            while (copied < length) {
+                long transferred = source.transferTo(copied, length - copied, target.position(position + copied));
+                if (transferred <= 0) {
+                    throw new IOException("分片复制失败: " + chunkFile);
+                }
+                copied += transferred;
+            }
+        }
+    }
+
+    private List<Integer> missingChunks(UploadSession session) {
+        List<Integer> uploaded = uploadChunkMapper.selectChunkIndexes(session.getId());
+        List<Integer> missing = new ArrayList<>(session.getChunkCount() - uploaded.size());
+        int next = 0;
+        for (int index : uploaded) {
+            while (next < index) {
+                missing.add(next++);
+            }
+            next = index + 1;
+        }
+        while (next < session.getChunkCount()) {
+            missing.add(next++);
+        }
+        return missing;
+    }
+
+    /**
+     * 每个会话都按文件大小预分配临时文件，限制每个用户未完成的会话数和预分配的总空间
+     */
+    private void checkOpenSessionLimit(Long userId, long fileSize) {
+        List<UploadSession> open = uploadSessionMapper.selectOpenByUserForUpdate(userId);
+        if (open.size() >= maxOpenSessions) {
+            throw new RuntimeException("未完成的上传会话过多，请先完成或取消已有的上传（最多 " + maxOpenSessions + " 个）");
+        }
+        long openBytes = open.stream().mapToLong(UploadSession::getFileSize).sum();
+        if (openBytes + fileSize > maxOpenBytes.toBytes()) {
+            throw new RuntimeException("未完成的上传占用空间超过上限 " + maxOpenBytes.toMegabytes() + "MB，请先完成或取消已有的上传");
+        }
+    }
+
+    private UploadSession validateSessionOwnership(Long userId, String uploadId) {
+        return checkOwnership(userId, uploadSessionMapper.selectById(uploadId));
+    }
+
+    private UploadSession checkOwnership(Long userId, UploadSession session) {
+        if (session == null || !session.getUserId().equals(userId)) {
+            throw new RuntimeException("上传会话不存在或权限不足");
+        }
+        return session;
+    }
+}
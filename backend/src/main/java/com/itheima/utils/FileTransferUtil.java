@@ -0,0 +1,158 @@
+package com.itheima.utils;
+
+import com.itheima.dto.FileDownload;
+import jakarta.servlet.ServletRequestWrapper;
+import jakarta.servlet.ServletResponseWrapper;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.MediaType;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * 文件下载输出
+ * <p>
+ * 支持 ETag/Last-Modified 条件请求（304）和单个区间的 Range 请求（206），用于断点续传和分段并行下载。
+ * Tomcat 支持 sendfile 时文件内容交给 Tomcat 在请求处理结束后由内核直接发送（零拷贝），
+ * 否则通过 {@link FileChannel#transferTo} 写入响应。
+ * </p>
+ */
+public class FileTransferUtil {
+
+    private static final String SENDFILE_SUPPORTED = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    /**
+     * 小于该大小的内容直接写出，sendfile 的额外开销不划算（与 Tomcat DefaultServlet 的默认值一致）
+     */
+    private static final long SENDFILE_MIN_SIZE = 48 * 1024;
+
+    private FileTransferUtil() {
+    }
+
+    /**
+     * 输出文件下载响应
+     * @return 响应体的字节数（304、416 和 HEAD 请求为0）
+     */
+    public static long write(HttpServletRequest request, HttpServletResponse response, FileDownload download)
+            throws IOException {
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        // 需要登录才能访问，只允许浏览器私有缓存，且每次使用前都要用ETag重新验证
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "private, no-cache");
+
+        // 处理 If-None-Match / If-Modified-Since 等条件请求，未变化时已设置304
+        if (new ServletWebRequest(request, response).checkNotModified(download.getEtag(), download.getLastModified())) {
+            return 0;
+        }
+
+        String encodedFileName = URLEncoder.encode(download.getFileName(), StandardCharsets.UTF_8).replaceAll("\\+", "%20");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename*=UTF-8''" + encodedFileName);
+        response.setContentType(MediaType.APPLICATION_OCTET_STREAM_VALUE);
+
+        long size = download.getSize();
+        long start = 0;
+        long end = size - 1;
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        if (isBytesRange(rangeHeader) && size > 0 && isRangeApplicable(request, download)) {
+            List<HttpRange> ranges;
+            try {
+                // 单位名不区分大小写，HttpRange 只接受小写
+                ranges = HttpRange.parseRanges("bytes=" + rangeHeader.substring(6));
+                for (HttpRange range : ranges) {
+                    if (range.getRangeStart(size) > range.getRangeEnd(size)) {
+                        throw new IllegalArgumentException("空区间: " + range);
+                    }
+                }
+            } catch (IllegalArgumentException e) {
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+                response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return 0;
+            }
+            // 多个区间时忽略Range返回完整文件（RFC 9110 允许），断点续传和分段下载每个请求只请求一个区间
+            if (ranges.size() == 1) {
+                start = ranges.get(0).getRangeStart(size);
+                end = ranges.get(0).getRangeEnd(size);
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + size);
+            }
+        }
+
+        long length = end - start + 1;
+        response.setContentLengthLong(length);
+        if ("HEAD".equals(request.getMethod()) || length == 0) {
+            return 0;
+        }
+        if (length >= SENDFILE_MIN_SIZE && supportsSendfile(request, response)) {
+            request.setAttribute(SENDFILE_FILENAME, download.getPath().toFile().getCanonicalPath());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end + 1);
+        } else {
+            transfer(download, start, length, response);
+        }
+        return length;
+    }
+
+    /**
+     * 只处理 bytes 单位的区间；其他单位按 RFC 9110 忽略 Range，返回完整文件
+     */
+    private static boolean isBytesRange(String rangeHeader) {
+        return rangeHeader != null && rangeHeader.regionMatches(true, 0, "bytes=", 0, 6);
+    }
+
+    /**
+     * 带 If-Range 时，只有文件未变化才按区间返回，否则返回完整文件
+     */
+    private static boolean isRangeApplicable(HttpServletRequest request, FileDownload download) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return ifRange.equals(download.getEtag());
+        }
+        try {
+            // HTTP日期精确到秒
+            return request.getDateHeader(HttpHeaders.IF_RANGE) / 1000 == download.getLastModified() / 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 请求和响应未被过滤器包装时才能使用 sendfile，否则包装器看不到响应内容
+     */
+    private static boolean supportsSendfile(HttpServletRequest request, HttpServletResponse response) {
+        return Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED))
+                && !(request instanceof ServletRequestWrapper)
+                && !(response instanceof ServletResponseWrapper);
+    }
+
+    private static void transfer(FileDownload download, long start, long length, HttpServletResponse response)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(download.getPath(), StandardOpenOption.READ)) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            long remaining = length;
+            while (remaining > 0) {
+                long transferred = channel.transferTo(position, remaining, out);
+                if (transferred <= 0) {
+                    throw new IOException("文件在下载过程中被截断: " + download.getPath());
+                }
+                position += transferred;
+                remaining -= transferred;
+            }
+        }
+    }
+}
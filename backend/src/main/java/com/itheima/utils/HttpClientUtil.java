@@ -2,25 +2,38 @@ package com.itheima.utils;
 
 import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONObject;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.itheima.exception.HttpStatusException;
 import lombok.extern.slf4j.Slf4j;
 import okhttp3.*;
+import okio.BufferedSource;
+import org.jetbrains.annotations.NotNull;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
+import java.time.Duration;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 /**
  * 通用HTTP请求工具类
  * <p>
  * 基于OkHttp实现的HTTP客户端工具，提供GET、POST等常用HTTP请求方法，
- * 支持自定义请求头、请求体、超时设置等。
+ * 支持自定义请求头、请求体，以及同步和异步（CompletableFuture）两种执行方式。
+ * </p>
+ * <p>
+ * 本类本身是无状态的，可以被任意线程共享：每次调用 {@link #url(String)} 都会创建一个新的
+ * {@link RequestSpec}，请求的URL、请求头、请求体只保存在这个对象里，不同调用之间互不影响。
+ * 所有请求共用 OkHttpConfiguration 中配置的 OkHttpClient（连接池、超时）；
+ * 个别请求需要不同的读取超时时用 {@link RequestSpec#readTimeout(Duration)} 设置，只影响这一次调用。
  * </p>
  *
  * 使用示例：
  * <pre>
  * // GET请求示例
- * String getResponse = HttpClientUtil.getInstance()
+ * String getResponse = httpClientUtil
  *     .url("https://api.example.com/data")
  *     .addHeader("Authorization", "Bearer token")
  *     .get()
@@ -29,7 +42,7 @@ import java.util.concurrent.TimeUnit;
  * // POST JSON请求示例
  * Map<String, Object> requestBody = new HashMap<>();
  * requestBody.put("key", "value");
- * String postResponse = HttpClientUtil.getInstance()
+ * String postResponse = httpClientUtil
  *     .url("https://api.example.com/api")
  *     .addHeader("Content-Type", "application/json")
  *     .jsonBody(requestBody)
@@ -37,7 +50,7 @@ import java.util.concurrent.TimeUnit;
  *     .executeForString();
  *
  * // 添加查询参数
- * String response = HttpClientUtil.getInstance()
+ * String response = httpClientUtil
  *     .url("https://api.example.com/search")
  *     .addQueryParam("q", "keyword")
  *     .addQueryParam("page", "1")
@@ -48,269 +61,353 @@ import java.util.concurrent.TimeUnit;
  * Map<String, String> formData = new HashMap<>();
  * formData.put("username", "user1");
  * formData.put("password", "pass123");
- * String response = HttpClientUtil.getInstance()
+ * String response = httpClientUtil
  *     .url("https://api.example.com/login")
  *     .formBody(formData)
  *     .post()
  *     .executeForString();
  *
- * // 直接获得 Json 回复
- * JSONObject jsonResponse = HttpClientUtil.getInstance()
+ * // 异步执行，不占用调用线程等待响应
+ * CompletableFuture<JSONObject> future = httpClientUtil
  *     .url("https://api.example.com/data")
  *     .get()
- *     .executeForJson()
+ *     .executeForJsonAsync();
  * </pre>
  */
 @Slf4j
 @Component
 public class HttpClientUtil {
-    private static volatile HttpClientUtil instance;
-    private final OkHttpClient client;
-    private Request.Builder requestBuilder;
-    private HttpUrl.Builder urlBuilder;
-    private RequestBody requestBody;
-    private Headers.Builder headersBuilder;
+    private static final MediaType JSON_MEDIA_TYPE = MediaType.parse("application/json; charset=utf-8");
 
     /**
-     * 私有构造函数，初始化OkHttpClient
+     * 类型化解析使用的Jackson映射器（线程安全），未声明的字段直接跳过
      */
-    private HttpClientUtil() {
-        this.client = new OkHttpClient.Builder()
-                .connectTimeout(30, TimeUnit.SECONDS)
-                .readTimeout(60, TimeUnit.SECONDS)
-                .writeTimeout(60, TimeUnit.SECONDS)
-                .build();
-    }
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
 
-    /**
-     * 获取HttpClientUtil单例实例
-     *
-     * @return HttpClientUtil实例
-     */
-    public static HttpClientUtil getInstance() {
-        if (instance == null) {
-            synchronized (HttpClientUtil.class) {
-                if (instance == null) {
-                    instance = new HttpClientUtil();
-                }
-            }
-        }
-        return instance;
+    private final OkHttpClient client;
+
+    public HttpClientUtil(OkHttpClient client) {
+        this.client = client;
     }
 
     /**
-     * 设置请求URL
+     * 开始构建一个新的请求
      *
      * @param url 请求URL
-     * @return HttpClientUtil实例（支持链式调用）
+     * @return 本次请求独有的RequestSpec（支持链式调用）
      */
-    public HttpClientUtil url(String url) {
-        this.urlBuilder = HttpUrl.parse(url).newBuilder();
-        this.requestBuilder = new Request.Builder();
-        this.headersBuilder = new Headers.Builder();
-        return this;
+    public RequestSpec url(String url) {
+        HttpUrl httpUrl = HttpUrl.parse(url);
+        if (httpUrl == null) {
+            throw new IllegalArgumentException("Invalid URL: " + url);
+        }
+        return new RequestSpec(client, httpUrl.newBuilder());
     }
 
     /**
-     * 添加URL查询参数
-     *
-     * @param name  参数名
-     * @param value 参数值
-     * @return HttpClientUtil实例（支持链式调用）
+     * 单次请求的描述
+     * <p>
+     * 只应在创建它的线程中构建；构建完成后每次执行都会生成一个不可变的 OkHttp Request。
+     * </p>
      */
-    public HttpClientUtil addQueryParam(String name, String value) {
-        if (urlBuilder != null) {
+    public static final class RequestSpec {
+        private OkHttpClient client;
+        private final HttpUrl.Builder urlBuilder;
+        private final Headers.Builder headersBuilder = new Headers.Builder();
+        private RequestBody requestBody;
+        private String method = "GET";
+
+        private RequestSpec(OkHttpClient client, HttpUrl.Builder urlBuilder) {
+            this.client = client;
+            this.urlBuilder = urlBuilder;
+        }
+
+        /**
+         * 添加URL查询参数
+         *
+         * @param name  参数名
+         * @param value 参数值
+         * @return RequestSpec（支持链式调用）
+         */
+        public RequestSpec addQueryParam(String name, String value) {
             urlBuilder.addQueryParameter(name, value);
+            return this;
         }
-        return this;
-    }
 
-    /**
-     * 添加请求头
-     *
-     * @param name  头名称
-     * @param value 头值
-     * @return HttpClientUtil实例（支持链式调用）
-     */
-    public HttpClientUtil addHeader(String name, String value) {
-        if (headersBuilder != null) {
+        /**
+         * 添加请求头
+         *
+         * @param name  头名称
+         * @param value 头值
+         * @return RequestSpec（支持链式调用）
+         */
+        public RequestSpec addHeader(String name, String value) {
             headersBuilder.add(name, value);
+            return this;
         }
-        return this;
-    }
 
-    /**
-     * 设置JSON格式的请求体
-     *
-     * @param body 请求体对象，会自动转换为JSON字符串
-     * @return HttpClientUtil实例（支持链式调用）
-     */
-    public HttpClientUtil jsonBody(Object body) {
-        this.requestBody = RequestBody.create(
-                MediaType.parse("application/json; charset=utf-8"),
-                JSON.toJSONString(body)
-        );
-        return this;
-    }
+        /**
+         * 设置JSON格式的请求体
+         *
+         * @param body 请求体对象，会自动转换为JSON字符串
+         * @return RequestSpec（支持链式调用）
+         */
+        public RequestSpec jsonBody(Object body) {
+            this.requestBody = RequestBody.create(JSON.toJSONString(body), JSON_MEDIA_TYPE);
+            return this;
+        }
 
-    /**
-     * 设置表单格式的请求体
-     *
-     * @param formData 表单数据键值对
-     * @return HttpClientUtil实例（支持链式调用）
-     */
-    public HttpClientUtil formBody(Map<String, String> formData) {
-        FormBody.Builder formBuilder = new FormBody.Builder();
-        formData.forEach(formBuilder::add);
-        this.requestBody = formBuilder.build();
-        return this;
-    }
+        /**
+         * 设置表单格式的请求体
+         *
+         * @param formData 表单数据键值对
+         * @return RequestSpec（支持链式调用）
+         */
+        public RequestSpec formBody(Map<String, String> formData) {
+            FormBody.Builder formBuilder = new FormBody.Builder();
+            formData.forEach(formBuilder::add);
+            this.requestBody = formBuilder.build();
+            return this;
+        }
 
-    /**
-     * 设置自定义请求体
-     *
-     * @param requestBody 自定义请求体
-     * @return HttpClientUtil实例（支持链式调用）
-     */
-    public HttpClientUtil body(RequestBody requestBody) {
-        this.requestBody = requestBody;
-        return this;
-    }
+        /**
+         * 设置自定义请求体
+         *
+         * @param requestBody 自定义请求体
+         * @return RequestSpec（支持链式调用）
+         */
+        public RequestSpec body(RequestBody requestBody) {
+            this.requestBody = requestBody;
+            return this;
+        }
 
-    /**
-     * 构建GET请求
-     *
-     * @return HttpClientUtil实例（支持链式调用）
-     */
-    public HttpClientUtil get() {
-        buildRequest("GET");
-        return this;
-    }
+        /**
+         * 设置本次请求的读取超时，覆盖共享客户端的 okhttp.read-timeout
+         * 派生的客户端与共享客户端共用连接池和调度器
+         *
+         * @param timeout 读取超时
+         * @return RequestSpec（支持链式调用）
+         */
+        public RequestSpec readTimeout(Duration timeout) {
+            this.client = client.newBuilder().readTimeout(timeout).build();
+            return this;
+        }
 
-    /**
-     * 构建POST请求
-     *
-     * @return HttpClientUtil实例（支持链式调用）
-     */
-    public HttpClientUtil post() {
-        buildRequest("POST");
-        return this;
-    }
+        /**
+         * 使用GET方法
+         */
+        public RequestSpec get() {
+            this.method = "GET";
+            return this;
+        }
 
-    /**
-     * 构建PUT请求
-     *
-     * @return HttpClientUtil实例（支持链式调用）
-     */
-    public HttpClientUtil put() {
-        buildRequest("PUT");
-        return this;
-    }
+        /**
+         * 使用POST方法
+         */
+        public RequestSpec post() {
+            this.method = "POST";
+            return this;
+        }
 
-    /**
-     * 构建DELETE请求
-     *
-     * @return HttpClientUtil实例（支持链式调用）
-     */
-    public HttpClientUtil delete() {
-        buildRequest("DELETE");
-        return this;
-    }
+        /**
+         * 使用PUT方法
+         */
+        public RequestSpec put() {
+            this.method = "PUT";
+            return this;
+        }
 
-    /**
-     * 执行请求并返回Response对象
-     *
-     * @return OkHttp Response对象
-     * @throws IOException 如果请求执行失败
-     */
-    public Response execute() throws IOException {
-        if (requestBuilder == null) {
-            throw new IllegalStateException("Request not built. Call url() and a HTTP method first.");
+        /**
+         * 使用DELETE方法
+         */
+        public RequestSpec delete() {
+            this.method = "DELETE";
+            return this;
         }
 
-        logRequestDetails();
-        return client.newCall(requestBuilder.build()).execute();
-    }
+        /**
+         * 执行请求并返回Response对象，调用方负责关闭
+         *
+         * @return OkHttp Response对象
+         * @throws IOException 如果请求执行失败
+         */
+        public Response execute() throws IOException {
+            return client.newCall(buildRequest()).execute();
+        }
 
-    /**
-     * 执行请求并返回响应体字符串
-     *
-     * @return 响应体字符串
-     * @throws IOException 如果请求执行失败
-     */
-    public String executeForString() throws IOException {
-        try (Response response = execute()) {
-            return handleResponse(response);
+        /**
+         * 执行请求并返回响应体字符串
+         *
+         * @return 响应体字符串
+         * @throws IOException 如果请求执行失败
+         */
+        public String executeForString() throws IOException {
+            try (Response response = execute()) {
+                return handleResponse(response);
+            }
         }
-    }
 
-    /**
-     * 执行请求并返回JSONObject对象
-     *
-     * @return JSONObject对象
-     * @throws IOException 如果请求执行失败
-     */
-    public JSONObject executeForJson() throws IOException {
-        String responseString = executeForString();
-        return JSON.parseObject(responseString);
-    }
+        /**
+         * 执行请求并返回JSONObject对象
+         *
+         * @return JSONObject对象
+         * @throws IOException 如果请求执行失败
+         */
+        public JSONObject executeForJson() throws IOException {
+            return JSON.parseObject(executeForString());
+        }
 
-    /**
-     * 构建请求
-     *
-     * @param method HTTP方法
-     */
-    private void buildRequest(String method) {
-        if (urlBuilder == null) {
-            throw new IllegalStateException("URL not set. Call url() first.");
+        /**
+         * 执行请求并将响应体直接流式解析为指定类型
+         * <p>
+         * 边读响应流边解析，不先读成字符串，也不构建中间的JSONObject；未声明的字段直接跳过。
+         * </p>
+         *
+         * @param type 目标类型
+         * @return 解析结果
+         * @throws IOException 如果请求执行失败或响应不是合法JSON
+         */
+        public <T> T executeForObject(Class<T> type) throws IOException {
+            try (Response response = execute()) {
+                return OBJECT_MAPPER.readValue(successfulBody(response).byteStream(), type);
+            }
         }
 
-        requestBuilder.url(urlBuilder.build());
+        /**
+         * 异步执行请求，响应在OkHttp的调度线程中读取
+         * <p>
+         * 取消返回的Future会同时取消底层的HTTP调用。
+         * </p>
+         *
+         * @return 响应体字符串的Future，请求失败时以IOException异常完成
+         */
+        public CompletableFuture<String> executeAsync() {
+            Call call = client.newCall(buildRequest());
+            CompletableFuture<String> future = new CompletableFuture<>();
+            future.whenComplete((result, error) -> {
+                if (future.isCancelled()) {
+                    call.cancel();
+                }
+            });
+            call.enqueue(new Callback() {
+                @Override
+                public void onFailure(@NotNull Call call, @NotNull IOException e) {
+                    future.completeExceptionally(e);
+                }
 
-        if (headersBuilder != null) {
-            requestBuilder.headers(headersBuilder.build());
+                @Override
+                public void onResponse(@NotNull Call call, @NotNull Response response) {
+                    try (response) {
+                        future.complete(handleResponse(response));
+                    } catch (IOException e) {
+                        future.completeExceptionally(e);
+                    }
+                }
+            });
+            return future;
         }
 
-        if (requestBody != null && !"GET".equalsIgnoreCase(method)) {
-            requestBuilder.method(method, requestBody);
-        } else {
-            requestBuilder.method(method, null);
+        /**
+         * 异步执行请求并解析为JSONObject
+         *
+         * @return JSONObject的Future
+         */
+        public CompletableFuture<JSONObject> executeForJsonAsync() {
+            return executeAsync().thenApply(JSON::parseObject);
         }
-    }
 
-    /**
-     * 处理响应
-     *
-     * @param response OkHttp响应对象
-     * @return 响应体字符串
-     * @throws IOException 如果响应处理失败
-     */
-    private String handleResponse(Response response) throws IOException {
-        if (!response.isSuccessful()) {
-            throw new IOException("Unexpected response code: " + response.code());
+        /**
+         * 执行请求并按行读取SSE（text/event-stream）响应
+         * <p>
+         * 每读到一行 "data:" 数据就立即回调，不等待整个响应结束，
+         * 用于转发RAG后端的流式回答。
+         * </p>
+         *
+         * @param dataHandler 每条data数据的处理回调
+         * @throws IOException 如果请求执行失败
+         */
+        public void executeForEventStream(Consumer<String> dataHandler) throws IOException {
+            try (Response response = execute()) {
+                BufferedSource source = successfulBody(response).source();
+                String line;
+                while ((line = source.readUtf8Line()) != null) {
+                    if (line.startsWith("data:")) {
+                        String data = line.substring(5).trim();
+                        if (!data.isEmpty()) {
+                            dataHandler.accept(data);
+                        }
+                    }
+                }
+            }
         }
 
-        ResponseBody responseBody = response.body();
-        if (responseBody == null) {
-            throw new IOException("Response body is null");
+        /**
+         * 执行请求并将SSE响应中的每条data数据解析为指定类型后回调
+         *
+         * @param type 每条数据的类型
+         * @param eventHandler 每条数据的处理回调
+         * @throws IOException 如果请求执行失败或某条数据不是合法JSON
+         */
+        public <T> void executeForEventStream(Class<T> type, Consumer<T> eventHandler) throws IOException {
+            try (Response response = execute()) {
+                BufferedSource source = successfulBody(response).source();
+                String line;
+                while ((line = source.readUtf8Line()) != null) {
+                    if (line.startsWith("data:")) {
+                        String data = line.substring(5).trim();
+                        if (!data.isEmpty()) {
+                            eventHandler.accept(OBJECT_MAPPER.readValue(data, type));
+                        }
+                    }
+                }
+            }
         }
 
-        String responseString = responseBody.string();
-        log.info("API Response: {}", responseString);
-        return responseString;
-    }
+        /**
+         * 根据当前设置构建不可变的Request
+         */
+        private Request buildRequest() {
+            RequestBody body = "GET".equals(method) ? null : requestBody;
+            if (body == null && ("POST".equals(method) || "PUT".equals(method))) {
+                // OkHttp要求POST/PUT必须带请求体，未设置时发送空请求体
+                body = RequestBody.create(new byte[0], null);
+            }
+            Request request = new Request.Builder()
+                    .url(urlBuilder.build())
+                    .headers(headersBuilder.build())
+                    .method(method, body)
+                    .build();
+            log.debug("HTTP请求: {} {}", request.method(), request.url());
+            return request;
+        }
 
-    /**
-     * 记录请求详细信息
-     */
-    private void logRequestDetails() {
-        Request request = requestBuilder.build();
-        log.info("Request Details:");
-        log.info("Method: {}", request.method());
-        log.info("URL: {}", request.url());
-        log.info("Headers: {}", request.headers());
-        if (request.body() != null) {
-            log.info("Request body exists.");
+        /**
+         * 处理响应
+         *
+         * @param response OkHttp响应对象
+         * @return 响应体字符串
+         * @throws IOException 如果响应处理失败
+         */
+        private static String handleResponse(Response response) throws IOException {
+            String responseString = successfulBody(response).string();
+            log.debug("API Response: {}", responseString);
+            return responseString;
+        }
+
+        /**
+         * 检查状态码并返回响应体
+         * @throws HttpStatusException 状态码不是2xx
+         */
+        private static ResponseBody successfulBody(Response response) throws IOException {
+            if (!response.isSuccessful()) {
+                throw new HttpStatusException(response.code());
+            }
+            ResponseBody responseBody = response.body();
+            if (responseBody == null) {
+                throw new IOException("Response body is null");
+            }
+            return responseBody;
         }
     }
-}
\ No newline at end of file
+}
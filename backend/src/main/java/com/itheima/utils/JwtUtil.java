@@ -1,7 +1,9 @@
 package com.itheima.utils;
 
 import com.auth0.jwt.JWT;
+import com.auth0.jwt.JWTVerifier;
 import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.interfaces.DecodedJWT;
 
 import java.util.Date;
 import java.util.Map;
@@ -9,22 +11,32 @@ import java.util.Map;
 public class JwtUtil {
 
     private static final String KEY = "itheima";
+
+    //签名算法和校验器都是线程安全的，全局复用，避免每次解析都重新创建
+    private static final Algorithm ALGORITHM = Algorithm.HMAC256(KEY);
+    private static final JWTVerifier VERIFIER = JWT.require(ALGORITHM).build();
 	
 	//接收业务数据,生成token并返回
     public static String genToken(Map<String, Object> claims) {
         return JWT.create()
                 .withClaim("claims", claims)
                 .withExpiresAt(new Date(System.currentTimeMillis() + 1000 * 60 * 60 ))
-                .sign(Algorithm.HMAC256(KEY));
+                .sign(ALGORITHM);
     }
 
 	//接收token,验证token,并返回业务数据
     public static Map<String, Object> parseToken(String token) {
-        return JWT.require(Algorithm.HMAC256(KEY))
-                .build()
-                .verify(token)
-                .getClaim("claims")
-                .asMap();
+        return getClaims(verify(token));
+    }
+
+	//接收token,验证签名和有效期,返回解码后的token(包含过期时间)
+    public static DecodedJWT verify(String token) {
+        return VERIFIER.verify(token);
+    }
+
+	//从已验证的token中取出业务数据
+    public static Map<String, Object> getClaims(DecodedJWT jwt) {
+        return jwt.getClaim("claims").asMap();
     }
 
 }
@@ -0,0 +1,58 @@
+package com.itheima.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.coyote.ProtocolHandler;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+
+import java.util.concurrent.Executors;
+
+/**
+ * 虚拟线程配置（仅在 java21 profile 下编译）
+ * <p>
+ * 请求处理时间几乎都花在等待RAG、MySQL、Redis和磁盘IO上，平台线程数限制了并发数。
+ * 开启后Tomcat每个请求、每个@Async任务、每个流式聊天转发都在独立的虚拟线程中执行。
+ * ThreadLocalUtil 不受影响：一个请求从拦截器到控制器始终在同一个虚拟线程中，
+ * LoginInterceptor 在 afterCompletion 中清除即可。
+ * </p>
+ */
+@Slf4j
+@Configuration
+@ConditionalOnProperty(name = "spring.threads.virtual.enabled", havingValue = "true")
+public class VirtualThreadConfig {
+
+    /**
+     * Tomcat请求处理改为每个请求一个虚拟线程
+     */
+    @Bean
+    public TomcatProtocolHandlerCustomizer<ProtocolHandler> virtualThreadProtocolHandlerCustomizer() {
+        log.info("Tomcat请求处理使用虚拟线程");
+        return protocolHandler -> protocolHandler.setExecutor(
+                Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("tomcat-vt-", 0).factory()));
+    }
+
+    /**
+     * 默认异步执行器（@Async 未指定名称时使用）
+     */
+    @Bean(name = {"taskExecutor", "applicationTaskExecutor"})
+    public AsyncTaskExecutor taskExecutor() {
+        return virtualThreadExecutor("task-vt-");
+    }
+
+    /**
+     * 流式聊天执行器
+     */
+    @Bean
+    public AsyncTaskExecutor chatStreamExecutor() {
+        return virtualThreadExecutor("chat-stream-vt-");
+    }
+
+    private static AsyncTaskExecutor virtualThreadExecutor(String namePrefix) {
+        return new TaskExecutorAdapter(
+                Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(namePrefix, 0).factory()));
+    }
+}
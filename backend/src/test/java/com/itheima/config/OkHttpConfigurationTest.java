@@ -0,0 +1,43 @@
+package com.itheima.config;
+
+import io.micrometer.core.instrument.binder.okhttp3.OkHttpMetricsEventListener;
+import okhttp3.Request;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * okhttp.requests 指标的uri标签：路径中的ID替换为模板，标签取值有限
+ */
+public class OkHttpConfigurationTest {
+
+    @Test
+    public void testIdSegmentsAreTemplated() {
+        assertEquals("/conversations/{id}/clear",
+                OkHttpConfiguration.uriTemplate(request("http://localhost:5000/conversations/session_12/clear")));
+        assertEquals("/conversations/{id}/history",
+                OkHttpConfiguration.uriTemplate(request("http://localhost:5000/conversations/session_9876/history")));
+    }
+
+    @Test
+    public void testFixedPathsAreKept() {
+        assertEquals("/chat/stream", OkHttpConfiguration.uriTemplate(request("http://localhost:5000/chat/stream")));
+        assertEquals("/vectorstores/incremental",
+                OkHttpConfiguration.uriTemplate(request("http://localhost:5000/vectorstores/incremental?x=1")));
+        assertEquals("/", OkHttpConfiguration.uriTemplate(request("http://localhost:5000/")));
+    }
+
+    @Test
+    public void testDeclaredPatternWins() {
+        Request request = new Request.Builder()
+                .url("http://localhost:5000/users/alice/files")
+                .header(OkHttpMetricsEventListener.URI_PATTERN, "/users/{name}/files")
+                .build();
+
+        assertEquals("/users/{name}/files", OkHttpConfiguration.uriTemplate(request));
+    }
+
+    private static Request request(String url) {
+        return new Request.Builder().url(url).build();
+    }
+}
@@ -0,0 +1,112 @@
+package com.itheima.config;
+
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * RAG传输层对比：原来的 SimpleClientHttpRequestFactory 与共享OkHttp连接池
+ * <p>
+ * 多个线程并发调用RAG接口，统计RAG后端收到的新建连接数（每个连接上的第一个请求）和总耗时。
+ * HttpURLConnection 每个目标地址最多只缓存5个空闲连接，并发超过5时大部分请求都要重新建立TCP连接；
+ * 共享连接池的连接数只取决于峰值并发。
+ * 运行：mvn test -Dtest=RagTransportBenchmarkTest -Dbenchmark=true
+ * </p>
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class RagTransportBenchmarkTest {
+
+    private static final int CALLS = 2000;
+    private static final int CONCURRENCY = 32;
+
+    private final AtomicInteger newConnections = new AtomicInteger();
+    private MockWebServer ragServer;
+    private String url;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        ragServer = new MockWebServer();
+        ragServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                if (request.getSequenceNumber() == 0) {
+                    newConnections.incrementAndGet();
+                }
+                return new MockResponse()
+                        .setHeader("Content-Type", "application/json")
+                        .setBody("{\"status\":\"healthy\"}");
+            }
+        });
+        ragServer.start();
+        url = "http://" + ragServer.getHostName() + ":" + ragServer.getPort() + "/health";
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        ragServer.shutdown();
+    }
+
+    @Test
+    public void comparePerCallAndPooledTransport() throws Exception {
+        SimpleClientHttpRequestFactory simpleFactory = new SimpleClientHttpRequestFactory();
+        simpleFactory.setConnectTimeout(5000);
+        simpleFactory.setReadTimeout(30000);
+        long simpleMs = run(new RestTemplate(simpleFactory));
+        int simpleConnections = newConnections.getAndSet(0);
+
+        OkHttpClient okHttpClient = new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(200, 300, TimeUnit.SECONDS))
+                .build();
+        long pooledMs = run(new RagClientConfig().ragRestTemplate(okHttpClient));
+        int pooledConnections = newConnections.getAndSet(0);
+
+        System.out.printf("请求数: %d, 并发: %d%n", CALLS, CONCURRENCY);
+        System.out.printf("SimpleClientHttpRequestFactory: 新建连接 %d, 总耗时 %dms%n", simpleConnections, simpleMs);
+        System.out.printf("共享OkHttp连接池: 新建连接 %d, 总耗时 %dms%n", pooledConnections, pooledMs);
+
+        assertTrue(pooledConnections <= CONCURRENCY,
+                "连接池新建的连接数不应超过并发数，实际 " + pooledConnections);
+    }
+
+    private long run(RestTemplate restTemplate) throws Exception {
+        // 预热，不计入统计
+        restTemplate.getForObject(url, Map.class);
+        newConnections.set(0);
+
+        ExecutorService executor = Executors.newFixedThreadPool(CONCURRENCY);
+        long start = System.currentTimeMillis();
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < CALLS; i++) {
+                futures.add(executor.submit(() -> restTemplate.getForObject(url, Map.class)));
+            }
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdown();
+        }
+        return System.currentTimeMillis() - start;
+    }
+}
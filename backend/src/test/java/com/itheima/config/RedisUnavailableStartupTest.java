@@ -0,0 +1,32 @@
+package com.itheima.config;
+
+import com.itheima.service.TokenCache;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * Redis不可用时应用上下文照常启动，令牌注销广播的订阅在后台重试
+ */
+@SpringBootTest(properties = {
+        "spring.data.redis.port=1",
+        "auth.token-cache.subscribe-retry-seconds=3600"
+})
+public class RedisUnavailableStartupTest {
+
+    @Autowired
+    private TokenCache tokenCache;
+
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    @Test
+    public void testContextStartsWithoutRedis() {
+        assertNotNull(tokenCache);
+        assertFalse(redisMessageListenerContainer.isAutoStartup());
+    }
+}
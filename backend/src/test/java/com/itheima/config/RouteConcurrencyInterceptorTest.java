@@ -0,0 +1,173 @@
+package com.itheima.config;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.SocketPolicy;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 按路由限流测试：超过上限的请求等待超时后失败，许可在响应体关闭或请求失败时归还，且只归还一次
+ */
+public class RouteConcurrencyInterceptorTest {
+
+    private static final int MAX_PER_ROUTE = 2;
+    private static final long ACQUIRE_TIMEOUT_MS = 100;
+
+    private MockWebServer server;
+    private RouteConcurrencyInterceptor interceptor;
+    private OkHttpClient client;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+        interceptor = new RouteConcurrencyInterceptor(MAX_PER_ROUTE, ACQUIRE_TIMEOUT_MS);
+        client = new OkHttpClient.Builder()
+                .addInterceptor(interceptor)
+                .retryOnConnectionFailure(false)
+                .build();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    public void testLimitIsEnforcedPerRoute() throws IOException {
+        enqueue(3);
+        Response first = call(server);
+        Response second = call(server);
+
+        // 两个响应体都未关闭，第三个请求等待超时后失败
+        long start = System.currentTimeMillis();
+        IOException e = assertThrows(IOException.class, () -> call(server));
+        assertTrue(e.getMessage().contains("并发请求数已达上限 " + MAX_PER_ROUTE), e.getMessage());
+        assertTrue(System.currentTimeMillis() - start >= ACQUIRE_TIMEOUT_MS);
+        assertEquals(2, server.getRequestCount());
+
+        // 其他路由不受影响
+        MockWebServer other = new MockWebServer();
+        other.start();
+        try {
+            other.enqueue(new MockResponse().setBody("other"));
+            try (Response response = call(other)) {
+                assertEquals("other", response.body().string());
+            }
+        } finally {
+            other.shutdown();
+        }
+
+        // 关闭一个响应后许可归还
+        first.close();
+        try (Response third = call(server)) {
+            assertEquals(200, third.code());
+        }
+        second.close();
+        assertEquals(MAX_PER_ROUTE, availablePermits(server));
+    }
+
+    @Test
+    public void testPermitIsReleasedWhenBodyIsRead() throws IOException {
+        enqueue(MAX_PER_ROUTE + 1);
+
+        for (int i = 0; i <= MAX_PER_ROUTE; i++) {
+            // string() 读完后关闭响应体
+            assertEquals("ok", call(server).body().string());
+        }
+        assertEquals(MAX_PER_ROUTE, availablePermits(server));
+
+        // 只关闭 source（流式读取的用法）也会归还许可
+        server.enqueue(new MockResponse().setBody("ok"));
+        Response streamed = call(server);
+        streamed.body().source().readUtf8();
+        streamed.body().source().close();
+        assertEquals(MAX_PER_ROUTE, availablePermits(server));
+    }
+
+    @Test
+    public void testPermitIsReleasedOnlyOnceWhenClosedTwice() throws IOException {
+        enqueue(1);
+        Response response = call(server);
+        response.body().source().close();
+        response.close();
+        response.body().close();
+
+        assertEquals(MAX_PER_ROUTE, availablePermits(server));
+    }
+
+    @Test
+    public void testPermitIsReleasedWhenRequestFails() throws IOException {
+        for (int i = 0; i <= MAX_PER_ROUTE; i++) {
+            server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AT_START));
+        }
+
+        // 连接失败（IOException）的次数超过上限，每次都归还了许可，不会因等待许可而超时
+        for (int i = 0; i <= MAX_PER_ROUTE; i++) {
+            IOException e = assertThrows(IOException.class, () -> call(server));
+            assertFalse(e.getMessage().contains("并发请求数已达上限"), e.getMessage());
+        }
+        assertEquals(MAX_PER_ROUTE, availablePermits(server));
+    }
+
+    @Test
+    public void testPermitIsReleasedWhenDownstreamThrowsRuntimeException() throws IOException {
+        AtomicBoolean fail = new AtomicBoolean(true);
+        OkHttpClient failing = client.newBuilder()
+                .addInterceptor(chain -> {
+                    if (fail.get()) {
+                        throw new IllegalStateException("下游拦截器异常");
+                    }
+                    return chain.proceed(chain.request());
+                })
+                .build();
+
+        for (int i = 0; i <= MAX_PER_ROUTE; i++) {
+            assertThrows(IllegalStateException.class,
+                    () -> failing.newCall(request(server)).execute());
+        }
+        assertEquals(MAX_PER_ROUTE, availablePermits(server));
+
+        fail.set(false);
+        enqueue(1);
+        try (Response response = failing.newCall(request(server)).execute()) {
+            assertEquals("ok", response.body().string());
+        }
+    }
+
+    private Response call(MockWebServer target) throws IOException {
+        return client.newCall(request(target)).execute();
+    }
+
+    private static Request request(MockWebServer target) {
+        return new Request.Builder().url(target.url("/chat")).build();
+    }
+
+    private void enqueue(int count) {
+        for (int i = 0; i < count; i++) {
+            server.enqueue(new MockResponse().setBody("ok"));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private int availablePermits(MockWebServer target) {
+        Map<String, Semaphore> permits = (Map<String, Semaphore>) ReflectionTestUtils.getField(interceptor, "permits");
+        return permits.get("http://" + target.getHostName() + ":" + target.getPort()).availablePermits();
+    }
+}
@@ -0,0 +1,60 @@
+package com.itheima.config;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.TaskScheduler;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * 订阅令牌注销广播：Redis不可用时不抛出异常，停止容器后按间隔重试
+ */
+public class TokenRevocationSubscriberTest {
+
+    @Test
+    public void testFailedSubscriptionIsRetried() {
+        RedisMessageListenerContainer container = mock(RedisMessageListenerContainer.class);
+        TaskScheduler scheduler = mock(TaskScheduler.class);
+        doThrow(new RedisConnectionFailureException("Unable to connect to Redis")).doNothing().when(container).start();
+        TokenRevocationSubscriber subscriber = new TokenRevocationSubscriber(container, scheduler, 30);
+
+        subscriber.tryStart();
+
+        verify(container).stop();
+        ArgumentCaptor<Runnable> retry = ArgumentCaptor.forClass(Runnable.class);
+        ArgumentCaptor<Instant> at = ArgumentCaptor.forClass(Instant.class);
+        verify(scheduler).schedule(retry.capture(), at.capture());
+        Duration delay = Duration.between(Instant.now(), at.getValue());
+        assertTrue(delay.compareTo(Duration.ofSeconds(25)) > 0, "delay " + delay);
+
+        // 重试成功后不再安排下一次
+        retry.getValue().run();
+        verify(container, times(2)).start();
+        verify(container, times(1)).stop();
+        verify(scheduler, times(1)).schedule(any(Runnable.class), any(Instant.class));
+    }
+
+    @Test
+    public void testSubscribeRunsOffTheStartupThread() {
+        RedisMessageListenerContainer container = mock(RedisMessageListenerContainer.class);
+        TaskScheduler scheduler = mock(TaskScheduler.class);
+        doNothing().when(container).start();
+
+        new TokenRevocationSubscriber(container, scheduler, 30).subscribe();
+
+        verify(container, never()).start();
+        verify(scheduler).schedule(any(Runnable.class), any(Instant.class));
+    }
+}
@@ -0,0 +1,132 @@
+package com.itheima.controller;
+
+import com.itheima.dto.UploadStatus;
+import com.itheima.exception.GlobalExceptionHandler;
+import com.itheima.pojo.File;
+import com.itheima.pojo.UploadSession;
+import com.itheima.service.UploadSessionService;
+import com.itheima.utils.ThreadLocalUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * 分片上传接口测试
+ */
+public class UploadControllerTest {
+
+    private UploadSessionService uploadSessionService;
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        uploadSessionService = mock(UploadSessionService.class);
+        mockMvc = MockMvcBuilders.standaloneSetup(new UploadController(uploadSessionService))
+                .setControllerAdvice(new GlobalExceptionHandler())
+                .build();
+        ThreadLocalUtil.set(Map.of("id", 1));
+    }
+
+    @AfterEach
+    void tearDown() {
+        ThreadLocalUtil.remove();
+    }
+
+    @Test
+    public void testInitiateDefaultsToRootFolder() throws Exception {
+        UploadSession session = UploadSession.builder().id("u1").userId(1L).folderId(0L)
+                .fileName("a.bin").fileSize(10L).chunkSize(4).chunkCount(3).tempPath("/tmp/u1.part").build();
+        when(uploadSessionService.initiate(1L, 0L, "a.bin", 10L)).thenReturn(session);
+
+        mockMvc.perform(post("/files/uploads")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"fileName\":\"a.bin\",\"fileSize\":10}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.code").value(0))
+                .andExpect(jsonPath("$.data.id").value("u1"))
+                .andExpect(jsonPath("$.data.chunkCount").value(3))
+                // 内部字段不返回给客户端
+                .andExpect(jsonPath("$.data.tempPath").doesNotExist())
+                .andExpect(jsonPath("$.data.userId").doesNotExist());
+    }
+
+    @Test
+    public void testInitiateLimitErrorIsReported() throws Exception {
+        when(uploadSessionService.initiate(eq(1L), any(), any(), any()))
+                .thenThrow(new RuntimeException("未完成的上传会话过多，请先完成或取消已有的上传（最多 5 个）"));
+
+        mockMvc.perform(post("/files/uploads")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"fileName\":\"a.bin\",\"fileSize\":10,\"folderId\":null}"))
+                .andExpect(jsonPath("$.code").value(1))
+                .andExpect(jsonPath("$.message").value("未完成的上传会话过多，请先完成或取消已有的上传（最多 5 个）"));
+    }
+
+    @Test
+    public void testChunkBodyIsStreamedToService() throws Exception {
+        byte[] chunk = {1, 2, 3, 4};
+        byte[][] received = new byte[1][];
+        doAnswer(invocation -> {
+            received[0] = invocation.getArgument(3, InputStream.class).readAllBytes();
+            return null;
+        }).when(uploadSessionService).writeChunk(eq(1L), eq("u1"), eq(2), any(InputStream.class), anyLong());
+
+        mockMvc.perform(put("/files/uploads/u1/chunks/2")
+                        .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                        .content(chunk))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.code").value(0));
+
+        ArgumentCaptor<Long> length = ArgumentCaptor.forClass(Long.class);
+        verify(uploadSessionService).writeChunk(eq(1L), eq("u1"), eq(2), any(InputStream.class), length.capture());
+        assertArrayEquals(chunk, received[0]);
+        assertEquals(4L, length.getValue());
+    }
+
+    @Test
+    public void testStatusListsMissingChunks() throws Exception {
+        UploadSession session = UploadSession.builder().id("u1").userId(1L).chunkCount(3).build();
+        when(uploadSessionService.getStatus(1L, "u1")).thenReturn(new UploadStatus(session, List.of(0, 2)));
+
+        mockMvc.perform(get("/files/uploads/u1"))
+                .andExpect(jsonPath("$.data.missingChunks[0]").value(0))
+                .andExpect(jsonPath("$.data.missingChunks[1]").value(2));
+    }
+
+    @Test
+    public void testCompleteAndAbort() throws Exception {
+        File file = new File();
+        file.setId(9L);
+        when(uploadSessionService.complete(1L, "u1")).thenReturn(file);
+
+        mockMvc.perform(post("/files/uploads/u1/complete"))
+                .andExpect(jsonPath("$.data.id").value(9));
+        mockMvc.perform(delete("/files/uploads/u1"))
+                .andExpect(jsonPath("$.code").value(0));
+        verify(uploadSessionService).abort(1L, "u1");
+    }
+}
@@ -0,0 +1,127 @@
+package com.itheima.interceptors;
+
+import com.itheima.service.TokenCache;
+import com.itheima.utils.JwtUtil;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 登录拦截器吞吐量对比：每次查询Redis并校验JWT 与 本地令牌缓存
+ * <p>
+ * 模拟100个已登录用户的令牌被多个线程反复使用，Redis GET 用固定的200微秒延迟模拟同机房的一次网络往返。
+ * 运行：mvn test -Dtest=LoginInterceptorBenchmarkTest -Dbenchmark=true
+ * </p>
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class LoginInterceptorBenchmarkTest {
+
+    private static final int USERS = 100;
+    private static final int REQUESTS_PER_THREAD = 5000;
+    private static final int THREADS = 16;
+    private static final long REDIS_RTT_NANOS = 200_000;
+
+    @Test
+    public void compareWithAndWithoutTokenCache() throws Exception {
+        List<String> tokens = new ArrayList<>();
+        for (int i = 0; i < USERS; i++) {
+            Map<String, Object> claims = new HashMap<>();
+            claims.put("id", i);
+            claims.put("username", "user" + i);
+            tokens.add(JwtUtil.genToken(claims));
+        }
+
+        double uncached = run(interceptor(0), tokens);
+        double cached = run(interceptor(10000), tokens);
+
+        System.out.printf("线程数: %d, 每线程请求数: %d, 模拟Redis往返: %dμs%n",
+                THREADS, REQUESTS_PER_THREAD, REDIS_RTT_NANOS / 1000);
+        System.out.printf("无缓存: %.0f 次/秒%n", uncached);
+        System.out.printf("本地令牌缓存: %.0f 次/秒%n", cached);
+
+        assertTrue(cached > uncached, "本地缓存的吞吐量应高于每次查询Redis");
+    }
+
+    @SuppressWarnings("unchecked")
+    private LoginInterceptor interceptor(int cacheSize) {
+        StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+        ValueOperations<String, String> operations = mock(ValueOperations.class);
+        when(redisTemplate.opsForValue()).thenReturn(operations);
+        when(operations.get(anyString())).thenAnswer(invocation -> {
+            LockSupport.parkNanos(REDIS_RTT_NANOS);
+            return invocation.getArgument(0);
+        });
+
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        LoginInterceptor interceptor = new LoginInterceptor();
+        ReflectionTestUtils.setField(interceptor, "tokenCache",
+                new TokenCache(redisTemplate, meterRegistry, cacheSize, 300));
+        ReflectionTestUtils.setField(interceptor, "meterRegistry", meterRegistry);
+        return interceptor;
+    }
+
+    /**
+     * @return 每秒通过的请求数
+     */
+    private double run(LoginInterceptor interceptor, List<String> tokens) throws Exception {
+        // 预热，不计入统计
+        for (String token : tokens) {
+            handle(interceptor, token);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        long start = System.nanoTime();
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                int offset = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < REQUESTS_PER_THREAD; i++) {
+                        if (!handle(interceptor, tokens.get((offset + i) % tokens.size()))) {
+                            throw new IllegalStateException("令牌验证失败");
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(5, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdown();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        return THREADS * REQUESTS_PER_THREAD / seconds;
+    }
+
+    private boolean handle(LoginInterceptor interceptor, String token) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("Authorization", token);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        try {
+            return interceptor.preHandle(request, response, null);
+        } finally {
+            interceptor.afterCompletion(request, response, null, null);
+        }
+    }
+}
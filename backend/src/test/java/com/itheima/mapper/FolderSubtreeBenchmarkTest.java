@@ -0,0 +1,170 @@
+package com.itheima.mapper;
+
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.MybatisSqlSessionFactoryBuilder;
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.itheima.pojo.Folder;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 文件夹子树查询对比：按 parent_id 逐层递归查询 与 按物化路径前缀一次查询
+ * <p>
+ * 在 MySQL 中随机生成一棵10000个文件夹的树（每个文件夹挂在之前随机一个文件夹下，或挂在根目录），
+ * 通过 {@link FolderMapper} 执行真实的SQL，分别统计取出子树的查询次数和耗时。
+ * 表是只属于测试连接的临时表（与 folder 同名，遮住正式表），不会读写库中已有的数据。
+ * 运行：mvn test -Dtest=FolderSubtreeBenchmarkTest -Dbenchmark.mysql.url=jdbc:mysql://localhost:3306/go_ztc
+ * -Dbenchmark.mysql.username=root -Dbenchmark.mysql.password=...
+ * </p>
+ */
+@Slf4j
+@EnabledIfSystemProperty(named = "benchmark.mysql.url", matches = ".+")
+public class FolderSubtreeBenchmarkTest {
+
+    private static final int FOLDERS = 10_000;
+    private static final Long USER_ID = 1L;
+    private static final int ROUNDS = 5;
+
+    private static final Map<Long, String> paths = new HashMap<>();
+    private static SingleConnectionDataSource dataSource;
+    private static SqlSession session;
+    private static FolderMapper folderMapper;
+    private int queries;
+
+    @BeforeAll
+    static void createFolders() throws SQLException {
+        dataSource = new SingleConnectionDataSource(System.getProperty("benchmark.mysql.url"),
+                System.getProperty("benchmark.mysql.username", "root"),
+                System.getProperty("benchmark.mysql.password", ""), true);
+        Connection connection = dataSource.getConnection();
+        try (Statement statement = connection.createStatement()) {
+            // 与 message.sql 中的 folder 表一致；逐层查询按 parent_id 走索引，给原来的做法最好的条件
+            statement.execute("CREATE TEMPORARY TABLE folder (" +
+                    "id BIGINT PRIMARY KEY, parent_id BIGINT DEFAULT 0, user_id BIGINT NOT NULL, " +
+                    "folder_name VARCHAR(255) NOT NULL, path VARCHAR(2048) CHARACTER SET ascii NOT NULL, " +
+                    "create_time DATETIME NOT NULL, update_time DATETIME NOT NULL, " +
+                    "KEY idx_folder_parent (parent_id), KEY idx_folder_user_path (user_id, path)" +
+                    ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4");
+        }
+
+        Random random = new Random(42);
+        try (PreparedStatement insert = connection.prepareStatement("INSERT INTO folder " +
+                "(id, parent_id, user_id, folder_name, path, create_time, update_time) VALUES (?, ?, ?, ?, ?, NOW(), NOW())")) {
+            for (long id = 1; id <= FOLDERS; id++) {
+                // 少量顶层文件夹，其余随机挂在已有文件夹下
+                long parentId = id <= 10 ? 0 : 1 + random.nextInt((int) id - 1);
+                String path = (parentId == 0 ? "/" : paths.get(parentId)) + id + "/";
+                paths.put(id, path);
+                insert.setLong(1, id);
+                insert.setLong(2, parentId);
+                insert.setLong(3, USER_ID);
+                insert.setString(4, "folder-" + id);
+                insert.setString(5, path);
+                insert.addBatch();
+                if (id % 1000 == 0) {
+                    insert.executeBatch();
+                }
+            }
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("ANALYZE TABLE folder");
+        }
+
+        MybatisConfiguration configuration = new MybatisConfiguration();
+        configuration.setEnvironment(new Environment("benchmark", new JdbcTransactionFactory(), dataSource));
+        configuration.addMapper(FolderMapper.class);
+        session = new MybatisSqlSessionFactoryBuilder().build(configuration).openSession(true);
+        folderMapper = session.getMapper(FolderMapper.class);
+    }
+
+    @AfterAll
+    static void dropFolders() throws SQLException {
+        if (session != null) {
+            session.close();
+        }
+        if (dataSource != null) {
+            try (Statement statement = dataSource.getConnection().createStatement()) {
+                statement.execute("DROP TEMPORARY TABLE IF EXISTS folder");
+            }
+            dataSource.destroy();
+        }
+    }
+
+    @Test
+    public void compareRecursiveWalkWithPathPrefix() {
+        long root = 1;
+        // 预热：连接、语句缓存和InnoDB缓冲池
+        List<Long> recursive = collectRecursive(root);
+        List<Long> prefix = folderMapper.selectSubtreeIds(USER_ID, paths.get(root));
+
+        long recursiveNanos = Long.MAX_VALUE;
+        int recursiveQueries = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            queries = 0;
+            long start = System.nanoTime();
+            recursive = collectRecursive(root);
+            recursiveNanos = Math.min(recursiveNanos, System.nanoTime() - start);
+            recursiveQueries = queries;
+        }
+
+        long prefixNanos = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            prefix = folderMapper.selectSubtreeIds(USER_ID, paths.get(root));
+            prefixNanos = Math.min(prefixNanos, System.nanoTime() - start);
+        }
+
+        log.info("文件夹总数: {}, 子树大小: {}, 逐层递归查询: {} 次查询 {} ms, 物化路径前缀查询: 1 次查询 {} ms（{} 轮取最快）",
+                FOLDERS, prefix.size(), recursiveQueries, String.format("%.1f", recursiveNanos / 1e6),
+                String.format("%.1f", prefixNanos / 1e6), ROUNDS);
+
+        // 递归结果不含根文件夹自身
+        recursive.add(root);
+        assertEquals(new HashSet<>(recursive), new HashSet<>(prefix));
+        assertEquals(recursive.size(), recursiveQueries);
+        assertTrue(prefixNanos < recursiveNanos, "前缀查询应快于逐层递归查询");
+    }
+
+    /**
+     * 原来的做法：SELECT id FROM folder WHERE user_id = ? AND parent_id = ?，对每个子文件夹递归
+     */
+    private List<Long> collectRecursive(long parentId) {
+        List<Long> result = new ArrayList<>();
+        collectRecursive(parentId, result);
+        return result;
+    }
+
+    private void collectRecursive(long parentId, List<Long> result) {
+        queries++;
+        List<Long> children = folderMapper.selectList(new LambdaQueryWrapper<Folder>()
+                        .select(Folder::getId)
+                        .eq(Folder::getUserId, USER_ID)
+                        .eq(Folder::getParentId, parentId))
+                .stream().map(Folder::getId).toList();
+        result.addAll(children);
+        for (long childId : children) {
+            collectRecursive(childId, result);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.itheima.pojo.rag;
+
+import com.itheima.utils.HttpClientUtil;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * RAG聊天响应解析测试：经 HttpClientUtil 按实际方式解析 /chat 响应和 /chat/stream 事件
+ */
+public class RagChatResponseTest {
+
+    private MockWebServer ragServer;
+    private HttpClientUtil httpClientUtil;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        ragServer = new MockWebServer();
+        ragServer.start();
+        httpClientUtil = new HttpClientUtil(new OkHttpClient());
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        ragServer.shutdown();
+    }
+
+    @Test
+    public void testAnswerAndSourcesAreDecoded() throws IOException {
+        RagChatResponse response = decode("{\"answer\":\"回答\",\"sources\":[" +
+                "{\"content\":\"片段1\",\"source\":\"user_1/a.txt\",\"score\":0.9}," +
+                "{\"content\":\"片段2\",\"source\":\"user_1/b.txt\"}]," +
+                "\"updated_history\":[{\"role\":\"user\",\"content\":\"你好\"}]}");
+
+        assertTrue(response.hasAnswer());
+        assertEquals("回答", response.getAnswerText());
+        assertEquals(List.of(new RagChatResponse.Source("片段1", "user_1/a.txt"),
+                new RagChatResponse.Source("片段2", "user_1/b.txt")), response.getSources());
+        assertFalse(response.isFallback());
+    }
+
+    @Test
+    public void testLegacyResponseFieldIsReadAsAnswer() throws IOException {
+        RagChatResponse response = decode("{\"response\":\"旧版回答\"}");
+
+        assertTrue(response.hasAnswer());
+        assertEquals("旧版回答", response.getAnswerText());
+        // answer 优先
+        assertEquals("新", decode("{\"answer\":\"新\",\"response\":\"旧\"}").getAnswerText());
+    }
+
+    @Test
+    public void testMissingOrNullSources() throws IOException {
+        assertEquals(List.of(), decode("{\"answer\":\"回答\"}").getSources());
+        // 显式的 null 原样保留，由调用方（ChatServiceImpl.processRagResponse）补成空列表
+        assertNull(decode("{\"answer\":\"回答\",\"sources\":null}").getSources());
+    }
+
+    @Test
+    public void testResponseWithoutAnswerHasNoAnswer() throws IOException {
+        RagChatResponse response = decode("{\"sources\":[],\"error\":\"模型超时\"}");
+
+        assertFalse(response.hasAnswer());
+        assertNull(response.getAnswerText());
+    }
+
+    @Test
+    public void testMalformedBodyFailsToDecode() {
+        assertThrows(IOException.class, () -> decode("<html>Bad Gateway</html>"));
+        assertThrows(IOException.class, () -> decode("{\"answer\":\"被截断"));
+    }
+
+    @Test
+    public void testFallbackIsMarkedAndNeverDecoded() throws IOException {
+        RagChatResponse fallback = RagChatResponse.fallback("服务不可用");
+        assertTrue(fallback.isFallback());
+        assertEquals("服务不可用", fallback.getAnswerText());
+        assertEquals(List.of(), fallback.getSources());
+
+        // 降级标记只能由本服务生成，RAG响应中的同名字段被忽略
+        assertFalse(decode("{\"answer\":\"回答\",\"fallback\":true}").isFallback());
+    }
+
+    @Test
+    public void testStreamEventsAreDecoded() throws IOException {
+        ragServer.enqueue(new MockResponse()
+                .setHeader("Content-Type", "text/event-stream")
+                .setBody("data: {\"type\":\"token\",\"content\":\"回\"}\n\n" +
+                        "data: {\"type\":\"token\",\"content\":\"答\"}\n\n" +
+                        "data: {\"type\":\"done\",\"answer\":\"回答\",\"sources\":[{\"content\":\"片段\",\"source\":\"user_1/a.txt\"}]}\n\n"));
+
+        List<RagChatResponse> events = new ArrayList<>();
+        httpClientUtil.url(ragServer.url("/chat/stream").toString()).post()
+                .executeForEventStream(RagChatResponse.class, events::add);
+
+        assertEquals(List.of("token", "token", "done"), events.stream().map(RagChatResponse::getType).toList());
+        assertEquals("回", events.get(0).getContent());
+        assertFalse(events.get(0).hasAnswer());
+        assertEquals("回答", events.get(2).getAnswerText());
+        assertEquals(1, events.get(2).getSources().size());
+    }
+
+    private RagChatResponse decode(String body) throws IOException {
+        ragServer.enqueue(new MockResponse().setHeader("Content-Type", "application/json").setBody(body));
+        return httpClientUtil.url(ragServer.url("/chat").toString()).post().executeForObject(RagChatResponse.class);
+    }
+}
@@ -0,0 +1,284 @@
+package com.itheima.service;
+
+import com.itheima.mapper.FileBlobMapper;
+import com.itheima.pojo.FileBlob;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 内容寻址存储测试：并发上传相同内容、回收期间提交、秒传校验和事务回滚
+ */
+public class BlobStoreTest {
+
+    private static final byte[] CONTENT = "相同的文件内容".getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    Path storageRoot;
+
+    private Path userDir;
+    private FileBlobMapper fileBlobMapper;
+    private BlobStore blobStore;
+
+    /**
+     * 模拟 file_blob.ref_count
+     */
+    private final Map<String, Integer> refCounts = new ConcurrentHashMap<>();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        userDir = Files.createDirectories(storageRoot.resolve("user_1"));
+        fileBlobMapper = mock(FileBlobMapper.class);
+        doAnswer(invocation -> {
+            refCounts.merge(invocation.getArgument(0), 1, Integer::sum);
+            return 1;
+        }).when(fileBlobMapper).acquire(anyString(), anyLong());
+        doAnswer(invocation -> {
+            refCounts.computeIfPresent(invocation.getArgument(0), (hash, count) -> count - 1);
+            return 1;
+        }).when(fileBlobMapper).release(anyString());
+        blobStore = new BlobStore(fileBlobMapper);
+        ReflectionTestUtils.setField(blobStore, "storageRoot", storageRoot.toString());
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    public void testConcurrentUploadsOfSameContentShareOneBlob() throws Exception {
+        CyclicBarrier barrier = new CyclicBarrier(2);
+        doAnswer(invocation -> {
+            // 两个上传同时登记引用，之后同时发现内容文件还不存在
+            barrier.await(5, TimeUnit.SECONDS);
+            refCounts.merge(invocation.getArgument(0), 1, Integer::sum);
+            return 1;
+        }).when(fileBlobMapper).acquire(anyString(), anyLong());
+
+        BlobStore.StagedContent first = blobStore.stage(new ByteArrayInputStream(CONTENT));
+        BlobStore.StagedContent second = blobStore.stage(new ByteArrayInputStream(CONTENT));
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> a = executor.submit(() -> {
+                blobStore.commit(first, userDir.resolve("a.txt"), false);
+                return null;
+            });
+            Future<?> b = executor.submit(() -> {
+                blobStore.commit(second, userDir.resolve("b.txt"), false);
+                return null;
+            });
+            a.get(10, TimeUnit.SECONDS);
+            b.get(10, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(first.hash(), second.hash());
+        assertEquals(2, refCounts.get(first.hash()));
+        assertArrayEquals(CONTENT, Files.readAllBytes(userDir.resolve("a.txt")));
+        assertArrayEquals(CONTENT, Files.readAllBytes(userDir.resolve("b.txt")));
+        assertEquals(List.of(blobStore.blobPath(first.hash())), blobFiles());
+        assertFalse(Files.exists(first.tempFile()));
+        assertFalse(Files.exists(second.tempFile()));
+    }
+
+    @Test
+    public void testCommitRestoresBlobReclaimedBeforeItsLink() throws IOException {
+        BlobStore.StagedContent first = blobStore.stage(new ByteArrayInputStream(CONTENT));
+        blobStore.commit(first, userDir.resolve("a.txt"), false);
+        Path blob = blobStore.blobPath(first.hash());
+        assertTrue(Files.exists(blob));
+
+        // 回收持有行锁删除内容文件，登记引用等到回收提交后才返回
+        doAnswer(invocation -> {
+            Files.delete(blob);
+            refCounts.merge(invocation.getArgument(0), 1, Integer::sum);
+            return 1;
+        }).when(fileBlobMapper).acquire(anyString(), anyLong());
+        BlobStore.StagedContent second = blobStore.stage(new ByteArrayInputStream(CONTENT));
+        blobStore.commit(second, userDir.resolve("b.txt"), false);
+
+        assertArrayEquals(CONTENT, Files.readAllBytes(blob));
+        assertArrayEquals(CONTENT, Files.readAllBytes(userDir.resolve("b.txt")));
+        assertFalse(Files.exists(second.tempFile()));
+    }
+
+    @Test
+    public void testProofMustMatchContentAtServerChosenOffset() throws IOException {
+        byte[] content = new byte[200 * 1024];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) (i * 31 + 7);
+        }
+        BlobStore.StagedContent staged = blobStore.stage(new ByteArrayInputStream(content));
+        blobStore.commit(staged, userDir.resolve("big.bin"), false);
+        String hash = staged.hash();
+        long size = content.length;
+
+        int offset = (int) blobStore.proofOffset(1L, hash, size);
+        int length = blobStore.proofLength(size);
+        String proof = sha256(content, offset, length);
+
+        assertTrue(blobStore.verifyProof(1L, hash, size, proof));
+        assertFalse(blobStore.verifyProof(1L, hash, size, null));
+        int otherOffset = (int) ((offset + 1) % (size - length + 1));
+        assertFalse(blobStore.verifyProof(1L, hash, size, sha256(content, otherOffset, length)));
+        assertFalse(blobStore.verifyProof(1L, hash, size, sha256(content, 0, content.length)));
+        // 片段位置随用户变化，别的用户的证明不能复用
+        if (blobStore.proofOffset(2L, hash, size) != offset) {
+            assertFalse(blobStore.verifyProof(2L, hash, size, proof));
+        }
+    }
+
+    @Test
+    public void testProofForMissingBlobFails() throws IOException {
+        String hash = "a".repeat(64);
+        assertFalse(blobStore.verifyProof(1L, hash, 10, sha256(CONTENT, 0, CONTENT.length)));
+    }
+
+    @Test
+    public void testLinkExistingReleasesReferenceWhenBlobIsGone() throws IOException {
+        BlobStore.StagedContent staged = blobStore.stage(new ByteArrayInputStream(CONTENT));
+        blobStore.commit(staged, userDir.resolve("a.txt"), false);
+        String hash = staged.hash();
+        recordBlob(hash, CONTENT.length);
+
+        // 检查通过之后，回收持有行锁删除了内容文件，登记引用等到回收提交后才返回
+        doAnswer(invocation -> {
+            Files.delete(blobStore.blobPath(hash));
+            refCounts.merge(invocation.getArgument(0), 1, Integer::sum);
+            return 1;
+        }).when(fileBlobMapper).acquire(anyString(), anyLong());
+        Path target = userDir.resolve("instant.txt");
+
+        assertFalse(blobStore.linkExisting(hash, CONTENT.length, target));
+        assertEquals(1, refCounts.get(hash));
+        assertFalse(Files.exists(target));
+    }
+
+    @Test
+    public void testRollbackUndoesReferenceAndRemovesLink() throws IOException {
+        BlobStore.StagedContent staged = blobStore.stage(new ByteArrayInputStream(CONTENT));
+        Path target = userDir.resolve("a.txt");
+
+        inTransaction(false, () -> blobStore.commit(staged, target, true));
+
+        assertEquals(0, refCounts.getOrDefault(staged.hash(), 0));
+        assertFalse(Files.exists(target));
+        // 分片上传回滚后可以用临时文件重新完成
+        assertTrue(Files.exists(staged.tempFile()));
+        // 内容文件没有引用，留给后台回收
+        assertTrue(Files.exists(blobStore.blobPath(staged.hash())));
+    }
+
+    @Test
+    public void testRollbackOfInstantUploadKeepsExistingReferences() throws IOException {
+        BlobStore.StagedContent staged = blobStore.stage(new ByteArrayInputStream(CONTENT));
+        blobStore.commit(staged, userDir.resolve("a.txt"), false);
+        String hash = staged.hash();
+        recordBlob(hash, CONTENT.length);
+        Path target = userDir.resolve("instant.txt");
+
+        inTransaction(false, () -> assertTrue(blobStore.linkExisting(hash, CONTENT.length, target)));
+
+        assertEquals(1, refCounts.get(hash));
+        assertFalse(Files.exists(target));
+        assertArrayEquals(CONTENT, Files.readAllBytes(userDir.resolve("a.txt")));
+    }
+
+    @Test
+    public void testCommittedTransactionDeletesTempFile() throws IOException {
+        BlobStore.StagedContent staged = blobStore.stage(new ByteArrayInputStream(CONTENT));
+        Path target = userDir.resolve("a.txt");
+
+        inTransaction(true, () -> blobStore.commit(staged, target, true));
+
+        assertEquals(1, refCounts.get(staged.hash()));
+        assertArrayEquals(CONTENT, Files.readAllBytes(target));
+        assertFalse(Files.exists(staged.tempFile()));
+    }
+
+    private interface IoAction {
+        void run() throws IOException;
+    }
+
+    /**
+     * 在模拟的事务中执行：回滚时 ref_count 恢复到事务开始时的值（与数据库一致），并通知已注册的同步回调
+     */
+    private void inTransaction(boolean commit, IoAction action) throws IOException {
+        Map<String, Integer> snapshot = new HashMap<>(refCounts);
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            action.run();
+            if (!commit) {
+                refCounts.clear();
+                refCounts.putAll(snapshot);
+            }
+            int status = commit ? TransactionSynchronization.STATUS_COMMITTED
+                    : TransactionSynchronization.STATUS_ROLLED_BACK;
+            for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+                synchronization.afterCompletion(status);
+            }
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    /**
+     * 让 contains 看到 file_blob 中的记录
+     */
+    private void recordBlob(String hash, long size) {
+        when(fileBlobMapper.selectById(hash)).thenAnswer(invocation -> FileBlob.builder()
+                .contentHash(hash).size(size).refCount(refCounts.getOrDefault(hash, 0)).build());
+    }
+
+    private List<Path> blobFiles() throws IOException {
+        try (Stream<Path> files = Files.walk(blobStore.blobRoot())) {
+            return files.filter(Files::isRegularFile).toList();
+        }
+    }
+
+    private static String sha256(byte[] content, int offset, int length) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(content, offset, length);
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
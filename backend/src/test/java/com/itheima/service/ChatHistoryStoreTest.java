@@ -0,0 +1,207 @@
+package com.itheima.service;
+
+import com.itheima.pojo.ChatHistoryEntry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.ListOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 会话历史缓存测试：加载期间的追加使回填重新加载，缓存只保留最近 capacity() 条，Redis不可用时降级
+ * <p>
+ * Redis 用内存中的列表和计数器模拟，回填脚本按 REPLACE_SCRIPT 的语义执行。
+ * </p>
+ */
+public class ChatHistoryStoreTest {
+
+    private static final Long SESSION_ID = 1L;
+    private static final String KEY = "chat:history:1";
+    private static final String VERSION_KEY = "chat:history:1:version";
+
+    private final Map<String, List<String>> lists = new HashMap<>();
+    private final Map<String, Long> counters = new HashMap<>();
+    private StringRedisTemplate redisTemplate;
+    private ChatHistoryStore store;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        redisTemplate = mock(StringRedisTemplate.class);
+        ListOperations<String, String> listOperations = mock(ListOperations.class);
+        ValueOperations<String, String> valueOperations = mock(ValueOperations.class);
+        when(redisTemplate.opsForList()).thenReturn(listOperations);
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+
+        when(listOperations.range(anyString(), anyLong(), anyLong())).thenAnswer(invocation ->
+                new ArrayList<>(lists.getOrDefault(invocation.<String>getArgument(0), List.of())));
+        when(listOperations.rightPushIfPresent(anyString(), anyString())).thenAnswer(invocation -> {
+            List<String> list = lists.get(invocation.<String>getArgument(0));
+            if (list == null) {
+                return 0L;
+            }
+            list.add(invocation.getArgument(1));
+            return (long) list.size();
+        });
+        doAnswer(invocation -> {
+            List<String> list = lists.get(invocation.<String>getArgument(0));
+            long start = invocation.getArgument(1);
+            if (list != null && list.size() > -start) {
+                list.subList(0, list.size() + (int) start).clear();
+            }
+            return null;
+        }).when(listOperations).trim(anyString(), anyLong(), anyLong());
+        when(valueOperations.get(anyString())).thenAnswer(invocation -> {
+            Long value = counters.get(invocation.<String>getArgument(0));
+            return value != null ? value.toString() : null;
+        });
+        when(valueOperations.increment(anyString())).thenAnswer(invocation ->
+                counters.merge(invocation.getArgument(0), 1L, Long::sum));
+        when(redisTemplate.delete(anyString())).thenAnswer(invocation ->
+                lists.remove(invocation.<String>getArgument(0)) != null);
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(Object[].class)))
+                .thenAnswer(invocation -> replace(invocation.getArgument(1), (Object[]) invocation.getRawArguments()[2]));
+
+        store = new ChatHistoryStore(redisTemplate);
+        ReflectionTestUtils.setField(store, "maxTurns", 2);
+        ReflectionTestUtils.setField(store, "ttlHours", 24L);
+    }
+
+    @Test
+    public void testMissLoadsAndFillsCache() {
+        AtomicInteger loads = new AtomicInteger();
+        List<ChatHistoryEntry> loaded = List.of(entry("user", "q1"), entry("assistant", "a1"));
+
+        assertEquals(loaded, store.getOrLoad(SESSION_ID, () -> {
+            loads.incrementAndGet();
+            return loaded;
+        }));
+        assertEquals(loaded, store.getOrLoad(SESSION_ID, () -> {
+            loads.incrementAndGet();
+            return List.of();
+        }));
+
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testAppendDuringLoadForcesReload() {
+        ChatHistoryEntry question = entry("user", "q1");
+        ChatHistoryEntry answer = entry("assistant", "a1");
+        List<ChatHistoryEntry> database = new ArrayList<>(List.of(question));
+        AtomicInteger loads = new AtomicInteger();
+
+        List<ChatHistoryEntry> result = store.getOrLoad(SESSION_ID, () -> {
+            List<ChatHistoryEntry> snapshot = List.copyOf(database);
+            if (loads.incrementAndGet() == 1) {
+                // 读取数据库之后，另一个请求保存了回复并追加：列表还不存在，追加被跳过
+                database.add(answer);
+                store.append(SESSION_ID, answer);
+            }
+            return snapshot;
+        });
+
+        assertEquals(2, loads.get());
+        assertEquals(List.of(question, answer), result);
+        // 缓存的不是第一次加载的缺少回复的历史
+        assertEquals(List.of(question, answer), store.get(SESSION_ID));
+    }
+
+    @Test
+    public void testContinuousChangesReturnLoadWithoutCaching() {
+        AtomicInteger loads = new AtomicInteger();
+
+        List<ChatHistoryEntry> result = store.getOrLoad(SESSION_ID, () -> {
+            loads.incrementAndGet();
+            store.evict(SESSION_ID);
+            return List.of(entry("user", "q" + loads.get()));
+        });
+
+        assertEquals(3, loads.get());
+        assertEquals(List.of(entry("user", "q3")), result);
+        assertNull(store.get(SESSION_ID));
+    }
+
+    @Test
+    public void testCacheKeepsOnlyRecentEntries() {
+        // maxTurns = 2：保留两轮问答和一条未回复的问题
+        List<ChatHistoryEntry> loaded = IntStream.rangeClosed(1, 8).mapToObj(i -> entry("user", "m" + i)).toList();
+
+        store.getOrLoad(SESSION_ID, () -> loaded);
+        assertEquals(5, lists.get(KEY).size());
+        assertEquals(loaded.subList(3, 8), store.get(SESSION_ID));
+
+        store.append(SESSION_ID, entry("assistant", "m9"));
+        store.append(SESSION_ID, entry("user", "m10"));
+
+        List<ChatHistoryEntry> cached = store.get(SESSION_ID);
+        assertEquals(store.capacity(), cached.size());
+        assertEquals(List.of("m6", "m7", "m8", "m9", "m10"), cached.stream().map(ChatHistoryEntry::getContent).toList());
+    }
+
+    @Test
+    public void testAppendWithoutCacheDoesNotCreatePartialHistory() {
+        store.append(SESSION_ID, entry("user", "q1"));
+
+        assertNull(store.get(SESSION_ID));
+        assertEquals(1L, counters.get(VERSION_KEY));
+    }
+
+    @Test
+    public void testRedisFailureFallsBackToLoad() {
+        when(redisTemplate.opsForList()).thenThrow(new IllegalStateException("connection refused"));
+        when(redisTemplate.opsForValue()).thenThrow(new IllegalStateException("connection refused"));
+        List<ChatHistoryEntry> loaded = List.of(entry("user", "q1"));
+        AtomicInteger loads = new AtomicInteger();
+
+        assertEquals(loaded, store.getOrLoad(SESSION_ID, () -> {
+            loads.incrementAndGet();
+            return loaded;
+        }));
+        store.append(SESSION_ID, entry("assistant", "a1"));
+
+        assertEquals(1, loads.get());
+        assertNull(lists.get(KEY));
+    }
+
+    /**
+     * 按 REPLACE_SCRIPT 的语义执行：版本未变时替换列表并只保留最近 ARGV[2] 条
+     */
+    private Long replace(List<String> keys, Object[] args) {
+        Long current = counters.get(keys.get(1));
+        if (!(current != null ? current.toString() : "0").equals(args[0])) {
+            return -1L;
+        }
+        int capacity = Integer.parseInt((String) args[1]);
+        List<String> values = new ArrayList<>();
+        for (int i = 3; i < args.length; i++) {
+            values.add((String) args[i]);
+        }
+        List<String> list = new ArrayList<>(values.subList(Math.max(0, values.size() - capacity), values.size()));
+        lists.put(keys.get(0), list);
+        return (long) list.size();
+    }
+
+    private static ChatHistoryEntry entry(String role, String content) {
+        return new ChatHistoryEntry(role, content, "2024-01-01T00:00");
+    }
+}
@@ -0,0 +1,201 @@
+package com.itheima.service;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.metadata.TableInfoHelper;
+import com.itheima.config.RagClientConfig;
+import com.itheima.mapper.ChatMessageMapper;
+import com.itheima.mapper.ChatSessionMapper;
+import com.itheima.mapper.FileMapper;
+import com.itheima.mapper.FolderMapper;
+import com.itheima.pojo.ChatMessage;
+import com.itheima.pojo.ChatSession;
+import com.itheima.service.impl.ChatServiceImpl;
+import com.itheima.utils.HttpClientUtil;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.apache.ibatis.builder.MapperBuilderAssistant;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 助手消息的存储与读取：保存时答案和来源写入各自的列，content 是前端需要的精简响应 {answer, sources}；
+ * 消息列表按 selectListingBySessionId 的投影读取（助手消息不读 content），由答案和来源列拼回同样的内容
+ */
+public class ChatMessageRoundTripTest {
+
+    private MockWebServer ragServer;
+    private final List<ChatMessage> rows = new ArrayList<>();
+    private ChatServiceImpl chatService;
+
+    @BeforeAll
+    static void initTableInfo() {
+        MapperBuilderAssistant assistant = new MapperBuilderAssistant(new MybatisConfiguration(), "");
+        TableInfoHelper.initTableInfo(assistant, ChatSession.class);
+        TableInfoHelper.initTableInfo(assistant, ChatMessage.class);
+    }
+
+    @BeforeEach
+    void setUp() throws IOException {
+        ragServer = new MockWebServer();
+        ragServer.start();
+
+        ChatSession session = new ChatSession();
+        session.setId(1L);
+        session.setUserId(1L);
+        ChatSessionMapper sessionMapper = mock(ChatSessionMapper.class);
+        when(sessionMapper.selectById(any())).thenReturn(session);
+
+        ChatHistoryStore historyStore = new ChatHistoryStore(mock(StringRedisTemplate.class));
+        ReflectionTestUtils.setField(historyStore, "maxTurns", 10);
+
+        chatService = new ChatServiceImpl(sessionMapper, inMemoryMessageMapper(),
+                mock(FileMapper.class), mock(FolderMapper.class), new TransactionTemplate(new NoOpTransactionManager()),
+                historyStore, new FilePathIndex(mock(FileMapper.class)), new HttpClientUtil(new OkHttpClient()),
+                new RagCallGuard(new RagClientConfig(), Runnable::run), new SimpleMeterRegistry(), Runnable::run);
+        ReflectionTestUtils.setField(chatService, "ragApiUrl",
+                "http://" + ragServer.getHostName() + ":" + ragServer.getPort());
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        ragServer.shutdown();
+    }
+
+    @Test
+    public void testAnswerAndSourcesAreStoredAndReadBackAsFrontendContent() {
+        enqueue("{\"answer\":\"回答\",\"sources\":[{\"content\":\"片段\",\"source\":\"user_1/a.txt\"}]," +
+                "\"updated_history\":[{\"role\":\"user\",\"content\":\"你好\"}]}");
+
+        ChatMessage reply = chatService.sendMessage(1L, 1L, "你好", null, null, "req-1");
+
+        // 存储：答案和来源各占一列，content 只有 {answer, sources}，不含 updated_history 等其他字段
+        ChatMessage stored = chatService.getMessageById(reply.getId());
+        assertEquals("回答", stored.getAnswer());
+        JSONArray storedSources = JSON.parseArray(stored.getSources());
+        assertEquals(1, storedSources.size());
+        assertEquals("片段", storedSources.getJSONObject(0).getString("content"));
+        JSONObject content = JSON.parseObject(stored.getContent());
+        assertEquals(2, content.size());
+        assertEquals("回答", content.getString("answer"));
+        assertEquals(storedSources, content.getJSONArray("sources"));
+
+        // 读取：消息列表不读助手消息的 content，由答案和来源列拼出与发送时相同的内容
+        List<ChatMessage> history = chatService.getMessageHistory(1L);
+        assertEquals(List.of("user", "assistant"), history.stream().map(ChatMessage::getRole).toList());
+        assertEquals("你好", history.get(0).getContent());
+        assertEquals(JSON.parseObject(reply.getContent()), JSON.parseObject(history.get(1).getContent()));
+        assertEquals(content, JSON.parseObject(history.get(1).getContent()));
+    }
+
+    @Test
+    public void testMissingSourcesAreReadBackAsEmptyList() {
+        enqueue("{\"answer\":\"没有来源的回答\",\"sources\":null}");
+
+        chatService.sendMessage(1L, 1L, "你好", null, null, "req-1");
+
+        ChatMessage assistant = chatService.getMessageHistory(1L).get(1);
+        JSONObject content = JSON.parseObject(assistant.getContent());
+        assertEquals("没有来源的回答", content.getString("answer"));
+        assertEquals(new JSONArray(), content.getJSONArray("sources"));
+    }
+
+    @Test
+    public void testAnswerTextIsEscapedInFrontendContent() {
+        enqueue("{\"answer\":\"引号\\\" 和换行\\n\",\"sources\":[]}");
+
+        chatService.sendMessage(1L, 1L, "你好", null, null, null);
+
+        JSONObject content = JSON.parseObject(chatService.getMessageHistory(1L).get(1).getContent());
+        assertEquals("引号\" 和换行\n", content.getString("answer"));
+        assertFalse(content.containsKey("updated_history"));
+    }
+
+    /**
+     * 内存中的 chat_message 表：插入时分配ID；消息列表按 selectListingBySessionId 的投影返回，助手消息的 content 为空
+     */
+    private ChatMessageMapper inMemoryMessageMapper() {
+        ChatMessageMapper mapper = mock(ChatMessageMapper.class);
+        when(mapper.insert(any(ChatMessage.class))).thenAnswer(invocation -> {
+            ChatMessage message = invocation.getArgument(0);
+            message.setId((long) rows.size() + 1);
+            rows.add(copy(message));
+            return 1;
+        });
+        when(mapper.selectById(anyLong())).thenAnswer(invocation -> rows.stream()
+                .filter(row -> row.getId().equals(invocation.getArgument(0)))
+                .map(ChatMessageRoundTripTest::copy)
+                .findFirst().orElse(null));
+        when(mapper.selectListingBySessionId(anyLong())).thenAnswer(invocation -> rows.stream()
+                .filter(row -> row.getSessionId().equals(invocation.getArgument(0)))
+                .map(row -> {
+                    ChatMessage listed = copy(row);
+                    if ("assistant".equals(listed.getRole())) {
+                        listed.setContent(null);
+                    }
+                    return listed;
+                })
+                .toList());
+        return mapper;
+    }
+
+    private static ChatMessage copy(ChatMessage message) {
+        ChatMessage copy = new ChatMessage();
+        copy.setId(message.getId());
+        copy.setSessionId(message.getSessionId());
+        copy.setUserId(message.getUserId());
+        copy.setContent(message.getContent());
+        copy.setRole(message.getRole());
+        copy.setRequestId(message.getRequestId());
+        copy.setAnswer(message.getAnswer());
+        copy.setSources(message.getSources());
+        copy.setCreateTime(message.getCreateTime());
+        return copy;
+    }
+
+    private void enqueue(String body) {
+        ragServer.enqueue(new MockResponse().setHeader("Content-Type", "application/json").setBody(body));
+    }
+
+    private static class NoOpTransactionManager extends AbstractPlatformTransactionManager {
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+        }
+    }
+}
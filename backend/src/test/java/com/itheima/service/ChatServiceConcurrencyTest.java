@@ -0,0 +1,188 @@
+package com.itheima.service;
+
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.metadata.TableInfoHelper;
+import com.itheima.config.RagClientConfig;
+import com.itheima.mapper.ChatMessageMapper;
+import com.itheima.mapper.ChatSessionMapper;
+import com.itheima.mapper.FileMapper;
+import com.itheima.mapper.FolderMapper;
+import com.itheima.pojo.ChatMessage;
+import com.itheima.pojo.ChatSession;
+import com.itheima.service.impl.ChatServiceImpl;
+import com.itheima.utils.HttpClientUtil;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.apache.ibatis.builder.MapperBuilderAssistant;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 聊天并发测试
+ * 模拟一个只有少量连接的数据库连接池，验证RAG调用期间不再占用连接
+ */
+public class ChatServiceConcurrencyTest {
+
+    private static final int POOL_SIZE = 4;
+    private static final int PARALLEL_CHATS = 32;
+    private static final long RAG_DELAY_MS = 300;
+
+    private MockWebServer ragServer;
+    private final AtomicInteger ragInFlight = new AtomicInteger();
+    private final AtomicInteger ragMaxInFlight = new AtomicInteger();
+    private PoolLimitedTransactionManager transactionManager;
+    private ChatServiceImpl chatService;
+
+    @BeforeAll
+    static void initTableInfo() {
+        MapperBuilderAssistant assistant = new MapperBuilderAssistant(new MybatisConfiguration(), "");
+        TableInfoHelper.initTableInfo(assistant, ChatSession.class);
+        TableInfoHelper.initTableInfo(assistant, ChatMessage.class);
+    }
+
+    @BeforeEach
+    void setUp() throws IOException {
+        ragServer = new MockWebServer();
+        // 每个连接在独立线程中分派，处理期间计数，统计同时进行中的RAG调用数
+        ragServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                ragMaxInFlight.accumulateAndGet(ragInFlight.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(RAG_DELAY_MS);
+                } finally {
+                    ragInFlight.decrementAndGet();
+                }
+                return new MockResponse()
+                        .setHeader("Content-Type", "application/json")
+                        .setBody("{\"answer\":\"ok\",\"sources\":[]}");
+            }
+        });
+        ragServer.start();
+
+        ChatSession session = new ChatSession();
+        session.setId(1L);
+        session.setUserId(1L);
+        ChatSessionMapper sessionMapper = mock(ChatSessionMapper.class);
+        when(sessionMapper.selectById(any())).thenReturn(session);
+
+        // Redis不可用时历史缓存降级为数据库查询
+        ChatHistoryStore historyStore = new ChatHistoryStore(mock(StringRedisTemplate.class));
+        ReflectionTestUtils.setField(historyStore, "maxTurns", 10);
+
+        transactionManager = new PoolLimitedTransactionManager(POOL_SIZE);
+        chatService = new ChatServiceImpl(sessionMapper, mock(ChatMessageMapper.class),
+                mock(FileMapper.class), mock(FolderMapper.class), new TransactionTemplate(transactionManager),
+                historyStore, new FilePathIndex(mock(FileMapper.class)), new HttpClientUtil(new OkHttpClient()),
+                new RagCallGuard(new RagClientConfig(), Runnable::run), new SimpleMeterRegistry(), Runnable::run);
+        ReflectionTestUtils.setField(chatService, "ragApiUrl",
+                "http://" + ragServer.getHostName() + ":" + ragServer.getPort());
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        ragServer.shutdown();
+    }
+
+    @Test
+    public void testParallelChatsDoNotExhaustConnectionPool() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(PARALLEL_CHATS);
+        List<Future<ChatMessage>> futures = new ArrayList<>();
+        for (int i = 0; i < PARALLEL_CHATS; i++) {
+            futures.add(executor.submit(() -> chatService.sendMessage(1L, 1L, "你好")));
+        }
+
+        int completed = 0;
+        for (Future<ChatMessage> future : futures) {
+            if (future.get(30, TimeUnit.SECONDS) != null) {
+                completed++;
+            }
+        }
+        executor.shutdown();
+
+        // 如果RAG调用期间仍占用连接，32个请求需要排队8轮（约2.4秒），超过1秒的获取连接超时后会失败
+        assertEquals(PARALLEL_CHATS, completed);
+        assertEquals(0, transactionManager.acquireFailures.get());
+        assertTrue(transactionManager.maxActive.get() <= POOL_SIZE);
+        // 同时进行中的RAG调用数超过连接池大小，说明RAG调用不受连接数限制
+        assertTrue(ragMaxInFlight.get() > POOL_SIZE,
+                "同时进行中的RAG调用数应超过连接池大小，实际: " + ragMaxInFlight.get());
+    }
+
+    /**
+     * 模拟容量有限的连接池：每个事务占用一个连接，1秒内获取不到连接则失败（类似Hikari的connectionTimeout）
+     */
+    private static class PoolLimitedTransactionManager extends AbstractPlatformTransactionManager {
+        private final Semaphore connections;
+        private final AtomicInteger active = new AtomicInteger();
+        private final AtomicInteger maxActive = new AtomicInteger();
+        private final AtomicInteger acquireFailures = new AtomicInteger();
+
+        PoolLimitedTransactionManager(int poolSize) {
+            this.connections = new Semaphore(poolSize);
+        }
+
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+            try {
+                if (!connections.tryAcquire(1, TimeUnit.SECONDS)) {
+                    acquireFailures.incrementAndGet();
+                    throw new CannotCreateTransactionException("连接池已耗尽");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CannotCreateTransactionException("获取连接被中断", e);
+            }
+            maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+            release();
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+            release();
+        }
+
+        private void release() {
+            active.decrementAndGet();
+            connections.release();
+        }
+    }
+}
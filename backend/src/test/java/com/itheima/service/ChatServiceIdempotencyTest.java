@@ -0,0 +1,197 @@
+package com.itheima.service;
+
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.conditions.Wrapper;
+import com.baomidou.mybatisplus.core.metadata.TableInfoHelper;
+import com.itheima.config.RagClientConfig;
+import com.itheima.mapper.ChatMessageMapper;
+import com.itheima.mapper.ChatSessionMapper;
+import com.itheima.mapper.FileMapper;
+import com.itheima.mapper.FolderMapper;
+import com.itheima.pojo.ChatMessage;
+import com.itheima.pojo.ChatSession;
+import com.itheima.service.impl.ChatServiceImpl;
+import com.itheima.utils.HttpClientUtil;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.apache.ibatis.builder.MapperBuilderAssistant;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 聊天请求幂等测试
+ * 同一请求ID只处理一次；处理失败（包括RAG调用失败）或处理进程退出后，客户端可以用同一请求ID重试
+ */
+public class ChatServiceIdempotencyTest {
+
+    private static final String REQUEST_ID = "req-1";
+
+    private MockWebServer ragServer;
+    private ChatMessageMapper messageMapper;
+    private ChatServiceImpl chatService;
+
+    @BeforeAll
+    static void initTableInfo() {
+        MapperBuilderAssistant assistant = new MapperBuilderAssistant(new MybatisConfiguration(), "");
+        TableInfoHelper.initTableInfo(assistant, ChatSession.class);
+        TableInfoHelper.initTableInfo(assistant, ChatMessage.class);
+    }
+
+    @BeforeEach
+    void setUp() throws IOException {
+        ragServer = new MockWebServer();
+        ragServer.start();
+
+        ChatSession session = new ChatSession();
+        session.setId(1L);
+        session.setUserId(1L);
+        ChatSessionMapper sessionMapper = mock(ChatSessionMapper.class);
+        when(sessionMapper.selectById(any())).thenReturn(session);
+
+        ChatHistoryStore historyStore = new ChatHistoryStore(mock(StringRedisTemplate.class));
+        ReflectionTestUtils.setField(historyStore, "maxTurns", 10);
+
+        messageMapper = mock(ChatMessageMapper.class);
+        chatService = new ChatServiceImpl(sessionMapper, messageMapper,
+                mock(FileMapper.class), mock(FolderMapper.class), new TransactionTemplate(new NoOpTransactionManager()),
+                historyStore, new FilePathIndex(mock(FileMapper.class)), new HttpClientUtil(new OkHttpClient()),
+                new RagCallGuard(new RagClientConfig(), Runnable::run), new SimpleMeterRegistry(), Runnable::run);
+        ReflectionTestUtils.setField(chatService, "ragApiUrl",
+                "http://" + ragServer.getHostName() + ":" + ragServer.getPort());
+        ReflectionTestUtils.setField(chatService, "pendingTimeoutSeconds", 180L);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        ragServer.shutdown();
+    }
+
+    @Test
+    public void testDuplicateRequestReturnsExistingReply() {
+        ChatMessage reply = new ChatMessage();
+        reply.setRole("assistant");
+        reply.setAnswer("已有回复");
+        when(messageMapper.selectOne(any())).thenReturn(reply);
+
+        ChatMessage result = chatService.sendMessage(1L, 1L, "你好", null, null, REQUEST_ID);
+
+        assertSame(reply, result);
+        assertEquals(0, ragServer.getRequestCount());
+        verify(messageMapper, never()).insert(any(ChatMessage.class));
+    }
+
+    @Test
+    public void testFailedReplySaveReleasesRequestId() {
+        enqueueAnswer();
+        enqueueAnswer();
+        when(messageMapper.insert(argThat((ChatMessage m) -> m != null && "assistant".equals(m.getRole()))))
+                .thenThrow(new IllegalStateException("数据库不可用"))
+                .thenReturn(1);
+
+        assertThrows(IllegalStateException.class,
+                () -> chatService.sendMessage(1L, 1L, "你好", null, null, REQUEST_ID));
+        // 用户消息被删除，请求ID可以重新使用
+        verify(messageMapper, times(1)).delete(any());
+
+        ChatMessage result = chatService.sendMessage(1L, 1L, "你好", null, null, REQUEST_ID);
+        assertEquals("ok", result.getAnswer());
+        assertEquals(2, ragServer.getRequestCount());
+    }
+
+    @Test
+    public void testFallbackAnswerIsNotSavedUnderRequestId() {
+        ragServer.enqueue(new MockResponse().setResponseCode(500));
+        enqueueAnswer();
+
+        // RAG调用失败：返回降级提示，但不保存为该请求的回复，并释放请求ID
+        ChatMessage fallback = chatService.sendMessage(1L, 1L, "你好", null, null, REQUEST_ID);
+        assertEquals("抱歉，AI服务暂时不可用，请稍后再试。", fallback.getAnswer());
+        verify(messageMapper, never()).insert(argThat((ChatMessage m) -> m != null && "assistant".equals(m.getRole())));
+        verify(messageMapper, times(1)).delete(any());
+
+        // 用同一请求ID重试会重新调用RAG
+        ChatMessage result = chatService.sendMessage(1L, 1L, "你好", null, null, REQUEST_ID);
+        assertEquals("ok", result.getAnswer());
+        assertEquals(2, ragServer.getRequestCount());
+        verify(messageMapper).insert(argThat((ChatMessage m) -> m != null && "assistant".equals(m.getRole())));
+    }
+
+    @Test
+    public void testRequestStillInProgressIsRejected() {
+        when(messageMapper.insert(argThat((ChatMessage m) -> m != null && "user".equals(m.getRole()))))
+                .thenThrow(new DuplicateKeyException("duplicate"));
+        // 用户消息还没有超过处理时限，不会被删除
+        when(messageMapper.delete(any())).thenReturn(0);
+
+        RuntimeException e = assertThrows(RuntimeException.class,
+                () -> chatService.sendMessage(1L, 1L, "你好", null, null, REQUEST_ID));
+        assertEquals("该消息正在处理中，请勿重复提交", e.getMessage());
+        assertEquals(0, ragServer.getRequestCount());
+    }
+
+    @Test
+    public void testStaleRequestIsTakenOverByRetry() {
+        enqueueAnswer();
+        when(messageMapper.insert(argThat((ChatMessage m) -> m != null && "user".equals(m.getRole()))))
+                .thenThrow(new DuplicateKeyException("duplicate"))
+                .thenReturn(1);
+        // 之前的处理进程已退出，用户消息超过处理时限
+        when(messageMapper.delete(argThat((Wrapper<ChatMessage> w) -> w != null
+                && w.getSqlSegment().contains("create_time")))).thenReturn(1);
+
+        ChatMessage result = chatService.sendMessage(1L, 1L, "你好", null, null, REQUEST_ID);
+
+        assertEquals("ok", result.getAnswer());
+        assertEquals(1, ragServer.getRequestCount());
+        verify(messageMapper, times(3)).insert(any(ChatMessage.class));
+    }
+
+    private void enqueueAnswer() {
+        ragServer.enqueue(new MockResponse()
+                .setHeader("Content-Type", "application/json")
+                .setBody("{\"answer\":\"ok\",\"sources\":[]}"));
+    }
+
+    private static class NoOpTransactionManager extends AbstractPlatformTransactionManager {
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.itheima.service;
+
+import com.itheima.config.RagClientConfig;
+import com.itheima.mapper.FileChangeMapper;
+import com.itheima.pojo.File;
+import com.itheima.pojo.FileChange;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * 文件变更日志测试：RAG服务禁用时不写入
+ */
+public class FileChangeJournalTest {
+
+    private FileChangeMapper fileChangeMapper;
+    private RagClientConfig config;
+    private FileChangeJournal journal;
+
+    @BeforeEach
+    void setUp() {
+        fileChangeMapper = mock(FileChangeMapper.class);
+        config = new RagClientConfig();
+        journal = new FileChangeJournal(fileChangeMapper, config);
+    }
+
+    @Test
+    public void testChangesAreRecordedWhenRagEnabled() {
+        FileChange change = FileChange.added(file(1L));
+        List<FileChange> changes = List.of(FileChange.removed(file(2L)), FileChange.removed(file(3L)));
+
+        journal.record(change);
+        journal.recordAll(changes);
+
+        verify(fileChangeMapper).insert(change);
+        verify(fileChangeMapper).insertBatch(changes);
+    }
+
+    @Test
+    public void testEmptyBatchIsNotWritten() {
+        journal.recordAll(List.of());
+
+        verify(fileChangeMapper, never()).insertBatch(anyList());
+    }
+
+    @Test
+    public void testNothingIsRecordedWhenRagDisabled() {
+        config.setEnabled(false);
+
+        journal.record(FileChange.added(file(1L)));
+        journal.recordAll(List.of(FileChange.removed(file(2L))));
+
+        verify(fileChangeMapper, never()).insert(any(FileChange.class));
+        verify(fileChangeMapper, never()).insertBatch(anyList());
+    }
+
+    private File file(Long id) {
+        return File.builder().id(id).userId(1L).folderId(0L).fileName("a.txt").filePath("/root/user_1/a.txt").build();
+    }
+}
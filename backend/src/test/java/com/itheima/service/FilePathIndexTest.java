@@ -0,0 +1,77 @@
+package com.itheima.service;
+
+import com.itheima.mapper.FileMapper;
+import com.itheima.pojo.File;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 文件路径索引测试：加载与增量更新并发时不缓存过期的索引
+ */
+public class FilePathIndexTest {
+
+    private static final Long USER_ID = 1L;
+
+    private FileMapper fileMapper;
+    private FilePathIndex index;
+
+    @BeforeEach
+    void setUp() {
+        fileMapper = mock(FileMapper.class);
+        index = new FilePathIndex(fileMapper);
+        ReflectionTestUtils.setField(index, "maxUsers", 10);
+        ReflectionTestUtils.setField(index, "ttlMinutes", 30L);
+    }
+
+    @Test
+    public void testUpdateDuringLoadTriggersReload() {
+        File file = new File();
+        file.setId(7L);
+        file.setUserId(USER_ID);
+        file.setFolderId(3L);
+        file.setFileName("a.txt");
+        file.setFilePath("/root/user_1/a.txt");
+
+        Map<String, Object> folderRow = Map.of("kind", "folder", "id", 3L, "parentId", 0L, "name", "docs");
+        Map<String, Object> fileRow = Map.of("kind", "file", "id", 7L, "parentId", 3L, "name", "a.txt",
+                "filePath", "/root/user_1/a.txt");
+        // 第一次加载读到的是上传提交之前的数据，上传的提交后更新恰好发生在加载期间
+        when(fileMapper.selectPathIndexRows(USER_ID))
+                .thenAnswer(invocation -> {
+                    index.onFileAdded(file);
+                    return List.of(folderRow);
+                })
+                .thenReturn(List.of(folderRow, fileRow));
+
+        assertEquals("docs/a.txt", index.resolveLogicalPath(USER_ID, "/root/user_1/a.txt"));
+        verify(fileMapper, times(2)).selectPathIndexRows(USER_ID);
+
+        // 之后直接使用缓存的索引
+        assertEquals("docs/a.txt", index.resolveLogicalPath(USER_ID, "/root/user_1/a.txt"));
+        verify(fileMapper, times(2)).selectPathIndexRows(USER_ID);
+    }
+
+    @Test
+    public void testIncrementalUpdatesApplyToLoadedIndex() {
+        when(fileMapper.selectPathIndexRows(USER_ID)).thenReturn(List.of(
+                Map.of("kind", "folder", "id", 3L, "parentId", 0L, "name", "docs"),
+                Map.of("kind", "file", "id", 7L, "parentId", 3L, "name", "a.txt", "filePath", "/root/user_1/a.txt")));
+        assertEquals("docs/a.txt", index.resolveLogicalPath(USER_ID, "/root/user_1/a.txt"));
+
+        index.onFolderRenamed(USER_ID, 3L, "notes");
+        index.onFileRenamed(USER_ID, 7L, "b.txt");
+
+        assertEquals("notes/b.txt", index.resolveLogicalPath(USER_ID, "/root/user_1/a.txt"));
+        verify(fileMapper, times(1)).selectPathIndexRows(USER_ID);
+    }
+}
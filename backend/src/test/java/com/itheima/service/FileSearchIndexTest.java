@@ -0,0 +1,230 @@
+package com.itheima.service;
+
+import com.itheima.dto.SearchHit;
+import com.itheima.mapper.FileMapper;
+import com.itheima.pojo.File;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 全文索引测试：分词、BM25排序、快照读写、与数据库对账和按用户加载
+ */
+public class FileSearchIndexTest {
+
+    @TempDir
+    Path storageRoot;
+
+    private FileMapper fileMapper;
+    private ThreadPoolTaskExecutor executor;
+    private final List<File> rows = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        fileMapper = mock(FileMapper.class);
+        when(fileMapper.selectSearchIndexRows(1L)).thenAnswer(invocation -> new ArrayList<>(rows));
+        executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.initialize();
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void testTokenizeWordsAndCjkBigrams() {
+        assertEquals(List.of("hello", "world", "2024"), FileSearchIndex.tokenize("Hello, World-2024!"));
+        assertEquals(List.of("中文", "文搜", "搜索"), FileSearchIndex.tokenize("中文搜索"));
+        // 单独出现的一个字保留为一个词，字母数字与汉字相邻时分开
+        assertEquals(List.of("中", "abc", "文件", "v2"), FileSearchIndex.tokenize("中abc文件v2"));
+        assertEquals(List.of(), FileSearchIndex.tokenize("  ，。!? "));
+    }
+
+    @Test
+    public void testBm25RanksByFrequencyAndRequiresAllTerms() throws IOException {
+        rows.add(textFile(1L, "a.txt", "apple apple apple banana"));
+        rows.add(textFile(2L, "b.txt", "apple " + "filler ".repeat(50)));
+        rows.add(textFile(3L, "c.txt", "banana cherry"));
+        FileSearchIndex index = newIndex(10);
+
+        List<SearchHit> apple = index.search(1L, "apple", null, 10);
+        assertEquals(List.of(1L, 2L), fileIds(apple));
+        assertTrue(apple.get(0).getScore() > apple.get(1).getScore());
+        assertEquals(0L, apple.get(0).getLine());
+        assertTrue(apple.get(0).getSnippet().startsWith("apple"));
+
+        assertEquals(List.of(1L), fileIds(index.search(1L, "APPLE banana", null, 10)));
+        // 按文件夹过滤：c.txt 在文件夹7中
+        assertEquals(List.of(3L), fileIds(index.search(1L, "banana", Set.of(7L), 10)));
+        assertEquals(List.of(1L), fileIds(index.search(1L, "banana", Set.of(0L), 10)));
+        assertEquals(List.of(), index.search(1L, "cherry", Set.of(0L), 10));
+    }
+
+    @Test
+    public void testFileNameMatchAndSingleCjkPrefix() throws IOException {
+        rows.add(File.builder().id(1L).userId(1L).folderId(0L).fileName("年度报告.pdf")
+                .filePath(storageRoot.resolve("missing.pdf").toString()).build());
+        rows.add(textFile(2L, "notes.txt", "今天讨论了搜索功能"));
+        FileSearchIndex index = newIndex(10);
+
+        List<SearchHit> byName = index.search(1L, "报告", null, 10);
+        assertEquals(List.of(1L), fileIds(byName));
+        assertNull(byName.get(0).getSnippet());
+
+        // 单个汉字按前缀匹配双字词
+        assertEquals(List.of(2L), fileIds(index.search(1L, "搜", null, 10)));
+    }
+
+    @Test
+    public void testSnapshotRoundTrip() throws Exception {
+        rows.add(textFile(1L, "a.txt", "apple banana"));
+        rows.add(textFile(2L, "b.txt", "cherry"));
+        FileSearchIndex first = newIndex(10);
+        assertEquals(List.of(1L), fileIds(first.search(1L, "apple", null, 10)));
+        first.stop();
+        assertTrue(Files.exists(storageRoot.resolve(".index").resolve("user_1.idx")));
+
+        // 内容只来自快照：删除文件后重新加载仍能按内容找到
+        for (File row : rows) {
+            Files.delete(Path.of(row.getFilePath()));
+        }
+        FileSearchIndex second = newIndex(10);
+
+        assertEquals(List.of(1L), fileIds(second.search(1L, "apple", null, 10)));
+        assertEquals(List.of(2L), fileIds(second.search(1L, "cherry", null, 10)));
+    }
+
+    @Test
+    public void testLoadReconcilesSnapshotWithDatabase() throws Exception {
+        rows.add(textFile(1L, "a.txt", "apple"));
+        rows.add(textFile(2L, "b.txt", "apple banana"));
+        FileSearchIndex first = newIndex(10);
+        first.search(1L, "apple", null, 10);
+        first.stop();
+
+        // 快照之后：1被删除，2被重命名并移动，3是新文件
+        rows.remove(0);
+        rows.set(0, File.builder().id(2L).userId(1L).folderId(5L).fileName("renamed.txt")
+                .filePath(rows.get(0).getFilePath()).build());
+        rows.add(textFile(3L, "d.txt", "durian apple"));
+        FileSearchIndex second = newIndex(10);
+
+        List<SearchHit> hits = second.search(1L, "apple", null, 10);
+        assertEquals(2, hits.size());
+        assertFalse(fileIds(hits).contains(1L));
+        SearchHit renamed = hits.stream().filter(hit -> hit.getFileId() == 2L).findFirst().orElseThrow();
+        assertEquals("renamed.txt", renamed.getFileName());
+        assertEquals(5L, renamed.getFolderId());
+        assertEquals(List.of(3L), fileIds(second.search(1L, "durian", null, 10)));
+    }
+
+    @Test
+    public void testIncrementalUpdatesApplyToLoadedIndex() throws Exception {
+        rows.add(textFile(1L, "a.txt", "apple"));
+        FileSearchIndex index = newIndex(10);
+        index.search(1L, "apple", null, 10);
+
+        File added = textFile(2L, "b.txt", "apple pie");
+        index.onFileAdded(added);
+        index.onFileRenamed(1L, 1L, "fruit.txt");
+        drain();
+
+        assertEquals(List.of(2L), fileIds(index.search(1L, "pie", null, 10)));
+        assertEquals(List.of(1L), fileIds(index.search(1L, "fruit", null, 10)));
+
+        index.onFileDeleted(1L, 2L);
+        drain();
+        assertEquals(List.of(1L), fileIds(index.search(1L, "apple", null, 10)));
+    }
+
+    @Test
+    public void testEvictedIndexIsFlushedOffCallerThread() throws Exception {
+        rows.add(textFile(1L, "a.txt", "apple"));
+        when(fileMapper.selectSearchIndexRows(2L)).thenReturn(List.of());
+        FileSearchIndex index = newIndex(1);
+        index.search(1L, "apple", null, 10);
+
+        // 第二个用户加载后第一个用户被淘汰，快照在索引执行器中写出
+        index.search(2L, "apple", null, 10);
+        drain();
+
+        assertTrue(Files.exists(storageRoot.resolve(".index").resolve("user_1.idx")));
+        assertEquals(List.of(1L), fileIds(index.search(1L, "apple", null, 10)));
+    }
+
+    @Test
+    public void testLoadedUserIsNotBlockedByAnotherUsersLoad() throws Exception {
+        when(fileMapper.selectSearchIndexRows(2L)).thenReturn(List.of(textFile(9L, "b.txt", "banana")));
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(fileMapper.selectSearchIndexRows(1L)).thenAnswer(invocation -> {
+            loading.countDown();
+            release.await(10, TimeUnit.SECONDS);
+            return List.of(textFile(1L, "a.txt", "apple"));
+        });
+        FileSearchIndex index = newIndex(10);
+        assertEquals(List.of(9L), fileIds(index.search(2L, "banana", null, 10)));
+
+        CompletableFuture<List<SearchHit>> slow = CompletableFuture.supplyAsync(() -> index.search(1L, "apple", null, 10));
+        assertTrue(loading.await(10, TimeUnit.SECONDS));
+        try {
+            // 用户1的索引还在加载，已加载的用户2照常查询
+            assertEquals(List.of(9L), fileIds(CompletableFuture.supplyAsync(() -> index.search(2L, "banana", null, 10))
+                    .get(5, TimeUnit.SECONDS)));
+            assertFalse(slow.isDone());
+        } finally {
+            release.countDown();
+        }
+        assertEquals(List.of(1L), fileIds(slow.get(10, TimeUnit.SECONDS)));
+    }
+
+    private FileSearchIndex newIndex(int maxUsers) {
+        return new FileSearchIndex(fileMapper, executor, mock(TaskScheduler.class), new SimpleMeterRegistry(),
+                storageRoot.toString(), maxUsers, DataSize.ofMegabytes(1), 60);
+    }
+
+    private File textFile(Long id, String fileName, String content) throws IOException {
+        Path path = storageRoot.resolve("user_1").resolve(id + "_" + fileName);
+        Files.createDirectories(path.getParent());
+        Files.writeString(path, content, StandardCharsets.UTF_8);
+        return File.builder().id(id).userId(1L).folderId(id == 3L ? 7L : 0L).fileName(fileName)
+                .filePath(path.toString()).build();
+    }
+
+    /**
+     * 等待索引执行器处理完已提交的任务
+     */
+    private void drain() throws Exception {
+        executor.submit(() -> { }).get(10, TimeUnit.SECONDS);
+    }
+
+    private static List<Long> fileIds(List<SearchHit> hits) {
+        return hits.stream().map(SearchHit::getFileId).toList();
+    }
+}
@@ -0,0 +1,302 @@
+package com.itheima.service;
+
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.conditions.Wrapper;
+import com.baomidou.mybatisplus.core.metadata.TableInfoHelper;
+import com.itheima.dto.BatchItemResult;
+import com.itheima.mapper.FileBlobMapper;
+import com.itheima.mapper.FileMapper;
+import com.itheima.pojo.File;
+import com.itheima.pojo.FileChange;
+import com.itheima.service.impl.FileServiceImpl;
+import com.itheima.service.impl.FolderServiceImpl;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.ibatis.builder.MapperBuilderAssistant;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 批量上传、移动和删除的部分失败测试
+ */
+public class FileServiceBatchTest {
+
+    private static final Long USER_ID = 1L;
+
+    @TempDir
+    Path storageRoot;
+
+    private FileMapper fileMapper;
+    private FileBlobMapper fileBlobMapper;
+    private FileChangeJournal fileChangeJournal;
+    private StorageReclaimer storageReclaimer;
+    private RecordingTransactionManager transactionManager;
+    private FileServiceImpl fileService;
+
+    @BeforeAll
+    static void initTableInfo() {
+        TableInfoHelper.initTableInfo(new MapperBuilderAssistant(new MybatisConfiguration(), ""), File.class);
+    }
+
+    @BeforeEach
+    void setUp() {
+        fileMapper = mock(FileMapper.class);
+        fileBlobMapper = mock(FileBlobMapper.class);
+        fileChangeJournal = mock(FileChangeJournal.class);
+        storageReclaimer = mock(StorageReclaimer.class);
+        transactionManager = new RecordingTransactionManager();
+
+        BlobStore blobStore = new BlobStore(fileBlobMapper);
+        ReflectionTestUtils.setField(blobStore, "storageRoot", storageRoot.toString());
+        fileService = new FileServiceImpl(mock(FolderServiceImpl.class), mock(FilePathIndex.class),
+                mock(FileSearchIndex.class), fileChangeJournal, new SimpleMeterRegistry(), blobStore,
+                mock(TextContentReader.class), storageReclaimer, new TransactionTemplate(transactionManager));
+        ReflectionTestUtils.setField(fileService, "baseMapper", fileMapper);
+        ReflectionTestUtils.setField(fileService, "storageRoot", storageRoot.toString());
+        ReflectionTestUtils.setField(fileService, "maxBatchSize", 500);
+
+        AtomicLong ids = new AtomicLong(100);
+        doAnswer(invocation -> {
+            invocation.getArgument(0, File.class).setId(ids.incrementAndGet());
+            return 1;
+        }).when(fileMapper).insert(any(File.class));
+    }
+
+    @Test
+    public void testUploadReportsEachFailureAndStoresTheRest() throws IOException {
+        List<MultipartFile> files = List.of(
+                text("a.txt", "first"),
+                text("../evil.txt", "bad name"),
+                unreadable("broken.txt"),
+                text("b.txt", "second"));
+        // 事务开始时所有内容都已写入临时文件
+        List<Integer> stagedAtBegin = new ArrayList<>();
+        transactionManager.onBegin = () -> stagedAtBegin.add(tempFiles().size());
+
+        List<BatchItemResult> results = fileService.uploadFiles(USER_ID, 0L, files);
+
+        assertEquals(4, results.size());
+        assertTrue(results.get(0).isSuccess());
+        assertEquals("a.txt", results.get(0).getFileName());
+        assertFalse(results.get(1).isSuccess());
+        assertEquals("文件名不能包含路径分隔符", results.get(1).getMessage());
+        assertFalse(results.get(2).isSuccess());
+        assertEquals("broken.txt", results.get(2).getFileName());
+        assertTrue(results.get(3).isSuccess());
+        assertEquals(List.of(2), stagedAtBegin);
+        assertEquals(1, transactionManager.committed);
+
+        ArgumentCaptor<List<FileChange>> changes = listCaptor();
+        verify(fileChangeJournal).recordAll(changes.capture());
+        assertEquals(2, changes.getValue().size());
+        assertEquals("second", Files.readString(Path.of(results.get(3).getFile().getFilePath())));
+        assertEquals(List.of(), tempFiles());
+    }
+
+    @Test
+    public void testUploadWithNothingValidOpensNoTransaction() throws IOException {
+        List<BatchItemResult> results = fileService.uploadFiles(USER_ID, 0L,
+                List.of(text("", "x"), unreadable("broken.txt")));
+
+        assertEquals(2, results.size());
+        assertTrue(results.stream().noneMatch(BatchItemResult::isSuccess));
+        assertEquals(0, transactionManager.begun);
+        verify(fileMapper, never()).insert(any(File.class));
+    }
+
+    @Test
+    public void testUploadRollsBackWholeBatchWhenStoringFails() throws IOException {
+        doAnswer(invocation -> {
+            File file = invocation.getArgument(0, File.class);
+            if (file.getFileName().equals("b.txt")) {
+                throw new IllegalStateException("数据库不可用");
+            }
+            file.setId(1L);
+            return 1;
+        }).when(fileMapper).insert(any(File.class));
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> fileService.uploadFiles(USER_ID, 0L,
+                List.of(text("a.txt", "first"), text("b.txt", "second"))));
+
+        assertEquals("数据库不可用", e.getMessage());
+        assertEquals(1, transactionManager.rolledBack);
+        verify(fileChangeJournal, never()).recordAll(anyList());
+        // 已经链接的 a.txt 随回滚删除，临时文件全部清理
+        assertEquals(List.of(), tempFiles());
+        try (Stream<Path> userFiles = Files.walk(storageRoot.resolve("user_" + USER_ID))) {
+            assertEquals(0, userFiles.filter(Files::isRegularFile).count());
+        }
+    }
+
+    @Test
+    public void testMoveSkipsMissingFilesAndUnchangedOnes() {
+        File inRoot = file(1L, 0L);
+        File alreadyThere = file(2L, 5L);
+        when(fileMapper.selectList(any())).thenReturn(List.of(inRoot, alreadyThere));
+
+        List<BatchItemResult> results = fileService.moveFiles(USER_ID, List.of(1L, 2L, 3L, 1L), 5L);
+
+        assertEquals(3, results.size());
+        assertTrue(results.get(0).isSuccess());
+        assertEquals(5L, results.get(0).getFile().getFolderId());
+        assertTrue(results.get(1).isSuccess());
+        assertFalse(results.get(2).isSuccess());
+        assertEquals(3L, results.get(2).getFileId());
+        assertEquals("文件不存在或权限不足", results.get(2).getMessage());
+
+        ArgumentCaptor<List<FileChange>> changes = listCaptor();
+        verify(fileChangeJournal).recordAll(changes.capture());
+        assertEquals(List.of(1L), changes.getValue().stream().map(FileChange::getFileId).toList());
+        verify(fileMapper).update(any(), any(Wrapper.class));
+    }
+
+    @Test
+    public void testMoveWithNoOwnedFilesWritesNothing() {
+        when(fileMapper.selectList(any())).thenReturn(List.of());
+
+        List<BatchItemResult> results = fileService.moveFiles(USER_ID, List.of(8L, 9L), 5L);
+
+        assertTrue(results.stream().noneMatch(BatchItemResult::isSuccess));
+        verify(fileMapper, never()).update(any(), any(Wrapper.class));
+        verify(fileChangeJournal, never()).recordAll(anyList());
+    }
+
+    @Test
+    public void testDeleteRemovesOwnedFilesAndReportsTheRest() {
+        File first = file(1L, 0L);
+        File second = file(2L, 0L);
+        second.setContentHash(first.getContentHash());
+        when(fileMapper.selectList(any())).thenReturn(List.of(first, second));
+
+        List<BatchItemResult> results = fileService.deleteFiles(USER_ID, List.of(1L, 7L, 2L));
+
+        assertEquals(List.of(true, false, true), results.stream().map(BatchItemResult::isSuccess).toList());
+        assertEquals(7L, results.get(1).getFileId());
+        verify(fileMapper).delete(any(Wrapper.class));
+        verify(storageReclaimer).enqueue(List.of(first, second));
+        // 同一内容的两个引用一次释放
+        verify(fileBlobMapper).releaseMany(first.getContentHash(), 2);
+        verify(fileBlobMapper, never()).release(anyString());
+    }
+
+    @Test
+    public void testDeleteWithNoOwnedFilesWritesNothing() {
+        when(fileMapper.selectList(any())).thenReturn(List.of());
+
+        List<BatchItemResult> results = fileService.deleteFiles(USER_ID, List.of(7L));
+
+        assertFalse(results.get(0).isSuccess());
+        verify(fileMapper, never()).delete(any(Wrapper.class));
+        verify(storageReclaimer, never()).enqueue(anyList());
+        verify(fileBlobMapper, never()).releaseMany(anyString(), anyInt());
+    }
+
+    private static MockMultipartFile text(String name, String content) {
+        return new MockMultipartFile("files", name, "text/plain", content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static MultipartFile unreadable(String name) throws IOException {
+        MultipartFile file = mock(MultipartFile.class);
+        when(file.getOriginalFilename()).thenReturn(name);
+        when(file.getInputStream()).thenReturn(new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("连接已断开");
+            }
+        });
+        return file;
+    }
+
+    private static File file(Long id, Long folderId) {
+        return File.builder().id(id).userId(USER_ID).folderId(folderId).fileName(id + ".txt")
+                .filePath("/storage/user_1/" + id + ".txt").contentHash("a".repeat(64)).build();
+    }
+
+    private List<Path> tempFiles() throws IOException {
+        Path temp = storageRoot.resolve(".uploads");
+        if (!Files.exists(temp)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(temp)) {
+            return new ArrayList<>(files.toList());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ArgumentCaptor<List<FileChange>> listCaptor() {
+        return ArgumentCaptor.forClass(List.class);
+    }
+
+    private interface IoAction {
+        void run() throws IOException;
+    }
+
+    /**
+     * 记录事务的开始、提交和回滚，事务同步回调照常执行
+     */
+    private static class RecordingTransactionManager extends AbstractPlatformTransactionManager {
+        private int begun;
+        private int committed;
+        private int rolledBack;
+        private IoAction onBegin = () -> { };
+
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+            begun++;
+            try {
+                onBegin.run();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+            committed++;
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+            rolledBack++;
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.itheima.service;
+
+import com.itheima.mapper.FileMapper;
+import com.itheima.mapper.FolderMapper;
+import com.itheima.pojo.File;
+import com.itheima.pojo.FileChange;
+import com.itheima.pojo.Folder;
+import com.itheima.service.impl.FolderServiceImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 文件夹服务测试：删除子树时先加锁再按选出的ID删除，移动子树时拒绝成环、改写路径前缀并更新路径索引
+ */
+public class FolderServiceTest {
+
+    private static final Long USER_ID = 1L;
+
+    private FolderMapper folderMapper;
+    private FileMapper fileMapper;
+    private FileChangeJournal fileChangeJournal;
+    private StorageReclaimer storageReclaimer;
+    private BlobStore blobStore;
+    private FilePathIndex filePathIndex;
+    private FolderServiceImpl folderService;
+
+    @BeforeEach
+    void setUp() {
+        folderMapper = mock(FolderMapper.class);
+        fileMapper = mock(FileMapper.class);
+        fileChangeJournal = mock(FileChangeJournal.class);
+        storageReclaimer = mock(StorageReclaimer.class);
+        blobStore = mock(BlobStore.class);
+        filePathIndex = new FilePathIndex(fileMapper);
+        ReflectionTestUtils.setField(filePathIndex, "maxUsers", 10);
+        ReflectionTestUtils.setField(filePathIndex, "ttlMinutes", 30L);
+        folderService = new FolderServiceImpl(fileMapper, filePathIndex, mock(FileSearchIndex.class),
+                new FolderTreeCache(), fileChangeJournal, storageReclaimer, blobStore);
+        ReflectionTestUtils.setField(folderService, "baseMapper", folderMapper);
+    }
+
+    @Test
+    public void testDeleteLocksSubtreeAndDeletesSelectedRows() {
+        when(folderMapper.selectForUpdate(3L)).thenReturn(folder(3L, 0L, "/3/"));
+        when(folderMapper.selectSubtreeIdsForUpdate(USER_ID, "/3/")).thenReturn(List.of(3L, 4L));
+        File first = file(10L, 3L);
+        File second = file(11L, 4L);
+        when(fileMapper.selectInFoldersForUpdate(USER_ID, List.of(3L, 4L))).thenReturn(List.of(first, second));
+
+        folderService.deleteFolderWithContents(USER_ID, 3L);
+
+        InOrder order = inOrder(folderMapper, fileMapper);
+        order.verify(folderMapper).selectForUpdate(3L);
+        order.verify(folderMapper).selectSubtreeIdsForUpdate(USER_ID, "/3/");
+        order.verify(fileMapper).selectInFoldersForUpdate(USER_ID, List.of(3L, 4L));
+        order.verify(fileMapper).deleteBatchIds(List.of(10L, 11L));
+        order.verify(folderMapper).deleteBatchIds(List.of(3L, 4L));
+
+        ArgumentCaptor<List<FileChange>> changes = listCaptor();
+        verify(fileChangeJournal).recordAll(changes.capture());
+        assertEquals(List.of(10L, 11L), changes.getValue().stream().map(FileChange::getFileId).toList());
+        verify(storageReclaimer).enqueue(List.of(first, second));
+        verify(blobStore).releaseAll(List.of(first, second));
+    }
+
+    @Test
+    public void testDeleteEmptySubtreeOnlyDeletesFolders() {
+        when(folderMapper.selectForUpdate(3L)).thenReturn(folder(3L, 0L, "/3/"));
+        when(folderMapper.selectSubtreeIdsForUpdate(USER_ID, "/3/")).thenReturn(List.of(3L));
+        when(fileMapper.selectInFoldersForUpdate(USER_ID, List.of(3L))).thenReturn(List.of());
+
+        folderService.deleteFolderWithContents(USER_ID, 3L);
+
+        verify(fileMapper, never()).deleteBatchIds(anyList());
+        verify(fileChangeJournal, never()).recordAll(anyList());
+        verify(storageReclaimer, never()).enqueue(anyList());
+        verify(folderMapper).deleteBatchIds(List.of(3L));
+    }
+
+    @Test
+    public void testDeleteOtherUsersFolderIsRejected() {
+        Folder others = folder(3L, 0L, "/3/");
+        others.setUserId(2L);
+        when(folderMapper.selectForUpdate(3L)).thenReturn(others);
+
+        RuntimeException e = assertThrows(RuntimeException.class,
+                () -> folderService.deleteFolderWithContents(USER_ID, 3L));
+
+        assertEquals("文件夹操作权限不足", e.getMessage());
+        verify(folderMapper, never()).selectSubtreeIdsForUpdate(USER_ID, "/3/");
+        verify(folderMapper, never()).deleteBatchIds(anyList());
+    }
+
+    @Test
+    public void testMoveIntoOwnSubtreeIsRejected() {
+        when(folderMapper.selectForUpdate(3L)).thenReturn(folder(3L, 0L, "/3/"));
+        when(folderMapper.selectForUpdate(5L)).thenReturn(folder(5L, 4L, "/3/4/5/"));
+
+        RuntimeException e = assertThrows(RuntimeException.class, () -> folderService.moveFolder(USER_ID, 3L, 5L));
+        assertEquals("不能把文件夹移动到它自身或它的子文件夹中", e.getMessage());
+
+        e = assertThrows(RuntimeException.class, () -> folderService.moveFolder(USER_ID, 3L, 3L));
+        assertEquals("不能把文件夹移动到它自身或它的子文件夹中", e.getMessage());
+        verify(folderMapper, never()).moveSubtree(anyLong(), anyString(), anyString());
+    }
+
+    @Test
+    public void testMoveRewritesSubtreePrefix() {
+        when(folderMapper.selectForUpdate(4L)).thenReturn(folder(4L, 3L, "/3/4/"));
+        when(folderMapper.selectForUpdate(7L)).thenReturn(folder(7L, 0L, "/7/"));
+
+        Folder moved = folderService.moveFolder(USER_ID, 4L, 7L);
+
+        // 按ID顺序加锁
+        InOrder order = inOrder(folderMapper);
+        order.verify(folderMapper).selectForUpdate(4L);
+        order.verify(folderMapper).selectForUpdate(7L);
+        order.verify(folderMapper).moveSubtree(USER_ID, "/3/4/", "/7/4/");
+        assertEquals(7L, moved.getParentId());
+        assertEquals("/7/4/", moved.getPath());
+        verify(folderMapper).updateById(moved);
+
+        // 移到根目录
+        when(folderMapper.selectForUpdate(9L)).thenReturn(folder(9L, 7L, "/7/9/"));
+        assertEquals("/9/", folderService.moveFolder(USER_ID, 9L, 0L).getPath());
+        verify(folderMapper).moveSubtree(USER_ID, "/7/9/", "/9/");
+    }
+
+    @Test
+    public void testMoveToCurrentParentChangesNothing() {
+        when(folderMapper.selectForUpdate(3L)).thenReturn(folder(3L, 0L, "/3/"));
+        when(folderMapper.selectForUpdate(4L)).thenReturn(folder(4L, 3L, "/3/4/"));
+
+        folderService.moveFolder(USER_ID, 4L, 3L);
+
+        // 目标ID较小，先锁目标
+        InOrder order = inOrder(folderMapper);
+        order.verify(folderMapper).selectForUpdate(3L);
+        order.verify(folderMapper).selectForUpdate(4L);
+        verify(folderMapper, never()).moveSubtree(anyLong(), anyString(), anyString());
+    }
+
+    @Test
+    public void testPathIndexFollowsMovedFolder() {
+        when(fileMapper.selectPathIndexRows(USER_ID)).thenReturn(List.of(
+                Map.of("kind", "folder", "id", 3L, "parentId", 0L, "name", "docs"),
+                Map.of("kind", "folder", "id", 4L, "parentId", 3L, "name", "notes"),
+                Map.of("kind", "folder", "id", 7L, "parentId", 0L, "name", "archive"),
+                Map.of("kind", "file", "id", 10L, "parentId", 4L, "name", "a.txt", "filePath", "/storage/user_1/10.txt")));
+        assertEquals("docs/notes/a.txt", filePathIndex.resolveLogicalPath(USER_ID, "/storage/user_1/10.txt"));
+        when(folderMapper.selectForUpdate(4L)).thenReturn(folder(4L, 3L, "/3/4/"));
+        when(folderMapper.selectForUpdate(7L)).thenReturn(folder(7L, 0L, "/7/"));
+
+        folderService.moveFolder(USER_ID, 4L, 7L);
+
+        assertEquals("archive/notes/a.txt", filePathIndex.resolveLogicalPath(USER_ID, "/storage/user_1/10.txt"));
+        // 增量更新，不重新加载
+        verify(fileMapper, times(1)).selectPathIndexRows(USER_ID);
+    }
+
+    @Test
+    public void testCreateLocksParentAndUsesItsPath() {
+        when(folderMapper.selectForUpdate(3L)).thenReturn(folder(3L, 0L, "/3/"));
+        doAnswer(invocation -> {
+            invocation.getArgument(0, Folder.class).setId(8L);
+            return 1;
+        }).when(folderMapper).insert(any(Folder.class));
+
+        Folder created = folderService.createFolder(USER_ID, 3L, " new ");
+
+        assertEquals("/3/8/", created.getPath());
+        assertEquals("new", created.getFolderName());
+        verify(folderMapper, never()).selectById(anyLong());
+
+        Folder others = folder(5L, 0L, "/5/");
+        others.setUserId(2L);
+        when(folderMapper.selectForUpdate(5L)).thenReturn(others);
+        RuntimeException e = assertThrows(RuntimeException.class, () -> folderService.createFolder(USER_ID, 5L, "x"));
+        assertEquals("父文件夹不存在", e.getMessage());
+    }
+
+    private static Folder folder(Long id, Long parentId, String path) {
+        return Folder.builder().id(id).userId(USER_ID).parentId(parentId).folderName("folder-" + id).path(path)
+                .build();
+    }
+
+    private static File file(Long id, Long folderId) {
+        return File.builder().id(id).userId(USER_ID).folderId(folderId).fileName(id + ".txt")
+                .filePath("/storage/user_1/" + id + ".txt").contentHash("a".repeat(64)).build();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ArgumentCaptor<List<FileChange>> listCaptor() {
+        return ArgumentCaptor.forClass(List.class);
+    }
+}
@@ -0,0 +1,143 @@
+package com.itheima.service;
+
+import com.itheima.pojo.Folder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * 文件夹树缓存测试：按分段版本号失效（加载期间的修改、事务提交后才失效、同分段的用户）和按最近使用淘汰
+ */
+public class FolderTreeCacheTest {
+
+    private static final Long USER_ID = 1L;
+    /**
+     * 与 USER_ID 落在同一个版本分段
+     */
+    private static final Long SAME_STRIPE_USER_ID = USER_ID + 1024;
+
+    private final Map<Long, Integer> loads = new HashMap<>();
+    private FolderTreeCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new FolderTreeCache();
+        ReflectionTestUtils.setField(cache, "maxUsers", 2);
+    }
+
+    @Test
+    public void testCachedTreeIsReused() {
+        List<Folder> roots = get(USER_ID);
+
+        assertSame(roots, get(USER_ID));
+        assertEquals(1, loads.get(USER_ID));
+    }
+
+    @Test
+    public void testBumpDuringLoadIsNotServedAsCurrent() {
+        // 加载读到的是修改之前的数据，修改的提交后失效恰好发生在加载期间
+        List<Folder> stale = cache.get(USER_ID, () -> {
+            cache.bumpVersion(USER_ID);
+            return List.of(folder(3L));
+        });
+        assertEquals(List.of(folder(3L)), stale);
+
+        assertEquals(List.of(folder(USER_ID)), get(USER_ID));
+        assertEquals(1, loads.get(USER_ID));
+    }
+
+    @Test
+    public void testBumpTakesEffectAfterCommit() {
+        get(USER_ID);
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            cache.bumpVersion(USER_ID);
+            // 提交之前仍然返回缓存的树
+            get(USER_ID);
+            assertEquals(1, loads.get(USER_ID));
+
+            List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+            synchronizations.forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        get(USER_ID);
+        assertEquals(2, loads.get(USER_ID));
+    }
+
+    @Test
+    public void testRolledBackChangeKeepsCache() {
+        get(USER_ID);
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            cache.bumpVersion(USER_ID);
+            TransactionSynchronizationManager.getSynchronizations()
+                    .forEach(synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        get(USER_ID);
+        assertEquals(1, loads.get(USER_ID));
+    }
+
+    @Test
+    public void testSameStripeUserReloadsOnce() {
+        get(USER_ID);
+        get(SAME_STRIPE_USER_ID);
+
+        cache.bumpVersion(USER_ID);
+
+        // 同一分段的用户多一次重新加载，之后再次使用缓存
+        get(SAME_STRIPE_USER_ID);
+        get(SAME_STRIPE_USER_ID);
+        assertEquals(2, loads.get(SAME_STRIPE_USER_ID));
+
+        // 其他分段的用户不受影响
+        get(2L);
+        cache.bumpVersion(USER_ID);
+        get(2L);
+        assertEquals(1, loads.get(2L));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedUserIsEvicted() {
+        get(1L);
+        get(2L);
+        // 访问用户1，用户2成为最久未使用
+        get(1L);
+
+        get(3L);
+
+        get(1L);
+        assertEquals(1, loads.get(1L));
+        get(2L);
+        assertEquals(2, loads.get(2L));
+    }
+
+    private List<Folder> get(Long userId) {
+        Supplier<List<Folder>> loader = () -> {
+            loads.merge(userId, 1, Integer::sum);
+            return List.of(folder(userId));
+        };
+        return cache.get(userId, loader);
+    }
+
+    private static Folder folder(Long id) {
+        return Folder.builder().id(id).userId(USER_ID).parentId(0L).folderName("folder-" + id).path("/" + id + "/")
+                .build();
+    }
+}
@@ -0,0 +1,135 @@
+package com.itheima.service;
+
+import com.itheima.config.RagClientConfig;
+import com.itheima.exception.HttpStatusException;
+import com.itheima.exception.RagUnavailableException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * RAG调用重试与熔断测试
+ */
+public class RagCallGuardTest {
+
+    private RagCallGuard guard;
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        RagClientConfig config = new RagClientConfig();
+        config.getRetry().setMaxAttempts(3);
+        config.getRetry().setDelay(20);
+        config.getRetry().setMaxDelay(50);
+        config.getCircuitBreaker().setFailureThreshold(3);
+        config.getCircuitBreaker().setOpenDurationMs(200);
+        guard = new RagCallGuard(config, Runnable::run);
+    }
+
+    @Test
+    public void testRetriesUntilSuccess() throws Exception {
+        String result = retrying(() -> {
+            if (calls.incrementAndGet() < 3) {
+                throw new ConnectException("refused");
+            }
+            return "ok";
+        });
+
+        assertEquals("ok", result);
+        assertEquals(3, calls.get());
+        assertEquals(RagCallGuard.State.CLOSED, guard.getState());
+    }
+
+    @Test
+    public void testOpenCircuitFailsFastThenRecoversThroughHalfOpen() throws Exception {
+        assertThrows(RagUnavailableException.class, () -> retrying(this::failingCall));
+        assertEquals(RagCallGuard.State.OPEN, guard.getState());
+        assertEquals(3, calls.get());
+
+        // 熔断期间不再访问后端，立即失败
+        long start = System.nanoTime();
+        assertThrows(RagUnavailableException.class, () -> retrying(this::failingCall));
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        assertEquals(3, calls.get());
+        assertTrue(elapsedMs < 50, "熔断时应快速失败，实际耗时 " + elapsedMs + "ms");
+
+        // 打开时长过后放行一个试探请求，成功后关闭
+        Thread.sleep(250);
+        assertEquals("ok", guard.execute("测试", RagCallGuard.blocking(() -> "ok")));
+        assertEquals(RagCallGuard.State.CLOSED, guard.getState());
+    }
+
+    @Test
+    public void testClientErrorsDoNotOpenCircuit() {
+        // OkHttp 路径上的4xx（如RAG后端没有某个接口）说明后端正常，不重试也不计入熔断
+        for (int i = 0; i < 5; i++) {
+            assertThrows(HttpStatusException.class, () -> retrying(() -> {
+                calls.incrementAndGet();
+                throw new HttpStatusException(404);
+            }));
+        }
+        assertEquals(5, calls.get());
+        assertEquals(RagCallGuard.State.CLOSED, guard.getState());
+
+        assertEquals("ok", guard.execute("测试", RagCallGuard.blocking(() -> "ok")));
+    }
+
+    @Test
+    public void testSyncExecuteDoesNotRetry() {
+        // 同步调用不在退避期间阻塞调用线程，失败一次即返回
+        assertThrows(RagUnavailableException.class, () -> guard.execute("测试",
+                RagCallGuard.blocking(this::failingCall)));
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void testRejectedRetryCompletesExceptionally() {
+        RagClientConfig config = new RagClientConfig();
+        config.getRetry().setMaxAttempts(3);
+        config.getRetry().setDelay(1);
+        RagCallGuard rejectingGuard = new RagCallGuard(config, task -> {
+            throw new RejectedExecutionException("full");
+        });
+
+        CompletableFuture<String> result = rejectingGuard.executeAsync("测试", rejectingGuard.defaultPolicy(),
+                RagCallGuard.blocking(this::failingCall));
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> result.get(1, TimeUnit.SECONDS));
+        assertInstanceOf(RagUnavailableException.class, e.getCause());
+        assertInstanceOf(RejectedExecutionException.class, e.getCause().getCause());
+        assertEquals(1, calls.get());
+    }
+
+    /**
+     * 按默认策略重试，测试线程等待最终结果
+     */
+    private <T> T retrying(Callable<T> call) throws Exception {
+        try {
+            return guard.executeAsync("测试", guard.defaultPolicy(), RagCallGuard.blocking(call)).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private String failingCall() throws IOException {
+        calls.incrementAndGet();
+        throw new ConnectException("refused");
+    }
+}
@@ -0,0 +1,117 @@
+package com.itheima.service;
+
+import com.itheima.config.RagClientConfig;
+import com.itheima.exception.RagUnavailableException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * RAG健康探测与快速失败测试
+ */
+public class RagHealthProberTest {
+
+    private MockWebServer ragServer;
+    private RagHealthProber prober;
+    private RagCallGuard guard;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        ragServer = new MockWebServer();
+        ragServer.start();
+
+        RagClientConfig config = new RagClientConfig();
+        config.setBaseUrl("http://" + ragServer.getHostName() + ":" + ragServer.getPort());
+        config.getHealth().setFailureThreshold(2);
+        config.getHealth().setTimeoutMs(500);
+
+        // 不调用start()，由测试手动触发探测
+        prober = new RagHealthProber(config, new OkHttpClient(), new ThreadPoolTaskScheduler());
+        guard = new RagCallGuard(config, Runnable::run, prober, new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        ragServer.shutdown();
+    }
+
+    @Test
+    public void testStatusFollowsProbes() throws Exception {
+        assertEquals(RagHealthProber.Status.UNKNOWN, prober.getSnapshot().status());
+        assertTrue(prober.isAvailable());
+
+        ragServer.enqueue(healthy());
+        probeAndWait();
+        assertEquals(RagHealthProber.Status.UP, prober.getSnapshot().status());
+        assertTrue(prober.isHealthy());
+
+        // 一次失败不足以判定为不可用
+        ragServer.enqueue(new MockResponse().setResponseCode(503));
+        probeAndWait();
+        assertEquals(RagHealthProber.Status.UP, prober.getSnapshot().status());
+
+        ragServer.enqueue(new MockResponse().setResponseCode(503));
+        probeAndWait();
+        assertEquals(RagHealthProber.Status.DOWN, prober.getSnapshot().status());
+        assertEquals(2, prober.getSnapshot().consecutiveFailures());
+        assertFalse(prober.isAvailable());
+
+        ragServer.enqueue(healthy());
+        probeAndWait();
+        assertEquals(RagHealthProber.Status.UP, prober.getSnapshot().status());
+        assertEquals(0, prober.getSnapshot().consecutiveFailures());
+    }
+
+    @Test
+    public void testGuardFailsFastWhileDown() throws Exception {
+        ragServer.enqueue(new MockResponse().setResponseCode(500));
+        probeAndWait();
+        ragServer.enqueue(new MockResponse().setResponseCode(500));
+        probeAndWait();
+        assertFalse(prober.isAvailable());
+
+        AtomicInteger calls = new AtomicInteger();
+        long start = System.nanoTime();
+        assertThrows(RagUnavailableException.class, () -> guard.execute("测试",
+                RagCallGuard.blocking(calls::incrementAndGet)));
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+        assertEquals(0, calls.get());
+        assertTrue(elapsedMs < 50, "不可用时应快速失败，实际耗时 " + elapsedMs + "ms");
+        // 快速失败不计入熔断器
+        assertEquals(RagCallGuard.State.CLOSED, guard.getState());
+    }
+
+    private void probeAndWait() throws InterruptedException {
+        RagHealthProber.Snapshot before = prober.getSnapshot();
+        prober.probe();
+        long deadline = System.currentTimeMillis() + 2000;
+        while (System.currentTimeMillis() < deadline) {
+            // 每次探测完成都会替换快照
+            if (prober.getSnapshot() != before) {
+                return;
+            }
+            Thread.sleep(5);
+        }
+        throw new AssertionError("探测未在2秒内完成");
+    }
+
+    private static MockResponse healthy() {
+        return new MockResponse()
+                .setHeader("Content-Type", "application/json")
+                .setBody("{\"status\":\"healthy\"}");
+    }
+}
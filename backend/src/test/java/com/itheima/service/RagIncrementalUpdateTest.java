@@ -0,0 +1,129 @@
+package com.itheima.service;
+
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.itheima.config.RagClientConfig;
+import com.itheima.pojo.File;
+import com.itheima.pojo.FileChange;
+import com.itheima.pojo.rag.VectorStoreResponse;
+import com.itheima.service.impl.RagClientServiceImpl;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * 增量更新向量存储测试
+ * 使用MockWebServer代替RAG后端的 /vectorstores/incremental 接口
+ */
+public class RagIncrementalUpdateTest {
+
+    private static final String STORAGE_ROOT = Paths.get("build-test-files").toAbsolutePath().toString();
+
+    private MockWebServer ragServer;
+    private RagClientServiceImpl ragClientService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        ragServer = new MockWebServer();
+        ragServer.start();
+
+        RagClientConfig config = new RagClientConfig();
+        config.setBaseUrl("http://" + ragServer.getHostName() + ":" + ragServer.getPort());
+        config.getRetry().setMaxAttempts(2);
+        config.getRetry().setDelay(10);
+
+        ragClientService = new RagClientServiceImpl(new RestTemplate(), config, new RagCallGuard(config, Runnable::run));
+        ReflectionTestUtils.setField(ragClientService, "fileStorageRoot", STORAGE_ROOT);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        ragServer.shutdown();
+    }
+
+    @Test
+    public void testChangesAreShippedInOrderWithRelativePaths() throws Exception {
+        ragServer.enqueue(new MockResponse()
+                .setHeader("Content-Type", "application/json")
+                .setBody("{\"status\":\"updated\",\"message\":\"ok\"}"));
+
+        File added = file(10L, "user_1/20240101/a_notes.txt", "notes.txt", 0L);
+        File renamed = file(11L, "user_1/20240101/b_plan.txt", "plan-v2.txt", 3L);
+        VectorStoreResponse response = ragClientService.applyIncrementalChanges(1L, List.of(
+                FileChange.added(added),
+                FileChange.renamed(renamed, "plan.txt"),
+                FileChange.moved(renamed, 0L),
+                FileChange.removed(added))).join();
+
+        assertEquals("updated", response.getStatus());
+
+        RecordedRequest request = ragServer.takeRequest(1, TimeUnit.SECONDS);
+        assertNotNull(request);
+        assertEquals("/vectorstores/incremental", request.getPath());
+
+        JSONObject body = JSONObject.parseObject(request.getBody().readUtf8());
+        assertEquals("user_1", body.getString("document_path"));
+        JSONArray changes = body.getJSONArray("changes");
+        assertEquals(4, changes.size());
+        assertEquals("added", changes.getJSONObject(0).getString("type"));
+        assertEquals(10L, changes.getJSONObject(0).getLongValue("file_id"));
+        assertEquals("user_1/20240101/a_notes.txt", changes.getJSONObject(0).getString("source"));
+        assertEquals("renamed", changes.getJSONObject(1).getString("type"));
+        assertEquals("plan-v2.txt", changes.getJSONObject(1).getString("file_name"));
+        assertEquals("plan.txt", changes.getJSONObject(1).getString("previous_file_name"));
+        assertEquals("moved", changes.getJSONObject(2).getString("type"));
+        assertEquals(3L, changes.getJSONObject(2).getLongValue("folder_id"));
+        assertEquals(0L, changes.getJSONObject(2).getLongValue("previous_folder_id"));
+        assertEquals("removed", changes.getJSONObject(3).getString("type"));
+    }
+
+    @Test
+    public void testTransientServerErrorIsRetried() {
+        ragServer.enqueue(new MockResponse().setResponseCode(503));
+        ragServer.enqueue(new MockResponse()
+                .setHeader("Content-Type", "application/json")
+                .setBody("{\"status\":\"updated\",\"message\":\"ok\"}"));
+
+        VectorStoreResponse response = ragClientService.applyIncrementalChanges(1L,
+                List.of(FileChange.added(file(10L, "user_1/20240101/a_notes.txt", "notes.txt", 0L)))).join();
+
+        assertEquals("updated", response.getStatus());
+        assertEquals(2, ragServer.getRequestCount());
+    }
+
+    @Test
+    public void testServerErrorIsReportedAsError() {
+        ragServer.enqueue(new MockResponse().setResponseCode(500));
+        ragServer.enqueue(new MockResponse().setResponseCode(500));
+
+        VectorStoreResponse response = ragClientService.applyIncrementalChanges(1L,
+                List.of(FileChange.added(file(10L, "user_1/20240101/a_notes.txt", "notes.txt", 0L)))).join();
+
+        // 协调器据此退回完整重建
+        assertEquals("error", response.getStatus());
+        assertEquals(2, ragServer.getRequestCount());
+    }
+
+    private File file(Long id, String relativePath, String fileName, Long folderId) {
+        return File.builder()
+                .id(id)
+                .userId(1L)
+                .folderId(folderId)
+                .fileName(fileName)
+                .filePath(Paths.get(STORAGE_ROOT, relativePath).toString())
+                .build();
+    }
+}
@@ -0,0 +1,143 @@
+package com.itheima.service;
+
+import com.itheima.config.RagClientConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 重建任务执行器测试：按用户轮转取任务、总队列和单用户队列上限、关闭
+ */
+public class RebuildJobExecutorTest {
+
+    private RagClientConfig config;
+    private SimpleMeterRegistry meterRegistry;
+    private RebuildJobExecutor executor;
+    private CountDownLatch blockerStarted;
+    private CountDownLatch releaseBlocker;
+
+    @BeforeEach
+    void setUp() {
+        config = new RagClientConfig();
+        config.getRebuild().setThreads(1);
+        config.getRebuild().setQueueCapacity(3);
+        config.getRebuild().setPerUserCapacity(2);
+        meterRegistry = new SimpleMeterRegistry();
+        executor = new RebuildJobExecutor(config, meterRegistry);
+        executor.start();
+        blockerStarted = new CountDownLatch(1);
+        releaseBlocker = new CountDownLatch(1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        releaseBlocker.countDown();
+        executor.shutdown();
+    }
+
+    @Test
+    public void testUsersAreServedInTurn() throws Exception {
+        config.getRebuild().setPerUserCapacity(5);
+        config.getRebuild().setQueueCapacity(10);
+        occupyWorker();
+
+        // 用户1批量提交，用户2、3各提交一个，不会排在用户1的全部任务之后
+        List<String> order = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(5);
+        for (String name : List.of("a1", "a2", "a3")) {
+            executor.submit(1L, record(order, name, done));
+        }
+        executor.submit(2L, record(order, "b1", done));
+        executor.submit(3L, record(order, "c1", done));
+        assertEquals(5, executor.getQueuedCount());
+
+        releaseBlocker.countDown();
+        assertTrue(done.await(2, TimeUnit.SECONDS));
+        assertEquals(List.of("a1", "b1", "c1", "a2", "a3"), order);
+        assertEquals(0, executor.getQueuedCount());
+    }
+
+    @Test
+    public void testPerUserAndTotalCapacityAreEnforced() throws Exception {
+        occupyWorker();
+
+        executor.submit(1L, () -> { });
+        executor.submit(1L, () -> { });
+        // 单用户上限
+        assertThrows(RejectedExecutionException.class, () -> executor.submit(1L, () -> { }));
+
+        executor.submit(2L, () -> { });
+        // 总上限，即使该用户还没有排队的任务
+        assertThrows(RejectedExecutionException.class, () -> executor.submit(3L, () -> { }));
+
+        assertEquals(3, executor.getQueuedCount());
+        assertEquals(2.0, meterRegistry.counter("rag.rebuild.rejected").count());
+        assertEquals(3.0, meterRegistry.get("rag.rebuild.queue.depth").gauge().value());
+    }
+
+    @Test
+    public void testShutdownRejectsNewJobsAndStopsWorkers() throws Exception {
+        CountDownLatch interrupted = new CountDownLatch(1);
+        executor.submit(1L, () -> {
+            blockerStarted.countDown();
+            try {
+                releaseBlocker.await();
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+        });
+        assertTrue(blockerStarted.await(1, TimeUnit.SECONDS));
+        assertEquals(1, executor.getActiveCount());
+
+        executor.shutdown();
+
+        assertThrows(RejectedExecutionException.class, () -> executor.submit(2L, () -> { }));
+        // 正在执行的任务被中断，工作线程退出
+        assertTrue(interrupted.await(1, TimeUnit.SECONDS));
+        for (Thread worker : workers()) {
+            worker.join(1000);
+            assertFalse(worker.isAlive());
+        }
+        assertEquals(0, executor.getActiveCount());
+    }
+
+    /**
+     * 用一个阻塞的任务占住唯一的工作线程，之后提交的任务都留在队列中
+     */
+    private void occupyWorker() throws InterruptedException {
+        executor.submit(0L, () -> {
+            blockerStarted.countDown();
+            try {
+                releaseBlocker.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(blockerStarted.await(1, TimeUnit.SECONDS));
+    }
+
+    private static Runnable record(List<String> order, String name, CountDownLatch done) {
+        return () -> {
+            order.add(name);
+            done.countDown();
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Thread> workers() {
+        return (List<Thread>) ReflectionTestUtils.getField(executor, "workers");
+    }
+}
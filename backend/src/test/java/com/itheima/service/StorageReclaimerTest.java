@@ -0,0 +1,249 @@
+package com.itheima.service;
+
+import com.itheima.mapper.FileBlobMapper;
+import com.itheima.mapper.FileReclaimMapper;
+import com.itheima.pojo.FileBlob;
+import com.itheima.pojo.FileReclaim;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 存储回收测试：删除队列、宽限期、回收时持锁重新确认、孤立文件扫描和启动调度
+ */
+public class StorageReclaimerTest {
+
+    private static final String HASH_A = "a".repeat(64);
+    private static final String HASH_B = "b".repeat(64);
+
+    @TempDir
+    Path storageRoot;
+
+    private FileReclaimMapper fileReclaimMapper;
+    private FileBlobMapper fileBlobMapper;
+    private BlobStore blobStore;
+    private ThreadPoolTaskScheduler scheduler;
+    private SimpleMeterRegistry meterRegistry;
+    private StorageReclaimer reclaimer;
+
+    @BeforeEach
+    void setUp() {
+        fileReclaimMapper = mock(FileReclaimMapper.class);
+        fileBlobMapper = mock(FileBlobMapper.class);
+        blobStore = new BlobStore(fileBlobMapper);
+        ReflectionTestUtils.setField(blobStore, "storageRoot", storageRoot.toString());
+        scheduler = mock(ThreadPoolTaskScheduler.class);
+        meterRegistry = new SimpleMeterRegistry();
+        reclaimer = newReclaimer();
+    }
+
+    @Test
+    public void testDrainDeletesQueuedPathsAndKeepsFailures() throws IOException {
+        Path deleted = Files.writeString(storageRoot.resolve("a.txt"), "12345");
+        Path missing = storageRoot.resolve("already-gone.txt");
+        // 非空目录无法删除，模拟删除失败
+        Path busy = Files.createDirectories(storageRoot.resolve("busy"));
+        Files.writeString(busy.resolve("inner"), "x");
+        when(fileReclaimMapper.selectAfter(0, 100)).thenReturn(List.of(entry(1L, deleted), entry(2L, missing),
+                entry(3L, busy)));
+        when(fileReclaimMapper.selectCount(null)).thenReturn(1L);
+
+        reclaimer.drainQueue();
+
+        assertFalse(Files.exists(deleted));
+        assertTrue(Files.exists(busy));
+        verify(fileReclaimMapper).deleteBatchIds(List.of(1L, 2L));
+        assertEquals(5.0, meterRegistry.counter("storage.reclaim.bytes", "type", "file").count());
+        // pending 报告的是队列中剩余的路径数
+        assertEquals(1.0, meterRegistry.get("storage.reclaim.pending").gauge().value());
+    }
+
+    @Test
+    public void testDrainPagesThroughQueue() throws IOException {
+        ReflectionTestUtils.setField(reclaimer, "batchSize", 2);
+        Path a = Files.writeString(storageRoot.resolve("a"), "a");
+        Path b = Files.writeString(storageRoot.resolve("b"), "b");
+        Path c = Files.writeString(storageRoot.resolve("c"), "c");
+        when(fileReclaimMapper.selectAfter(0, 2)).thenReturn(List.of(entry(1L, a), entry(2L, b)));
+        when(fileReclaimMapper.selectAfter(2, 2)).thenReturn(List.of(entry(3L, c)));
+
+        reclaimer.drainQueue();
+
+        assertFalse(Files.exists(a) || Files.exists(b) || Files.exists(c));
+        verify(fileReclaimMapper).deleteBatchIds(List.of(1L, 2L));
+        verify(fileReclaimMapper).deleteBatchIds(List.of(3L));
+    }
+
+    @Test
+    public void testReclaimRechecksUnderRowLock() throws IOException {
+        LocalDateTime cutoff = LocalDateTime.now().minusMinutes(60);
+        Path blobA = blob(HASH_A);
+        Path blobB = blob(HASH_B);
+        when(fileBlobMapper.selectUnreferenced(cutoff, "", 100)).thenReturn(List.of(HASH_A, HASH_B));
+        // A：持锁后发现刚被重新引用；B：仍然没有引用
+        when(fileBlobMapper.selectForUpdate(HASH_A)).thenReturn(blobRow(HASH_A, cutoff.minusMinutes(1)));
+        when(fileBlobMapper.countReferences(HASH_A)).thenReturn(1);
+        when(fileBlobMapper.selectForUpdate(HASH_B)).thenReturn(blobRow(HASH_B, cutoff.minusMinutes(1)));
+
+        reclaimer.reclaimUnreferencedBlobs(cutoff);
+
+        assertTrue(Files.exists(blobA));
+        assertFalse(Files.exists(blobB));
+        verify(fileBlobMapper, never()).deleteById(HASH_A);
+        verify(fileBlobMapper).deleteById(HASH_B);
+        assertEquals(1.0, meterRegistry.counter("storage.reclaim.files", "type", "blob").count());
+    }
+
+    @Test
+    public void testBlobWithinGracePeriodIsKept() throws IOException {
+        LocalDateTime cutoff = LocalDateTime.now().minusMinutes(60);
+        Path blobA = blob(HASH_A);
+        // 查询之后、加锁之前引用数发生了变化，最后变化时间进入宽限期
+        when(fileBlobMapper.selectForUpdate(HASH_A)).thenReturn(blobRow(HASH_A, LocalDateTime.now()));
+
+        assertEquals(-1, blobStore.reclaim(HASH_A, cutoff));
+        assertTrue(Files.exists(blobA));
+        verify(fileBlobMapper, never()).countReferences(anyString());
+        verify(fileBlobMapper, never()).deleteById(anyString());
+
+        // 记录已被删除
+        when(fileBlobMapper.selectForUpdate(HASH_A)).thenReturn(null);
+        assertEquals(-1, blobStore.reclaim(HASH_A, cutoff));
+        assertTrue(Files.exists(blobA));
+    }
+
+    @Test
+    public void testOrphanSweepDeletesOnlyOldUnrecordedBlobs() throws IOException {
+        Instant cutoff = Instant.now().minus(Duration.ofHours(1));
+        Path recorded = aged(blob(HASH_A));
+        Path orphan = aged(blob(HASH_B));
+        Path fresh = blob("c".repeat(64));
+        Path notABlob = aged(Files.writeString(blobStore.blobRoot().resolve("README"), "x"));
+        when(fileBlobMapper.selectExistingHashes(anyList())).thenReturn(List.of(HASH_A));
+
+        reclaimer.sweepOrphanBlobs(cutoff);
+
+        assertTrue(Files.exists(recorded));
+        assertFalse(Files.exists(orphan));
+        assertTrue(Files.exists(fresh));
+        assertTrue(Files.exists(notABlob));
+        ArgumentCaptor<List<String>> checked = listCaptor();
+        verify(fileBlobMapper).selectExistingHashes(checked.capture());
+        assertEquals(List.of(HASH_A, HASH_B), checked.getValue().stream().sorted().toList());
+    }
+
+    @Test
+    public void testStaleTempFilesAreSwept() throws IOException {
+        Path temp = Files.createDirectories(blobStore.tempRoot());
+        Path stale = aged(Files.writeString(temp.resolve("x.tmp"), "x"));
+        Path fresh = Files.writeString(temp.resolve("y.tmp"), "y");
+        Path part = aged(Files.writeString(temp.resolve("z.part"), "z"));
+
+        reclaimer.sweepStaleTempFiles(Instant.now().minus(Duration.ofHours(1)));
+
+        assertFalse(Files.exists(stale));
+        assertTrue(Files.exists(fresh));
+        assertTrue(Files.exists(part));
+    }
+
+    @Test
+    public void testStartDelaysFirstRun() {
+        reclaimer.start();
+
+        ArgumentCaptor<Instant> firstRun = ArgumentCaptor.forClass(Instant.class);
+        verify(scheduler).scheduleWithFixedDelay(any(Runnable.class), firstRun.capture(), eq(Duration.ofMinutes(10)));
+        Duration delay = Duration.between(Instant.now(), firstRun.getValue());
+        assertTrue(delay.compareTo(Duration.ofMinutes(4)) > 0, "delay " + delay);
+        assertTrue(delay.compareTo(Duration.ofMinutes(15)) <= 0, "delay " + delay);
+    }
+
+    @Test
+    public void testOrphanScanTimeSurvivesRestart() throws IOException {
+        aged(blob(HASH_A));
+        when(fileBlobMapper.selectExistingHashes(anyList())).thenReturn(List.of(HASH_A));
+        // 上次扫描已超过间隔：本轮扫描并记录时间
+        Files.setLastModifiedTime(Files.createFile(storageRoot.resolve(".orphan-scan")),
+                FileTime.from(Instant.now().minus(Duration.ofHours(25))));
+        reclaimer.start();
+        reclaimer.runOnce();
+        verify(fileBlobMapper).selectExistingHashes(anyList());
+
+        // 重启后读取记录的时间，不会立即再扫描
+        StorageReclaimer restarted = newReclaimer();
+        restarted.start();
+        restarted.runOnce();
+        verify(fileBlobMapper).selectExistingHashes(anyList());
+        Instant recorded = Files.getLastModifiedTime(storageRoot.resolve(".orphan-scan")).toInstant();
+        assertTrue(Duration.between(recorded, Instant.now()).toMinutes() < 1);
+    }
+
+    @Test
+    public void testFirstRunSpreadsOrphanScanOverInterval() {
+        reclaimer.start();
+
+        Instant lastScan = (Instant) ReflectionTestUtils.getField(reclaimer, "lastOrphanScan");
+        Duration age = Duration.between(lastScan, Instant.now());
+        assertTrue(age.compareTo(Duration.ZERO) >= 0 && age.compareTo(Duration.ofHours(24)) <= 0, "age " + age);
+    }
+
+    private StorageReclaimer newReclaimer() {
+        StorageReclaimer created = new StorageReclaimer(fileReclaimMapper, fileBlobMapper, blobStore, scheduler,
+                meterRegistry);
+        ReflectionTestUtils.setField(created, "initialDelayMinutes", 5L);
+        ReflectionTestUtils.setField(created, "intervalMinutes", 10L);
+        ReflectionTestUtils.setField(created, "graceMinutes", 60L);
+        ReflectionTestUtils.setField(created, "batchSize", 100);
+        ReflectionTestUtils.setField(created, "batchPauseMillis", 0L);
+        ReflectionTestUtils.setField(created, "orphanScanIntervalHours", 24L);
+        return created;
+    }
+
+    private Path blob(String hash) throws IOException {
+        Path path = blobStore.blobPath(hash);
+        Files.createDirectories(path.getParent());
+        return Files.writeString(path, hash);
+    }
+
+    private static Path aged(Path path) throws IOException {
+        Files.setLastModifiedTime(path, FileTime.from(Instant.now().minus(Duration.ofHours(2))));
+        return path;
+    }
+
+    private static FileReclaim entry(Long id, Path path) {
+        return FileReclaim.builder().id(id).filePath(path.toString()).build();
+    }
+
+    private static FileBlob blobRow(String hash, LocalDateTime updateTime) {
+        return FileBlob.builder().contentHash(hash).size(64L).refCount(0).updateTime(updateTime).build();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ArgumentCaptor<List<String>> listCaptor() {
+        return ArgumentCaptor.forClass(List.class);
+    }
+}
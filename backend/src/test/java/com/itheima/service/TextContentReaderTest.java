@@ -0,0 +1,180 @@
+package com.itheima.service;
+
+import com.itheima.dto.TextPage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 大文本文件分页读取测试：UTF-8字符边界、超长行和稀疏行偏移索引
+ */
+public class TextContentReaderTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testBytePagesNeverSplitCharacters() throws IOException {
+        String text = "a中é😀b文\n".repeat(20);
+        Path path = write("utf8.txt", text);
+
+        // 每种页大小下，按 nextOffset 依次读取的各页拼起来与原文相同，且没有替换字符
+        for (int pageSize = 4; pageSize <= 13; pageSize++) {
+            TextContentReader reader = reader(pageSize);
+            StringBuilder joined = new StringBuilder();
+            long offset = 0;
+            TextPage page;
+            do {
+                page = reader.readBytes(path, offset, pageSize);
+                assertFalse(page.getContent().contains("�"), "页大小 " + pageSize + " 截断了字符");
+                joined.append(page.getContent());
+                offset = page.getNextOffset();
+            } while (page.isHasMore());
+            assertEquals(text, joined.toString(), "页大小 " + pageSize);
+        }
+    }
+
+    @Test
+    public void testOffsetInsideCharacterMovesToNextCharacter() throws IOException {
+        // "中" 占字节 0-2，"文" 占字节 3-5
+        Path path = write("cjk.txt", "中文");
+        TextContentReader reader = reader(1024);
+
+        TextPage page = reader.readBytes(path, 1, 100);
+
+        assertEquals(3, page.getOffset());
+        assertEquals("文", page.getContent());
+        assertEquals(6, page.getNextOffset());
+        assertFalse(page.isHasMore());
+    }
+
+    @Test
+    public void testLinePageStopsAtLastCompleteLine() throws IOException {
+        Path path = write("lines.txt", "short\n" + "x".repeat(50) + "\nend\n");
+        TextContentReader reader = reader(16);
+
+        TextPage page = reader.readLines(path, "k", 0, 3);
+
+        assertEquals("short\n", page.getContent());
+        assertEquals(1L, page.getNextLine());
+        assertEquals(3L, page.getTotalLines());
+        assertFalse(page.isTruncated());
+        assertTrue(page.isHasMore());
+    }
+
+    @Test
+    public void testLineLongerThanPageIsTruncated() throws IOException {
+        String longLine = "中".repeat(20);
+        String text = "short\n" + longLine + "\nend\n";
+        Path path = write("long.txt", text);
+        TextContentReader reader = reader(16);
+
+        TextPage page = reader.readLines(path, "k", 1, 1);
+
+        // 16 字节落在第6个汉字中间，退回到字符开头
+        assertEquals("中".repeat(5), page.getContent());
+        assertTrue(page.isTruncated());
+        assertEquals(2L, page.getNextLine());
+        assertEquals(text.indexOf("end") + 2L * 20, page.getNextOffset());
+        assertTrue(page.isHasMore());
+
+        TextPage next = reader.readLines(path, "k", page.getNextLine(), 1);
+        assertEquals("end\n", next.getContent());
+        assertFalse(next.isTruncated());
+        assertFalse(next.isHasMore());
+    }
+
+    @Test
+    public void testLastLineWithoutNewline() throws IOException {
+        Path path = write("tail.txt", "a\nb");
+        TextContentReader reader = reader(1024);
+
+        TextPage page = reader.readLines(path, "k", 0, 10);
+
+        assertEquals("a\nb", page.getContent());
+        assertEquals(2L, page.getTotalLines());
+        assertEquals(2L, page.getNextLine());
+        assertFalse(page.isHasMore());
+    }
+
+    @Test
+    public void testSparseIndexFindsLinesAroundCheckpoints() throws IOException {
+        int lines = TextContentReader.LINE_STRIDE * 4 + 100;
+        Path path = write("many.txt", numberedLines(lines, true));
+        TextContentReader reader = reader(1024 * 1024);
+
+        int stride = TextContentReader.LINE_STRIDE;
+        for (long line : new long[]{0, 1, stride - 1, stride, stride + 1, 2L * stride + 17, 4L * stride, lines - 1}) {
+            TextPage page = reader.readLines(path, "many", line, 1);
+            assertEquals("line-" + line + "\n", page.getContent(), "第 " + line + " 行");
+            assertEquals(line, page.getStartLine());
+            assertEquals((long) lines, page.getTotalLines());
+        }
+
+        TextPage window = reader.readLines(path, "many", stride - 2, 4);
+        assertEquals("line-" + (stride - 2) + "\nline-" + (stride - 1) + "\nline-" + stride + "\nline-"
+                + (stride + 1) + "\n", window.getContent());
+        assertEquals(stride + 2L, window.getNextLine());
+
+        // 超出总行数时返回空页
+        TextPage past = reader.readLines(path, "many", lines + 5L, 3);
+        assertEquals("", past.getContent());
+        assertFalse(past.isHasMore());
+    }
+
+    @Test
+    public void testLineCountMultipleOfStrideWithoutTrailingNewline() throws IOException {
+        int lines = TextContentReader.LINE_STRIDE * 2;
+        Path path = write("exact.txt", numberedLines(lines, false));
+        TextContentReader reader = reader(1024 * 1024);
+
+        TextPage last = reader.readLines(path, "exact", lines - 1, 5);
+
+        assertEquals("line-" + (lines - 1), last.getContent());
+        assertEquals((long) lines, last.getTotalLines());
+        assertEquals((long) lines, last.getNextLine());
+        assertFalse(last.isHasMore());
+    }
+
+    @Test
+    public void testIndexIsRebuiltWhenSizeChanges() throws IOException {
+        TextContentReader reader = reader(1024 * 1024);
+        Path first = write("v1.txt", numberedLines(3000, true));
+        assertEquals("line-2500\n", reader.readLines(first, "same", 2500, 1).getContent());
+
+        // 相同的缓存键对应另一份内容：大小不同，不能沿用旧的检查点
+        Path second = write("v2.txt", "header\n" + numberedLines(3000, true));
+        TextPage page = reader.readLines(second, "same", 2500, 1);
+
+        assertEquals("line-2499\n", page.getContent());
+        assertEquals(3001L, page.getTotalLines());
+    }
+
+    private TextContentReader reader(int maxPageBytes) {
+        return new TextContentReader(DataSize.ofBytes(maxPageBytes), 10);
+    }
+
+    private Path write(String name, String content) throws IOException {
+        return Files.writeString(tempDir.resolve(name), content, StandardCharsets.UTF_8);
+    }
+
+    private static String numberedLines(int count, boolean trailingNewline) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            builder.append("line-").append(i);
+            if (i < count - 1 || trailingNewline) {
+                builder.append('\n');
+            }
+        }
+        return builder.toString();
+    }
+}
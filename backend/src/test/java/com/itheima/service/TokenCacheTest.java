@@ -0,0 +1,99 @@
+package com.itheima.service;
+
+import com.itheima.utils.JwtUtil;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 令牌本地缓存测试
+ */
+public class TokenCacheTest {
+
+    private StringRedisTemplate redisTemplate;
+    private ValueOperations<String, String> operations;
+    private TokenCache tokenCache;
+    private String token;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        redisTemplate = mock(StringRedisTemplate.class);
+        operations = mock(ValueOperations.class);
+        when(redisTemplate.opsForValue()).thenReturn(operations);
+        when(operations.get(anyString())).thenAnswer(invocation -> invocation.getArgument(0));
+        tokenCache = new TokenCache(redisTemplate, new SimpleMeterRegistry(), 100, 300);
+
+        Map<String, Object> claims = new HashMap<>();
+        claims.put("id", 1);
+        claims.put("username", "zhangsan");
+        token = JwtUtil.genToken(claims);
+    }
+
+    @Test
+    public void testCacheHitSkipsRedis() {
+        for (int i = 0; i < 5; i++) {
+            assertEquals("zhangsan", tokenCache.verify(token).get("username"));
+        }
+        verify(operations, times(1)).get(token);
+    }
+
+    @Test
+    public void testRevokedTokenIsRejected() {
+        tokenCache.verify(token);
+        tokenCache.revoke(token);
+        when(operations.get(token)).thenReturn(null);
+
+        assertNull(tokenCache.verify(token));
+        verify(redisTemplate).delete(token);
+        verify(redisTemplate).convertAndSend(TokenCache.REVOCATION_CHANNEL, token);
+    }
+
+    @Test
+    public void testRevocationBroadcastEvictsLocalEntry() {
+        tokenCache.verify(token);
+        // 其他节点注销了令牌：Redis中已删除，本节点只收到广播
+        when(operations.get(token)).thenReturn(null);
+        tokenCache.onMessage(new DefaultMessage(TokenCache.REVOCATION_CHANNEL.getBytes(StandardCharsets.UTF_8),
+                token.getBytes(StandardCharsets.UTF_8)), null);
+
+        assertNull(tokenCache.verify(token));
+    }
+
+    @Test
+    public void testRevocationDuringLookupIsNotCached() {
+        // 查询Redis之后、写入缓存之前收到了注销广播
+        when(operations.get(token)).thenAnswer(invocation -> {
+            tokenCache.onMessage(new DefaultMessage(new byte[0], token.getBytes(StandardCharsets.UTF_8)), null);
+            return token;
+        });
+        tokenCache.verify(token);
+
+        when(operations.get(token)).thenReturn(null);
+        assertNull(tokenCache.verify(token));
+    }
+
+    @Test
+    public void testDisabledCacheAlwaysQueriesRedis() {
+        TokenCache disabled = new TokenCache(redisTemplate, new SimpleMeterRegistry(), 0, 300);
+        for (int i = 0; i < 3; i++) {
+            disabled.verify(token);
+        }
+        verify(operations, times(3)).get(token);
+    }
+}
@@ -0,0 +1,321 @@
+package com.itheima.service;
+
+import com.itheima.mapper.UploadChunkMapper;
+import com.itheima.mapper.UploadSessionMapper;
+import com.itheima.pojo.File;
+import com.itheima.pojo.UploadSession;
+import com.itheima.service.impl.FolderServiceImpl;
+import com.itheima.service.impl.UploadSessionServiceImpl;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 分片上传会话测试：会话上限、分片写入和完成时的行锁，接收请求体和计算哈希都不在事务中进行
+ */
+public class UploadSessionServiceTest {
+
+    private static final Long USER_ID = 1L;
+    private static final int CHUNK_SIZE = 4;
+
+    @TempDir
+    Path storageRoot;
+
+    private UploadSessionMapper sessionMapper;
+    private UploadChunkMapper chunkMapper;
+    private FileService fileService;
+    private BlobStore blobStore;
+    private FolderServiceImpl folderService;
+    private UploadSessionServiceImpl service;
+
+    @BeforeEach
+    void setUp() {
+        sessionMapper = mock(UploadSessionMapper.class);
+        chunkMapper = mock(UploadChunkMapper.class);
+        fileService = mock(FileService.class);
+        blobStore = mock(BlobStore.class);
+        folderService = mock(FolderServiceImpl.class);
+        service = new UploadSessionServiceImpl(sessionMapper, chunkMapper, fileService, blobStore, folderService,
+                new SimpleMeterRegistry(), mock(TaskScheduler.class),
+                new TransactionTemplate(new NoopTransactionManager()));
+        ReflectionTestUtils.setField(service, "storageRoot", storageRoot.toString());
+        ReflectionTestUtils.setField(service, "chunkSize", DataSize.ofBytes(CHUNK_SIZE));
+        ReflectionTestUtils.setField(service, "maxFileSize", DataSize.ofMegabytes(1));
+        ReflectionTestUtils.setField(service, "sessionTtlHours", 24L);
+        ReflectionTestUtils.setField(service, "maxOpenSessions", 2);
+        ReflectionTestUtils.setField(service, "maxOpenBytes", DataSize.ofBytes(100));
+        when(sessionMapper.selectOpenByUserForUpdate(USER_ID)).thenReturn(List.of());
+    }
+
+    @Test
+    public void testInitiateWithoutFolderUsesRoot() throws IOException {
+        UploadSession session = service.initiate(USER_ID, null, "a.txt", 10L);
+
+        assertEquals(0L, session.getFolderId());
+        assertEquals(3, session.getChunkCount());
+        assertEquals(10L, Files.size(Paths.get(session.getTempPath())));
+        verify(folderService, never()).validateFolderOwnership(anyLong(), anyLong());
+        verify(sessionMapper).insert(session);
+    }
+
+    @Test
+    public void testOpenSessionCountIsCapped() {
+        when(sessionMapper.selectOpenByUserForUpdate(USER_ID)).thenReturn(List.of(open(10L), open(10L)));
+
+        RuntimeException e = assertThrows(RuntimeException.class, () -> service.initiate(USER_ID, 0L, "a.txt", 10L));
+
+        assertTrue(e.getMessage().contains("最多 2 个"));
+        verify(sessionMapper, never()).insert(any(UploadSession.class));
+        assertFalse(Files.exists(storageRoot.resolve(".uploads")));
+    }
+
+    @Test
+    public void testPreallocatedBytesAreCapped() {
+        when(sessionMapper.selectOpenByUserForUpdate(USER_ID)).thenReturn(List.of(open(95L)));
+
+        assertThrows(RuntimeException.class, () -> service.initiate(USER_ID, 0L, "a.txt", 10L));
+
+        verify(sessionMapper, never()).insert(any(UploadSession.class));
+    }
+
+    @Test
+    public void testChunkIsWrittenAtItsOffsetUnderSharedLock() throws IOException {
+        UploadSession session = preallocated(10L);
+        when(sessionMapper.selectById(session.getId())).thenReturn(session);
+        when(sessionMapper.selectForShare(session.getId())).thenReturn(session);
+
+        service.writeChunk(USER_ID, session.getId(), 1, body("4567"), 4);
+        service.writeChunk(USER_ID, session.getId(), 2, body("89"), 2);
+
+        byte[] content = Files.readAllBytes(Paths.get(session.getTempPath()));
+        assertArrayEquals(new byte[]{0, 0, 0, 0, '4', '5', '6', '7', '8', '9'}, content);
+        verify(chunkMapper).insertIgnore(session.getId(), 1);
+        verify(chunkMapper).insertIgnore(session.getId(), 2);
+        assertEquals(List.of(Paths.get(session.getTempPath())), uploadsDir());
+    }
+
+    @Test
+    public void testChunkBodyIsReceivedBeforeTransaction() throws IOException {
+        UploadSession session = preallocated(10L);
+        when(sessionMapper.selectById(session.getId())).thenReturn(session);
+        List<Boolean> readInTransaction = new ArrayList<>();
+        List<Boolean> lockedInTransaction = new ArrayList<>();
+        when(sessionMapper.selectForShare(session.getId())).thenAnswer(invocation -> {
+            lockedInTransaction.add(TransactionSynchronizationManager.isActualTransactionActive());
+            return session;
+        });
+        InputStream body = new FilterInputStream(body("0123")) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                readInTransaction.add(TransactionSynchronizationManager.isActualTransactionActive());
+                return super.read(b, off, len);
+            }
+        };
+
+        service.writeChunk(USER_ID, session.getId(), 0, body, 4);
+
+        assertFalse(readInTransaction.isEmpty());
+        assertFalse(readInTransaction.contains(true));
+        assertEquals(List.of(true), lockedInTransaction);
+        verify(chunkMapper).insertIgnore(session.getId(), 0);
+    }
+
+    @Test
+    public void testChunkIsRejectedWhileCompleting() throws IOException {
+        UploadSession session = preallocated(10L);
+        when(sessionMapper.selectById(session.getId())).thenReturn(session);
+        when(sessionMapper.selectForShare(session.getId())).thenReturn(session);
+        session.setCompleting(true);
+
+        RuntimeException e = assertThrows(RuntimeException.class,
+                () -> service.writeChunk(USER_ID, session.getId(), 0, body("0123"), 4));
+
+        assertEquals("上传正在完成，不能再写入分片", e.getMessage());
+        assertArrayEquals(new byte[10], Files.readAllBytes(Paths.get(session.getTempPath())));
+        verify(chunkMapper, never()).insertIgnore(anyString(), anyInt());
+        assertEquals(List.of(Paths.get(session.getTempPath())), uploadsDir());
+    }
+
+    @Test
+    public void testChunkWithWrongLengthIsRejected() throws IOException {
+        UploadSession session = preallocated(10L);
+        when(sessionMapper.selectById(session.getId())).thenReturn(session);
+        when(sessionMapper.selectForShare(session.getId())).thenReturn(session);
+
+        assertThrows(IllegalArgumentException.class,
+                () -> service.writeChunk(USER_ID, session.getId(), 0, body("012"), 3));
+        assertThrows(IOException.class,
+                () -> service.writeChunk(USER_ID, session.getId(), 0, body("01234"), -1));
+        verify(sessionMapper, never()).selectForShare(anyString());
+        verify(chunkMapper, never()).insertIgnore(anyString(), anyInt());
+        assertEquals(List.of(Paths.get(session.getTempPath())), uploadsDir());
+    }
+
+    @Test
+    public void testOtherUsersSessionIsRejected() throws IOException {
+        UploadSession session = preallocated(10L);
+        when(sessionMapper.selectById(session.getId())).thenReturn(session);
+        when(sessionMapper.selectForUpdate(session.getId())).thenReturn(session);
+
+        assertThrows(RuntimeException.class, () -> service.writeChunk(2L, session.getId(), 0, body("0123"), 4));
+        assertThrows(RuntimeException.class, () -> service.complete(2L, session.getId()));
+        assertThrows(RuntimeException.class, () -> service.abort(2L, session.getId()));
+        verify(sessionMapper, never()).deleteById(anyString());
+        verify(sessionMapper, never()).markCompleting(anyString());
+    }
+
+    @Test
+    public void testCompleteHashesOutsideLockAndRegistersFile() throws IOException {
+        UploadSession session = preallocated(10L);
+        when(sessionMapper.selectForUpdate(session.getId())).thenReturn(session);
+        when(chunkMapper.countChunks(session.getId())).thenReturn(3);
+        BlobStore.StagedContent staged = new BlobStore.StagedContent(Paths.get(session.getTempPath()), "a".repeat(64), 10L);
+        List<Boolean> hashedInTransaction = new ArrayList<>();
+        when(blobStore.stage(Paths.get(session.getTempPath()))).thenAnswer(invocation -> {
+            hashedInTransaction.add(TransactionSynchronizationManager.isActualTransactionActive());
+            return staged;
+        });
+        File registered = new File();
+        when(fileService.registerUploadedFile(any(), any(), any(), any())).thenReturn(registered);
+
+        assertSame(registered, service.complete(USER_ID, session.getId()));
+
+        assertEquals(List.of(false), hashedInTransaction);
+        // 先标记正在完成，再计算哈希，最后重新加锁确认后登记
+        InOrder order = inOrder(sessionMapper, blobStore, chunkMapper, fileService);
+        order.verify(sessionMapper).selectForUpdate(session.getId());
+        order.verify(sessionMapper).markCompleting(session.getId());
+        order.verify(blobStore).stage(Paths.get(session.getTempPath()));
+        order.verify(sessionMapper).selectForUpdate(session.getId());
+        order.verify(sessionMapper).deleteById(session.getId());
+        order.verify(chunkMapper).deleteByUploadId(session.getId());
+        order.verify(fileService).registerUploadedFile(USER_ID, 0L, "a.txt", staged);
+    }
+
+    @Test
+    public void testSessionRemovedWhileHashingIsNotRegistered() throws IOException {
+        UploadSession session = preallocated(10L);
+        // 计算哈希期间被取消或由另一个完成请求登记
+        when(sessionMapper.selectForUpdate(session.getId())).thenReturn(session, (UploadSession) null);
+        when(chunkMapper.countChunks(session.getId())).thenReturn(3);
+        when(blobStore.stage(any(Path.class))).thenReturn(
+                new BlobStore.StagedContent(Paths.get(session.getTempPath()), "a".repeat(64), 10L));
+
+        RuntimeException e = assertThrows(RuntimeException.class, () -> service.complete(USER_ID, session.getId()));
+
+        assertEquals("上传会话不存在或权限不足", e.getMessage());
+        verify(sessionMapper, never()).deleteById(anyString());
+        verify(fileService, never()).registerUploadedFile(any(), any(), any(), any());
+    }
+
+    @Test
+    public void testCompleteWithMissingChunksFails() throws IOException {
+        UploadSession session = preallocated(10L);
+        when(sessionMapper.selectForUpdate(session.getId())).thenReturn(session);
+        when(chunkMapper.countChunks(session.getId())).thenReturn(2);
+
+        RuntimeException e = assertThrows(RuntimeException.class, () -> service.complete(USER_ID, session.getId()));
+
+        assertEquals("还有 1 个分片未上传", e.getMessage());
+        verify(sessionMapper, never()).markCompleting(anyString());
+        verify(blobStore, never()).stage(any(Path.class));
+        verify(sessionMapper, never()).deleteById(anyString());
+        verify(fileService, never()).registerUploadedFile(any(), any(), any(), any());
+    }
+
+    @Test
+    public void testCompletedSessionCannotBeCompletedAgain() {
+        when(sessionMapper.selectForUpdate("gone")).thenReturn(null);
+
+        assertThrows(RuntimeException.class, () -> service.complete(USER_ID, "gone"));
+    }
+
+    private List<Path> uploadsDir() throws IOException {
+        try (Stream<Path> files = Files.list(storageRoot.resolve(".uploads"))) {
+            return files.toList();
+        }
+    }
+
+    private UploadSession preallocated(long fileSize) throws IOException {
+        UploadSession session = service.initiate(USER_ID, 0L, "a.txt", fileSize);
+        ArgumentCaptor<UploadSession> inserted = ArgumentCaptor.forClass(UploadSession.class);
+        verify(sessionMapper).insert(inserted.capture());
+        return inserted.getValue();
+    }
+
+    private static UploadSession open(long fileSize) {
+        return UploadSession.builder()
+                .id("open-" + fileSize)
+                .userId(USER_ID)
+                .fileSize(fileSize)
+                .expireTime(LocalDateTime.now().plusHours(1))
+                .build();
+    }
+
+    private static ByteArrayInputStream body(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * 只开启和结束事务同步，用来确认操作是否在事务中进行
+     */
+    private static class NoopTransactionManager extends AbstractPlatformTransactionManager {
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+        }
+    }
+}
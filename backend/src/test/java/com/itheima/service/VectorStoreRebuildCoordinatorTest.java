@@ -0,0 +1,293 @@
+package com.itheima.service;
+
+import com.itheima.config.RagClientConfig;
+import com.itheima.mapper.FileChangeMapper;
+import com.itheima.pojo.FileChange;
+import com.itheima.pojo.rag.VectorStoreResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 向量存储重建协调器测试：防抖合并、最长等待、单飞和重建期间事件的后续重建，
+ * 变更日志的分批同步和增量更新失败时退回完整重建，以及手动构建等待结果
+ */
+public class VectorStoreRebuildCoordinatorTest {
+
+    private static final long DEBOUNCE_MS = 100;
+    private static final long MAX_WAIT_MS = 300;
+
+    private RagClientConfig config;
+    private RagClientService ragClientService;
+    private FileChangeMapper fileChangeMapper;
+    private RagHealthProber healthProber;
+    private ThreadPoolTaskScheduler scheduler;
+    private RebuildJobExecutor executor;
+    private VectorStoreRebuildCoordinator coordinator;
+
+    @BeforeEach
+    void setUp() {
+        config = new RagClientConfig();
+        config.getRebuild().setDebounceMs(DEBOUNCE_MS);
+        config.getRebuild().setMaxWaitMs(MAX_WAIT_MS);
+        config.getRebuild().setThreads(2);
+
+        ragClientService = mock(RagClientService.class);
+        when(ragClientService.buildVectorStore(anyLong(), anyBoolean())).thenReturn(completed("created"));
+        fileChangeMapper = mock(FileChangeMapper.class);
+        healthProber = mock(RagHealthProber.class);
+        when(healthProber.isAvailable()).thenReturn(true);
+
+        scheduler = new ThreadPoolTaskScheduler();
+        scheduler.initialize();
+        executor = new RebuildJobExecutor(config, new SimpleMeterRegistry());
+        executor.start();
+        coordinator = new VectorStoreRebuildCoordinator(ragClientService, fileChangeMapper, config,
+                scheduler, executor, healthProber);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdown();
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void testEventsWithinDebounceWindowCoalesceIntoOneRebuild() {
+        for (int i = 0; i < 10; i++) {
+            coordinator.requestRebuild(1L, i == 5);
+        }
+
+        // 任一事件要求强制重建则强制重建
+        verify(ragClientService, timeout(1000).times(1)).buildVectorStore(1L, true);
+        verify(ragClientService, after(3 * DEBOUNCE_MS).times(1)).buildVectorStore(anyLong(), anyBoolean());
+        waitUntilIdle(1L);
+    }
+
+    @Test
+    public void testContinuousEventsRebuildWithinMaxWait() throws Exception {
+        long start = System.currentTimeMillis();
+        // 事件间隔小于防抖时间，只靠防抖永远不会触发
+        while (System.currentTimeMillis() - start < 3 * MAX_WAIT_MS) {
+            coordinator.requestRebuild(1L, false);
+            Thread.sleep(DEBOUNCE_MS / 2);
+        }
+
+        verify(ragClientService, timeout(1000).atLeast(2)).buildVectorStore(eq(1L), anyBoolean());
+    }
+
+    @Test
+    public void testSingleFlightWithOneFollowUpRebuild() throws Exception {
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirst = new CountDownLatch(1);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        AtomicInteger calls = new AtomicInteger();
+        when(ragClientService.buildVectorStore(anyLong(), anyBoolean())).thenAnswer(invocation -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                if (calls.incrementAndGet() == 1) {
+                    firstStarted.countDown();
+                    releaseFirst.await(5, TimeUnit.SECONDS);
+                }
+                return completed("created");
+            } finally {
+                running.decrementAndGet();
+            }
+        });
+
+        coordinator.requestRebuild(1L, false);
+        assertTrue(firstStarted.await(1, TimeUnit.SECONDS));
+
+        // 重建执行期间的事件只做标记，不会启动第二个重建
+        for (int i = 0; i < 5; i++) {
+            coordinator.requestRebuild(1L, false);
+        }
+        Thread.sleep(3 * DEBOUNCE_MS);
+        assertEquals(1, calls.get());
+
+        releaseFirst.countDown();
+        verify(ragClientService, timeout(1000).times(2)).buildVectorStore(eq(1L), anyBoolean());
+        waitUntilIdle(1L);
+        verify(ragClientService, after(3 * DEBOUNCE_MS).times(2)).buildVectorStore(eq(1L), anyBoolean());
+        assertEquals(1, maxRunning.get());
+    }
+
+    @Test
+    public void testRebuildStaysInFlightWhileRagCallIsRetrying() throws Exception {
+        // RAG调用在退避重试中，结果还未返回，重建执行器线程已经释放
+        CompletableFuture<VectorStoreResponse> retrying = new CompletableFuture<>();
+        when(ragClientService.buildVectorStore(anyLong(), anyBoolean()))
+                .thenReturn(retrying)
+                .thenReturn(completed("created"));
+
+        coordinator.requestRebuild(1L, false);
+        verify(ragClientService, timeout(1000).times(1)).buildVectorStore(eq(1L), anyBoolean());
+        assertEquals(0, executor.getActiveCount());
+
+        coordinator.requestRebuild(1L, false);
+        Thread.sleep(3 * DEBOUNCE_MS);
+        verify(ragClientService, times(1)).buildVectorStore(eq(1L), anyBoolean());
+        assertTrue(coordinator.isRebuildPending(1L));
+
+        retrying.complete(completed("created").join());
+        verify(ragClientService, timeout(1000).times(2)).buildVectorStore(eq(1L), anyBoolean());
+        waitUntilIdle(1L);
+    }
+
+    @Test
+    public void testUsersAreRebuiltIndependently() {
+        coordinator.requestRebuild(1L, false);
+        coordinator.requestRebuild(2L, false);
+
+        verify(ragClientService, timeout(1000).times(1)).buildVectorStore(eq(1L), anyBoolean());
+        verify(ragClientService, timeout(1000).times(1)).buildVectorStore(eq(2L), anyBoolean());
+        verify(ragClientService, never()).buildVectorStore(eq(3L), anyBoolean());
+    }
+
+    @Test
+    public void testJournalIsShippedInBatches() {
+        when(ragClientService.applyIncrementalChanges(anyLong(), anyList())).thenReturn(completed("updated"));
+        when(fileChangeMapper.selectPending(eq(1L), anyInt()))
+                .thenReturn(changes(1, 200))
+                .thenReturn(changes(201, 205))
+                .thenReturn(List.of());
+
+        coordinator.requestIncrementalUpdate(1L);
+
+        verify(ragClientService, timeout(1000).times(2)).applyIncrementalChanges(eq(1L), anyList());
+        waitUntilIdle(1L);
+        // 每批成功后删除到该批最后一条
+        verify(fileChangeMapper).deleteSynced(1L, 200L);
+        verify(fileChangeMapper).deleteSynced(1L, 205L);
+        verify(ragClientService, never()).buildVectorStore(anyLong(), anyBoolean());
+    }
+
+    @Test
+    public void testFailedIncrementalUpdateFallsBackToForcedRebuild() {
+        when(ragClientService.applyIncrementalChanges(anyLong(), anyList())).thenReturn(completed("error"));
+        when(fileChangeMapper.selectPending(eq(1L), anyInt())).thenReturn(changes(1, 3));
+        when(fileChangeMapper.selectLatestId(1L)).thenReturn(3L);
+
+        coordinator.requestIncrementalUpdate(1L);
+
+        verify(ragClientService, timeout(1000)).buildVectorStore(1L, true);
+        waitUntilIdle(1L);
+        // 强制重建已包含构建开始前的全部变更，日志一并删除
+        verify(fileChangeMapper).deleteSynced(1L, 3L);
+        verify(ragClientService, times(1)).applyIncrementalChanges(eq(1L), anyList());
+    }
+
+    @Test
+    public void testFailedFallbackRebuildKeepsJournal() {
+        when(ragClientService.applyIncrementalChanges(anyLong(), anyList())).thenReturn(completed("error"));
+        when(ragClientService.buildVectorStore(anyLong(), anyBoolean())).thenReturn(completed("error"));
+        when(fileChangeMapper.selectPending(eq(1L), anyInt())).thenReturn(changes(1, 3));
+        when(fileChangeMapper.selectLatestId(1L)).thenReturn(3L);
+
+        coordinator.requestIncrementalUpdate(1L);
+
+        verify(ragClientService, timeout(1000)).buildVectorStore(1L, true);
+        waitUntilIdle(1L);
+        verify(fileChangeMapper, never()).deleteSynced(any(), any());
+    }
+
+    @Test
+    public void testManualRebuildSkipsDebounceAndReturnsResult() throws Exception {
+        config.getRebuild().setDebounceMs(10_000);
+        config.getRebuild().setMaxWaitMs(20_000);
+
+        VectorStoreResponse response = coordinator.rebuildAndWait(1L, true).get(2, TimeUnit.SECONDS);
+
+        assertEquals("created", response.getStatus());
+        verify(ragClientService).buildVectorStore(1L, true);
+        waitUntilIdle(1L);
+    }
+
+    @Test
+    public void testManualRebuildWaitsForRunningRebuild() throws Exception {
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirst = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        when(ragClientService.buildVectorStore(anyLong(), anyBoolean())).thenAnswer(invocation -> {
+            if (calls.incrementAndGet() == 1) {
+                firstStarted.countDown();
+                releaseFirst.await(5, TimeUnit.SECONDS);
+                return completed("exists");
+            }
+            return completed("created");
+        });
+
+        coordinator.requestRebuild(1L, false);
+        assertTrue(firstStarted.await(1, TimeUnit.SECONDS));
+
+        // 手动构建不与进行中的重建并发，等它结束后再执行一次
+        CompletableFuture<VectorStoreResponse> manual = coordinator.rebuildAndWait(1L, true);
+        Thread.sleep(3 * DEBOUNCE_MS);
+        assertFalse(manual.isDone());
+        assertEquals(1, calls.get());
+
+        releaseFirst.countDown();
+        assertEquals("created", manual.get(2, TimeUnit.SECONDS).getStatus());
+        verify(ragClientService).buildVectorStore(1L, true);
+        waitUntilIdle(1L);
+    }
+
+    @Test
+    public void testManualRebuildWhileRagUnavailableFailsFast() throws Exception {
+        when(healthProber.isAvailable()).thenReturn(false);
+
+        VectorStoreResponse response = coordinator.rebuildAndWait(1L, false).get(2, TimeUnit.SECONDS);
+
+        assertEquals("error", response.getStatus());
+        // 构建保留为待处理，后端恢复后再执行
+        assertTrue(coordinator.isRebuildPending(1L));
+        verify(ragClientService, never()).buildVectorStore(anyLong(), anyBoolean());
+    }
+
+    private static List<FileChange> changes(long fromId, long toId) {
+        return LongStream.rangeClosed(fromId, toId)
+                .mapToObj(id -> FileChange.builder().id(id).userId(1L).fileId(id).build())
+                .toList();
+    }
+
+    private void waitUntilIdle(Long userId) {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (coordinator.isRebuildPending(userId) && System.currentTimeMillis() < deadline) {
+            Thread.onSpinWait();
+        }
+        assertFalse(coordinator.isRebuildPending(userId));
+    }
+
+    private static CompletableFuture<VectorStoreResponse> completed(String status) {
+        VectorStoreResponse response = new VectorStoreResponse();
+        response.setStatus(status);
+        return CompletableFuture.completedFuture(response);
+    }
+}
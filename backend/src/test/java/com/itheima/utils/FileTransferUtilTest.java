@@ -0,0 +1,142 @@
+package com.itheima.utils;
+
+import com.itheima.controller.FileController;
+import com.itheima.dto.FileDownload;
+import com.itheima.service.FileService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.head;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * 文件下载测试：Range、If-Range、条件请求304和HEAD
+ */
+public class FileTransferUtilTest {
+
+    private static final String CONTENT = "0123456789abcdefghij";
+    private static final String ETAG = "\"v1\"";
+    private static final long LAST_MODIFIED = 1_700_000_000_000L;
+
+    @TempDir
+    Path tempDir;
+
+    private FileService fileService;
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Path path = tempDir.resolve("a.txt");
+        Files.writeString(path, CONTENT, StandardCharsets.UTF_8);
+
+        fileService = mock(FileService.class);
+        when(fileService.downloadFile(1L, 7L)).thenReturn(
+                new FileDownload(7L, "报告.txt", path, CONTENT.length(), LAST_MODIFIED, ETAG));
+        mockMvc = MockMvcBuilders.standaloneSetup(new FileController(fileService)).build();
+        ThreadLocalUtil.set(Map.of("id", 1));
+    }
+
+    @AfterEach
+    void tearDown() {
+        ThreadLocalUtil.remove();
+    }
+
+    @Test
+    public void testFullDownload() throws Exception {
+        mockMvc.perform(get("/files/7/download"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ACCEPT_RANGES, "bytes"))
+                .andExpect(header().string(HttpHeaders.ETAG, ETAG))
+                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, CONTENT.length()))
+                .andExpect(header().string(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename*=UTF-8''%E6%8A%A5%E5%91%8A.txt"))
+                .andExpect(content().string(CONTENT));
+        verify(fileService).recordDownload(CONTENT.length());
+    }
+
+    @Test
+    public void testSingleRangeReturnsPartialContent() throws Exception {
+        mockMvc.perform(get("/files/7/download").header(HttpHeaders.RANGE, "bytes=5-9"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 5-9/20"))
+                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, 5))
+                .andExpect(content().string("56789"));
+
+        // 后缀区间：最后3个字节
+        mockMvc.perform(get("/files/7/download").header(HttpHeaders.RANGE, "bytes=-3"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 17-19/20"))
+                .andExpect(content().string("hij"));
+    }
+
+    @Test
+    public void testUnsatisfiableRange() throws Exception {
+        mockMvc.perform(get("/files/7/download").header(HttpHeaders.RANGE, "bytes=50-60"))
+                .andExpect(status().isRequestedRangeNotSatisfiable())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes */20"));
+    }
+
+    @Test
+    public void testOtherRangeUnitIsIgnored() throws Exception {
+        mockMvc.perform(get("/files/7/download").header(HttpHeaders.RANGE, "items=0-1"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_RANGE))
+                .andExpect(content().string(CONTENT));
+    }
+
+    @Test
+    public void testIfRangeWithCurrentEtagReturnsRange() throws Exception {
+        mockMvc.perform(get("/files/7/download")
+                        .header(HttpHeaders.RANGE, "bytes=0-3")
+                        .header(HttpHeaders.IF_RANGE, ETAG))
+                .andExpect(status().isPartialContent())
+                .andExpect(content().string("0123"));
+    }
+
+    @Test
+    public void testIfRangeWithStaleEtagReturnsFullFile() throws Exception {
+        mockMvc.perform(get("/files/7/download")
+                        .header(HttpHeaders.RANGE, "bytes=0-3")
+                        .header(HttpHeaders.IF_RANGE, "\"v0\""))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_RANGE))
+                .andExpect(content().string(CONTENT));
+    }
+
+    @Test
+    public void testIfNoneMatchReturnsNotModified() throws Exception {
+        mockMvc.perform(get("/files/7/download").header(HttpHeaders.IF_NONE_MATCH, ETAG))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+        verify(fileService, never()).recordDownload(anyLong());
+    }
+
+    @Test
+    public void testHeadReturnsHeadersWithoutBody() throws Exception {
+        mockMvc.perform(head("/files/7/download").header(HttpHeaders.RANGE, "bytes=0-9"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 0-9/20"))
+                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, 10))
+                .andExpect(content().string(""));
+        verify(fileService, never()).recordDownload(anyLong());
+    }
+}
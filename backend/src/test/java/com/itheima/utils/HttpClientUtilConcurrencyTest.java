@@ -0,0 +1,120 @@
+package com.itheima.utils;
+
+import com.alibaba.fastjson.JSONObject;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * HttpClientUtil并发测试
+ * 大量线程同时发送请求，验证每个请求的URL、请求头、请求体互不串扰
+ */
+public class HttpClientUtilConcurrencyTest {
+
+    private static final int PARALLEL_CALLS = 400;
+
+    private MockWebServer server;
+    private HttpClientUtil httpClientUtil;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new MockWebServer();
+        // 原样返回请求中的路径、请求头和请求体，方便逐个核对
+        server.setDispatcher(new okhttp3.mockwebserver.Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                JSONObject echo = new JSONObject();
+                echo.put("path", request.getPath());
+                echo.put("header", request.getHeader("X-Call-Id"));
+                echo.put("body", JSONObject.parseObject(request.getBody().readUtf8()));
+                return new MockResponse()
+                        .setHeader("Content-Type", "application/json")
+                        .setBody(echo.toJSONString())
+                        .setBodyDelay(20, TimeUnit.MILLISECONDS);
+            }
+        });
+        server.start();
+
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(256);
+        dispatcher.setMaxRequestsPerHost(128);
+        httpClientUtil = new HttpClientUtil(new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(200, 5, TimeUnit.MINUTES))
+                .build());
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    public void testSyncCallsAreIsolated() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(64);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<JSONObject>> futures = new ArrayList<>();
+        for (int i = 0; i < PARALLEL_CALLS; i++) {
+            String id = String.valueOf(i);
+            futures.add(executor.submit(() -> {
+                start.await();
+                return httpClientUtil.url(server.url("/chat").toString())
+                        .addQueryParam("call", id)
+                        .addHeader("X-Call-Id", id)
+                        .jsonBody(Map.of("id", id))
+                        .post()
+                        .executeForJson();
+            }));
+        }
+        start.countDown();
+
+        for (int i = 0; i < PARALLEL_CALLS; i++) {
+            assertEcho(String.valueOf(i), futures.get(i).get(30, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+    }
+
+    @Test
+    public void testAsyncCallsAreIsolated() throws Exception {
+        List<CompletableFuture<JSONObject>> futures = new ArrayList<>();
+        for (int i = 0; i < PARALLEL_CALLS; i++) {
+            String id = String.valueOf(i);
+            futures.add(httpClientUtil.url(server.url("/chat").toString())
+                    .addQueryParam("call", id)
+                    .addHeader("X-Call-Id", id)
+                    .jsonBody(Map.of("id", id))
+                    .post()
+                    .executeForJsonAsync());
+        }
+
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(30, TimeUnit.SECONDS);
+        for (int i = 0; i < PARALLEL_CALLS; i++) {
+            assertEcho(String.valueOf(i), futures.get(i).join());
+        }
+    }
+
+    private void assertEcho(String id, JSONObject echo) {
+        assertEquals("/chat?call=" + id, echo.getString("path"));
+        assertEquals(id, echo.getString("header"));
+        assertEquals(id, echo.getJSONObject("body").getString("id"));
+    }
+}
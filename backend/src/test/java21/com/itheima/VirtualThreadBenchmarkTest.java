@@ -0,0 +1,170 @@
+package com.itheima;
+
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.metadata.TableInfoHelper;
+import com.itheima.config.RagClientConfig;
+import com.itheima.mapper.ChatMessageMapper;
+import com.itheima.mapper.ChatSessionMapper;
+import com.itheima.mapper.FileMapper;
+import com.itheima.mapper.FolderMapper;
+import com.itheima.pojo.ChatMessage;
+import com.itheima.pojo.ChatSession;
+import com.itheima.service.ChatHistoryStore;
+import com.itheima.service.FilePathIndex;
+import com.itheima.service.RagCallGuard;
+import com.itheima.service.impl.ChatServiceImpl;
+import com.itheima.utils.HttpClientUtil;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.apache.ibatis.builder.MapperBuilderAssistant;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 平台线程与虚拟线程的聊天并发对比
+ * <p>
+ * 同时发起大量聊天请求，RAG后端每次回答耗时1秒，统计RAG后端同时在处理的最大请求数和总耗时。
+ * 平台线程组使用与Tomcat默认 max-threads 相同的200个线程。
+ * 运行：mvn -Pjava21 test -Dtest=VirtualThreadBenchmarkTest -Dbenchmark=true
+ * </p>
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class VirtualThreadBenchmarkTest {
+
+    private static final int CHAT_TURNS = 1000;
+    private static final int TOMCAT_MAX_THREADS = 200;
+    private static final long RAG_DELAY_MS = 1000;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private MockWebServer ragServer;
+    private ChatServiceImpl chatService;
+
+    @BeforeAll
+    static void initTableInfo() {
+        MapperBuilderAssistant assistant = new MapperBuilderAssistant(new MybatisConfiguration(), "");
+        TableInfoHelper.initTableInfo(assistant, ChatSession.class);
+        TableInfoHelper.initTableInfo(assistant, ChatMessage.class);
+    }
+
+    @BeforeEach
+    void setUp() throws IOException {
+        ragServer = new MockWebServer();
+        ragServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(RAG_DELAY_MS);
+                } finally {
+                    inFlight.decrementAndGet();
+                }
+                return new MockResponse()
+                        .setHeader("Content-Type", "application/json")
+                        .setBody("{\"answer\":\"ok\",\"sources\":[]}");
+            }
+        });
+        ragServer.start();
+
+        ChatSession session = new ChatSession();
+        session.setId(1L);
+        session.setUserId(1L);
+        ChatSessionMapper sessionMapper = mock(ChatSessionMapper.class);
+        when(sessionMapper.selectById(any())).thenReturn(session);
+
+        ChatHistoryStore historyStore = new ChatHistoryStore(mock(StringRedisTemplate.class));
+        ReflectionTestUtils.setField(historyStore, "maxTurns", 10);
+
+        OkHttpClient okHttpClient = new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(CHAT_TURNS, 5, TimeUnit.MINUTES))
+                .readTimeout(60, TimeUnit.SECONDS)
+                .build();
+        chatService = new ChatServiceImpl(sessionMapper, mock(ChatMessageMapper.class),
+                mock(FileMapper.class), mock(FolderMapper.class), new TransactionTemplate(new NoOpTransactionManager()),
+                historyStore, new FilePathIndex(mock(FileMapper.class)), new HttpClientUtil(okHttpClient),
+                new RagCallGuard(new RagClientConfig(), Runnable::run), new SimpleMeterRegistry(), Runnable::run);
+        ReflectionTestUtils.setField(chatService, "ragApiUrl",
+                "http://" + ragServer.getHostName() + ":" + ragServer.getPort());
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        ragServer.shutdown();
+    }
+
+    @Test
+    public void comparePlatformAndVirtualThreads() throws Exception {
+        long platformMs = run(Executors.newFixedThreadPool(TOMCAT_MAX_THREADS));
+        int platformMax = maxInFlight.getAndSet(0);
+
+        long virtualMs = run(Executors.newVirtualThreadPerTaskExecutor());
+        int virtualMax = maxInFlight.getAndSet(0);
+
+        System.out.printf("聊天请求数: %d, RAG耗时: %dms%n", CHAT_TURNS, RAG_DELAY_MS);
+        System.out.printf("平台线程(%d): 最大并发聊天 %d, 总耗时 %dms%n", TOMCAT_MAX_THREADS, platformMax, platformMs);
+        System.out.printf("虚拟线程: 最大并发聊天 %d, 总耗时 %dms%n", virtualMax, virtualMs);
+    }
+
+    private long run(ExecutorService executor) throws Exception {
+        long start = System.currentTimeMillis();
+        try (executor) {
+            List<Future<ChatMessage>> futures = new ArrayList<>();
+            for (int i = 0; i < CHAT_TURNS; i++) {
+                futures.add(executor.submit(() -> chatService.sendMessage(1L, 1L, "你好")));
+            }
+            for (Future<ChatMessage> future : futures) {
+                future.get(120, TimeUnit.SECONDS);
+            }
+        }
+        return System.currentTimeMillis() - start;
+    }
+
+    /**
+     * 不模拟连接池，只比较线程模型本身
+     */
+    private static class NoOpTransactionManager extends AbstractPlatformTransactionManager {
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+        }
+    }
+}
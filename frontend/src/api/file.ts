@@ -1,6 +1,6 @@
 // src/api/file.ts
 import request from '@/utils/request'
-import type { MyFile, ApiResponse } from '@/types'
+import type { MyFile, ApiResponse, TextPage } from '@/types'
 
 export const fileApi = {
     /**
@@ -80,6 +80,20 @@ export const fileApi = {
         return request.get(`/files/${fileId}/content`);
     },
 
+    /**
+     * 按字节范围分页获取文件内容，不传 length 时按服务器的每页上限读取
+     * @param fileId 文件ID
+     * @param offset 起始字节位置
+     * @param length 最多读取的字节数
+     */
+    getContentPage: (fileId: number, offset = 0, length?: number): Promise<ApiResponse<TextPage>> => {
+        if (!Number.isInteger(fileId) || fileId <= 0) {
+            return Promise.reject(new Error('文件 ID 必须是正整数'));
+        }
+        const query = length === undefined ? `offset=${offset}` : `offset=${offset}&length=${length}`;
+        return request.get(`/files/${fileId}/content?${query}`);
+    },
+
 
     /**
      * 获取文件元数据
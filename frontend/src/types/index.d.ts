@@ -48,6 +48,18 @@ export interface FolderContents {
     folders: Folder[]
 }
 
+export interface TextPage {
+    content: string
+    offset: number
+    nextOffset: number
+    fileSize: number
+    startLine?: number
+    nextLine?: number
+    totalLines?: number
+    truncated: boolean
+    hasMore: boolean
+}
+
 export interface ApiResponse<T = any> {
     code: number
     message: string
@@ -1,6 +1,7 @@
 import os
+import json
 import logging
-from flask import Flask, request, jsonify
+from flask import Flask, request, jsonify, Response, stream_with_context
 from flask_cors import CORS
 import config
 from core.rag_pipeline import RAGPipeline
@@ -146,6 +147,54 @@ def chat_with_documents():
             'error': f'聊天失败: {str(e)}'
         }), 500
 
+@app.route('/chat/stream', methods=['POST'])
+def chat_with_documents_stream():
+    """与文档聊天接口（流式）
+    
+    返回 text/event-stream，每条 data 为JSON：
+    {"type":"token","content":"..."} 表示一个回答片段，
+    {"type":"done","answer":"...","sources":[...]} 表示最终结果
+    """
+    try:
+        data = request.json
+        
+        # 参数验证
+        if not data or 'message' not in data or 'document_path' not in data:
+            return jsonify({
+                'error': '缺少必需参数：message 和 document_path'
+            }), 400
+        
+        message = data['message'].strip()
+        document_paths = data['document_path']
+        history = data.get('history', [])
+        conversation_id = data.get('conversation_id', 'default')
+        
+        if not message:
+            return jsonify({'error': '消息不能为空'}), 400
+        
+        if not document_paths:
+            return jsonify({'error': '文档路径不能为空'}), 400
+        
+        # 处理文档路径
+        full_document_paths = _process_document_paths(document_paths)
+        if not full_document_paths:
+            return jsonify({'error': '文档路径不能为空或无效'}), 400
+        
+        pipeline = get_rag_pipeline()
+        
+        def generate():
+            for event in pipeline.chat_stream(message, full_document_paths, history, conversation_id):
+                yield f"data: {json.dumps(event, ensure_ascii=False)}\n\n"
+        
+        return Response(stream_with_context(generate()), mimetype='text/event-stream',
+                        headers={'Cache-Control': 'no-cache', 'X-Accel-Buffering': 'no'})
+        
+    except Exception as e:
+        logger.error(f"流式聊天失败: {str(e)}")
+        return jsonify({
+            'error': f'聊天失败: {str(e)}'
+        }), 500
+
 @app.route('/search', methods=['POST'])
 def search_documents():
     """搜索文档接口"""
@@ -338,6 +387,35 @@ def rebuild_vectorstore():
         logger.error(f"Rebuild vectorstore error: {str(e)}")
         return jsonify({"error": f"重新构建向量存储失败: {str(e)}"}), 500
 
+@app.route('/vectorstores/incremental', methods=['POST'])
+def incremental_update_vectorstore():
+    """按文件变更增量更新向量存储"""
+    try:
+        data = request.get_json()
+        if not data or 'document_path' not in data:
+            return jsonify({"error": "缺少document_path参数"}), 400
+
+        changes = data.get('changes')
+        if not isinstance(changes, list):
+            return jsonify({"error": "changes参数必须是列表"}), 400
+
+        # 处理文档路径
+        full_document_paths = _process_document_paths(data['document_path'])
+        if not full_document_paths:
+            return jsonify({'error': '文档路径不能为空或无效'}), 400
+
+        pipeline = get_rag_pipeline()
+        result = pipeline.apply_incremental_changes(full_document_paths[0], changes)
+
+        if result['status'] == 'error':
+            return jsonify(result), 500
+        else:
+            return jsonify(result), 200
+
+    except Exception as e:
+        logger.error(f"Incremental update vectorstore error: {str(e)}")
+        return jsonify({"error": f"增量更新向量存储失败: {str(e)}"}), 500
+
 @app.route('/vectorstores/clear-cache', methods=['POST'])
 def clear_vectorstore_cache():
     """清除向量存储缓存"""
@@ -370,6 +370,81 @@ class RAGPipeline:
                 "sources": []
             }
     
+    def _prepare_chat(self, question: str, document_path, history: Optional[List], conversation_id: str, top_k: int) -> tuple:
+        """
+        准备一轮对话：更新对话历史、检索相关文档并构建包含历史对话的提示
+        
+        Returns:
+            tuple: (current_history, retrieved_docs, enhanced_prompt)
+            
+        Raises:
+            ValueError: 没有找到相关文档
+        """
+        # 获取或初始化对话历史
+        if conversation_id not in self.conversation_histories:
+            self.conversation_histories[conversation_id] = []
+        
+        current_history = self.conversation_histories[conversation_id]
+        
+        # 如果传入了history参数，使用它来更新当前历史
+        if history is not None:
+            current_history = history.copy()
+            self.conversation_histories[conversation_id] = current_history
+        
+        # 使用缓存获取向量存储和检索器
+        vectorstore, retriever, all_sources = self._get_or_create_vectorstore(document_path)
+        
+        # 使用指定的top_k更新检索器并检索相关文档
+        retriever = vectorstore.as_retriever(search_kwargs={"k": top_k})
+        retrieved_docs = retriever.get_relevant_documents(question)
+        
+        print(f"🔍 检索到 {len(retrieved_docs)} 个相关文档片段")
+        
+        # 构建上下文
+        context = "\n\n".join([doc.page_content for doc in retrieved_docs])
+        
+        # 构建包含历史对话的提示
+        conversation_context = ""
+        if current_history:
+            print(f"💬 使用 {len(current_history)} 轮历史对话")
+            conversation_context = "\n以下是之前的对话历史:\n"
+            for i, exchange in enumerate(current_history[-5:], 1):  # 只使用最近5轮对话
+                conversation_context += f"第{i}轮对话:\n"
+                conversation_context += f"用户: {exchange.get('question', '')}\n"
+                conversation_context += f"助手: {exchange.get('answer', '')}\n\n"
+            conversation_context += "---\n"
+        
+        # 创建增强的提示模板，包含历史对话
+        enhanced_prompt = f"""
+你是一个基于文档的智能助手。请根据检索到的相关文档内容和对话历史来回答用户的问题。
+
+{conversation_context}
+
+相关文档内容:
+{context}
+
+当前用户问题: {question}
+
+请根据上述信息回答用户问题。如果问题涉及之前的对话内容，请结合历史对话来回答。如果文档内容不足以回答问题，请如实说明。
+
+回答:"""
+        
+        return current_history, retrieved_docs, enhanced_prompt
+    
+    def _record_exchange(self, conversation_id: str, current_history: List, question: str, answer: str, sources: List[dict]):
+        """添加当前对话到历史"""
+        current_exchange = {
+            "question": question,
+            "answer": answer,
+            "sources": sources,
+            "timestamp": __import__('datetime').datetime.now().isoformat()
+        }
+        
+        current_history.append(current_exchange)
+        self.conversation_histories[conversation_id] = current_history
+        
+        print(f"✅ 对话回答生成成功，历史记录已更新 (共{len(current_history)}轮)")
+    
     def chat(self, question: str, document_path, history: Optional[List] = None, conversation_id: str = "default", top_k: int = 5) -> dict:
         """
         带历史对话的查询 - 真正的对话式RAG实现
@@ -384,21 +459,11 @@ class RAGPipeline:
         Returns:
             包含答案和来源文档的字典
         """
+        current_history = history if history is not None else self.conversation_histories.get(conversation_id, [])
         try:
-            # 获取或初始化对话历史
-            if conversation_id not in self.conversation_histories:
-                self.conversation_histories[conversation_id] = []
-            
-            current_history = self.conversation_histories[conversation_id]
-            
-            # 如果传入了history参数，使用它来更新当前历史
-            if history is not None:
-                current_history = history.copy()
-                self.conversation_histories[conversation_id] = current_history
-            
-            # 使用缓存获取向量存储和检索器
             try:
-                vectorstore, retriever, all_sources = self._get_or_create_vectorstore(document_path)
+                current_history, retrieved_docs, enhanced_prompt = self._prepare_chat(
+                    question, document_path, history, conversation_id, top_k)
             except ValueError as e:
                 return {
                     "question": question,
@@ -409,41 +474,6 @@ class RAGPipeline:
                     "conversation_id": conversation_id
                 }
             
-            # 使用指定的top_k更新检索器并检索相关文档
-            retriever = vectorstore.as_retriever(search_kwargs={"k": top_k})
-            retrieved_docs = retriever.get_relevant_documents(question)
-            
-            print(f"🔍 检索到 {len(retrieved_docs)} 个相关文档片段")
-            
-            # 构建上下文
-            context = "\n\n".join([doc.page_content for doc in retrieved_docs])
-            
-            # 构建包含历史对话的提示
-            conversation_context = ""
-            if current_history:
-                print(f"💬 使用 {len(current_history)} 轮历史对话")
-                conversation_context = "\n以下是之前的对话历史:\n"
-                for i, exchange in enumerate(current_history[-5:], 1):  # 只使用最近5轮对话
-                    conversation_context += f"第{i}轮对话:\n"
-                    conversation_context += f"用户: {exchange.get('question', '')}\n"
-                    conversation_context += f"助手: {exchange.get('answer', '')}\n\n"
-                conversation_context += "---\n"
-            
-            # 创建增强的提示模板，包含历史对话
-            enhanced_prompt = f"""
-你是一个基于文档的智能助手。请根据检索到的相关文档内容和对话历史来回答用户的问题。
-
-{conversation_context}
-
-相关文档内容:
-{context}
-
-当前用户问题: {question}
-
-请根据上述信息回答用户问题。如果问题涉及之前的对话内容，请结合历史对话来回答。如果文档内容不足以回答问题，请如实说明。
-
-回答:"""
-            
             # 直接调用LLM生成回答
             print("🤖 正在生成带历史对话的回答...")
             response = self.llm.invoke(enhanced_prompt)
@@ -457,18 +487,7 @@ class RAGPipeline:
             # 提取源文档信息
             sources = self._extract_sources_from_docs(retrieved_docs)
             
-            # 添加当前对话到历史
-            current_exchange = {
-                "question": question,
-                "answer": answer,
-                "sources": sources,
-                "timestamp": __import__('datetime').datetime.now().isoformat()
-            }
-            
-            current_history.append(current_exchange)
-            self.conversation_histories[conversation_id] = current_history
-            
-            print(f"✅ 对话回答生成成功，历史记录已更新 (共{len(current_history)}轮)")
+            self._record_exchange(conversation_id, current_history, question, answer, sources)
             
             return {
                 "question": question,
@@ -490,6 +509,39 @@ class RAGPipeline:
                 "conversation_id": conversation_id
             }
     
+    def chat_stream(self, question: str, document_path, history: Optional[List] = None, conversation_id: str = "default", top_k: int = 5):
+        """
+        带历史对话的流式查询，与 chat 使用相同的检索和提示
+        
+        Yields:
+            {"type": "token", "content": ...} 回答片段；
+            最后一条为 {"type": "done", "answer": ..., "sources": [...], "conversation_id": ...}
+        """
+        try:
+            current_history, retrieved_docs, enhanced_prompt = self._prepare_chat(
+                question, document_path, history, conversation_id, top_k)
+        except ValueError as e:
+            yield {"type": "done", "answer": str(e), "sources": [], "conversation_id": conversation_id}
+            return
+        
+        print("🤖 正在流式生成带历史对话的回答...")
+        parts = []
+        try:
+            for chunk in self.llm.stream(enhanced_prompt):
+                token = chunk.content if hasattr(chunk, 'content') else str(chunk)
+                if token:
+                    parts.append(token)
+                    yield {"type": "token", "content": token}
+        except Exception as e:
+            print(f"❌ 流式对话过程中发生错误: {e}")
+            parts.append(f"\n对话查询过程中发生错误: {str(e)}")
+        
+        answer = "".join(parts)
+        sources = self._extract_sources_from_docs(retrieved_docs)
+        self._record_exchange(conversation_id, current_history, question, answer, sources)
+        
+        yield {"type": "done", "answer": answer, "sources": sources, "conversation_id": conversation_id}
+    
     def search(self, query: str, document_path, top_k: int = 5) -> dict:
         """
         搜索相关文档片段
@@ -660,6 +712,125 @@ class RAGPipeline:
                 "message": f"保存向量存储失败: {str(e)}"
             }
     
+    def apply_incremental_changes(self, document_path, changes: List[dict]) -> dict:
+        """
+        按顺序把文件变更应用到已有的向量存储，只向量化新增的文件
+
+        Args:
+            document_path: 文档路径
+            changes: 文件变更列表，每项包含type（added/removed/renamed/moved）、
+                     source（相对于文档根目录的路径）、file_name、folder_id
+
+        Returns:
+            更新结果信息
+        """
+        try:
+            import time
+            path_key = self._get_path_key(document_path)
+            persistent_path = self._get_persistent_path(document_path)
+
+            vectorstore = self.vectorstore_cache.get(path_key)
+            if vectorstore is None and persistent_path.exists():
+                vectorstore = FAISS.load_local(
+                    str(persistent_path),
+                    self.embeddings,
+                    allow_dangerous_deserialization=True
+                )
+            if vectorstore is None:
+                # 还没有向量存储，只有新增文件时才需要构建
+                if any(change.get('type') == 'added' for change in changes):
+                    return self.save_vectorstore(document_path, force_rebuild=True)
+                return {
+                    "status": "unchanged",
+                    "message": f"向量存储不存在，无需更新: {path_key}"
+                }
+
+            documents = self.document_cache.get(path_key)
+            applied = 0
+            for change in changes:
+                file_path = self._resolve_change_source(change.get('source'))
+                if file_path is None:
+                    print(f"⚠️  跳过无效变更路径: {change.get('source')}")
+                    continue
+
+                change_type = change.get('type')
+                doc_ids = self._find_doc_ids(vectorstore, file_path)
+                if change_type in ('added', 'removed'):
+                    # 新增时先删除同一文件已有的向量，重复发送的变更不会产生重复片段
+                    if doc_ids:
+                        vectorstore.delete(doc_ids)
+                    if documents is not None:
+                        documents = [doc for doc in documents if not self._is_same_file(doc, file_path)]
+                    if change_type == 'added':
+                        new_documents = self._load_single_file(str(file_path))
+                        for doc in new_documents:
+                            doc.metadata['file_name'] = change.get('file_name')
+                            doc.metadata['folder_id'] = change.get('folder_id')
+                        doc_splits = self.text_splitter.split_documents(new_documents)
+                        if doc_splits:
+                            vectorstore.add_documents(doc_splits)
+                        if documents is not None:
+                            documents.extend(new_documents)
+                elif change_type in ('renamed', 'moved'):
+                    # 物理路径不变，只更新元数据
+                    for doc_id in doc_ids:
+                        doc = vectorstore.docstore.search(doc_id)
+                        doc.metadata['file_name'] = change.get('file_name')
+                        doc.metadata['folder_id'] = change.get('folder_id')
+                else:
+                    print(f"⚠️  跳过未知变更类型: {change_type}")
+                    continue
+                applied += 1
+
+            vectorstore.save_local(str(persistent_path))
+
+            self.vectorstore_cache[path_key] = vectorstore
+            self.retriever_cache[path_key] = vectorstore.as_retriever(search_kwargs={"k": 3})
+            if documents is not None:
+                self.document_cache[path_key] = documents
+            else:
+                self.document_cache[path_key] = self._load_documents_from_path(document_path)
+            self.cache_timestamps[path_key] = time.time()
+
+            print(f"🔁 向量存储增量更新完成: {path_key}, 变更数: {applied}")
+            return {
+                "status": "updated",
+                "message": f"向量存储增量更新成功: {path_key}",
+                "applied": applied
+            }
+
+        except Exception as e:
+            print(f"❌ 增量更新向量存储失败: {e}")
+            return {
+                "status": "error",
+                "message": f"增量更新向量存储失败: {str(e)}"
+            }
+
+    def _resolve_change_source(self, source) -> Optional[Path]:
+        """变更中的相对路径转换为绝对路径，不在文档根目录内时返回None"""
+        if not source:
+            return None
+        try:
+            root_path = self.documents_root.resolve()
+            file_path = (root_path / source).resolve()
+            file_path.relative_to(root_path)
+            return file_path
+        except (ValueError, OSError):
+            return None
+
+    def _is_same_file(self, doc: Document, file_path: Path) -> bool:
+        source = doc.metadata.get("source")
+        return bool(source) and Path(source).resolve() == file_path
+
+    def _find_doc_ids(self, vectorstore, file_path: Path) -> List[str]:
+        """查找某个文件的所有文本块ID"""
+        doc_ids = []
+        for doc_id in vectorstore.index_to_docstore_id.values():
+            doc = vectorstore.docstore.search(doc_id)
+            if isinstance(doc, Document) and self._is_same_file(doc, file_path):
+                doc_ids.append(doc_id)
+        return doc_ids
+
     def load_vectorstore(self, document_path) -> dict:
         """
         从磁盘加载向量存储